@@ -0,0 +1,206 @@
+package edu.miracosta.cs220;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * AssemblerHotPathBenchmark.java - JMH benchmarks of the assembler's hot paths.
+ *
+ * Algorithm:
+ *
+ * 1. A synthetic assembly program of the given size (1K, 64K and 1M characters by default; any size with
+ * -p size=N) is generated from a fixed seed, so every run (and every machine) times the same code. The program mixes
+ * labels, numeric A-instructions, references to labels, variables and predefined symbols, comments, blank space, and
+ * C-instructions made from every mnemonic.
+ *
+ * 2. Each benchmark runs one hot path over the whole program:
+ *    - parserAdvance: scanning every line of the program.
+ *    - encodeCInstructions: encoding every C-instruction of the program with the CInstructionMapper.
+ *    - addSymbolsThenGetAddresses: defining every label of the program, then looking up every A-instruction symbol.
+ *    - getOrAllocateVariables: resolving every A-instruction symbol, allocating the variables.
+ *
+ * Scores are programs per second; run with -prof gc for the allocation (gc.alloc.rate.norm is bytes per program).
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - SEED (long): The seed of the program generator.
+ * - PREDEFINED_SYMBOLS (String[]): The predefined symbols the program uses.
+ * - size (int): The number of characters in the program.
+ * - assemblyCode (String): The program.
+ * - cInstructions/labels/symbols (String[]): The C-instructions, labels and A-instruction symbols of the program.
+ *
+ * METHODS:
+ *
+ * - generateAssembly (long): Generates the synthetic program of the given size.
+ *
+ * Author: Matt Sheehan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssemblerHotPathBenchmark {
+
+    private static final long SEED = 220;
+    private static final String [] PREDEFINED_SYMBOLS = { "SP", "LCL", "ARG", "THIS", "THAT", "R13", "SCREEN", "KBD" };
+
+    @Param({ "1024", "65536", "1048576" })
+    public int size;
+
+    private String assemblyCode;
+    private String [] cInstructions;
+    private String [] labels;
+    private String [] symbols;
+
+    /**
+     * Generates the program, and collects its C-instructions, labels and symbols.
+     */
+    @Setup
+    public void generate() {
+        assemblyCode = generateAssembly(size);
+        cInstructions = collect(assemblyCode, AssemblyLexer.C_INSTRUCTION);
+        labels = collect(assemblyCode, AssemblyLexer.LABEL);
+        symbols = collect(assemblyCode, AssemblyLexer.ADDRESS);
+    }
+
+    /**
+     * Scans every line of the program.
+     * @param blackhole Consumes the type of every command.
+     */
+    @Benchmark
+    public void parserAdvance(Blackhole blackhole) {
+        Parser parser = new Parser(new StringReader(assemblyCode), assemblyCode.length());
+        while (parser.hasMoreCommands()) {
+            parser.advance();
+            blackhole.consume(parser.getCommandType());
+        }
+    }
+
+    /**
+     * Encodes every C-instruction of the program.
+     * @param blackhole Consumes every encoded instruction.
+     */
+    @Benchmark
+    public void encodeCInstructions(Blackhole blackhole) {
+        for (String cInstruction : cInstructions) {
+            blackhole.consume(CInstructionMapper.encode(cInstruction, 0));
+        }
+    }
+
+    /**
+     * Defines every label of the program, then looks up every A-instruction symbol.
+     * @param blackhole Consumes every address.
+     */
+    @Benchmark
+    public void addSymbolsThenGetAddresses(Blackhole blackhole) {
+        SymbolTable symbolTable = new SymbolTable();
+        for (int i = 0; i < labels.length; i++) {
+            symbolTable.addSymbol(labels[i], i);
+        }
+        for (String symbol : symbols) {
+            blackhole.consume(symbolTable.getAddress(symbol));
+        }
+    }
+
+    /**
+     * Resolves every A-instruction symbol of the program, allocating the variables.
+     * @param blackhole Consumes every address.
+     */
+    @Benchmark
+    public void getOrAllocateVariables(Blackhole blackhole) {
+        SymbolTable symbolTable = new SymbolTable();
+        for (String symbol : symbols) {
+            blackhole.consume(symbolTable.getOrAllocateVariable(symbol));
+        }
+    }
+
+    /**
+     * Generates a synthetic assembly program (the same one for the same size, every time).
+     * @param bytes The number of characters to generate (the last line may run slightly past it).
+     * @return The assembly program.
+     */
+    static String generateAssembly(long bytes) {
+        if (bytes > Integer.MAX_VALUE - 64) {
+            throw new IllegalArgumentException("Programs are limited to 2G characters: " + bytes);
+        }
+
+        Random random = new Random(SEED);
+        StringBuilder assemblyCode = new StringBuilder((int) bytes + 64);
+        int labels = 0;
+
+        while (assemblyCode.length() < bytes) {
+            switch (random.nextInt(10)) {
+                case 0 -> assemblyCode.append("(LOOP_").append(labels++).append(")\n");
+                case 1 -> assemblyCode.append("    @").append(random.nextInt(32768)).append('\n');
+                case 2 -> assemblyCode.append("    @LOOP_").append(random.nextInt(labels + 1)).append('\n');
+                case 3 -> assemblyCode.append("    @variable").append(random.nextInt(1000)).append(" // A variable.\n");
+                case 4 -> {
+                    String predefinedSymbol = PREDEFINED_SYMBOLS[random.nextInt(PREDEFINED_SYMBOLS.length)];
+                    assemblyCode.append("    @").append(predefinedSymbol).append('\n');
+                }
+                case 5 -> assemblyCode.append("// Comment line ").append(labels).append("\n\n");
+                default -> appendCInstruction(assemblyCode, random);
+            }
+        }
+        return assemblyCode.toString();
+    }
+
+    /**
+     * Appends a random C-instruction (with or without a destination and jump) to the program.
+     * @param assemblyCode The program being generated.
+     * @param random The generator's random numbers.
+     */
+    private static void appendCInstruction(StringBuilder assemblyCode, Random random) {
+        String [] destinations = CInstructionMapper.destinationMnemonics;
+        String [] computations = CInstructionMapper.computationMnemonics;
+        String [] jumps = CInstructionMapper.jumpMnemonics;
+
+        assemblyCode.append("    ");
+        if (random.nextBoolean()) { // Index 0 is "null", which stands for no destination/jump.
+            assemblyCode.append(destinations[1 + random.nextInt(destinations.length - 1)]).append('=');
+        }
+        assemblyCode.append(computations[random.nextInt(computations.length)]);
+        if (random.nextInt(4) == 0) {
+            assemblyCode.append(';').append(jumps[1 + random.nextInt(jumps.length - 1)]);
+        }
+        assemblyCode.append('\n');
+    }
+
+    /**
+     * Collects the cleaned commands of one type from the program (the symbol for labels and A-instructions that
+     * aren't numbers).
+     * @param assemblyCode The program.
+     * @param commandType The type of command to collect.
+     * @return The commands, in program order.
+     */
+    private static String [] collect(String assemblyCode, char commandType) {
+        Parser parser = new Parser(new StringReader(assemblyCode), assemblyCode.length());
+        List <String> commands = new ArrayList <> ();
+        while (parser.hasMoreCommands()) {
+            parser.advance();
+            if (parser.getCommandType() == commandType
+                && !(commandType == AssemblyLexer.ADDRESS && parser.isSymbolNumeric())) {
+                commands.add((commandType == AssemblyLexer.C_INSTRUCTION) ? parser.getAssemblyWithoutWhiteSpace()
+                                                                          : parser.getSymbolInAssemblyCode());
+            }
+        }
+        return commands.toArray(new String [0]);
+    }
+}
@@ -0,0 +1,122 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AssemblerPassBenchmark.java - JMH benchmarks of the two-pass and single-pass assemblers against each other.
+ *
+ * Algorithm:
+ *
+ * 1. A synthetic .asm file is generated with the given number of blocks (4000 by default, which nearly fills the
+ * ROM). Each block declares a label, reads a variable, jumps forward to the next block's label, and back to its own
+ * label, so both forward and backward references (as well as variables and predefined symbols) are exercised.
+ *
+ * 2. Both assemblers assemble the file into memory (the output file isn't written, so only the assembling is timed).
+ *
+ * Scores are milliseconds per file.
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - blocks (int): The number of ten-line blocks in the file.
+ * - assemblyFile (Path): The generated .asm file.
+ *
+ * METHODS:
+ *
+ * - generateAssembly (int): Generates the synthetic program with the given number of blocks.
+ *
+ * Author: Matt Sheehan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssemblerPassBenchmark {
+
+    @Param({ "4000" })
+    public int blocks;
+
+    private Path assemblyFile;
+
+    /**
+     * Writes the generated program to a temporary .asm file.
+     * @throws IOException If the file could not be written.
+     */
+    @Setup
+    public void writeAssemblyFile() throws IOException {
+        assemblyFile = Files.createTempFile("AssemblerPassBenchmark", ".asm");
+        Files.writeString(assemblyFile, generateAssembly(blocks));
+    }
+
+    /**
+     * Removes the temporary .asm file.
+     * @throws IOException If the file could not be removed.
+     */
+    @TearDown
+    public void deleteAssemblyFile() throws IOException {
+        Files.deleteIfExists(assemblyFile);
+    }
+
+    /**
+     * Assembles the file with the two-pass assembler.
+     * @return The encoded instructions.
+     */
+    @Benchmark
+    public short [] twoPasses() {
+        SymbolTable symbolTable = new SymbolTable();
+        Assembler.addSymbolsToTheSymbolTable(assemblyFile.toString(), symbolTable);
+        return Assembler.translateAssembly(assemblyFile.toString(), symbolTable).toArray();
+    }
+
+    /**
+     * Assembles the file with the single-pass assembler.
+     * @return The encoded instructions.
+     */
+    @Benchmark
+    public short [] singlePass() {
+        return Assembler.translateAssemblyInSinglePass(assemblyFile.toString(), new SymbolTable()).toArray();
+    }
+
+    /**
+     * Generates a synthetic assembly program.
+     * @param blocks The number of ten-line blocks to generate.
+     * @return The assembly program.
+     */
+    static String generateAssembly(int blocks) {
+        StringWriter assemblyCode = new StringWriter();
+        PrintWriter output = new PrintWriter(assemblyCode);
+        for (int i = 0; i < blocks; i++) {
+            output.println("// Block " + i);
+            output.println("(LOOP_" + i + ")");
+            output.println("    @variable" + (i % 100));
+            output.println("    D=M // Read the variable.");
+            output.println("    @LOOP_" + (i + 1));
+            output.println("    D;JGT");
+            output.println("    @SP");
+            output.println("    AM=M+1");
+            output.println("    @LOOP_" + i);
+            output.println("    0;JMP");
+        }
+        output.println("(LOOP_" + blocks + ")");
+        output.close();
+        return assemblyCode.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package edu.miracosta.cs220;
+
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * TokenizerHotPathBenchmark.java - JMH benchmarks of the Jack tokenizer's hot paths.
+ *
+ * Algorithm:
+ *
+ * 1. A synthetic Jack program of the given size (1K, 64K and 1M characters by default; any size with -p size=N) is
+ * generated from a fixed seed, so every run (and every machine) times the same code. The program is a class of
+ * subroutines whose statements use every keyword and symbol, identifiers, integer and string constants, and line and
+ * block comments.
+ *
+ * 2. Each benchmark runs one hot path over the whole program (the tokens are written to a channel that discards
+ * them):
+ *    - advance: pulling every token with hasMoreTokens/advance (nothing kept; the streaming path).
+ *    - spliterator: streaming every token as a Token object.
+ *    - collectTokens: scanning the program (comments included) into a list of tokens.
+ *    - tokenArray: scanning the program into packed int tokens (with a fresh IdentifierPool).
+ *    - tokenArrayEdit: a keystroke in the middle of the program's tokens (typing a letter into a name), which should
+ *      take about as long at every size. Every call edits the same TokenArray, so each also undoes the one before.
+ *    - tokenWriterXml/tokenWriterBinary: the whole pipeline, through a TokenWriter, in each format.
+ *
+ * Scores are programs per second; run with -prof gc for the allocation (gc.alloc.rate.norm is bytes per program).
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - SEED (long): The seed of the program generator.
+ * - IDENTIFIERS (String[]): The names used for variables and subroutines.
+ * - size (int): The number of characters in the program.
+ * - jackCode (String): The program.
+ * - tokenArray (TokenArray): The tokens of the program (for tokenArrayEdit).
+ * - keystroke (int): Where tokenArrayEdit types its letter.
+ *
+ * METHODS:
+ *
+ * - generateJackCode (long): Generates the synthetic program of the given size.
+ *
+ * Author: Matt Sheehan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerHotPathBenchmark {
+
+    private static final long SEED = 220;
+    private static final String [] IDENTIFIERS = { "x", "y", "size", "count", "index", "result", "game", "ball_2" };
+
+    @Param({ "1024", "65536", "1048576" })
+    public int size;
+
+    private String jackCode;
+    private TokenArray tokenArray;
+    private int keystroke;
+
+    /**
+     * Generates the program, and tokenizes it for tokenArrayEdit.
+     */
+    @Setup
+    public void generate() {
+        jackCode = generateJackCode(size);
+        tokenArray = TokenArray.tokenize(new StringReader(jackCode), new IdentifierPool());
+        keystroke = jackCode.indexOf("let ", jackCode.length() / 2) + "let ".length();
+    }
+
+    /**
+     * Pulls every token of the program.
+     * @param blackhole Consumes the type of every token.
+     */
+    @Benchmark
+    public void advance(Blackhole blackhole) {
+        JackTokenizer jackTokenizer = new JackTokenizer(new StringReader(jackCode));
+        while (jackTokenizer.hasMoreTokens()) {
+            jackTokenizer.advance();
+            blackhole.consume(jackTokenizer.tokenType());
+        }
+    }
+
+    /**
+     * Streams every token of the program as a Token object.
+     * @return The number of tokens.
+     */
+    @Benchmark
+    public long spliterator() {
+        return StreamSupport.stream(new JackTokenizer(new StringReader(jackCode)).spliterator(), false).count();
+    }
+
+    /**
+     * Scans the program into a list of tokens.
+     * @return The tokens.
+     */
+    @Benchmark
+    public List <String> collectTokens() {
+        return new JackTokenizer(new StringReader(jackCode)).collectTokens();
+    }
+
+    /**
+     * Scans the program into packed int tokens.
+     * @return The tokens.
+     */
+    @Benchmark
+    public TokenArray tokenArray() {
+        return TokenArray.tokenize(new StringReader(jackCode), new IdentifierPool());
+    }
+
+    /**
+     * Types a letter into a name in the middle of the program, re-tokenizing only around it.
+     * @return The tokens after the edit.
+     */
+    @Benchmark
+    public TokenArray tokenArrayEdit() {
+        return tokenArray.edit(keystroke, 0, "z");
+    }
+
+    /**
+     * Translates the program into XML through a TokenWriter.
+     * @return The number of tokens.
+     */
+    @Benchmark
+    public long tokenWriterXml() {
+        return writeTokens(TokenFormat.XML);
+    }
+
+    /**
+     * Translates the program into the binary format through a TokenWriter.
+     * @return The number of tokens.
+     */
+    @Benchmark
+    public long tokenWriterBinary() {
+        return writeTokens(TokenFormat.BINARY);
+    }
+
+    /**
+     * Writes the tokens of the program through a TokenWriter, to a channel that discards them.
+     * @param format The format the tokens are written in.
+     * @return The number of tokens.
+     */
+    private long writeTokens(TokenFormat format) {
+        TokenWriter tokenWriter = new TokenWriter(Channels.newChannel(OutputStream.nullOutputStream()), format);
+        long tokens = tokenWriter.writeTokens(new JackTokenizer(new StringReader(jackCode)));
+        tokenWriter.close();
+        return tokens;
+    }
+
+    /**
+     * Generates a synthetic Jack program (the same one for the same size, every time).
+     * @param bytes The number of characters to generate (the last subroutine may run slightly past it).
+     * @return The Jack program.
+     */
+    static String generateJackCode(long bytes) {
+        if (bytes > Integer.MAX_VALUE - 1024) {
+            throw new IllegalArgumentException("Programs are limited to 2G characters: " + bytes);
+        }
+
+        Random random = new Random(SEED);
+        StringBuilder jackCode = new StringBuilder((int) bytes + 1024);
+        jackCode.append("/** A generated class. */\nclass Generated {\n");
+        jackCode.append("    field int x, y;\n    static boolean size;\n");
+
+        int subroutines = 0;
+        while (jackCode.length() < bytes) {
+            jackCode.append("\n    // Subroutine ").append(subroutines).append('\n');
+            jackCode.append("    method void run").append(subroutines++).append("(int count, char index) {\n");
+            jackCode.append("        var Array result;\n        var String game;\n");
+            int statements = 1 + random.nextInt(8);
+            for (int i = 0; i < statements; i++) {
+                appendStatement(jackCode, random);
+            }
+            jackCode.append("        return;\n    }\n");
+        }
+        jackCode.append("}\n");
+        return jackCode.toString();
+    }
+
+    /**
+     * Appends a random statement to the program.
+     * @param jackCode The program being generated.
+     * @param random The generator's random numbers.
+     */
+    private static void appendStatement(StringBuilder jackCode, Random random) {
+        String variable = IDENTIFIERS[random.nextInt(IDENTIFIERS.length)];
+        String other = IDENTIFIERS[random.nextInt(IDENTIFIERS.length)];
+        int constant = random.nextInt(32768);
+
+        switch (random.nextInt(6)) {
+            case 0 -> jackCode.append("        let ").append(variable).append(" = (").append(other).append(" + ")
+                              .append(constant).append(") * -").append(other).append(";\n");
+            case 1 -> jackCode.append("        if ((").append(variable).append(" < ").append(constant).append(") & ~(")
+                              .append(other).append(" > 0)) {\n            let ").append(variable)
+                              .append(" = null;\n        } else {\n            do Output.printInt(")
+                              .append(variable).append(" / 2);\n        }\n");
+            case 2 -> jackCode.append("        while (").append(variable).append(" = ").append(other)
+                              .append(" | true) {\n            let result[").append(constant % 100).append("] = ")
+                              .append(other).append(" - 1;\n        }\n");
+            case 3 -> jackCode.append("        do Output.printString(\"Value of ").append(variable)
+                              .append(" is\"); // Print the label.\n");
+            case 4 -> jackCode.append("        /* Block comment about ").append(variable).append(". */\n");
+            default -> jackCode.append("        let game = this.").append(variable).append("(").append(constant)
+                               .append(", false, this);\n");
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * VMHotPathBenchmark.java - JMH benchmarks of the VM translator's hot paths.
+ *
+ * Algorithm:
+ *
+ * 1. A synthetic VM program of the given size (1K, 64K and 1M characters by default; any size with -p size=N) is
+ * generated from a fixed seed, so every run (and every machine) times the same code. The program mixes pushes and
+ * pops of every segment, every arithmetic command, and comment lines.
+ *
+ * 2. The program is parsed once, and its commands are split into arithmetic and push/pop commands.
+ *
+ * 3. Each benchmark runs one hot path over the whole program (the ASM code is written to a Writer that discards it,
+ * so only the translation is measured):
+ *    - parserAdvance: parsing every line of the program.
+ *    - writeArithmetic: translating every arithmetic command of the program.
+ *    - writePushPop: translating every push/pop command of the program.
+ *    - writeAsmFile: translating every command of the program into a temporary .asm file, which also times the
+ *      CodeWriter's buffering and flushing to disk.
+ *
+ * Scores are programs per second; run with -prof gc for the allocation (gc.alloc.rate.norm is bytes per program).
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - SEED (long): The seed of the program generator.
+ * - ARITHMETIC_COMMANDS/SEGMENTS (String[]): The commands and segments the program is made of.
+ * - size (int): The number of characters in the program.
+ * - vmCode (String): The program.
+ * - commands (List<VMCommand>): Every command of the program.
+ * - arithmeticCommands (List<Opcode>): The arithmetic commands of the program.
+ * - pushPopCommands (List<VMCommand>): The push/pop commands of the program.
+ * - asmFile (Path): The temporary .asm file.
+ *
+ * METHODS:
+ *
+ * - generateVMCode (long): Generates the synthetic program of the given size.
+ *
+ * Author: Matt Sheehan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VMHotPathBenchmark {
+
+    private static final long SEED = 220;
+    private static final String [] ARITHMETIC_COMMANDS = { "add", "sub", "neg", "eq", "gt", "lt", "and", "or", "not" };
+    private static final String [] SEGMENTS = { "constant", "local", "argument", "this", "that", "temp", "static",
+                                                "pointer" };
+
+    @Param({ "1024", "65536", "1048576" })
+    public int size;
+
+    private String vmCode;
+    private List <VMCommand> commands;
+    private final List <Opcode> arithmeticCommands = new ArrayList <> ();
+    private final List <VMCommand> pushPopCommands = new ArrayList <> ();
+    private Path asmFile;
+
+    /**
+     * Generates and parses the program, and creates the temporary .asm file.
+     * @throws IOException If the .asm file could not be created.
+     */
+    @Setup
+    public void generate() throws IOException {
+        vmCode = generateVMCode(size);
+        commands = VM.readCommands(new VMParser(new StringReader(vmCode)));
+        arithmeticCommands.clear();
+        pushPopCommands.clear();
+        for (VMCommand command : commands) {
+            if (command.getOpcode().isArithmetic()) {
+                arithmeticCommands.add(command.getOpcode());
+            } else {
+                pushPopCommands.add(command);
+            }
+        }
+        asmFile = Files.createTempFile("VMHotPathBenchmark", ".asm");
+    }
+
+    /**
+     * Removes the temporary .asm file.
+     * @throws IOException If the file could not be removed.
+     */
+    @TearDown
+    public void deleteAsmFile() throws IOException {
+        Files.deleteIfExists(asmFile);
+    }
+
+    /**
+     * Parses every line of the program.
+     * @param blackhole Consumes the index of every command.
+     */
+    @Benchmark
+    public void parserAdvance(Blackhole blackhole) {
+        VMParser parser = new VMParser(new StringReader(vmCode));
+        while (parser.hasMoreCommands()) {
+            parser.advance();
+            blackhole.consume(parser.getIndex());
+        }
+    }
+
+    /**
+     * Translates every arithmetic command of the program.
+     */
+    @Benchmark
+    public void writeArithmetic() {
+        CodeWriter codeWriter = new CodeWriter(Writer.nullWriter());
+        for (Opcode command : arithmeticCommands) {
+            codeWriter.writeArithmetic(command);
+        }
+        codeWriter.close();
+    }
+
+    /**
+     * Translates every push/pop command of the program.
+     */
+    @Benchmark
+    public void writePushPop() {
+        CodeWriter codeWriter = new CodeWriter(Writer.nullWriter());
+        for (VMCommand command : pushPopCommands) {
+            codeWriter.writePushPop(command.getOpcode(), command.getSegment(), command.getIndex());
+        }
+        codeWriter.close();
+    }
+
+    /**
+     * Translates every command of the program into the .asm file.
+     * @return The size of the .asm file.
+     * @throws IOException If the size of the file could not be read.
+     */
+    @Benchmark
+    public long writeAsmFile() throws IOException {
+        VM.writeCommands(commands, new CodeWriter(asmFile.toString()));
+        return Files.size(asmFile);
+    }
+
+    /**
+     * Generates a synthetic VM program (the same one for the same size, every time).
+     * @param bytes The number of characters to generate (the last line may run slightly past it).
+     * @return The VM program.
+     */
+    static String generateVMCode(long bytes) {
+        if (bytes > Integer.MAX_VALUE - 64) {
+            throw new IllegalArgumentException("Programs are limited to 2G characters: " + bytes);
+        }
+
+        Random random = new Random(SEED);
+        StringBuilder vmCode = new StringBuilder((int) bytes + 64);
+
+        while (vmCode.length() < bytes) {
+            int choice = random.nextInt(10);
+            if (choice < 4) {
+                String segment = SEGMENTS[random.nextInt(SEGMENTS.length)];
+                vmCode.append("push ").append(segment).append(' ').append(randomIndex(segment, random)).append('\n');
+            } else if (choice < 6) {
+                String segment = SEGMENTS[1 + random.nextInt(SEGMENTS.length - 1)]; // Constants can't be popped.
+                vmCode.append("pop ").append(segment).append(' ').append(randomIndex(segment, random)).append('\n');
+            } else if (choice < 9) {
+                vmCode.append(ARITHMETIC_COMMANDS[random.nextInt(ARITHMETIC_COMMANDS.length)]).append('\n');
+            } else {
+                vmCode.append("// Comment line\n");
+            }
+        }
+        return vmCode.toString();
+    }
+
+    /**
+     * Returns a random index that is valid for the segment.
+     * @param segment The memory segment.
+     * @param random The generator's random numbers.
+     * @return The index.
+     */
+    private static int randomIndex(String segment, Random random) {
+        return switch (segment) {
+            case "constant" -> random.nextInt(32768);
+            case "temp" -> random.nextInt(8);
+            case "pointer" -> random.nextInt(2);
+            case "static" -> random.nextInt(240);
+            default -> random.nextInt(100);
+        };
+    }
+}
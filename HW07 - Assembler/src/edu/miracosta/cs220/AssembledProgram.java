@@ -0,0 +1,59 @@
+package edu.miracosta.cs220;
+
+/**
+ * AssembledProgram.java - The result of assembling one program: its instructions and the symbols it defined.
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - words (short[]): The encoded instructions, one per ROM line.
+ * - symbols (SymbolMap): The labels and variables of the program with their addresses.
+ * - removedInstructions (int): The number of instructions the peephole optimizer removed (0 if it wasn't used).
+ *
+ * METHODS:
+ *
+ * - Accessor methods for all instance variables.
+ *
+ * Author: Matt Sheehan
+ */
+class AssembledProgram {
+
+    private final short [] words;
+    private final SymbolMap symbols;
+    private final int removedInstructions;
+
+    /**
+     * Full constructor.
+     * @param words The encoded instructions.
+     * @param symbols The labels and variables of the program.
+     * @param removedInstructions The number of instructions removed by the peephole optimizer.
+     */
+    AssembledProgram(short [] words, SymbolMap symbols, int removedInstructions) {
+        this.words = words;
+        this.symbols = symbols;
+        this.removedInstructions = removedInstructions;
+    }
+
+    /**
+     * Returns the encoded instructions.
+     * @return The instructions, one per ROM line.
+     */
+    short [] getWords() {
+        return words;
+    }
+
+    /**
+     * Returns the labels and variables of the program with their addresses.
+     * @return The symbols, in the order they were defined.
+     */
+    SymbolMap getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Returns the number of instructions the peephole optimizer removed.
+     * @return The number of instructions removed (0 if the program wasn't optimized).
+     */
+    int getRemovedInstructions() {
+        return removedInstructions;
+    }
+}
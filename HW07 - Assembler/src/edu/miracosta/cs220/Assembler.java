@@ -1,8 +1,10 @@
 package edu.miracosta.cs220;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -19,56 +21,148 @@ import java.util.Scanner;
  * 3. After identifying symbols, the "second pass" of the program will begin translation, line by line. If the line is
  * an a-instruction (and the symbol portion is a number), it will be directly translated into binary. If it is a
  * reference to a label, the ROM line of the label will be translated into binary. C-instructions will be translated
- * based on their contents (dest., comp., jump). Each translated line will be written to .hack file.
+ * based on their contents (dest., comp., jump); an unknown mnemonic stops the translation with its line number. Each
+ * translated line is encoded as a 16-bit word, and once the whole file is translated the words are written to the
+ * .hack file.
+ *
+ * 4. If the program is started with the "--single-pass" argument, steps 2 and 3 are merged into one sweep. Every
+ * instruction is encoded into an in-memory word buffer; a-instructions that point to a symbol which is not yet known
+ * are chained together in the buffer (each holds the ROM line of the previous reference to the same symbol) and are
+ * patched once the label appears. Symbols still unresolved at the end of the file are variables, and are given RAM
+ * addresses (starting at 16) in the order they were first referenced, which yields the same output as two passes.
+ * Either way, a program with more instructions than the ROM holds (32768) is rejected at the first one that doesn't
+ * fit, as its labels past the end couldn't be encoded (and the chains could no longer be told from their ends); so is
+ * a label after the last instruction of a full ROM.
+ *
+ * 5. If the program is started with the "--binary" argument, the words are written as a packed little-endian ROM
+ * image (.bin, 2 bytes per instruction) instead of lines of binary digits.
+ *
+ * 6. If any .asm files or directories are given as arguments, the program runs without prompting and assembles all
+ * of them in parallel (see BatchAssembler), exiting with a non-zero status if any file failed. With "--cache DIR",
+ * files whose contents haven't changed since they were last assembled are taken from the cache (see AssemblyCache).
+ *
+ * 7. If the program is started with the "--optimize" argument, instructions that have no effect (reloads of the value
+ * A already holds, A-instructions that are never used, and D stores that are overwritten before being read) are
+ * removed before the program is encoded (see PeepholeOptimizer), and the number removed is reported.
  *
  * Author: Matt Sheehan
  */
 public class Assembler {
 
+    static final String SINGLE_PASS_FLAG = "--single-pass";
+    static final String BINARY_FLAG = "--binary";
+    static final String OPTIMIZE_FLAG = "--optimize";
+
+    static final int ROM_SIZE = 32768;
+
+    private static final int NO_PREVIOUS_REFERENCE = 0xFFFF; // ROM lines stop at ROM_SIZE - 1 (see romFull).
+    private static final int RESOLVED = -1;
+
     public static void main(String [] args) {
-        runAssembler();
+        List <String> flags = Arrays.asList(args);
+        if (BatchAssembler.hasInputFiles(args)) {
+            System.exit(BatchAssembler.run(args));
+        }
+        runAssembler(flags.contains(SINGLE_PASS_FLAG), flags.contains(BINARY_FLAG), flags.contains(OPTIMIZE_FLAG));
     }
 
     /**
      * Wrapper method for running the assembler, translating the assembly code into binary.
+     * @param singlePass True if the file should be translated in a single pass, false for the classic two passes.
+     * @param binary True if a packed binary ROM image should be written instead of a text .hack file.
+     * @param optimize True if instructions without effect should be removed.
      */
-    private static void runAssembler() {
+    private static void runAssembler(boolean singlePass, boolean binary, boolean optimize) {
         String inputFileName;
-        String outputFileName;
         Scanner userInputFromKeyboard = new Scanner(System.in);
-        SymbolTable assemblyCodeSymbolManager = new SymbolTable();
-        PrintWriter binaryCodeWriter;
 
         System.out.print("Please enter the file name: ");
         inputFileName = userInputFromKeyboard.nextLine();
-        outputFileName = inputFileName.replace ("asm", "hack");
 
         try {
-            binaryCodeWriter = new PrintWriter(new FileOutputStream(outputFileName));
-            addSymbolsToTheSymbolTable(inputFileName, assemblyCodeSymbolManager);
-            translateAssembly(inputFileName, assemblyCodeSymbolManager, binaryCodeWriter);
-            binaryCodeWriter.close();
-        } catch (FileNotFoundException e) {
-            System.err.println("Could not write to output file: " + outputFileName);
+            AssembledProgram program = assembleFile(inputFileName, singlePass, binary, optimize, null);
+            if (optimize) {
+                System.out.println("Removed " + program.getRemovedInstructions() + " of "
+                                   + (program.getWords().length + program.getRemovedInstructions())
+                                   + " instructions.");
+            }
+        } catch (AssemblyException e) {
+            System.err.println(inputFileName + ": " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.err.println(inputFileName + " could not be read: " + e.getCause().getMessage());
+        } catch (IOException e) {
+            System.err.println("Could not write to output file: " + outputFileName(inputFileName, binary));
         }
     }
 
     /**
-     * Coverts a decimal number to binary (String version).
-     * @param numberToConvertToBinary The number to be converted.
-     * @return The binary representation of the decimal number.
+     * Translates one .asm file (or finds it in the cache, if it is unchanged) and writes the result next to it. Each
+     * call uses its own symbol table, so files can be assembled concurrently.
+     * @param inputFileName The .asm file name.
+     * @param singlePass True if the file should be translated in a single pass, false for the classic two passes.
+     * @param binary True if a packed binary ROM image should be written instead of a text .hack file.
+     * @param optimize True if instructions without effect should be removed (see PeepholeOptimizer).
+     * @param cache The cache of assembled programs, or null to always assemble the file.
+     * @return The assembled program.
+     * @throws AssemblyException If the assembly code could not be translated.
+     * @throws UncheckedIOException If the .asm file could not be read.
+     * @throws IOException If the output file could not be written.
      */
-    private static String decimalToBinary(int numberToConvertToBinary) {
-        StringBuilder binaryString = new StringBuilder (Integer.toBinaryString(numberToConvertToBinary));
-        return "0".repeat(16 - binaryString.length()) + binaryString.toString (); // Make 16 digits.
+    static AssembledProgram assembleFile(String inputFileName, boolean singlePass, boolean binary, boolean optimize,
+                                         AssemblyCache cache) throws IOException {
+        AssembledProgram program;
+
+        if (cache != null) { // Cached programs are assembled in a single pass, which gives the same result.
+            program = cache.assemble(inputFileName, optimize);
+        } else {
+            SymbolTable assemblyCodeSymbolManager = new SymbolTable();
+            WordBuffer words;
+            int removedInstructions = 0;
+            if (optimize) {
+                PeepholeOptimizer optimizer = new PeepholeOptimizer();
+                words = optimizer.translate(new Parser(inputFileName), assemblyCodeSymbolManager);
+                removedInstructions = optimizer.getRemovedInstructions();
+            } else if (singlePass) {
+                words = translateAssemblyInSinglePass(inputFileName, assemblyCodeSymbolManager);
+            } else {
+                addSymbolsToTheSymbolTable(inputFileName, assemblyCodeSymbolManager);
+                words = translateAssembly(inputFileName, assemblyCodeSymbolManager);
+            }
+            program = new AssembledProgram(words.toArray(), assemblyCodeSymbolManager.getDefinedSymbols(),
+                                           removedInstructions);
+        }
+
+        short [] binaryCode = program.getWords();
+        Path outputFile = Path.of(outputFileName(inputFileName, binary));
+        if (binary) {
+            HackFileWriter.writeBinary(binaryCode, binaryCode.length, outputFile);
+        } else {
+            HackFileWriter.writeText(binaryCode, binaryCode.length, outputFile);
+        }
+        return program;
+    }
+
+    /**
+     * Builds the output file name by replacing the extension of the input file (.asm) with .hack or .bin.
+     * @param inputFileName The .asm file name.
+     * @param binary True if the output is a packed binary ROM image.
+     * @return The output file name.
+     */
+    static String outputFileName(String inputFileName, boolean binary) {
+        int extensionStart = inputFileName.lastIndexOf('.');
+        if (extensionStart <= Math.max(inputFileName.lastIndexOf('/'), inputFileName.lastIndexOf('\\'))) {
+            extensionStart = inputFileName.length();
+        }
+        return inputFileName.substring(0, extensionStart) + (binary ? ".bin" : ".hack");
     }
 
     /**
      * Initial pass through the .asm file, determines the need for creating variables/labels within the symbol table.
      * @param inputFileName The .asm file name.
      * @param symbolTable The table which will store the newly added variables/labels within the .asm file.
+     * @throws AssemblyException If a label is invalid, or the program doesn't fit in the ROM.
      */
-    private static void addSymbolsToTheSymbolTable(String inputFileName, SymbolTable symbolTable) {
+    static void addSymbolsToTheSymbolTable(String inputFileName, SymbolTable symbolTable) {
         int romLine = 0;
         Parser assemblyCodeParser = new Parser(inputFileName);
 
@@ -76,45 +170,171 @@ public class Assembler {
             assemblyCodeParser.advance();
 
             if (assemblyCodeParser.getCommandType () == 'A' || assemblyCodeParser.getCommandType() == 'C') {
+                if (romLine == ROM_SIZE) {
+                    throw romFull(assemblyCodeParser.getFileLineNumber());
+                }
                 ++romLine;
             } else if ( assemblyCodeParser.getCommandType() == 'L') {
-                symbolTable.addSymbol(assemblyCodeParser.getSymbolInAssemblyCode(), romLine);
+                addLabel(assemblyCodeParser, symbolTable, romLine);
             }
         }
     }
 
     /**
-     * Translates the assembly code into its binary representation and prints it to the output file.
+     * Translates the assembly code into its binary representation.
      * @param assemblyFileName The assembly input file.
      * @param symbolTable The symbol table for generating the address of the symbol given.
-     * @param output The hack output file.
+     * @return The encoded instructions.
      */
-    private static void translateAssembly(String assemblyFileName, SymbolTable symbolTable, PrintWriter output) {
-        int ramLineNumber = 16;
+    static WordBuffer translateAssembly(String assemblyFileName, SymbolTable symbolTable) {
+        WordBuffer words = new WordBuffer();
         Parser assemblyCodeParser = new Parser(assemblyFileName);
-        CInstructionMapper cInstructionMapper = new CInstructionMapper();
 
         while (assemblyCodeParser.hasMoreCommands()) {
             assemblyCodeParser.advance();
             if (assemblyCodeParser.getCommandType() == 'A') {
-                StringBuilder address = new StringBuilder ( );
-                if (Character.isDigit(assemblyCodeParser.getSymbolInAssemblyCode().charAt(0))) {
-                    address.append(decimalToBinary(Integer.parseInt(assemblyCodeParser.getSymbolInAssemblyCode())));
+                if (assemblyCodeParser.isSymbolNumeric()) {
+                    words.add(assemblyCodeParser.getNumericSymbol());
                 } else {
-                    if (!symbolTable.contains(assemblyCodeParser.getSymbolInAssemblyCode())) {
-                        symbolTable.addSymbol(assemblyCodeParser.getSymbolInAssemblyCode(), ramLineNumber);
-                        ++ramLineNumber;
+                    int address = symbolTable.getOrAllocateVariable(assemblyCodeParser.getSymbolView());
+                    if (address == SymbolTable.NOT_FOUND) {
+                        throw invalidSymbol(assemblyCodeParser);
                     }
-                    address.append(decimalToBinary(symbolTable.getAddress(assemblyCodeParser.getSymbolInAssemblyCode())));
+                    words.add(address);
                 }
-                output.println(address.toString());
             } else if (assemblyCodeParser.getCommandType() == 'C') {
-                String cInstruction = "111";
-                cInstruction += cInstructionMapper.translateComputationMnemonicIntoBinary(assemblyCodeParser.getAssemblyComputationPortion());
-                cInstruction += cInstructionMapper.translateDestinationMnemonicIntoBinary(assemblyCodeParser.getAssemblyDestinationPortion());
-                cInstruction += cInstructionMapper.translateJumpMnemonicIntoBinary(assemblyCodeParser.getAssemblyJumpPortion());
-                output.println (cInstruction);
+                words.add(assemblyCodeParser.encodeCInstruction());
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Translates the assembly code into binary while reading the .asm file only once. Instructions are encoded into a
+     * word buffer; forward references to labels are recorded as fixups (chained through the buffer) and patched when
+     * the label is found. Variables are allocated once the whole file has been read.
+     * @param assemblyFileName The assembly input file.
+     * @param symbolTable The symbol table for generating the address of the symbol given.
+     * @return The encoded instructions.
+     */
+    static WordBuffer translateAssemblyInSinglePass(String assemblyFileName, SymbolTable symbolTable) {
+        return translateAssemblyInSinglePass(new Parser(assemblyFileName), symbolTable);
+    }
+
+    /**
+     * Translates the assembly code read by the parser into binary in a single pass (see above).
+     * @param assemblyCodeParser The parser connected to the assembly code.
+     * @param symbolTable The symbol table for generating the address of the symbol given.
+     * @return The encoded instructions.
+     * @throws AssemblyException If the assembly code could not be translated, or the program doesn't fit in the ROM.
+     */
+    static WordBuffer translateAssemblyInSinglePass(Parser assemblyCodeParser, SymbolTable symbolTable) {
+        WordBuffer words = new WordBuffer();
+        SymbolMap lastUnresolvedReference = new SymbolMap();
+
+        while (assemblyCodeParser.hasMoreCommands()) {
+            assemblyCodeParser.advance();
+            char commandType = assemblyCodeParser.getCommandType();
+            if ((commandType == 'A' || commandType == 'C') && words.size() == ROM_SIZE) {
+                throw romFull(assemblyCodeParser.getFileLineNumber());
+            }
+
+            if (commandType == 'L') {
+                CharSequence label = assemblyCodeParser.getSymbolView();
+                addLabel(assemblyCodeParser, symbolTable, words.size());
+                int lastReference = lastUnresolvedReference.replace(label, RESOLVED);
+                if (lastReference != SymbolMap.NOT_FOUND && lastReference != RESOLVED) {
+                    patchReferences(words, lastReference, words.size());
+                }
+            } else if (commandType == 'C') {
+                words.add(assemblyCodeParser.encodeCInstruction());
+            } else if (commandType == 'A') {
+                if (assemblyCodeParser.isSymbolNumeric()) {
+                    words.add(assemblyCodeParser.getNumericSymbol());
+                } else {
+                    CharSequence symbol = assemblyCodeParser.getSymbolView();
+                    int address = symbolTable.getAddress(symbol);
+                    if (address != SymbolTable.NOT_FOUND) {
+                        words.add(address);
+                    } else if (!SymbolTable.isValidSymbolName(symbol)) {
+                        throw invalidSymbol(assemblyCodeParser);
+                    } else {
+                        int lastReference = lastUnresolvedReference.put(symbol, words.size());
+                        words.add((lastReference == SymbolMap.NOT_FOUND) ? NO_PREVIOUS_REFERENCE : lastReference);
+                    }
+                }
             }
         }
+
+        for (int i = 0; i < lastUnresolvedReference.size(); i++) { // Entries are in order of first reference,
+            if (lastUnresolvedReference.valueAt(i) != RESOLVED) {   // the same order as the second pass.
+                int address = symbolTable.getOrAllocateVariable(lastUnresolvedReference.nameAt(i));
+                patchReferences(words, lastUnresolvedReference.valueAt(i), address);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Adds the label the parser is on to the symbol table.
+     * @param assemblyCodeParser The parser positioned on a label.
+     * @param symbolTable The symbol table.
+     * @param romLine The ROM line the label points to.
+     * @throws AssemblyException If the label has an invalid name, is a predefined symbol, or is past the end of the
+     *                           ROM.
+     */
+    private static void addLabel(Parser assemblyCodeParser, SymbolTable symbolTable, int romLine) {
+        if (romLine == ROM_SIZE) {
+            throw labelPastTheRom(assemblyCodeParser.getFileLineNumber(), assemblyCodeParser.getSymbolInAssemblyCode());
+        }
+        if (!symbolTable.addSymbol(assemblyCodeParser.getSymbolView(), romLine)) {
+            throw new AssemblyException(assemblyCodeParser.getFileLineNumber(), "invalid or predefined label \""
+                                        + assemblyCodeParser.getSymbolInAssemblyCode() + "\"");
+        }
+    }
+
+    /**
+     * Builds the exception for an A-instruction whose symbol has an invalid name.
+     * @param assemblyCodeParser The parser positioned on the A-instruction.
+     * @return The exception to be thrown.
+     */
+    private static AssemblyException invalidSymbol(Parser assemblyCodeParser) {
+        return new AssemblyException(assemblyCodeParser.getFileLineNumber(), "invalid symbol \""
+                                     + assemblyCodeParser.getSymbolInAssemblyCode() + "\"");
+    }
+
+    /**
+     * Builds the exception for an instruction that doesn't fit in the ROM.
+     * @param lineNumber The line the instruction was found on.
+     * @return The exception to be thrown.
+     */
+    static AssemblyException romFull(int lineNumber) {
+        return new AssemblyException(lineNumber, "the program has more than the " + ROM_SIZE
+                                                 + " instructions the ROM holds");
+    }
+
+    /**
+     * Builds the exception for a label after the last instruction of a full ROM (its address can't be encoded).
+     * @param lineNumber The line the label was found on.
+     * @param label The label.
+     * @return The exception to be thrown.
+     */
+    static AssemblyException labelPastTheRom(int lineNumber, String label) {
+        return new AssemblyException(lineNumber, "the label \"" + label + "\" is past the end of the ROM");
+    }
+
+    /**
+     * Walks a chain of unresolved references to a symbol, replacing each link with the symbol's address.
+     * @param words The word buffer holding the chain.
+     * @param lastReference The ROM line of the most recent reference to the symbol.
+     * @param address The address the symbol resolved to.
+     */
+    private static void patchReferences(WordBuffer words, int lastReference, int address) {
+        int reference = lastReference;
+        while (reference != NO_PREVIOUS_REFERENCE) {
+            int previousReference = words.get(reference);
+            words.set(reference, address);
+            reference = previousReference;
+        }
     }
-}
\ No newline at end of file
+}
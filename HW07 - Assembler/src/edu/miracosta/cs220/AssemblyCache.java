@@ -0,0 +1,217 @@
+package edu.miracosta.cs220;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AssemblyCache.java - An on-disk cache of assembled programs, so unchanged .asm files are not assembled again.
+ *
+ * Algorithm:
+ *
+ * 1. The bytes of the .asm file are read once and hashed (SHA-256) together with the assembler's version (and
+ * whether the peephole optimizer is used), so a new assembler never reuses results of an old one.
+ *
+ * 2. If the cache directory holds an entry named after the hash, the encoded instructions and the final symbol table
+ * are read from it (a hit), and the assembly code is never parsed.
+ *
+ * 3. Otherwise (a miss, or every time if the cache was created to rebuild), the bytes already read are assembled in a
+ * single pass (or by the PeepholeOptimizer) and the result is stored under the hash. Entries are written to a
+ * temporary file and then moved into place, so concurrent assemblies never see half-written entries.
+ *
+ * Entry format: magic number, format version, word count, the words, symbol count, each symbol's name and address,
+ * then the number of instructions the optimizer removed.
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - ASSEMBLER_VERSION (String): Part of every key; must change whenever the encoding of any program could change.
+ * - directory (Path): The directory holding the cache entries.
+ * - rebuild (boolean): True if entries should be ignored (but still written), forcing every file to be assembled.
+ * - hits/misses (AtomicInteger): The number of files found/not found in the cache.
+ *
+ * METHODS:
+ *
+ * - AssemblyCache (Path, boolean): Connects to (and creates, if needed) the cache directory.
+ * - assemble (String, boolean): Returns the assembled (and optionally optimized) program, from the cache if possible.
+ * - getHits/getMisses: The number of cache hits/misses so far.
+ *
+ * Author: Matt Sheehan
+ */
+class AssemblyCache {
+
+    static final String ASSEMBLER_VERSION = "hack-assembler-3";
+
+    private static final int MAGIC_NUMBER = 0x48415343; // "HASC"
+    private static final int FORMAT_VERSION = 2;
+    private static final String ENTRY_EXTENSION = ".rom";
+
+    private final Path directory;
+    private final boolean rebuild;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Full constructor, connects the cache to its directory (creating it if needed).
+     * @param directory The directory holding the cache entries.
+     * @param rebuild True if every file should be assembled even if it is in the cache.
+     * @throws IOException If the directory could not be created.
+     */
+    AssemblyCache(Path directory, boolean rebuild) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.rebuild = rebuild;
+    }
+
+    /**
+     * Returns the assembled program of the .asm file, reading it from the cache if the file is unchanged.
+     * @param inputFileName The .asm file name.
+     * @param optimize True if the program should be run through the PeepholeOptimizer.
+     * @return The assembled program.
+     * @throws AssemblyException If the assembly code could not be translated.
+     * @throws IOException If the .asm file could not be read.
+     */
+    AssembledProgram assemble(String inputFileName, boolean optimize) throws IOException {
+        byte [] assemblyCode = Files.readAllBytes(Path.of(inputFileName));
+        Path entryFile = directory.resolve(hash(assemblyCode, optimize) + ENTRY_EXTENSION);
+
+        if (!rebuild) {
+            AssembledProgram program = readEntry(entryFile);
+            if (program != null) {
+                hits.incrementAndGet();
+                return program;
+            }
+        }
+
+        misses.incrementAndGet();
+        SymbolTable symbolTable = new SymbolTable();
+        Parser assemblyCodeParser = new Parser(HackAssembler.asciiReader(ByteBuffer.wrap(assemblyCode)),
+                                               assemblyCode.length);
+        AssembledProgram program;
+        if (optimize) {
+            PeepholeOptimizer optimizer = new PeepholeOptimizer();
+            program = new AssembledProgram(optimizer.translate(assemblyCodeParser, symbolTable).toArray(),
+                                           symbolTable.getDefinedSymbols(), optimizer.getRemovedInstructions());
+        } else {
+            program = new AssembledProgram(Assembler.translateAssemblyInSinglePass(assemblyCodeParser, symbolTable)
+                                           .toArray(), symbolTable.getDefinedSymbols(), 0);
+        }
+        writeEntry(entryFile, program);
+        return program;
+    }
+
+    /**
+     * Returns the number of files found in the cache so far.
+     * @return The number of hits.
+     */
+    int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of files that had to be assembled so far.
+     * @return The number of misses.
+     */
+    int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Hashes the assembler version, the optimization setting and the assembly code into the name of the cache entry.
+     * @param assemblyCode The bytes of the .asm file.
+     * @param optimize True if the program is optimized.
+     * @return The hash, in hexadecimal.
+     */
+    private static String hash(byte [] assemblyCode, boolean optimize) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Every Java platform must provide it.
+        }
+
+        digest.update(ASSEMBLER_VERSION.getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) (optimize ? 1 : 0));
+        digest.update((byte) 0);
+        StringBuilder hexadecimal = new StringBuilder(64);
+        for (byte b : digest.digest(assemblyCode)) {
+            hexadecimal.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hexadecimal.toString();
+    }
+
+    /**
+     * Reads a cache entry.
+     * @param entryFile The entry's file.
+     * @return The assembled program, or null if there is no (valid) entry.
+     */
+    private static AssembledProgram readEntry(Path entryFile) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+            if (input.readInt() != MAGIC_NUMBER || input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            short [] words = new short [input.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = input.readShort();
+            }
+
+            int symbolCount = input.readInt();
+            SymbolMap symbols = new SymbolMap(symbolCount);
+            for (int i = 0; i < symbolCount; i++) {
+                symbols.put(input.readUTF(), input.readInt());
+            }
+            return new AssembledProgram(words, symbols, input.readInt());
+        } catch (IOException | RuntimeException e) { // A missing or damaged entry is a miss (and is overwritten).
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache entry (through a temporary file, which is then moved into place).
+     * @param entryFile The entry's file.
+     * @param program The assembled program.
+     * @throws UncheckedIOException If the entry could not be written.
+     */
+    private void writeEntry(Path entryFile, AssembledProgram program) {
+        Path temporaryFile = null;
+        try {
+            temporaryFile = Files.createTempFile(directory, "entry", ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                                                                 Files.newOutputStream(temporaryFile)))) {
+                output.writeInt(MAGIC_NUMBER);
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(program.getWords().length);
+                for (short word : program.getWords()) {
+                    output.writeShort(word);
+                }
+                SymbolMap symbols = program.getSymbols();
+                output.writeInt(symbols.size());
+                for (int i = 0; i < symbols.size(); i++) {
+                    output.writeUTF(symbols.nameAt(i));
+                    output.writeInt(symbols.valueAt(i));
+                }
+                output.writeInt(program.getRemovedInstructions());
+            }
+            Files.move(temporaryFile, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                if (temporaryFile != null) {
+                    Files.deleteIfExists(temporaryFile);
+                }
+            } catch (IOException ignored) {
+                // The original error is the one worth reporting.
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+}
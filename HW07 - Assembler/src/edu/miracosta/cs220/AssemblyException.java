@@ -0,0 +1,35 @@
+package edu.miracosta.cs220;
+
+/**
+ * AssemblyException.java - Thrown when a line of assembly code cannot be translated (e.g. an unknown mnemonic).
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - lineNumber (int): The line of the .asm file the error was found on (starting at 1).
+ *
+ * Author: Matt Sheehan
+ */
+public class AssemblyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+
+    /**
+     * Full constructor.
+     * @param lineNumber The line of the .asm file the error was found on.
+     * @param message The description of the error.
+     */
+    AssemblyException(int lineNumber, String message) {
+        super("Line " + lineNumber + ": " + message);
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Returns the line the error was found on.
+     * @return The line number (starting at 1).
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -0,0 +1,399 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * AssemblyLexer.java - Splits assembly code into instructions by scanning a character buffer once per line.
+ *
+ * Each line is copied (without whitespace and comments) into a reusable line buffer. The position of the '@', '(',
+ * '=' and ';' characters are then recorded, so the symbol, destination, computation, and jump portions of the
+ * instruction are available as offsets into the line buffer. No Strings are created per line: mnemonics are returned
+ * as the constants the CInstructionMapper knows about, and symbols are only turned into Strings when asked for.
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - Constants for type of command (no command, A/C-Instruction, Label).
+ * - input (Reader): The source of the assembly code.
+ * - buffer (char[]): The block of assembly code most recently read from the input.
+ * - bufferPosition (int): The index of the next character in the buffer to be scanned.
+ * - bufferLimit (int): The number of characters in the buffer.
+ * - endOfInput (boolean): True once the input has been read completely (and closed).
+ * - line (char[]): The current line, cleaned of whitespace and comments.
+ * - lineLength (int): The number of characters in the current line.
+ * - lineNumber (int): The line number (starting at 1) of the current line.
+ * - commandType (char): The type of the current line (A-instruction, C-instruction, label, no command).
+ * - symbolStart/symbolEnd (int): The bounds of the address/label without the '@' or '('/')'.
+ * - equalsPosition (int): The index of the '=' in a C-instruction, -1 if it has no destination.
+ * - semicolonPosition (int): The index of the ';' in a C-instruction, -1 if it has no jump.
+ * - lineView (CharSequence): A view of the line buffer, handed to the CInstructionMapper for encoding.
+ * - symbolView (CharSequence): A view of the symbol in the line buffer, handed to the SymbolTable for lookups.
+ *
+ * METHODS:
+ *
+ * - AssemblyLexer (Reader[, int]): Connects the lexer to the assembly code (optionally with a smaller buffer).
+ * - hasMoreLines: Determines if there is more assembly code to be scanned.
+ * - advance: Scans the next line, cleans it, and records the position of its portions.
+ * - encodeCInstruction: Encodes the C-instruction straight from the line buffer.
+ * - getDestinationMnemonic/getComputationMnemonic/getJumpMnemonic: The portions of the C-instruction as constants.
+ * - isNumericSymbol/getNumericSymbol: Determine if the symbol is a number, and its value without creating a String.
+ * - getSymbol/getSymbolView: The address/label as a String, or as a view of the line buffer (no String created).
+ * - Accessors for the command type, line number, cleaned line and the offsets of each portion.
+ *
+ * Author: Matt Sheehan
+ */
+class AssemblyLexer {
+
+    static final char NO_COMMAND = 'N';
+    static final char ADDRESS = 'A';
+    static final char C_INSTRUCTION = 'C';
+    static final char LABEL = 'L';
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_ADDRESS = 32767;
+    private static final String NO_MNEMONIC = "null";
+
+    private final Reader input;
+    private final char [] buffer;
+    private int bufferPosition = 0;
+    private int bufferLimit = 0;
+    private boolean endOfInput = false;
+    private char [] line = new char [128];
+    private int lineLength;
+    private int lineNumber = 0;
+    private char commandType = NO_COMMAND;
+    private int symbolStart;
+    private int symbolEnd;
+    private int equalsPosition;
+    private int semicolonPosition;
+    private final CharSequence lineView = new LineView();
+    private final CharSequence symbolView = new SymbolView();
+
+    /**
+     * Full constructor, connects the lexer with the assembly code.
+     * @param input The source of the assembly code.
+     */
+    AssemblyLexer(Reader input) {
+        this(input, BUFFER_SIZE);
+    }
+
+    /**
+     * Connects the lexer with the assembly code, using a buffer of the given size (e.g. smaller for short snippets).
+     * @param input The source of the assembly code.
+     * @param bufferSize The number of characters read from the input at a time.
+     */
+    AssemblyLexer(Reader input, int bufferSize) {
+        this.input = input;
+        this.buffer = new char [Math.max(1, Math.min(bufferSize, BUFFER_SIZE))];
+    }
+
+    /**
+     * Determines if there is more assembly code to be scanned. If false, the input is closed.
+     * @return True if there are more lines to be scanned, false otherwise.
+     */
+    boolean hasMoreLines() {
+        return bufferPosition < bufferLimit || fillBuffer();
+    }
+
+    /**
+     * Scans the next line of assembly code into the line buffer, dropping whitespace and comments, then records
+     * where each portion of the instruction lies.
+     * @return True if a line was scanned, false if there was no more assembly code.
+     */
+    boolean advance() {
+        if (!hasMoreLines()) {
+            commandType = NO_COMMAND;
+            return false;
+        }
+
+        boolean inComment = false;
+        lineLength = 0;
+        ++lineNumber;
+
+        scanning:
+        while (bufferPosition < bufferLimit || fillBuffer()) {
+            while (bufferPosition < bufferLimit) {
+                char c = buffer[bufferPosition++];
+                if (c == '\n') {
+                    break scanning;
+                } else if (inComment || c == ' ' || c == '\t' || c == '\r') {
+                    continue;
+                }
+
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = c;
+                if (c == '/' && lineLength > 1 && line[lineLength - 2] == '/') {
+                    lineLength -= 2;
+                    inComment = true;
+                }
+            }
+        }
+        parseLine();
+        return true;
+    }
+
+    /**
+     * Determines the command type of the cleaned line, and the position of its symbol or dest./comp./jump portions.
+     */
+    private void parseLine() {
+        equalsPosition = -1;
+        semicolonPosition = -1;
+
+        if (lineLength == 0) {
+            commandType = NO_COMMAND;
+        } else if (line[0] == '@') {
+            commandType = ADDRESS;
+            symbolStart = 1;
+            symbolEnd = lineLength;
+        } else if (line[0] == '(') {
+            commandType = LABEL;
+            symbolStart = 1;
+            symbolEnd = (line[lineLength - 1] == ')') ? lineLength - 1 : lineLength;
+        } else {
+            commandType = C_INSTRUCTION;
+            for (int i = 0; i < lineLength; i++) {
+                if (line[i] == '=' && equalsPosition < 0) {
+                    equalsPosition = i;
+                } else if (line[i] == ';') {
+                    semicolonPosition = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the next block of assembly code into the buffer.
+     * @return True if any characters were read, false if the end of the input was reached.
+     */
+    private boolean fillBuffer() {
+        if (endOfInput) {
+            return false;
+        }
+
+        try {
+            int charactersRead;
+            do {
+                charactersRead = input.read(buffer, 0, buffer.length);
+            } while (charactersRead == 0);
+
+            bufferPosition = 0;
+            bufferLimit = Math.max(charactersRead, 0);
+            if (charactersRead < 0) {
+                endOfInput = true;
+                input.close();
+            }
+            return charactersRead > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes the current C-instruction into its 16-bit word, reading the mnemonics from the line buffer.
+     * @return The encoded instruction.
+     * @throws AssemblyException If the instruction has an unknown mnemonic.
+     */
+    short encodeCInstruction() {
+        return CInstructionMapper.encode(lineView, 0, equalsPosition, semicolonPosition, lineLength, lineNumber);
+    }
+
+    /**
+     * Finds the constant equal to the given portion of the line, so no String has to be created for it.
+     * @param mnemonics The known mnemonics for the portion.
+     * @param start The index of the first character of the portion.
+     * @param end The index after the last character of the portion.
+     * @return The matching constant, or a new String if the mnemonic is not a known one.
+     */
+    private String internMnemonic(String [] mnemonics, int start, int end) {
+        int length = end - start;
+        for (String mnemonic : mnemonics) {
+            if (mnemonic.length() == length && regionMatches(mnemonic, start)) {
+                return mnemonic;
+            }
+        }
+        return new String(line, start, length);
+    }
+
+    /**
+     * Determines if the characters of the line starting at the given index are those of the given String.
+     * @param text The String to be compared.
+     * @param start The index of the line to start comparing at.
+     * @return True if the characters match, false otherwise.
+     */
+    private boolean regionMatches(String text, int start) {
+        for (int i = 0; i < text.length(); i++) {
+            if (line[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the destination portion of the C-instruction ("null" if it has none).
+     * @return The destination mnemonic.
+     */
+    String getDestinationMnemonic() {
+        return (equalsPosition < 0) ? NO_MNEMONIC
+                                    : internMnemonic(CInstructionMapper.destinationMnemonics, 0, equalsPosition);
+    }
+
+    /**
+     * Returns the computation portion of the C-instruction.
+     * @return The computation mnemonic.
+     */
+    String getComputationMnemonic() {
+        return internMnemonic(CInstructionMapper.computationMnemonics, getComputationStart(), getComputationEnd());
+    }
+
+    /**
+     * Returns the jump portion of the C-instruction ("null" if it has none).
+     * @return The jump mnemonic.
+     */
+    String getJumpMnemonic() {
+        return (semicolonPosition < 0) ? NO_MNEMONIC
+                                       : internMnemonic(CInstructionMapper.jumpMnemonics, semicolonPosition + 1, lineLength);
+    }
+
+    /**
+     * Determines if the symbol of the A-instruction is a number rather than a label/variable.
+     * @return True if the symbol starts with a digit, false otherwise.
+     */
+    boolean isNumericSymbol() {
+        return symbolEnd > symbolStart && Character.isDigit(line[symbolStart]);
+    }
+
+    /**
+     * Returns the value of a numeric symbol, without creating a String for it.
+     * @return The value of the symbol (0 to 32767).
+     * @throws AssemblyException If the symbol has a character that isn't a digit, or is too large for an address.
+     */
+    int getNumericSymbol() {
+        int value = 0;
+        for (int i = symbolStart; i < symbolEnd; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new AssemblyException(lineNumber, "invalid number \"" + getSymbol() + "\"");
+            }
+            value = value * 10 + digit;
+            if (value > MAX_ADDRESS) {
+                throw new AssemblyException(lineNumber, "the number \"" + getSymbol() + "\" is larger than "
+                                                        + MAX_ADDRESS);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the address/label without the '@' or '('/')'.
+     * @return The symbol as a String.
+     */
+    String getSymbol() {
+        return new String(line, symbolStart, symbolEnd - symbolStart);
+    }
+
+    /**
+     * Returns the address/label as a view of the line buffer. The view changes when the lexer advances, so it must
+     * be copied (toString) if it is kept.
+     * @return The symbol as a CharSequence.
+     */
+    CharSequence getSymbolView() {
+        return symbolView;
+    }
+
+    /**
+     * Returns the current line cleaned of whitespace and comments.
+     * @return The cleaned line as a String.
+     */
+    String getCleanedLine() {
+        return new String(line, 0, lineLength);
+    }
+
+    /**
+     * Returns the type of the current line.
+     * @return The command type.
+     */
+    char getCommandType() {
+        return commandType;
+    }
+
+    /**
+     * Returns the line number of the current line.
+     * @return The line number (starting at 1).
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the index of the first character of the computation portion.
+     * @return The start of the computation portion.
+     */
+    int getComputationStart() {
+        return equalsPosition + 1;
+    }
+
+    /**
+     * Returns the index after the last character of the computation portion.
+     * @return The end of the computation portion.
+     */
+    int getComputationEnd() {
+        return (semicolonPosition < 0) ? lineLength : semicolonPosition;
+    }
+
+    /**
+     * A read-only view of the current line, so it can be handed out without copying it into a String.
+     */
+    private class LineView implements CharSequence {
+
+        @Override
+        public int length() {
+            return lineLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return line[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(line, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return getCleanedLine();
+        }
+    }
+
+    /**
+     * A read-only view of the symbol in the current line.
+     */
+    private class SymbolView implements CharSequence {
+
+        @Override
+        public int length() {
+            return symbolEnd - symbolStart;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return line[symbolStart + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(line, symbolStart + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return getSymbol();
+        }
+    }
+}
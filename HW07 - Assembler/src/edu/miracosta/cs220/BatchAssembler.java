@@ -0,0 +1,225 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BatchAssembler.java - Assembles many .asm files in parallel, without prompting, for use in scripts and builds.
+ *
+ * Algorithm:
+ *
+ * 1. The arguments are sorted into flags (--single-pass, --binary, --optimize, --threads N, --cache DIR, --rebuild)
+ * and inputs. Inputs that are directories are searched (recursively) for .asm files; inputs that are files are taken as
+ * they are.
+ *
+ * 2. Each .asm file is assembled on a thread pool (one thread per processor unless --threads is given). Every file
+ * gets its own symbol table, so nothing is shared between the tasks.
+ *
+ * 3. If --cache is given, each file is first looked up in the cache by the hash of its contents; unchanged files are
+ * not assembled again (--rebuild assembles every file anyway, and refreshes the cache).
+ *
+ * 4. The result of every file is printed in the order the files were found (OK with the number of instructions and,
+ * with --optimize, the number removed, or FAILED with the reason), followed by a summary (with the cache hits/misses
+ * when the cache is used). The exit status is 0 if every file was assembled, 1 if any file failed, and 2 if the
+ * arguments were invalid.
+ *
+ * Usage: Assembler [--single-pass] [--binary] [--optimize] [--threads N] [--cache DIR [--rebuild]]
+ *                  (file.asm | directory) ...
+ *
+ * Author: Matt Sheehan
+ */
+class BatchAssembler {
+
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_FAILURE = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final String THREADS_FLAG = "--threads";
+    private static final String CACHE_FLAG = "--cache";
+    private static final String REBUILD_FLAG = "--rebuild";
+    private static final String ASSEMBLY_EXTENSION = ".asm";
+
+    private BatchAssembler() { }
+
+    /**
+     * Determines if the arguments name any files/directories to assemble (as opposed to only flags).
+     * @param args The command line arguments.
+     * @return True if batch mode should be used, false otherwise.
+     */
+    static boolean hasInputFiles(String [] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(THREADS_FLAG) || args[i].equals(CACHE_FLAG)) {
+                ++i;
+            } else if (!args[i].startsWith("--")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Assembles every file named by the arguments in parallel, printing the result of each.
+     * @param args The command line arguments.
+     * @return The exit status.
+     */
+    static int run(String [] args) {
+        boolean singlePass = false;
+        boolean binary = false;
+        boolean optimize = false;
+        boolean rebuild = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String cacheDirectory = null;
+        List <String> inputs = new ArrayList <> ();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case Assembler.SINGLE_PASS_FLAG -> singlePass = true;
+                case Assembler.BINARY_FLAG -> binary = true;
+                case Assembler.OPTIMIZE_FLAG -> optimize = true;
+                case REBUILD_FLAG -> rebuild = true;
+                case CACHE_FLAG -> {
+                    if (i + 1 == args.length) {
+                        System.err.println(CACHE_FLAG + " needs a directory.");
+                        return EXIT_USAGE;
+                    }
+                    cacheDirectory = args[++i];
+                }
+                case THREADS_FLAG -> {
+                    try {
+                        threads = Integer.parseInt(args[++i]);
+                    } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                        threads = 0;
+                    }
+                    if (threads < 1) {
+                        System.err.println(THREADS_FLAG + " needs a positive number of threads.");
+                        return EXIT_USAGE;
+                    }
+                }
+                default -> {
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Unknown option: " + args[i]);
+                        return EXIT_USAGE;
+                    }
+                    inputs.add(args[i]);
+                }
+            }
+        }
+
+        AssemblyCache cache = null;
+        if (cacheDirectory != null) {
+            try {
+                cache = new AssemblyCache(Path.of(cacheDirectory), rebuild);
+            } catch (IOException e) {
+                System.err.println("Could not create the cache directory " + cacheDirectory + ": " + e.getMessage());
+                return EXIT_FAILURE;
+            }
+        }
+        return assembleAll(findAssemblyFiles(inputs), singlePass, binary, optimize, threads, cache);
+    }
+
+    /**
+     * Expands the inputs into a list of .asm files. Directories are searched recursively (in sorted order, so the
+     * output is the same from run to run); files are kept even if they don't exist, so they are reported as failed.
+     * @param inputs The files/directories given as arguments.
+     * @return The .asm files to be assembled.
+     */
+    static List <String> findAssemblyFiles(List <String> inputs) {
+        List <String> assemblyFiles = new ArrayList <> ();
+        for (String input : inputs) {
+            Path path = Path.of(input);
+            if (Files.isDirectory(path)) {
+                try (Stream <Path> files = Files.walk(path)) {
+                    assemblyFiles.addAll(files.filter(Files::isRegularFile)
+                                              .map(Path::toString)
+                                              .filter(name -> name.endsWith(ASSEMBLY_EXTENSION))
+                                              .sorted()
+                                              .collect(Collectors.toList()));
+                } catch (IOException | UncheckedIOException e) {
+                    System.err.println("Could not search " + input + ": " + e.getMessage());
+                }
+            } else {
+                assemblyFiles.add(input);
+            }
+        }
+        return assemblyFiles;
+    }
+
+    /**
+     * Assembles the files on a thread pool and prints the result of each file, then a summary.
+     * @param assemblyFiles The .asm files to be assembled.
+     * @param singlePass True if the files should be translated in a single pass.
+     * @param binary True if packed binary ROM images should be written.
+     * @param optimize True if instructions without effect should be removed.
+     * @param threads The number of threads in the pool.
+     * @param cache The cache of assembled programs, or null to assemble every file.
+     * @return The exit status.
+     */
+    static int assembleAll(List <String> assemblyFiles, boolean singlePass, boolean binary, boolean optimize,
+                           int threads, AssemblyCache cache) {
+        long start = System.nanoTime();
+        int failures = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, assemblyFiles.size())));
+        List <Future <AssembledProgram>> results = new ArrayList <> ();
+
+        try {
+            for (String assemblyFile : assemblyFiles) {
+                results.add(pool.submit(() -> assemble(assemblyFile, singlePass, binary, optimize, cache)));
+            }
+
+            for (int i = 0; i < assemblyFiles.size(); i++) {
+                String assemblyFile = assemblyFiles.get(i);
+                try {
+                    AssembledProgram program = results.get(i).get();
+                    System.out.println("OK     " + assemblyFile + " -> "
+                                       + Assembler.outputFileName(assemblyFile, binary) + " ("
+                                       + program.getWords().length + " instructions"
+                                       + (optimize ? ", " + program.getRemovedInstructions() + " removed)" : ")"));
+                } catch (ExecutionException e) {
+                    ++failures;
+                    System.out.println("FAILED " + assemblyFile + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILURE;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        System.out.printf("%d file(s) assembled, %d failed in %.1f ms%n", assemblyFiles.size() - failures, failures,
+                          (System.nanoTime() - start) / 1e6);
+        if (cache != null) {
+            System.out.printf("Cache: %d hit(s), %d miss(es)%n", cache.getHits(), cache.getMisses());
+        }
+        return (failures == 0) ? EXIT_SUCCESS : EXIT_FAILURE;
+    }
+
+    /**
+     * Assembles a single file, turning every kind of failure into an exception that carries a readable message.
+     * @param assemblyFile The .asm file.
+     * @param singlePass True if the file should be translated in a single pass.
+     * @param binary True if a packed binary ROM image should be written.
+     * @param optimize True if instructions without effect should be removed.
+     * @param cache The cache of assembled programs, or null to always assemble the file.
+     * @return The assembled program.
+     * @throws IOException If the file could not be read or the output could not be written.
+     */
+    private static AssembledProgram assemble(String assemblyFile, boolean singlePass, boolean binary,
+                                             boolean optimize, AssemblyCache cache) throws IOException {
+        try {
+            return Assembler.assembleFile(assemblyFile, singlePass, binary, optimize, cache);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -1,99 +1,214 @@
 package edu.miracosta.cs220;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * CInstructionMapper.java - Translates portions of CInstructions into binary.
  *
+ * Mnemonics are read straight out of a CharSequence (e.g. the lexer's line buffer) by position, so no substring is
+ * needed. Up to three characters of a mnemonic are packed into an int key, and a switch over those keys (compiled by
+ * javac into a lookup table) gives the bit field, without boxing or hashing Strings.
+ *
  * INSTANCE VARIABLES:
  *
- * - computationMnemonics (String[]): Array for holding computation mnemonics to be loaded into the computation
- *   Hash-Map.
- * - computationMnemonicsBinary (String[]): Array for holding computation (binary-from) to be loaded into the
- *   computation Hash-Map.
- * - destinationMnemonics (String[]): Array for holding destination mnemonics to be loaded into the destination
- *   Hash-Map.
- * - jumpMnemonics (String[]): Array for holding jump mnemonics to be loaded into the jump Hash-Map.
- * - destinationJumpMnemonicsBinary (String[]): Array for holding destination/jump (binary-from) to be loaded into the
- *   destination.
- * - computationMnemonicsAndBinary (Hash-Map): Stores the computation portion mnemonic of C-Instructions and their
- *   binary equivalent.
- * - destinationMnemonicsAndBinary (Hash-Map): Stores the destination portion mnemonic of C-Instructions and their
- *   binary equivalent.
- * - jumpMnemonicsAndBinary (Hash-Map): Stores the jump portion mnemonic of C-Instructions and their binary equivalent.
+ * - computationMnemonics (String[]): The known computation mnemonics (used to hand out mnemonics as constants).
+ * - destinationMnemonics (String[]): The known destination mnemonics ("null" standing for no destination).
+ * - jumpMnemonics (String[]): The known jump mnemonics ("null" standing for no jump).
+ * - UNKNOWN_MNEMONIC (int): Returned by the bit lookups when the mnemonic does not exist.
  *
  * METHODS:
  *
- * - CInstructionMapper: Full constructor. Declares the Hash-Maps and initializes their respective values.
- * - translateComputationMnemonicIntoBinary (String): Looks up the String mnemonic in the compCodes Hash-Map to find
- *   the mnemonic's binary representation.
- * - translateDestinationMnemonicIntoBinary (String): Looks up the String mnemonic in the destCodes Hash-Map to find
- *   the mnemonic's binary representation.
- * - translateJumpMnemonicIntoBinary (String): Looks up the String mnemonic in the jumpCodes Hash-Map to find the
- *   mnemonic's binary representation.
+ * - encode (CharSequence, int): Encodes a whole C-instruction ("dest=comp;jump") into a 16-bit word.
+ * - encode (CharSequence, int, int, int, int, int): Encodes the C-instruction found between two offsets, given the
+ *   position of its '=' and ';'.
+ * - computationBits (CharSequence, int, int): The a-bit and 6 c-bits of the computation mnemonic.
+ * - destinationBits (CharSequence, int, int): The 3 d-bits of the destination mnemonic.
+ * - jumpBits (CharSequence, int, int): The 3 j-bits of the jump mnemonic.
  *
  * Author: Matt Sheehan
  */
 class CInstructionMapper {
 
-    private static final String [] computationMnemonics = {
+    static final int UNKNOWN_MNEMONIC = -1;
+
+    static final String [] computationMnemonics = {
     "0",   "1", "-1",  "D",   "A",  "!D",  "!A",  "-D",  "-A", "D+1", "A+1", "D-1", "A-1", "D+A", "D-A", "A-D", "D&A",
     "D|A", "M", "!M", "-M", "M+1", "M-1", "D+M", "D-M", "M-D", "D&M", "D|M"
     };
 
-    private static final String [] computationMnemonicsBinary = {
-    "0101010", "0111111", "0111010", "0001100", "0110000", "0001101", "0110001", "0001111", "0110011", "0011111",
-    "0110111", "0001110", "0110010", "0000010", "0010011", "0000111", "0000000", "0010101", "1110000", "1110001",
-    "1110011", "1110111", "1110010", "1000010", "1010011", "1000111", "1000000", "1010101"
-    };
+    static final String [] destinationMnemonics = { "null", "M", "D", "MD", "A", "AM", "AD", "AMD" };
+    static final String [] jumpMnemonics = { "null", "JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP" };
 
-    private static final String [] destinationMnemonics = { "null", "M", "D", "MD", "A", "AM", "AD", "AMD" };
-    private static final String [] jumpMnemonics = { "null", "JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP" };
-    private static final String [] destinationJumpMnemonicsBinary = { "000", "001", "010", "011", "100", "101", "110", "111" };
+    private static final int C_INSTRUCTION_PREFIX = 0b111 << 13;
+    private static final int NOT_PACKABLE = -1;
 
-    private static final Map <String, String> destinationMnemonicsAndBinary = new HashMap <> ();
-    private static final Map <String, String> computationMnemonicsAndBinary = new HashMap <> ();
-    private static final Map <String, String> jumpMnemonicsAndBinary = new HashMap <> ();
+    private CInstructionMapper() { }
 
     /**
-     * Full constructor; initializes all Hash-Maps with their respective values.
+     * Encodes a whole C-instruction (cleaned of whitespace and comments) into its 16-bit word.
+     * @param instruction The C-instruction, e.g. "AM=M+1" or "D;JGT".
+     * @param lineNumber The line the instruction was found on (for error messages).
+     * @return The encoded instruction.
+     * @throws AssemblyException If the instruction has an unknown mnemonic.
      */
-    CInstructionMapper ( ) {
-        for (int i = 0; i < computationMnemonics.length; i ++) {
-            computationMnemonicsAndBinary.put(computationMnemonics[i], computationMnemonicsBinary[i]);
+    static short encode(CharSequence instruction, int lineNumber) {
+        int equalsPosition = -1;
+        int semicolonPosition = -1;
+        for (int i = 0; i < instruction.length(); i++) {
+            if (instruction.charAt(i) == '=' && equalsPosition < 0) {
+                equalsPosition = i;
+            } else if (instruction.charAt(i) == ';') {
+                semicolonPosition = i;
+            }
         }
+        return encode(instruction, 0, equalsPosition, semicolonPosition, instruction.length(), lineNumber);
+    }
 
-        for (int i = 0; i < destinationMnemonics.length; i ++) {
-            destinationMnemonicsAndBinary.put(destinationMnemonics[i], destinationJumpMnemonicsBinary[i]);
-            jumpMnemonicsAndBinary.put(jumpMnemonics[i], destinationJumpMnemonicsBinary[i]);
+    /**
+     * Encodes the C-instruction between the given offsets into its 16-bit word.
+     * @param source The characters holding the C-instruction.
+     * @param start The index of the first character of the instruction.
+     * @param equalsPosition The index of the '=' (or -1 if the instruction has no destination).
+     * @param semicolonPosition The index of the ';' (or -1 if the instruction has no jump).
+     * @param end The index after the last character of the instruction.
+     * @param lineNumber The line the instruction was found on (for error messages).
+     * @return The encoded instruction.
+     * @throws AssemblyException If the instruction has an unknown mnemonic.
+     */
+    static short encode(CharSequence source, int start, int equalsPosition, int semicolonPosition, int end,
+                        int lineNumber) {
+        int computationStart = (equalsPosition < 0) ? start : equalsPosition + 1;
+        int computationEnd = (semicolonPosition < 0) ? end : semicolonPosition;
+
+        int destination = (equalsPosition < 0) ? 0 : destinationBits(source, start, equalsPosition);
+        int computation = computationBits(source, computationStart, computationEnd);
+        int jump = (semicolonPosition < 0) ? 0 : jumpBits(source, semicolonPosition + 1, end);
+
+        if (computation == UNKNOWN_MNEMONIC) {
+            throw unknownMnemonic("computation", source, computationStart, computationEnd, lineNumber);
+        } else if (destination == UNKNOWN_MNEMONIC) {
+            throw unknownMnemonic("destination", source, start, equalsPosition, lineNumber);
+        } else if (jump == UNKNOWN_MNEMONIC) {
+            throw unknownMnemonic("jump", source, semicolonPosition + 1, end, lineNumber);
         }
+        return (short) (C_INSTRUCTION_PREFIX | computation << 6 | destination << 3 | jump);
+    }
+
+    /**
+     * Translates the computation portion of the C-instruction into its bits (a-bit followed by the 6 c-bits).
+     * @param source The characters holding the mnemonic.
+     * @param start The index of the first character of the mnemonic.
+     * @param end The index after the last character of the mnemonic.
+     * @return The computation bits, or UNKNOWN_MNEMONIC if the mnemonic doesn't exist.
+     */
+    static int computationBits(CharSequence source, int start, int end) {
+        return switch (pack(source, start, end)) {
+            case '0'                          -> 0b0101010;
+            case '1'                          -> 0b0111111;
+            case '-' | '1' << 8               -> 0b0111010;
+            case 'D'                          -> 0b0001100;
+            case 'A'                          -> 0b0110000;
+            case '!' | 'D' << 8               -> 0b0001101;
+            case '!' | 'A' << 8               -> 0b0110001;
+            case '-' | 'D' << 8               -> 0b0001111;
+            case '-' | 'A' << 8               -> 0b0110011;
+            case 'D' | '+' << 8 | '1' << 16   -> 0b0011111;
+            case 'A' | '+' << 8 | '1' << 16   -> 0b0110111;
+            case 'D' | '-' << 8 | '1' << 16   -> 0b0001110;
+            case 'A' | '-' << 8 | '1' << 16   -> 0b0110010;
+            case 'D' | '+' << 8 | 'A' << 16   -> 0b0000010;
+            case 'D' | '-' << 8 | 'A' << 16   -> 0b0010011;
+            case 'A' | '-' << 8 | 'D' << 16   -> 0b0000111;
+            case 'D' | '&' << 8 | 'A' << 16   -> 0b0000000;
+            case 'D' | '|' << 8 | 'A' << 16   -> 0b0010101;
+            case 'M'                          -> 0b1110000;
+            case '!' | 'M' << 8               -> 0b1110001;
+            case '-' | 'M' << 8               -> 0b1110011;
+            case 'M' | '+' << 8 | '1' << 16   -> 0b1110111;
+            case 'M' | '-' << 8 | '1' << 16   -> 0b1110010;
+            case 'D' | '+' << 8 | 'M' << 16   -> 0b1000010;
+            case 'D' | '-' << 8 | 'M' << 16   -> 0b1010011;
+            case 'M' | '-' << 8 | 'D' << 16   -> 0b1000111;
+            case 'D' | '&' << 8 | 'M' << 16   -> 0b1000000;
+            case 'D' | '|' << 8 | 'M' << 16   -> 0b1010101;
+            default                           -> UNKNOWN_MNEMONIC;
+        };
+    }
+
+    /**
+     * Translates the destination portion of the C-instruction into its 3 bits.
+     * @param source The characters holding the mnemonic.
+     * @param start The index of the first character of the mnemonic.
+     * @param end The index after the last character of the mnemonic.
+     * @return The destination bits, or UNKNOWN_MNEMONIC if the mnemonic doesn't exist.
+     */
+    static int destinationBits(CharSequence source, int start, int end) {
+        return switch (pack(source, start, end)) {
+            case 'M'                        -> 0b001;
+            case 'D'                        -> 0b010;
+            case 'M' | 'D' << 8             -> 0b011;
+            case 'A'                        -> 0b100;
+            case 'A' | 'M' << 8             -> 0b101;
+            case 'A' | 'D' << 8             -> 0b110;
+            case 'A' | 'M' << 8 | 'D' << 16 -> 0b111;
+            default                         -> UNKNOWN_MNEMONIC;
+        };
     }
 
     /**
-     * Translates the computation portion of the C-instruction into binary.
-     * @param computationMnemonic The computation portion of the C-instruction to be translated into binary.
-     * @return The computation portion of the C-instruction in its binary form (or null if mnemonic doesn't exist).
+     * Translates the jump portion of the C-instruction into its 3 bits.
+     * @param source The characters holding the mnemonic.
+     * @param start The index of the first character of the mnemonic.
+     * @param end The index after the last character of the mnemonic.
+     * @return The jump bits, or UNKNOWN_MNEMONIC if the mnemonic doesn't exist.
      */
-    String translateComputationMnemonicIntoBinary(String computationMnemonic) {
-        return computationMnemonicsAndBinary.get(computationMnemonic);
+    static int jumpBits(CharSequence source, int start, int end) {
+        return switch (pack(source, start, end)) {
+            case 'J' | 'G' << 8 | 'T' << 16 -> 0b001;
+            case 'J' | 'E' << 8 | 'Q' << 16 -> 0b010;
+            case 'J' | 'G' << 8 | 'E' << 16 -> 0b011;
+            case 'J' | 'L' << 8 | 'T' << 16 -> 0b100;
+            case 'J' | 'N' << 8 | 'E' << 16 -> 0b101;
+            case 'J' | 'L' << 8 | 'E' << 16 -> 0b110;
+            case 'J' | 'M' << 8 | 'P' << 16 -> 0b111;
+            default                         -> UNKNOWN_MNEMONIC;
+        };
     }
 
     /**
-     * Translates the destination portion of the C-instruction into binary.
-     * @param destinationMnemonic The destination portion of the C-instruction to be translated into binary.
-     * @return The destination portion of the C-instruction in its binary form (or null if mnemonic doesn't exist).
+     * Packs a mnemonic of 1 to 3 (8-bit) characters into an int, the first character in the lowest byte.
+     * @param source The characters holding the mnemonic.
+     * @param start The index of the first character of the mnemonic.
+     * @param end The index after the last character of the mnemonic.
+     * @return The packed mnemonic, or NOT_PACKABLE if it is empty, too long, or not made of 8-bit characters.
      */
-    String translateDestinationMnemonicIntoBinary(String destinationMnemonic) {
-        return destinationMnemonicsAndBinary.get(destinationMnemonic);
+    private static int pack(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length < 1 || length > 3) {
+            return NOT_PACKABLE;
+        }
+
+        int key = 0;
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(start + i);
+            if (c > 0xFF) {
+                return NOT_PACKABLE;
+            }
+            key |= c << (8 * i);
+        }
+        return key;
     }
 
     /**
-     * Translates the jump portion of the C-instruction into binary.
-     * @param jumpMnemonic The jump portion of the C-instruction to be translated into binary.
-     * @return The jump portion of the C-instruction in its binary form (or null if mnemonic doesn't exist).
+     * Builds the exception for a mnemonic that doesn't exist.
+     * @param portion The portion of the C-instruction the mnemonic was in (computation, destination, jump).
+     * @param source The characters holding the mnemonic.
+     * @param start The index of the first character of the mnemonic.
+     * @param end The index after the last character of the mnemonic.
+     * @param lineNumber The line the mnemonic was found on.
+     * @return The exception to be thrown.
      */
-    String translateJumpMnemonicIntoBinary(String jumpMnemonic) {
-        return jumpMnemonicsAndBinary.get(jumpMnemonic);
+    private static AssemblyException unknownMnemonic(String portion, CharSequence source, int start, int end,
+                                                     int lineNumber) {
+        return new AssemblyException(lineNumber, "unknown " + portion + " mnemonic \""
+                                                 + source.subSequence(start, end) + "\"");
     }
-}
\ No newline at end of file
+}
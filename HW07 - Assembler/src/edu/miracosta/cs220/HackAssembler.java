@@ -0,0 +1,235 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.IntConsumer;
+
+/**
+ * HackAssembler.java - Library interface for running the assembler in-process, without any files.
+ *
+ * Assembly code can be given as a Reader, a CharSequence, or a ByteBuffer (ASCII text), and the encoded instructions
+ * are handed to an IntConsumer (one unsigned 16-bit word per call) or written to an OutputStream as .hack text or a
+ * packed binary ROM image. The code is assembled in a single pass (see Assembler), so the input is only read once,
+ * and every call gets its own symbol table, so calls can run on any number of threads at once.
+ *
+ * Errors are reported as exceptions: an AssemblyException (with the line number) for code that can't be translated,
+ * and an IOException if the input can't be read or the output can't be written. Nothing is printed, and the
+ * program is never terminated.
+ *
+ * METHODS:
+ *
+ * - assemble (Reader/CharSequence/ByteBuffer): Returns the encoded instructions as an array.
+ * - assemble (Reader/CharSequence/ByteBuffer, IntConsumer): Hands each encoded instruction to the consumer.
+ * - assemble (Reader, OutputStream, OutputFormat): Writes the encoded instructions to the stream.
+ *
+ * Author: Matt Sheehan
+ */
+public final class HackAssembler {
+
+    /**
+     * The formats the encoded instructions can be written in.
+     */
+    public enum OutputFormat {
+        /** One line of 16 binary digits per instruction (the classic .hack file). */
+        TEXT,
+        /** Two bytes per instruction, little-endian (a ROM image). */
+        BINARY
+    }
+
+    private HackAssembler() { }
+
+    /**
+     * Assembles the code read from the Reader. The Reader is closed once it has been read.
+     * @param source The assembly code.
+     * @return The encoded instructions, one per ROM line.
+     * @throws AssemblyException If the code has an error.
+     * @throws IOException If the code could not be read.
+     */
+    public static short [] assemble(Reader source) throws IOException {
+        return translate(source).toArray();
+    }
+
+    /**
+     * Assembles the given code.
+     * @param source The assembly code.
+     * @return The encoded instructions, one per ROM line.
+     * @throws AssemblyException If the code has an error.
+     */
+    public static short [] assemble(CharSequence source) {
+        return translateInMemory(new CharSequenceReader(source), source.length()).toArray();
+    }
+
+    /**
+     * Assembles the code held (as ASCII text) between the buffer's position and limit. The buffer's position is not
+     * changed.
+     * @param source The assembly code.
+     * @return The encoded instructions, one per ROM line.
+     * @throws AssemblyException If the code has an error.
+     */
+    public static short [] assemble(ByteBuffer source) {
+        return translateInMemory(new ByteBufferReader(source), source.remaining()).toArray();
+    }
+
+    /**
+     * Assembles the code read from the Reader, handing each instruction to the consumer in ROM order. The Reader is
+     * closed once it has been read.
+     * @param source The assembly code.
+     * @param instructions Receives each encoded instruction (as an unsigned 16-bit value).
+     * @throws AssemblyException If the code has an error (nothing is handed to the consumer in that case).
+     * @throws IOException If the code could not be read.
+     */
+    public static void assemble(Reader source, IntConsumer instructions) throws IOException {
+        forEach(translate(source), instructions);
+    }
+
+    /**
+     * Assembles the given code, handing each instruction to the consumer in ROM order.
+     * @param source The assembly code.
+     * @param instructions Receives each encoded instruction (as an unsigned 16-bit value).
+     * @throws AssemblyException If the code has an error (nothing is handed to the consumer in that case).
+     */
+    public static void assemble(CharSequence source, IntConsumer instructions) {
+        forEach(translateInMemory(new CharSequenceReader(source), source.length()), instructions);
+    }
+
+    /**
+     * Assembles the code held (as ASCII text) in the buffer, handing each instruction to the consumer in ROM order.
+     * @param source The assembly code.
+     * @param instructions Receives each encoded instruction (as an unsigned 16-bit value).
+     * @throws AssemblyException If the code has an error (nothing is handed to the consumer in that case).
+     */
+    public static void assemble(ByteBuffer source, IntConsumer instructions) {
+        forEach(translateInMemory(new ByteBufferReader(source), source.remaining()), instructions);
+    }
+
+    /**
+     * Assembles the code read from the Reader and writes the instructions to the stream. The Reader is closed once it
+     * has been read; the stream is flushed but left open.
+     * @param source The assembly code.
+     * @param output The stream to write the instructions to.
+     * @param format The format to write the instructions in.
+     * @throws AssemblyException If the code has an error (nothing is written in that case).
+     * @throws IOException If the code could not be read or the stream could not be written to.
+     */
+    public static void assemble(Reader source, OutputStream output, OutputFormat format) throws IOException {
+        WordBuffer words = translate(source);
+        WritableByteChannel channel = Channels.newChannel(output);
+        if (format == OutputFormat.BINARY) {
+            HackFileWriter.writeBinary(words.getWords(), words.size(), channel);
+        } else {
+            HackFileWriter.writeText(words.getWords(), words.size(), channel);
+        }
+        output.flush();
+    }
+
+    /**
+     * Runs the single-pass assembler over the code, with a fresh symbol table.
+     * @param source The assembly code.
+     * @return The encoded instructions.
+     * @throws IOException If the code could not be read.
+     */
+    private static WordBuffer translate(Reader source) throws IOException {
+        try {
+            return Assembler.translateAssemblyInSinglePass(new Parser(source), new SymbolTable());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Runs the single-pass assembler over code that is already in memory (so reading it can't fail).
+     * @param source The Reader over the in-memory code.
+     * @param length The number of characters of code, so the read buffer isn't larger than needed.
+     * @return The encoded instructions.
+     */
+    private static WordBuffer translateInMemory(Reader source, int length) {
+        return Assembler.translateAssemblyInSinglePass(new Parser(source, length), new SymbolTable());
+    }
+
+    /**
+     * Returns a Reader over the ASCII text held in the buffer (from its position to its limit), without copying it.
+     * @param source The buffer holding the text.
+     * @return The Reader.
+     */
+    static Reader asciiReader(ByteBuffer source) {
+        return new ByteBufferReader(source);
+    }
+
+    /**
+     * Hands the encoded instructions to the consumer.
+     * @param words The encoded instructions.
+     * @param instructions The consumer.
+     */
+    private static void forEach(WordBuffer words, IntConsumer instructions) {
+        for (int i = 0; i < words.size(); i++) {
+            instructions.accept(words.get(i));
+        }
+    }
+
+    /**
+     * Reads the characters of a CharSequence, without first copying it into a String.
+     */
+    private static final class CharSequenceReader extends Reader {
+
+        private final CharSequence source;
+        private int position = 0;
+
+        CharSequenceReader(CharSequence source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(char [] buffer, int offset, int length) {
+            if (position >= source.length()) {
+                return -1;
+            }
+
+            int count = Math.min(length, source.length() - position);
+            if (source instanceof String) {
+                ((String) source).getChars(position, position + count, buffer, offset);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = source.charAt(position + i);
+                }
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    /**
+     * Reads the bytes of a ByteBuffer as ASCII characters.
+     */
+    private static final class ByteBufferReader extends Reader {
+
+        private final ByteBuffer source;
+
+        ByteBufferReader(ByteBuffer source) {
+            this.source = source.duplicate();
+        }
+
+        @Override
+        public int read(char [] buffer, int offset, int length) {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(length, source.remaining());
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (char) (source.get() & 0xFF);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -0,0 +1,143 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * HackFileWriter.java - Writes encoded 16-bit instructions to a .hack file, as text or as a packed binary ROM image.
+ *
+ * Text output is the classic .hack format (one line of 16 '0'/'1' characters per instruction). Instead of converting
+ * every word with Integer.toBinaryString, each byte of the word is looked up in a table holding the 8 characters for
+ * all 256 byte values. Binary output stores each word as 2 bytes (little-endian), which is 8 times smaller and can be
+ * loaded into an emulator without being parsed. Both formats are written through a direct buffer to a channel (a
+ * FileChannel when writing files).
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - BUFFER_SIZE (int): The size of the buffer the output is gathered in before being written.
+ * - BINARY_DIGITS (byte[]): The 8 ASCII binary digits of every byte value (8 entries per value).
+ * - LINE_SEPARATOR (byte[]): The bytes that end each line of text output.
+ *
+ * METHODS:
+ *
+ * - writeText (short[], int, Path/WritableByteChannel): Writes the words as lines of binary digits.
+ * - writeBinary (short[], int, Path/WritableByteChannel): Writes the words as a packed little-endian ROM image.
+ *
+ * Author: Matt Sheehan
+ */
+class HackFileWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte [] BINARY_DIGITS = new byte [256 * 8];
+    private static final byte [] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (int value = 0; value < 256; value++) {
+            for (int bit = 0; bit < 8; bit++) {
+                BINARY_DIGITS[value * 8 + bit] = (byte) (((value >>> (7 - bit)) & 1) == 1 ? '1' : '0');
+            }
+        }
+    }
+
+    private HackFileWriter() { }
+
+    /**
+     * Writes the words to the file in the classic .hack format.
+     * @param words The encoded instructions.
+     * @param wordCount The number of instructions in the words array.
+     * @param outputFile The .hack file to be written.
+     * @throws IOException If the file could not be written.
+     */
+    static void writeText(short [] words, int wordCount, Path outputFile) throws IOException {
+        try (FileChannel channel = openChannel(outputFile)) {
+            writeText(words, wordCount, channel);
+        }
+    }
+
+    /**
+     * Writes the words to the channel in the classic .hack format. The channel is left open.
+     * @param words The encoded instructions.
+     * @param wordCount The number of instructions in the words array.
+     * @param channel The channel to be written to.
+     * @throws IOException If the channel could not be written to.
+     */
+    static void writeText(short [] words, int wordCount, WritableByteChannel channel) throws IOException {
+        int lineLength = 16 + LINE_SEPARATOR.length;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE - BUFFER_SIZE % lineLength);
+
+        for (int i = 0; i < wordCount; i++) {
+            if (buffer.remaining() < lineLength) {
+                drain(buffer, channel);
+            }
+            buffer.put(BINARY_DIGITS, ((words[i] >>> 8) & 0xFF) * 8, 8);
+            buffer.put(BINARY_DIGITS, (words[i] & 0xFF) * 8, 8);
+            buffer.put(LINE_SEPARATOR);
+        }
+        drain(buffer, channel);
+    }
+
+    /**
+     * Writes the words to the file as a packed binary ROM image (2 bytes per word, little-endian).
+     * @param words The encoded instructions.
+     * @param wordCount The number of instructions in the words array.
+     * @param outputFile The ROM image file to be written.
+     * @throws IOException If the file could not be written.
+     */
+    static void writeBinary(short [] words, int wordCount, Path outputFile) throws IOException {
+        try (FileChannel channel = openChannel(outputFile)) {
+            writeBinary(words, wordCount, channel);
+        }
+    }
+
+    /**
+     * Writes the words to the channel as a packed binary ROM image (2 bytes per word, little-endian). The channel is
+     * left open.
+     * @param words The encoded instructions.
+     * @param wordCount The number of instructions in the words array.
+     * @param channel The channel to be written to.
+     * @throws IOException If the channel could not be written to.
+     */
+    static void writeBinary(short [] words, int wordCount, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        int written = 0;
+        while (written < wordCount) {
+            int chunk = Math.min(wordCount - written, buffer.capacity() / 2);
+            buffer.asShortBuffer().put(words, written, chunk);
+            buffer.position(chunk * 2);
+            drain(buffer, channel);
+            written += chunk;
+        }
+    }
+
+    /**
+     * Opens the file for writing, replacing any previous contents.
+     * @param outputFile The file to be opened.
+     * @return The channel to the file.
+     * @throws IOException If the file could not be opened.
+     */
+    private static FileChannel openChannel(Path outputFile) throws IOException {
+        return FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Writes everything gathered in the buffer to the channel, and empties the buffer.
+     * @param buffer The buffer to be drained.
+     * @param channel The channel to write to.
+     * @throws IOException If the channel could not be written to.
+     */
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,231 +1,173 @@
 package edu.miracosta.cs220;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Parser.java - Takes in a line of text from assembly files and deconstructs them for their instructions.
  *
+ * The scanning itself is done by an AssemblyLexer, which finds each portion of the instruction by position instead
+ * of cleaning the line with regular expressions. The mnemonics handed out are the constants known to the
+ * CInstructionMapper, so the only String created for a line is the symbol of an A-instruction/label.
+ *
  * INSTANCE VARIABLES:
  *
  * - Constants for type of command (no command, A/C-Instruction, Label).
- * - inputFile (Scanner): The object that connects the .asm file to the program.
- * - rawLAssembly (String): The un-cleaned/un-parsed line of text from the .asm file.
- * - assemblyCleanedFromWhiteSpace (String): The raw assembly code, after being cleaned of unnecessary characters.
- * - symbolInAssemblyCode (String): The address/label without the '@' or '('/')'.
- * - assemblyDestinationPortion (String): The destination portion of the C-instruction.
- * - assemblyComputationPortion (String): The computation portion of the C-instruction.
- * - assemblyJumpPortion (String): The jump portion of the C-instruction.
- * - commandType (char): The type of line entered by the .asm file (A-instruction, C-instruction, label, no command).
- * - fileLineNumber (int): The ROM line number.
+ * - lexer (AssemblyLexer): The object that scans the .asm file.
+ * - symbolInAssemblyCode (String): The address/label without the '@' or '('/')' (created when first asked for).
  *
  * METHODS:
  *
- * - Parser (String): Connects the program to the assembly file, terminates the program if file not found.
+ * - Parser (String): Connects the program to the assembly file, throws an UncheckedIOException if it can't be opened.
+ * - Parser (Reader[, int]): Connects the program to assembly code from any other source (of a known length).
  * - hasMoreCommands: Determines if the .asm file has more commands.
  * - advance: Takes in the next line from the .asm file, cleans it, and parses it. Closes file if no more commands.
- * - cleanAssemblyCodeOfWhiteSpace: Cleans the raw assembly code of whitespace, comments, tabs, etc.
- * - parseCommandType: Determines the command type.
- * - parseSymbol: Replaces the symbols in A-instructions/Labels.
- * - parseAssembly: Based on the command type, determines what parsing needs to be done.
- * - parseAssemblyDestinationPortion: Parses the destination portion of the C-instruction.
- * - parseAssemblyComputationPortion: Parses the computation portion of the C-instruction.
- * - parseAssemblyJumpPortion: Parses the jump portion of the C-instruction.
- * - Accessor methods for all instance variables.
+ * - isSymbolNumeric/getNumericSymbol: Determines if the A-instruction is a number, and its value.
+ * - encodeCInstruction: Encodes the C-instruction into its 16-bit word.
+ * - Accessor methods for the command type, symbol (as a String or a view), dest./comp./jump mnemonics, clean line,
+ *   and line number.
  *
  * Author: Matt Sheehan
  */
 class Parser {
 
-    private static final char NO_COMMAND = 'N';
-    private static final char ADDRESS = 'A';
-    private static final char C_INSTRUCTION = 'C';
-    private static final char LABEL = 'L';
+    private static final char NO_COMMAND = AssemblyLexer.NO_COMMAND;
+    private static final char ADDRESS = AssemblyLexer.ADDRESS;
+    private static final char C_INSTRUCTION = AssemblyLexer.C_INSTRUCTION;
+    private static final char LABEL = AssemblyLexer.LABEL;
 
-    private Scanner inputFile;
-    private String rawAssembly;
-    private String assemblyWithoutWhiteSpace;
+    private final AssemblyLexer lexer;
     private String symbolInAssemblyCode;
-    private String assemblyDestinationPortion;
-    private String assemblyComputationPortion;
-    private String assemblyJumpPortion;
-    private char commandType;
-    private int fileLineNumber = 1;
 
     /**
      * Full constructor, connects the program with the .asm file.
      * @param fileName The name of the .asm file.
+     * @throws UncheckedIOException If the file could not be opened.
      */
     Parser(String fileName) {
         try {
-            inputFile = new Scanner(new FileInputStream(fileName)) ;
-        } catch(FileNotFoundException e) {
-            System.err.println (fileName + " not found. Terminating program.");
-            System.exit(0);
+            lexer = new AssemblyLexer(new FileReader(fileName, StandardCharsets.ISO_8859_1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
     /**
-     * Determines if the file has more commands for parsing. If false, the file is closed.
-     *
-     * @return True if the file has more commands for parsing, false otherwise.
+     * Connects the program with assembly code that is not in a file.
+     * @param input The source of the assembly code.
      */
-    boolean hasMoreCommands() {
-        return inputFile.hasNextLine();
+    Parser(Reader input) {
+        lexer = new AssemblyLexer(input);
     }
 
     /**
-     * Takes in the raw line of assembly, cleans it of comments and whitespaces, and parses the line depending on the
-     * determined command (parses dest., comp., and jump if C-instruction, parses label/address without their symbol
-     * if it is an a-instruction or label). Closes file if there are no more commands.
+     * Connects the program with assembly code of a known (small) length, sizing the read buffer to match.
+     * @param input The source of the assembly code.
+     * @param length The number of characters of assembly code.
      */
-    void advance() {
-        if (hasMoreCommands()) {
-            assemblyDestinationPortion = null;
-            assemblyComputationPortion = null;
-            assemblyJumpPortion = null;
-            symbolInAssemblyCode = null;
-            fileLineNumber++;
-            rawAssembly = inputFile.nextLine();
-            cleanAssemblyCodeOfWhiteSpace();
-            parseAssembly();
-        } else {
-            inputFile.close ( );
-        }
+    Parser(Reader input, int length) {
+        lexer = new AssemblyLexer(input, length + 1);
     }
 
     /**
-     * Takes the raw line and removes tabs, newlines, whitespace, and comments from it and stores the result in
-     * cleanLine.
-     */
-    private void cleanAssemblyCodeOfWhiteSpace() {
-        assemblyWithoutWhiteSpace = rawAssembly.trim();
-        assemblyWithoutWhiteSpace = assemblyWithoutWhiteSpace.replaceAll(" ", "");
-        assemblyWithoutWhiteSpace = assemblyWithoutWhiteSpace.replaceAll("//.*", "");
-    }
-
-    /**
-     * Determines the command type based on the String being empty (no command), or the first character signifying it
-     * is an A-Instruction/Label.
+     * Determines if the file has more commands for parsing. If false, the file is closed.
+     *
+     * @return True if the file has more commands for parsing, false otherwise.
      */
-    private void parseCommandType() {
-        if (assemblyWithoutWhiteSpace == null || assemblyWithoutWhiteSpace.isEmpty()) {
-            commandType = NO_COMMAND;
-        } else if (assemblyWithoutWhiteSpace.charAt(0) == '@') {
-            commandType = ADDRESS;
-        } else if (assemblyWithoutWhiteSpace.charAt(0) == '(') {
-            commandType = LABEL;
-        } else {
-            commandType = C_INSTRUCTION;
-        }
+    boolean hasMoreCommands() {
+        return lexer.hasMoreLines();
     }
 
     /**
-     * Removes portions of the String depending on the command type. If the command is an A-Instruction, the '@' is
-     * removed from the cleanLine. If it is not an A-instruction (i.e. a Label), then the parenthesis are removed.
+     * Takes in the next line of assembly, skipping comments and whitespaces, and finds the portions of the line
+     * depending on the determined command (dest., comp., and jump if C-instruction, label/address without their symbol
+     * if it is an a-instruction or label). Closes file if there are no more commands.
      */
-    private void parseSymbol() {
-        symbolInAssemblyCode = assemblyWithoutWhiteSpace.replaceAll("[()@]", "");
+    void advance() {
+        symbolInAssemblyCode = null;
+        lexer.advance();
     }
 
     /**
-     * Determines the command type and then parses the cleanLine based on said command type. So if the command type is
-     * C, or C-Instruction, the cleanLine is parsed for destination, jump, and computation. If it is an A-Instruction
-     * or a Label, the cleanLines will have their non-vital symbols removed (i.e. '@' and parenthesis).
+     * Returns the parser object's command type.
+     *
+     * @return The parser object's command type.
      */
-    private void parseAssembly() {
-        parseCommandType();
-        if (commandType == C_INSTRUCTION) {
-            parseDestinationPortion();
-            parseComputationPortion();
-            parseJumpPortion();
-        } else if (commandType == ADDRESS || commandType == LABEL) {
-            parseSymbol();
-        }
+    char getCommandType() {
+        return lexer.getCommandType();
     }
 
     /**
-     * Removes the non-destination portions of the cleanLine (i.e. those after the '=') and stores the remaining
-     * String in the destination mnemonic.
+     * Determines if the A-instruction's symbol is a number rather than a label/variable.
+     * @return True if the symbol is a number, false otherwise.
      */
-    private void parseDestinationPortion() {
-        if (assemblyWithoutWhiteSpace.contains("=")) {
-            assemblyDestinationPortion = assemblyWithoutWhiteSpace.replaceAll("=.+", "");
-        } else {
-            assemblyDestinationPortion = "null";
-        }
+    boolean isSymbolNumeric() {
+        return lexer.isNumericSymbol();
     }
 
     /**
-     * Removes the non-jump portions of the cleanLine (i.e. those before the ';') and stores the remaining String in
-     * the jump mnemonic.
+     * Returns the value of the A-instruction's symbol, when it is a number.
+     * @return The value of the symbol (0 to 32767).
+     * @throws AssemblyException If the symbol isn't a valid number, or is too large for an address.
      */
-    private void parseJumpPortion() {
-        if (assemblyWithoutWhiteSpace.contains(";")){
-            assemblyJumpPortion = assemblyWithoutWhiteSpace.replaceAll(".+;", "");
-        } else {
-            assemblyJumpPortion = "null";
-        }
+    int getNumericSymbol() {
+        return lexer.getNumericSymbol();
     }
 
     /**
-     * Removes the non-computation portions of the cleanLine (i.e. those after the ';', and before the '=') and stores
-     * the remaining String in the computation mnemonic.
+     * Encodes the C-instruction into its 16-bit word.
+     * @return The encoded C-instruction.
+     * @throws AssemblyException If the instruction has an unknown mnemonic.
      */
-    private void parseComputationPortion() {
-        assemblyComputationPortion = assemblyWithoutWhiteSpace;
-        assemblyComputationPortion = assemblyComputationPortion.replaceAll(".+;", "");
-        assemblyComputationPortion = assemblyComputationPortion.replaceAll("=.+", "");
+    short encodeCInstruction() {
+        return lexer.encodeCInstruction();
     }
 
     /**
-     * Returns the parser object's command type.
-     *
-     * @return The parser object's command type.
+     * Returns the parser object's symbol.
+     * @return The parser object's symbol (or null if the command is not an A-instruction/label).
      */
-    char getCommandType() {
-        return commandType;
+    String getSymbolInAssemblyCode() {
+        if (symbolInAssemblyCode == null && (getCommandType() == ADDRESS || getCommandType() == LABEL)) {
+            symbolInAssemblyCode = lexer.getSymbol();
+        }
+        return symbolInAssemblyCode;
     }
 
     /**
-     * Returns the parser object's symbol.
-     * @return The parser object's symbol.
+     * Returns the parser object's symbol as a view of the line being parsed, without creating a String. The view
+     * changes when the parser advances.
+     * @return The parser object's symbol as a CharSequence.
      */
-    String getSymbolInAssemblyCode() {
-        return symbolInAssemblyCode;
+    CharSequence getSymbolView() {
+        return lexer.getSymbolView();
     }
 
     /**
      * Returns the parser object's destination mnemonic.
-     * @return The parser object's destination mnemonic.
+     * @return The parser object's destination mnemonic (or null if the command is not a C-instruction).
      */
     String getAssemblyDestinationPortion() {
-        return assemblyDestinationPortion;
+        return (getCommandType() == C_INSTRUCTION) ? lexer.getDestinationMnemonic() : null;
     }
 
     /**
      * Returns the parser object's jump mnemonic.
-     * @return The parser object's jump mnemonic.
+     * @return The parser object's jump mnemonic (or null if the command is not a C-instruction).
      */
     String getAssemblyJumpPortion() {
-        return assemblyJumpPortion;
+        return (getCommandType() == C_INSTRUCTION) ? lexer.getJumpMnemonic() : null;
     }
 
     /**
      * Returns the parser object's computation mnemonic.
-     * @return The parser object's computation mnemonic.
+     * @return The parser object's computation mnemonic (or null if the command is not a C-instruction).
      */
     String getAssemblyComputationPortion() {
-        return assemblyComputationPortion;
-    }
-
-    /**
-     * Returns the parser object's raw line.
-     * @return The parser object's raw line.
-     */
-    String getRawAssembly() {
-        return rawAssembly;
+        return (getCommandType() == C_INSTRUCTION) ? lexer.getComputationMnemonic() : null;
     }
 
     /**
@@ -233,7 +175,7 @@ class Parser {
      * @return The parser object's clean line.
      */
     String getAssemblyWithoutWhiteSpace() {
-        return assemblyWithoutWhiteSpace;
+        return (getCommandType() == NO_COMMAND) ? "" : lexer.getCleanedLine();
     }
 
     /**
@@ -241,6 +183,6 @@ class Parser {
      * @return The parser object's line number.
      */
     int getFileLineNumber() {
-        return fileLineNumber;
+        return lexer.getLineNumber();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,277 @@
+package edu.miracosta.cs220;
+
+import java.util.Arrays;
+
+/**
+ * PeepholeOptimizer.java - Removes instructions whose results are never used, between parsing and encoding.
+ *
+ * Algorithm:
+ *
+ * 1. The whole program is parsed into arrays (the type of each command, its C-instruction word or numeric address,
+ * its symbol, and its line number), so instructions can be removed before any ROM line is given out.
+ *
+ * 2. The instructions are swept in order, tracking what is known about the A and D registers within straight-line
+ * code. Everything is forgotten at labels (the code can be jumped to from elsewhere) and at jumps. Three kinds of
+ * instruction are removed:
+ *    - An A-instruction that loads the value A already holds (e.g. the second @SP of "@SP / M=M+1 / @SP").
+ *    - An A-instruction whose value is replaced (by another A-instruction, or a C-instruction writing A) before
+ *      anything reads A or M or jumps (e.g. the @X of "@X / @Y").
+ *    - A C-instruction that only stores D, if D is stored again before anything reads it.
+ * Removing an instruction can make others removable (a dead "D=M" was the only use of the @X before it), so the
+ * sweep is repeated until nothing changes.
+ *
+ * 3. Labels are given the ROM lines of the instructions that were kept, then variables are given RAM addresses in
+ * the order they first appear in the original program (so removing instructions never moves a variable), and the
+ * kept instructions are encoded.
+ *
+ * Programs must only jump to labels: a jump to a numeric ROM line would land on a different instruction once
+ * instructions before it are removed.
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - COMPUTATION_READS_A/D/M (boolean[]): For every computation field, whether it reads A, D or M.
+ * - UNKNOWN (int): The key of a register whose contents are not known.
+ * - commandTypes (char[]): The type of each command (A, C or L).
+ * - words (short[]): The C-instruction word, or numeric address of an A-instruction (until symbols are resolved).
+ * - symbols (String[]): The symbol of each label and symbolic A-instruction.
+ * - keys (int[]): The value an A-instruction loads: its address if known now, otherwise a number for its symbol.
+ * - lineNumbers (int[]): The line of the .asm file each command was found on.
+ * - removed (boolean[]): Whether each command was removed.
+ * - commandCount (int): The number of commands parsed.
+ * - removedInstructions (int): The number of instructions removed.
+ *
+ * METHODS:
+ *
+ * - translate (Parser, SymbolTable): Parses, optimizes and encodes the program.
+ * - getRemovedInstructions: The number of instructions removed by the last translation.
+ *
+ * Author: Matt Sheehan
+ */
+class PeepholeOptimizer {
+
+    private static final boolean [] COMPUTATION_READS_A = new boolean [128];
+    private static final boolean [] COMPUTATION_READS_D = new boolean [128];
+    private static final boolean [] COMPUTATION_READS_M = new boolean [128];
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static final int DESTINATION_A = 0b100;
+    private static final int DESTINATION_D = 0b010;
+    private static final int DESTINATION_M = 0b001;
+
+    static {
+        for (String mnemonic : CInstructionMapper.computationMnemonics) {
+            int computation = CInstructionMapper.computationBits(mnemonic, 0, mnemonic.length());
+            COMPUTATION_READS_A[computation] = mnemonic.indexOf('A') >= 0;
+            COMPUTATION_READS_D[computation] = mnemonic.indexOf('D') >= 0;
+            COMPUTATION_READS_M[computation] = mnemonic.indexOf('M') >= 0;
+        }
+    }
+
+    private char [] commandTypes = new char [1024];
+    private short [] words = new short [1024];
+    private String [] symbols = new String [1024];
+    private int [] keys = new int [1024];
+    private int [] lineNumbers = new int [1024];
+    private boolean [] removed;
+    private int commandCount = 0;
+    private int removedInstructions = 0;
+
+    /**
+     * Translates the assembly code read by the parser into binary, leaving out the instructions that have no effect.
+     * @param assemblyCodeParser The parser connected to the assembly code.
+     * @param symbolTable The symbol table for generating the address of the symbol given.
+     * @return The encoded instructions.
+     * @throws AssemblyException If the assembly code could not be translated.
+     */
+    WordBuffer translate(Parser assemblyCodeParser, SymbolTable symbolTable) {
+        readCommands(assemblyCodeParser, symbolTable);
+
+        removed = new boolean [commandCount];
+        removedInstructions = 0;
+        int removedInSweep;
+        do {
+            removedInSweep = sweep();
+            removedInstructions += removedInSweep;
+        } while (removedInSweep > 0);
+
+        return encode(symbolTable);
+    }
+
+    /**
+     * Returns the number of instructions the last translation removed.
+     * @return The number of instructions removed.
+     */
+    int getRemovedInstructions() {
+        return removedInstructions;
+    }
+
+    /**
+     * Parses every command of the program into the arrays.
+     * @param assemblyCodeParser The parser connected to the assembly code.
+     * @param symbolTable The symbol table (used to find the addresses of predefined symbols).
+     * @throws AssemblyException If a C-instruction has an unknown mnemonic.
+     */
+    private void readCommands(Parser assemblyCodeParser, SymbolTable symbolTable) {
+        SymbolMap symbolNumbers = new SymbolMap();
+        commandCount = 0;
+
+        while (assemblyCodeParser.hasMoreCommands()) {
+            assemblyCodeParser.advance();
+            char commandType = assemblyCodeParser.getCommandType();
+            if (commandType != 'A' && commandType != 'C' && commandType != 'L') {
+                continue;
+            }
+
+            if (commandCount == commandTypes.length) {
+                grow();
+            }
+            commandTypes[commandCount] = commandType;
+            lineNumbers[commandCount] = assemblyCodeParser.getFileLineNumber();
+            symbols[commandCount] = null;
+
+            if (commandType == 'C') {
+                words[commandCount] = assemblyCodeParser.encodeCInstruction();
+            } else if (commandType == 'L') {
+                symbols[commandCount] = assemblyCodeParser.getSymbolInAssemblyCode();
+            } else if (assemblyCodeParser.isSymbolNumeric()) {
+                words[commandCount] = (short) assemblyCodeParser.getNumericSymbol();
+                keys[commandCount] = assemblyCodeParser.getNumericSymbol();
+            } else {
+                String symbol = assemblyCodeParser.getSymbolInAssemblyCode();
+                int address = symbolTable.getAddress(symbol); // Only predefined symbols are known yet.
+                symbols[commandCount] = symbol;
+                if (address != SymbolTable.NOT_FOUND) {
+                    keys[commandCount] = address;
+                } else {
+                    int symbolNumber = symbolNumbers.putIfAbsent(symbol, symbolNumbers.size());
+                    keys[commandCount] = -1 - ((symbolNumber == SymbolMap.NOT_FOUND) ? symbolNumbers.size() - 1
+                                                                                     : symbolNumber);
+                }
+            }
+            ++commandCount;
+        }
+    }
+
+    /**
+     * Sweeps the program once, removing the instructions found to have no effect.
+     * @return The number of instructions removed.
+     */
+    private int sweep() {
+        int removedInSweep = 0;
+        int valueOfA = UNKNOWN;
+        int pendingALoad = -1;  // The last A-instruction, while nothing has used A since.
+        int pendingDStore = -1; // The last C-instruction that only stores D, while nothing has read D since.
+
+        for (int i = 0; i < commandCount; i++) {
+            if (removed[i]) {
+                continue;
+            }
+
+            if (commandTypes[i] == 'L') {
+                valueOfA = UNKNOWN;
+                pendingALoad = -1;
+                pendingDStore = -1;
+            } else if (commandTypes[i] == 'A') {
+                if (keys[i] == valueOfA) {
+                    removed[i] = true;
+                    ++removedInSweep;
+                    continue;
+                }
+                if (pendingALoad >= 0) {
+                    removed[pendingALoad] = true;
+                    ++removedInSweep;
+                }
+                pendingALoad = i;
+                valueOfA = keys[i];
+            } else {
+                int computation = (words[i] >>> 6) & 0x7F;
+                int destination = (words[i] >>> 3) & 0b111;
+                int jump = words[i] & 0b111;
+                boolean usesA = COMPUTATION_READS_A[computation] || COMPUTATION_READS_M[computation]
+                                || (destination & DESTINATION_M) != 0 || jump != 0;
+
+                if (usesA) {
+                    pendingALoad = -1;
+                }
+                if (COMPUTATION_READS_D[computation]) {
+                    pendingDStore = -1;
+                }
+
+                if ((destination & DESTINATION_D) != 0) {
+                    if (pendingDStore >= 0) {
+                        removed[pendingDStore] = true;
+                        ++removedInSweep;
+                    }
+                    pendingDStore = (destination == DESTINATION_D && jump == 0) ? i : -1;
+                }
+                if ((destination & DESTINATION_A) != 0) {
+                    if (pendingALoad >= 0) {
+                        removed[pendingALoad] = true;
+                        ++removedInSweep;
+                    }
+                    pendingALoad = -1;
+                    valueOfA = UNKNOWN;
+                }
+                if (jump != 0) {
+                    valueOfA = UNKNOWN;
+                    pendingALoad = -1;
+                    pendingDStore = -1;
+                }
+            }
+        }
+        return removedInSweep;
+    }
+
+    /**
+     * Resolves the labels and variables, and encodes the instructions that were kept.
+     * @param symbolTable The symbol table.
+     * @return The encoded instructions.
+     * @throws AssemblyException If a label or symbol has an invalid name, or the kept instructions don't fit in the
+     *                           ROM.
+     */
+    private WordBuffer encode(SymbolTable symbolTable) {
+        int romLine = 0;
+        for (int i = 0; i < commandCount; i++) {
+            if (commandTypes[i] == 'L') {
+                if (romLine == Assembler.ROM_SIZE) {
+                    throw Assembler.labelPastTheRom(lineNumbers[i], symbols[i]);
+                }
+                if (!symbolTable.addSymbol(symbols[i], romLine)) {
+                    throw new AssemblyException(lineNumbers[i], "invalid or predefined label \"" + symbols[i] + "\"");
+                }
+            } else if (!removed[i]) {
+                if (romLine == Assembler.ROM_SIZE) {
+                    throw Assembler.romFull(lineNumbers[i]);
+                }
+                ++romLine;
+            }
+        }
+
+        WordBuffer encodedWords = new WordBuffer(romLine);
+        for (int i = 0; i < commandCount; i++) {
+            if (commandTypes[i] == 'A' && symbols[i] != null) { // Removed ones too, so variables keep their order.
+                int address = symbolTable.getOrAllocateVariable(symbols[i]);
+                if (address == SymbolTable.NOT_FOUND) {
+                    throw new AssemblyException(lineNumbers[i], "invalid symbol \"" + symbols[i] + "\"");
+                }
+                words[i] = (short) address;
+            }
+            if (commandTypes[i] != 'L' && !removed[i]) {
+                encodedWords.add(words[i]);
+            }
+        }
+        return encodedWords;
+    }
+
+    /**
+     * Doubles the room in the arrays.
+     */
+    private void grow() {
+        int capacity = commandTypes.length * 2;
+        commandTypes = Arrays.copyOf(commandTypes, capacity);
+        words = Arrays.copyOf(words, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+    }
+}
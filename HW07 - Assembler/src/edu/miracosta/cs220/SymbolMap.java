@@ -0,0 +1,260 @@
+package edu.miracosta.cs220;
+
+import java.util.Arrays;
+
+/**
+ * SymbolMap.java - An open-addressing hash map from symbol names to int values, which remembers insertion order.
+ *
+ * Names can be looked up as any CharSequence (e.g. a view of the lexer's line buffer), so no String has to be
+ * created to find a symbol; a String is only made the first time a symbol is inserted. Values are plain ints, so
+ * nothing is boxed. Entries are stored in insertion order in parallel arrays, and the hash slots hold the entry
+ * numbers, which also lets the entries be walked in the order they were added.
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - NOT_FOUND (int): Returned by lookups when the symbol is not in the map.
+ * - slots (int[]): The hash table; each slot holds an entry number plus one (0 for an empty slot).
+ * - names (String[]): The symbol of each entry.
+ * - hashes (int[]): The hash code of each entry's symbol (so the table can grow without rehashing Strings).
+ * - values (int[]): The value of each entry.
+ * - size (int): The number of entries.
+ *
+ * METHODS:
+ *
+ * - get (CharSequence): Returns the value of the symbol, or NOT_FOUND.
+ * - put (CharSequence, int): Sets the value of the symbol, returning its previous value (or NOT_FOUND).
+ * - putIfAbsent (CharSequence, int): Returns the symbol's value, adding it with the given value if it is missing.
+ * - replace (CharSequence, int): Sets the value of the symbol only if it is already in the map.
+ * - size/nameAt/valueAt: Walk the entries in insertion order.
+ *
+ * Author: Matt Sheehan
+ */
+class SymbolMap {
+
+    static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private int [] slots;
+    private String [] names;
+    private int [] hashes;
+    private int [] values;
+    private int size = 0;
+
+    /**
+     * Default constructor, starts with room for 64 symbols.
+     */
+    SymbolMap() {
+        this(64);
+    }
+
+    /**
+     * Full constructor.
+     * @param expectedSymbols The number of symbols the map can hold before growing.
+     */
+    SymbolMap(int expectedSymbols) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSymbols, 8) * 2 - 1) * 2; // At most half full.
+        slots = new int [capacity];
+        names = new String [capacity / 2];
+        hashes = new int [capacity / 2];
+        values = new int [capacity / 2];
+    }
+
+    /**
+     * Returns the value of the symbol.
+     * @param name The symbol.
+     * @return The value of the symbol, or NOT_FOUND if it is not in the map.
+     */
+    int get(CharSequence name) {
+        int entry = findEntry(name, hash(name));
+        return (entry < 0) ? NOT_FOUND : values[entry];
+    }
+
+    /**
+     * Sets the value of the symbol, adding the symbol if it is not in the map.
+     * @param name The symbol.
+     * @param value The value.
+     * @return The previous value of the symbol, or NOT_FOUND if it was not in the map.
+     */
+    int put(CharSequence name, int value) {
+        int hash = hash(name);
+        int slot = findSlot(name, hash);
+        if (slots[slot] != 0) {
+            int entry = slots[slot] - 1;
+            int previousValue = values[entry];
+            values[entry] = value;
+            return previousValue;
+        }
+        insert(slot, name, hash, value);
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns the value of the symbol, adding it with the given value if it is not in the map (with a single probe).
+     * @param name The symbol.
+     * @param value The value given to the symbol if it is not in the map.
+     * @return The value the symbol had, or NOT_FOUND if it was just added.
+     */
+    int putIfAbsent(CharSequence name, int value) {
+        int hash = hash(name);
+        int slot = findSlot(name, hash);
+        if (slots[slot] != 0) {
+            return values[slots[slot] - 1];
+        }
+        insert(slot, name, hash, value);
+        return NOT_FOUND;
+    }
+
+    /**
+     * Sets the value of the symbol, only if it is already in the map.
+     * @param name The symbol.
+     * @param value The new value.
+     * @return The previous value of the symbol, or NOT_FOUND if it is not in the map (and was not added).
+     */
+    int replace(CharSequence name, int value) {
+        int entry = findEntry(name, hash(name));
+        if (entry < 0) {
+            return NOT_FOUND;
+        }
+        int previousValue = values[entry];
+        values[entry] = value;
+        return previousValue;
+    }
+
+    /**
+     * Returns the number of symbols in the map.
+     * @return The number of symbols.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the symbol of an entry (entries are numbered in insertion order, starting at 0).
+     * @param entry The entry number.
+     * @return The symbol.
+     */
+    String nameAt(int entry) {
+        return names[entry];
+    }
+
+    /**
+     * Returns the value of an entry (entries are numbered in insertion order, starting at 0).
+     * @param entry The entry number.
+     * @return The value.
+     */
+    int valueAt(int entry) {
+        return values[entry];
+    }
+
+    /**
+     * Finds the entry holding the symbol.
+     * @param name The symbol.
+     * @param hash The symbol's hash code.
+     * @return The entry number, or -1 if the symbol is not in the map.
+     */
+    private int findEntry(CharSequence name, int hash) {
+        int slot = findSlot(name, hash);
+        return slots[slot] - 1;
+    }
+
+    /**
+     * Probes the table (linearly) for the slot holding the symbol, or the empty slot it would be placed in.
+     * @param name The symbol.
+     * @param hash The symbol's hash code.
+     * @return The slot.
+     */
+    private int findSlot(CharSequence name, int hash) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        while (slots[slot] != 0) {
+            int entry = slots[slot] - 1;
+            if (hashes[entry] == hash && contentEquals(names[entry], name)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Adds a new entry in the given (empty) slot, growing the table if it becomes more than half full.
+     * @param slot The empty slot found for the symbol.
+     * @param name The symbol.
+     * @param hash The symbol's hash code.
+     * @param value The value.
+     */
+    private void insert(int slot, CharSequence name, int hash, int value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name.toString();
+        hashes[size] = hash;
+        values[size] = value;
+        slots[slot] = ++size;
+
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+    }
+
+    /**
+     * Rebuilds the hash table with the given number of slots.
+     * @param capacity The new number of slots (a power of two).
+     */
+    private void rehash(int capacity) {
+        int mask = capacity - 1;
+        slots = new int [capacity];
+        for (int entry = 0; entry < size; entry++) {
+            int slot = spread(hashes[entry]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    /**
+     * Computes the hash code of the symbol (the same as String.hashCode, which Strings cache).
+     * @param name The symbol.
+     * @return The hash code.
+     */
+    private static int hash(CharSequence name) {
+        if (name instanceof String) {
+            return name.hashCode();
+        }
+
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes the high bits of the hash code into the low bits, which choose the slot.
+     * @param hash The hash code.
+     * @return The mixed hash code.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Determines if the String has the same characters as the CharSequence.
+     * @param name The String.
+     * @param other The CharSequence.
+     * @return True if the characters are the same, false otherwise.
+     */
+    private static boolean contentEquals(String name, CharSequence other) {
+        if (name.length() != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
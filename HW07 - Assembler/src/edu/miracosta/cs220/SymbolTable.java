@@ -1,56 +1,69 @@
 package edu.miracosta.cs220;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * SymbolTable.java - The class for managing symbols and their respective address.
  *
+ * Symbols live in two layers: the predefined symbols (R0-R15, SP, LCL, ARG, THIS, THAT, SCREEN, KBD), which are
+ * loaded once into a shared table that is never changed afterwards, and the labels/variables of the program being
+ * assembled, which are kept per instance. Both layers are SymbolMaps, so symbols can be looked up straight from the
+ * lexer's line buffer and addresses are never boxed.
+ *
  * INSTANCE VARIABLES:
  *
- * - symbolTable (hash-map): Stores the predefined symbols (and their addresses), as well as any added symbols.
- * - reservedSymbols (String[]): An array holding predefined symbols to be loaded into the symbolTable hash-map.
- * - reservedSymbolRegisters (int[]): An array holding the register locations of predefined symbols to be loaded
- *   into the symbolTable hash-map.
+ * - NOT_FOUND (int): Returned when a symbol has no address.
+ * - INVALID (int): Stored for a name found to be invalid, so the name is never validated again.
+ * - PREDEFINED_SYMBOLS (SymbolMap): The predefined symbols and their addresses (shared, never modified).
+ * - reservedSymbols (String[]): An array holding predefined symbols to be loaded into the predefined table.
+ * - reservedSymbolRegisters (int[]): An array holding the register locations of the predefined symbols.
+ * - symbolTable (SymbolMap): The labels and variables added to this table, in the order they were added.
+ * - nextVariableAddress (int): The RAM address the next variable will be given (starting at 16).
  *
  * METHODS:
  *
- * - Full constructor: Initializes the predefined symbols/registers into the symbolTable hash-map.
- * - addEntry: Adds entry if not already defined and returns true, false otherwise (symbol exists/has invalid name).
- * - contains: Returns true if the symbol is defined within the symbolTable hash-map, false otherwise.
- * - getAddress: Returns the address corresponding to the symbol argument given.
- * - isValidName: Returns true if the symbol argument has a valid name, false otherwise.
+ * - addSymbol: Adds a label/address pair if the symbol has a valid name (and isn't predefined).
+ * - contains: Returns true if the symbol is defined (predefined or added), false otherwise.
+ * - getAddress: Returns the address corresponding to the symbol argument given, or NOT_FOUND.
+ * - getOrAllocateVariable: Returns the symbol's address, making it the next variable if it is not yet defined.
+ * - getDefinedSymbols: Returns a copy of the labels/variables that were added, with their addresses.
+ * - isValidSymbolName: Returns true if the symbol argument has a valid name, false otherwise.
  *
  * Author: Matt Sheehan
  */
 class SymbolTable {
 
-    private static final Map <String, Integer> symbolTable = new HashMap <> ();
+    static final int NOT_FOUND = SymbolMap.NOT_FOUND;
+    static final int FIRST_VARIABLE_ADDRESS = 16;
+
+    private static final int INVALID = NOT_FOUND + 1; // Not an address, and not NOT_FOUND.
+
     private static final String [] reservedSymbols = { "SP", "LCL", "ARG", "THIS", "THAT", "SCREEN", "KBD" };
     private static final int [] reservedSymbolRegisters = { 0, 1, 2, 3, 4, 16384, 24576 };
+    private static final SymbolMap PREDEFINED_SYMBOLS = new SymbolMap(16 + reservedSymbols.length);
 
-    /**
-     * Full constructor, initializes the symbol table hash-map with all pre-defined symbols.
-     */
-    SymbolTable () {
+    static {
         for (int i = 0; i < 16; i++)
-            symbolTable.put (("R" + i), i);
+            PREDEFINED_SYMBOLS.put (("R" + i), i);
 
         for (int i = 0; i < reservedSymbols.length; i++)
-            symbolTable.put (reservedSymbols [i], reservedSymbolRegisters [i]);
+            PREDEFINED_SYMBOLS.put (reservedSymbols [i], reservedSymbolRegisters [i]);
     }
 
+    private final SymbolMap symbolTable = new SymbolMap();
+    private int nextVariableAddress = FIRST_VARIABLE_ADDRESS;
+
     /**
-     * Adds a symbol/address pair to the symbol table hash-map (if not already defined, and symbol has valid name).
+     * Adds a symbol/address pair to the symbol table (if the symbol has a valid name and is not predefined). A
+     * symbol that was already added is given the new address.
      * @param symbolToBeAdded The symbol to be added.
      * @param indexToAddTheSymbolAt The register number.
+     * @return True if the symbol was added, false if its name is invalid or it is predefined.
      */
-    void addSymbol(String symbolToBeAdded, int indexToAddTheSymbolAt) {
-        if (isValidSymbolName(symbolToBeAdded)) {
-            symbolTable.put(symbolToBeAdded, indexToAddTheSymbolAt);
+    boolean addSymbol(CharSequence symbolToBeAdded, int indexToAddTheSymbolAt) {
+        if (!isValidSymbolName(symbolToBeAdded) || PREDEFINED_SYMBOLS.get(symbolToBeAdded) != NOT_FOUND) {
+            return false;
         }
+        symbolTable.put(symbolToBeAdded, indexToAddTheSymbolAt);
+        return true;
     }
 
     /**
@@ -58,29 +71,82 @@ class SymbolTable {
      * @param symbolToBeChecked The symbol to be checked for existence.
      * @return True if the symbol is in the symbol table, false otherwise.
      */
-    boolean contains(String symbolToBeChecked) {
-        return symbolTable.containsKey(symbolToBeChecked);
+    boolean contains(CharSequence symbolToBeChecked) {
+        return getAddress(symbolToBeChecked) != NOT_FOUND;
     }
 
     /**
      * Returns the address of valid symbol arguments.
      * @param symbolToBeCheckedForAddress The symbol to be checked for an address.
-     * @return Returns the symbol argument's address if it is in the symbol table, null otherwise.
+     * @return Returns the symbol argument's address if it is in the symbol table, NOT_FOUND otherwise.
      */
-    int getAddress(String symbolToBeCheckedForAddress) {
-        return symbolTable.getOrDefault(symbolToBeCheckedForAddress, null);
+    int getAddress(CharSequence symbolToBeCheckedForAddress) {
+        int address = PREDEFINED_SYMBOLS.get(symbolToBeCheckedForAddress);
+        if (address == NOT_FOUND) {
+            address = symbolTable.get(symbolToBeCheckedForAddress);
+        }
+        return (address == INVALID) ? NOT_FOUND : address;
+    }
+
+    /**
+     * Returns the address of the symbol; if it is not defined, it becomes a variable at the next free RAM address.
+     * The lookup and the allocation share one probe of the table.
+     * @param symbol The symbol of an A-instruction.
+     * @return The symbol's address, or NOT_FOUND if the symbol is not defined and has an invalid name.
+     */
+    int getOrAllocateVariable(CharSequence symbol) {
+        int address = PREDEFINED_SYMBOLS.get(symbol);
+        if (address != NOT_FOUND) {
+            return address;
+        }
+
+        address = symbolTable.putIfAbsent(symbol, nextVariableAddress);
+        if (address == INVALID) {
+            return NOT_FOUND;
+        } else if (address != NOT_FOUND) {
+            return address;
+        } else if (!isValidSymbolName(symbol)) {
+            symbolTable.put(symbol, INVALID); // Remembered as invalid, so it is never validated again.
+            return NOT_FOUND;
+        }
+        return nextVariableAddress++;
+    }
+
+    /**
+     * Returns the labels and variables added to this table (not the predefined symbols), with their addresses.
+     * @return A copy of the symbols, in the order they were added.
+     */
+    SymbolMap getDefinedSymbols() {
+        SymbolMap definedSymbols = new SymbolMap(symbolTable.size());
+        for (int i = 0; i < symbolTable.size(); i++) {
+            if (symbolTable.valueAt(i) != INVALID) { // Skip the names remembered as invalid.
+                definedSymbols.put(symbolTable.nameAt(i), symbolTable.valueAt(i));
+            }
+        }
+        return definedSymbols;
     }
 
     /**
      * Determines if the symbol argument has a valid name. Valid names will begin with the choice of lower/uppercase
-     * letters, period, underscore, or dollar sign. Subsequent characters follow the same rule with the addition of
-     * numbers.
+     * letters, period, underscore, colon, or dollar sign. Subsequent characters follow the same rule with the addition
+     * of numbers.
      * @param symbolToBeCheckedForValidName The symbol to be checked for name validity.
      * @return True if the symbol has a valid name, false otherwise.
      */
-    private static boolean isValidSymbolName(String symbolToBeCheckedForValidName) {
-        Pattern validNamePattern = Pattern.compile("[a-zA-Z_.$][a-zA-Z0-9_.$]*");
-        Matcher validNameChecker = validNamePattern.matcher(symbolToBeCheckedForValidName);
-        return validNameChecker.matches();
+    static boolean isValidSymbolName(CharSequence symbolToBeCheckedForValidName) {
+        if (symbolToBeCheckedForValidName.length() == 0
+            || Character.isDigit(symbolToBeCheckedForValidName.charAt(0))) {
+            return false;
+        }
+
+        for (int i = 0; i < symbolToBeCheckedForValidName.length(); i++) {
+            char c = symbolToBeCheckedForValidName.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                            || c == '_' || c == '.' || c == '$' || c == ':';
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,95 @@
+package edu.miracosta.cs220;
+
+import java.util.Arrays;
+
+/**
+ * WordBuffer.java - A growable array of encoded 16-bit instructions (the ROM image being assembled).
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - words (short[]): The encoded instructions; grows as instructions are added.
+ * - size (int): The number of instructions added so far.
+ *
+ * METHODS:
+ *
+ * - add (int): Adds an instruction to the end of the buffer.
+ * - get (int)/set (int, int): Reads/overwrites the instruction at a ROM line (as an unsigned 16-bit value).
+ * - size: The number of instructions in the buffer.
+ * - getWords: The backing array (only the first size() entries are instructions).
+ * - toArray: A copy of the instructions, trimmed to size.
+ *
+ * Author: Matt Sheehan
+ */
+class WordBuffer {
+
+    private short [] words;
+    private int size = 0;
+
+    /**
+     * Default constructor, starts with room for 1024 instructions.
+     */
+    WordBuffer() {
+        this(1024);
+    }
+
+    /**
+     * Full constructor.
+     * @param initialCapacity The number of instructions the buffer can hold before growing.
+     */
+    WordBuffer(int initialCapacity) {
+        words = new short [Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * Adds an instruction to the end of the buffer.
+     * @param word The encoded instruction (only the low 16 bits are kept).
+     */
+    void add(int word) {
+        if (size == words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        words[size++] = (short) word;
+    }
+
+    /**
+     * Returns the instruction at the given ROM line.
+     * @param romLine The ROM line.
+     * @return The instruction as an unsigned 16-bit value.
+     */
+    int get(int romLine) {
+        return words[romLine] & 0xFFFF;
+    }
+
+    /**
+     * Overwrites the instruction at the given ROM line.
+     * @param romLine The ROM line.
+     * @param word The encoded instruction (only the low 16 bits are kept).
+     */
+    void set(int romLine, int word) {
+        words[romLine] = (short) word;
+    }
+
+    /**
+     * Returns the number of instructions in the buffer.
+     * @return The number of instructions.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the backing array, only the first size() entries of which are instructions.
+     * @return The backing array.
+     */
+    short [] getWords() {
+        return words;
+    }
+
+    /**
+     * Returns a copy of the instructions, trimmed to the number of instructions in the buffer.
+     * @return The instructions.
+     */
+    short [] toArray() {
+        return Arrays.copyOf(words, size);
+    }
+}
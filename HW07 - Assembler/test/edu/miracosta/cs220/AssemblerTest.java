@@ -0,0 +1,187 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * AssemblerTest.java - Checks that the single-pass assembler (and the HackAssembler API, which uses it) encodes
+ * exactly the same words as the two-pass assembler, on random programs full of forward and backward references.
+ *
+ * Author: Matt Sheehan
+ */
+class AssemblerTest {
+
+    private static final String [] PREDEFINED_SYMBOLS = { "SP", "LCL", "ARG", "THIS", "THAT", "R0", "R13", "R15",
+                                                          "SCREEN", "KBD" };
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @ParameterizedTest
+    @ValueSource(longs = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 })
+    void singlePassMatchesTwoPasses(long seed) throws IOException {
+        String assemblyCode = generateAssembly(new Random(seed), 3000);
+        Path assemblyFile = temporaryDirectory.resolve("Random" + seed + ".asm");
+        Files.writeString(assemblyFile, assemblyCode);
+
+        SymbolTable symbolTable = new SymbolTable();
+        Assembler.addSymbolsToTheSymbolTable(assemblyFile.toString(), symbolTable);
+        short [] twoPasses = Assembler.translateAssembly(assemblyFile.toString(), symbolTable).toArray();
+
+        WordBuffer singlePass = Assembler.translateAssemblyInSinglePass(assemblyFile.toString(), new SymbolTable());
+        assertArrayEquals(twoPasses, singlePass.toArray());
+        assertArrayEquals(twoPasses, HackAssembler.assemble(assemblyCode));
+        assertArrayEquals(twoPasses, HackAssembler.assemble(new StringReader(assemblyCode)));
+    }
+
+    @Test
+    void programsThatFillTheRomAreAssembled() throws IOException {
+        short [] twoPasses = assembleInEveryWay(writeForwardReferences(Assembler.ROM_SIZE - 1), null);
+        assertEquals(Assembler.ROM_SIZE - 1, twoPasses.length);
+        assertEquals(Assembler.ROM_SIZE - 1, twoPasses[0]); // The label is on the last ROM line.
+    }
+
+    @Test
+    void labelsPastTheEndOfTheRomAreRejected() throws IOException {
+        String error = "Line " + (Assembler.ROM_SIZE + 1) + ": the label \"END\" is past the end of the ROM";
+        assembleInEveryWay(writeForwardReferences(Assembler.ROM_SIZE), error);
+    }
+
+    @Test
+    void programsLargerThanTheRomAreRejected() throws IOException {
+        Path assemblyFile = writeForwardReferences(70000); // Past 65535, where the single pass used to hang.
+        String error = "Line " + (Assembler.ROM_SIZE + 1) + ": the program has more than the " + Assembler.ROM_SIZE
+                       + " instructions the ROM holds";
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> assembleInEveryWay(assemblyFile, error));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "@32768", "@40000", "@70000", "@99999999999", "@12x", "@1.5" })
+    void numbersThatAreNotAddressesAreRejected(String aInstruction) {
+        String assemblyCode = "@0\nD=A\n" + aInstruction + "\n";
+        AssemblyException e = assertThrows(AssemblyException.class, () -> HackAssembler.assemble(assemblyCode));
+        assertEquals(3, e.getLineNumber());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "@0", "@32767", "@00007" })
+    void numbersThatAreAddressesAreEncoded(String aInstruction) {
+        short [] words = HackAssembler.assemble(aInstruction);
+        assertEquals(Integer.parseInt(aInstruction.substring(1)), words[0]);
+    }
+
+    /**
+     * Writes a program of forward jumps to a label at its end (which the optimizer can't remove).
+     * @param instructions The number of instructions.
+     * @return The .asm file.
+     * @throws IOException If the file could not be written.
+     */
+    private Path writeForwardReferences(int instructions) throws IOException {
+        StringBuilder assemblyCode = new StringBuilder();
+        for (int i = 0; i < instructions; i++) {
+            assemblyCode.append((i % 2 == 0) ? "@END\n" : "0;JMP\n");
+        }
+        Path assemblyFile = temporaryDirectory.resolve("Forward" + instructions + ".asm");
+        Files.writeString(assemblyFile, assemblyCode.append("(END)\n"));
+        return assemblyFile;
+    }
+
+    /**
+     * Assembles a file with the two-pass and single-pass assemblers, HackAssembler and the optimizer, and checks that
+     * they all give the same words, or all fail with the same error.
+     * @param assemblyFile The .asm file.
+     * @param error The error expected (null if the program should be assembled).
+     * @return The words (null if the program was rejected).
+     * @throws IOException If the file could not be read.
+     */
+    private static short [] assembleInEveryWay(Path assemblyFile, String error) throws IOException {
+        String assemblyCode = Files.readString(assemblyFile);
+        String fileName = assemblyFile.toString();
+        if (error != null) {
+            assertEquals(error, assertThrows(AssemblyException.class, () -> {
+                Assembler.addSymbolsToTheSymbolTable(fileName, new SymbolTable());
+            }).getMessage());
+            assertEquals(error, assertThrows(AssemblyException.class, () -> {
+                Assembler.translateAssemblyInSinglePass(fileName, new SymbolTable());
+            }).getMessage());
+            assertEquals(error, assertThrows(AssemblyException.class, () -> {
+                HackAssembler.assemble(assemblyCode);
+            }).getMessage());
+            assertEquals(error, assertThrows(AssemblyException.class, () -> {
+                new PeepholeOptimizer().translate(new Parser(fileName), new SymbolTable());
+            }).getMessage());
+            return null;
+        }
+
+        SymbolTable symbolTable = new SymbolTable();
+        Assembler.addSymbolsToTheSymbolTable(fileName, symbolTable);
+        short [] twoPasses = Assembler.translateAssembly(fileName, symbolTable).toArray();
+        assertArrayEquals(twoPasses, Assembler.translateAssemblyInSinglePass(fileName, new SymbolTable()).toArray());
+        assertArrayEquals(twoPasses, HackAssembler.assemble(assemblyCode));
+        assertArrayEquals(twoPasses, new PeepholeOptimizer().translate(new Parser(fileName), new SymbolTable())
+                                                            .toArray());
+        return twoPasses;
+    }
+
+    /**
+     * Generates a random program: labels (some next to each other, some never used) referenced before and after they
+     * are defined, variables, numbers, predefined symbols, C-instructions, comments and blank lines.
+     * @param random The random numbers.
+     * @param lines The number of lines to generate.
+     * @return The program.
+     */
+    private static String generateAssembly(Random random, int lines) {
+        StringBuilder assemblyCode = new StringBuilder();
+        int labelCount = lines / 10;
+        boolean [] defined = new boolean [labelCount];
+        for (int i = 0; i < lines; i++) {
+            switch (random.nextInt(12)) {
+                case 0 -> {
+                    int label = random.nextInt(labelCount);
+                    if (!defined[label]) {
+                        defined[label] = true;
+                        assemblyCode.append("(L").append(label).append(")\n");
+                    }
+                }
+                case 1, 2 -> assemblyCode.append("@L").append(random.nextInt(labelCount)).append('\n');
+                case 3 -> assemblyCode.append("  @var.").append(random.nextInt(50)).append("  // A variable.\n");
+                case 4 -> assemblyCode.append("@").append(random.nextInt(32768)).append('\n');
+                case 5 -> assemblyCode.append("@").append(PREDEFINED_SYMBOLS[random.nextInt(PREDEFINED_SYMBOLS.length)])
+                                      .append('\n');
+                case 6 -> assemblyCode.append(random.nextBoolean() ? "// Comment\n" : "\n");
+                default -> {
+                    String [] destinations = CInstructionMapper.destinationMnemonics;
+                    String [] computations = CInstructionMapper.computationMnemonics;
+                    String [] jumps = CInstructionMapper.jumpMnemonics;
+                    if (random.nextBoolean()) {
+                        assemblyCode.append(destinations[1 + random.nextInt(destinations.length - 1)]).append('=');
+                    }
+                    assemblyCode.append(computations[random.nextInt(computations.length)]);
+                    if (random.nextInt(3) == 0) {
+                        assemblyCode.append(';').append(jumps[1 + random.nextInt(jumps.length - 1)]);
+                    }
+                    assemblyCode.append('\n');
+                }
+            }
+        }
+        for (int label = 0; label < labelCount; label++) { // The rest are defined at the end.
+            if (!defined[label]) {
+                assemblyCode.append("(L").append(label).append(")\n");
+            }
+        }
+        return assemblyCode.toString();
+    }
+}
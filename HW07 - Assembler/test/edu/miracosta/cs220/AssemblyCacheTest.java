@@ -0,0 +1,152 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * AssemblyCacheTest.java - Checks that the cache counts its hits and misses, gives back exactly what was assembled,
+ * and assembles the file again when its contents or the optimize flag change, when asked to rebuild, or when the
+ * entry is damaged.
+ *
+ * Author: Matt Sheehan
+ */
+class AssemblyCacheTest {
+
+    private static final String MAX = "@R0\nD=M\n@R1\nD=D-M\n@END\nD;JGT\n(END)\n@END\n0;JMP\n@x\nM=1\n@x\nM=0\n";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private Path cacheDirectory;
+    private String assemblyFile;
+
+    @BeforeEach
+    void writeProgram() throws IOException {
+        cacheDirectory = temporaryDirectory.resolve("cache");
+        assemblyFile = Files.writeString(temporaryDirectory.resolve("Max.asm"), MAX).toString();
+    }
+
+    @Test
+    void unchangedFilesAreHits() throws IOException {
+        AssemblyCache cache = new AssemblyCache(cacheDirectory, false);
+        AssembledProgram assembled = cache.assemble(assemblyFile, false);
+        assertCounts(cache, 0, 1);
+        assertArrayEquals(HackAssembler.assemble(MAX), assembled.getWords());
+
+        AssembledProgram cached = cache.assemble(assemblyFile, false);
+        assertCounts(cache, 1, 1);
+        assertSamePrograms(assembled, cached);
+
+        AssemblyCache reopened = new AssemblyCache(cacheDirectory, false); // The entries outlive the cache object.
+        assertSamePrograms(assembled, reopened.assemble(assemblyFile, false));
+        assertCounts(reopened, 1, 0);
+    }
+
+    @Test
+    void changedFilesAreMisses() throws IOException {
+        AssemblyCache cache = new AssemblyCache(cacheDirectory, false);
+        cache.assemble(assemblyFile, false);
+        Files.writeString(Path.of(assemblyFile), MAX + "D=0\n");
+        assertEquals(HackAssembler.assemble(MAX).length + 1, cache.assemble(assemblyFile, false).getWords().length);
+        assertCounts(cache, 0, 2);
+
+        Files.writeString(Path.of(assemblyFile), MAX); // The first entry is still there.
+        cache.assemble(assemblyFile, false);
+        assertCounts(cache, 1, 2);
+    }
+
+    @Test
+    void changingTheOptimizeFlagIsAMiss() throws IOException {
+        AssemblyCache cache = new AssemblyCache(cacheDirectory, false);
+        AssembledProgram unoptimized = cache.assemble(assemblyFile, false);
+        AssembledProgram optimized = cache.assemble(assemblyFile, true);
+        assertCounts(cache, 0, 2);
+        assertEquals(0, unoptimized.getRemovedInstructions());
+        assertEquals(unoptimized.getWords().length - optimized.getRemovedInstructions(),
+                     optimized.getWords().length);
+        assertEquals(1, optimized.getRemovedInstructions()); // The second @x (A already holds x).
+
+        assertSamePrograms(optimized, cache.assemble(assemblyFile, true));
+        assertSamePrograms(unoptimized, cache.assemble(assemblyFile, false));
+        assertCounts(cache, 2, 2);
+    }
+
+    @Test
+    void rebuildingAssemblesEveryFileButStillStoresIt() throws IOException {
+        new AssemblyCache(cacheDirectory, false).assemble(assemblyFile, false);
+
+        AssemblyCache rebuilding = new AssemblyCache(cacheDirectory, true);
+        rebuilding.assemble(assemblyFile, false);
+        rebuilding.assemble(assemblyFile, false);
+        assertCounts(rebuilding, 0, 2);
+
+        AssemblyCache cache = new AssemblyCache(cacheDirectory, false);
+        cache.assemble(assemblyFile, false);
+        assertCounts(cache, 1, 0);
+    }
+
+    @Test
+    void damagedEntriesAreMisses() throws IOException {
+        AssemblyCache cache = new AssemblyCache(cacheDirectory, false);
+        AssembledProgram assembled = cache.assemble(assemblyFile, false);
+        try (Stream <Path> entries = Files.list(cacheDirectory)) {
+            for (Path entry : (Iterable <Path>) entries::iterator) {
+                Files.write(entry, new byte [] { 0x48, 0x41 });
+            }
+        }
+        assertSamePrograms(assembled, cache.assemble(assemblyFile, false));
+        assertCounts(cache, 0, 2);
+        assertSamePrograms(assembled, cache.assemble(assemblyFile, false)); // The entry was written again.
+        assertCounts(cache, 1, 2);
+    }
+
+    @Test
+    void batchAssemblyUsesTheCache() throws IOException {
+        String [] args = { "--cache", cacheDirectory.toString(), assemblyFile };
+        assertEquals(BatchAssembler.EXIT_SUCCESS, BatchAssembler.run(args));
+        byte [] hackFile = Files.readAllBytes(temporaryDirectory.resolve("Max.hack"));
+        Files.delete(temporaryDirectory.resolve("Max.hack"));
+
+        assertEquals(BatchAssembler.EXIT_SUCCESS, BatchAssembler.run(args)); // A hit still writes the .hack file.
+        assertArrayEquals(hackFile, Files.readAllBytes(temporaryDirectory.resolve("Max.hack")));
+        assertEquals(BatchAssembler.EXIT_SUCCESS, BatchAssembler.run(new String [] { "--rebuild", args[0], args[1],
+                                                                                      args[2] }));
+        assertArrayEquals(hackFile, Files.readAllBytes(temporaryDirectory.resolve("Max.hack")));
+    }
+
+    /**
+     * Checks the number of hits and misses of the cache.
+     * @param cache The cache.
+     * @param hits The number of hits expected.
+     * @param misses The number of misses expected.
+     */
+    private static void assertCounts(AssemblyCache cache, int hits, int misses) {
+        assertEquals(hits, cache.getHits(), "hits");
+        assertEquals(misses, cache.getMisses(), "misses");
+    }
+
+    /**
+     * Checks that two programs have the same words, symbols and number of removed instructions.
+     * @param expected The program expected.
+     * @param actual The program given.
+     */
+    private static void assertSamePrograms(AssembledProgram expected, AssembledProgram actual) {
+        assertArrayEquals(expected.getWords(), actual.getWords());
+        assertEquals(expected.getRemovedInstructions(), actual.getRemovedInstructions());
+        SymbolMap expectedSymbols = expected.getSymbols();
+        SymbolMap actualSymbols = actual.getSymbols();
+        assertEquals(expectedSymbols.size(), actualSymbols.size());
+        for (int i = 0; i < expectedSymbols.size(); i++) {
+            assertEquals(expectedSymbols.nameAt(i), actualSymbols.nameAt(i));
+            assertEquals(expectedSymbols.valueAt(i), actualSymbols.valueAt(i));
+        }
+    }
+}
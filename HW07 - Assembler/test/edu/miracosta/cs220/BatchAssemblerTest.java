@@ -0,0 +1,82 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * BatchAssemblerTest.java - Checks the exit status of the batch assembler: 0 when every file is assembled, 1 when
+ * any file fails (the others are still assembled) and 2 when the command line is wrong (nothing is assembled).
+ *
+ * Author: Matt Sheehan
+ */
+class BatchAssemblerTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private Path add;
+    private Path max;
+
+    @BeforeEach
+    void writeProjects() throws IOException {
+        Files.createDirectories(temporaryDirectory.resolve("project/sub"));
+        add = Files.writeString(temporaryDirectory.resolve("project/Add.asm"), "@2\nD=A\n@3\nD=D+A\n@0\nM=D\n");
+        max = Files.writeString(temporaryDirectory.resolve("project/sub/Max.asm"),
+                                "@R0\nD=M\n@R1\nD=D-M\n@END\nD;JGT\n(END)\n@END\n0;JMP\n");
+        Files.writeString(temporaryDirectory.resolve("project/Notes.txt"), "Not assembly.\n");
+    }
+
+    @Test
+    void directoriesAreSearchedInSortedOrder() {
+        assertEquals(List.of(add.toString(), max.toString()),
+                     BatchAssembler.findAssemblyFiles(List.of(temporaryDirectory.resolve("project").toString())));
+    }
+
+    @Test
+    void assembledFilesExitWithSuccess() throws IOException {
+        String project = temporaryDirectory.resolve("project").toString();
+        assertEquals(BatchAssembler.EXIT_SUCCESS, BatchAssembler.run(new String [] { "--threads", "2", project }));
+        assertTrue(Files.exists(temporaryDirectory.resolve("project/Add.hack")));
+        assertTrue(Files.exists(temporaryDirectory.resolve("project/sub/Max.hack")));
+
+        assertEquals(BatchAssembler.EXIT_SUCCESS, BatchAssembler.run(new String [] { "--binary", "--optimize",
+                                                                                      add.toString() }));
+        assertArrayEquals(new byte [] { 0x02, 0x00, 0x10, (byte) 0xEC }, // @2, D=A
+                          Arrays.copyOf(Files.readAllBytes(temporaryDirectory.resolve("project/Add.bin")), 4));
+    }
+
+    @Test
+    void anyFailedFileExitsWithFailure() throws IOException {
+        Path broken = Files.writeString(temporaryDirectory.resolve("project/Broken.asm"), "@0\nD=Q\n");
+        String project = temporaryDirectory.resolve("project").toString();
+        assertEquals(BatchAssembler.EXIT_FAILURE, BatchAssembler.run(new String [] { project }));
+        assertTrue(Files.exists(temporaryDirectory.resolve("project/Add.hack"))); // The other files are assembled.
+        assertTrue(Files.exists(temporaryDirectory.resolve("project/sub/Max.hack")));
+        assertFalse(Files.exists(temporaryDirectory.resolve("project/Broken.hack")));
+
+        Files.delete(broken);
+        String missing = temporaryDirectory.resolve("Missing.asm").toString();
+        assertEquals(BatchAssembler.EXIT_FAILURE, BatchAssembler.run(new String [] { add.toString(), missing }));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "--unknown", "--threads 0", "--threads -1", "--threads many", "--threads", "--cache" })
+    void wrongCommandLinesExitWithUsage(String flags) {
+        String [] args = (add + " " + flags).split(" ");
+        assertEquals(BatchAssembler.EXIT_USAGE, BatchAssembler.run(args));
+        assertFalse(Files.exists(temporaryDirectory.resolve("project/Add.hack")));
+    }
+}
@@ -0,0 +1,67 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * CInstructionMapperTest.java - Checks the words of a few C-instructions, and that an unknown mnemonic is reported
+ * with the line it is on (counting comments and blank lines) by the mapper and by every way of assembling a file.
+ *
+ * Author: Matt Sheehan
+ */
+class CInstructionMapperTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @ParameterizedTest
+    @CsvSource({ "D=M, 1111110000010000", "0;JMP, 1110101010000111", "AM=M+1, 1111110111101000",
+                 "D;JGT, 1110001100000001", "AMD=D|A;JNE, 1110010101111101", "M=!M, 1111110001001000" })
+    void instructionsAreEncoded(String instruction, String word) {
+        assertEquals((short) Integer.parseInt(word, 2), CInstructionMapper.encode(instruction, 1));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = { "D=M+2 | unknown computation mnemonic \"M+2\"",
+                                          "X=D | unknown destination mnemonic \"X\"",
+                                          "0;JUMP | unknown jump mnemonic \"JUMP\"",
+                                          "DA=1 | unknown destination mnemonic \"DA\"" })
+    void unknownMnemonicsAreReportedWithTheirLine(String instruction, String error) throws IOException {
+        AssemblyException e = assertThrows(AssemblyException.class, () -> CInstructionMapper.encode(instruction, 7));
+        assertEquals(7, e.getLineNumber());
+        assertEquals("Line 7: " + error, e.getMessage());
+
+        String assemblyCode = "// The line numbers count comments\n\n@R0\nD=M\n(LOOP)\n  " + instruction
+                              + "  // and blank lines.\n@LOOP\n0;JMP\n";
+        Path assemblyFile = temporaryDirectory.resolve("Unknown.asm");
+        Files.writeString(assemblyFile, assemblyCode);
+        String fileName = assemblyFile.toString();
+        String expected = "Line 6: " + error;
+
+        assertEquals(expected, assertThrows(AssemblyException.class, () -> {
+            SymbolTable symbolTable = new SymbolTable();
+            Assembler.addSymbolsToTheSymbolTable(fileName, symbolTable);
+            Assembler.translateAssembly(fileName, symbolTable);
+        }).getMessage());
+        assertEquals(expected, assertThrows(AssemblyException.class, () -> {
+            Assembler.translateAssemblyInSinglePass(fileName, new SymbolTable());
+        }).getMessage());
+        assertEquals(expected, assertThrows(AssemblyException.class, () -> {
+            HackAssembler.assemble(assemblyCode);
+        }).getMessage());
+        assertEquals(expected, assertThrows(AssemblyException.class, () -> {
+            HackAssembler.assemble(new StringReader(assemblyCode));
+        }).getMessage());
+        assertEquals(expected, assertThrows(AssemblyException.class, () -> {
+            new PeepholeOptimizer().translate(new Parser(fileName), new SymbolTable());
+        }).getMessage());
+    }
+}
@@ -0,0 +1,87 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * HackFileWriterTest.java - Checks that the words are written as lines of binary digits (.hack) and as little-endian
+ * ROM images (.bin), including words with the sign bit set and programs larger than the writer's buffer.
+ *
+ * Author: Matt Sheehan
+ */
+class HackFileWriterTest {
+
+    private static final short [] WORDS = { 0, 1, 0x1234, (short) 0xEC10, (short) 0xFFFF, 0x7FFF, (short) 0x8000 };
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void binaryImagesAreLittleEndianWords() throws IOException {
+        Path outputFile = temporaryDirectory.resolve("Words.bin");
+        HackFileWriter.writeBinary(WORDS, 3, outputFile); // Only the first 3 words are written.
+        assertArrayEquals(new byte [] { 0x00, 0x00, 0x01, 0x00, 0x34, 0x12 }, Files.readAllBytes(outputFile));
+
+        HackFileWriter.writeBinary(WORDS, WORDS.length, outputFile); // The previous contents are replaced.
+        byte [] image = Files.readAllBytes(outputFile);
+        assertEquals(2 * WORDS.length, image.length);
+        assertEquals((byte) 0x10, image[6]);
+        assertEquals((byte) 0xEC, image[7]);
+        assertArrayEquals(WORDS, readLittleEndian(image));
+    }
+
+    @Test
+    void binaryImagesLargerThanTheBufferAreComplete() throws IOException {
+        short [] words = new short [Assembler.ROM_SIZE - 1];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = (short) (i * 40503);
+        }
+        Path outputFile = temporaryDirectory.resolve("Large.bin");
+        HackFileWriter.writeBinary(words, words.length, outputFile);
+        assertArrayEquals(words, readLittleEndian(Files.readAllBytes(outputFile)));
+    }
+
+    @Test
+    void textFilesHaveOneLineOfBinaryDigitsPerWord() throws IOException {
+        Path outputFile = temporaryDirectory.resolve("Words.hack");
+        HackFileWriter.writeText(WORDS, WORDS.length, outputFile);
+        assertEquals(List.of("0000000000000000", "0000000000000001", "0001001000110100", "1110110000010000",
+                             "1111111111111111", "0111111111111111", "1000000000000000"),
+                     Files.readAllLines(outputFile));
+    }
+
+    @Test
+    void writtenFilesMatchTheAssembledProgram() throws IOException {
+        Path assemblyFile = temporaryDirectory.resolve("Max.asm");
+        Files.writeString(assemblyFile, "@R0\nD=M\n@R1\nD=D-M\n@END\nD;JGT\n(END)\n@END\n0;JMP\n");
+        short [] words = Assembler.assembleFile(assemblyFile.toString(), true, true, false, null).getWords();
+        assertArrayEquals(words, readLittleEndian(Files.readAllBytes(temporaryDirectory.resolve("Max.bin"))));
+
+        Assembler.assembleFile(assemblyFile.toString(), false, false, false, null);
+        List <String> lines = Files.readAllLines(temporaryDirectory.resolve("Max.hack"));
+        assertEquals(words.length, lines.size());
+        for (int i = 0; i < words.length; i++) {
+            assertEquals(words[i], (short) Integer.parseInt(lines.get(i), 2));
+        }
+    }
+
+    /**
+     * Reads a ROM image back into words.
+     * @param image The bytes of the ROM image.
+     * @return The words, read as little-endian.
+     */
+    private static short [] readLittleEndian(byte [] image) {
+        short [] words = new short [image.length / 2];
+        ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(words);
+        return words;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * PeepholeOptimizerTest.java - Checks that the optimizer removes reloads of the value A already holds, A-instructions
+ * that are never used and D stores that are overwritten, that it forgets what it knows at labels and jumps, and that
+ * removing instructions moves labels (but never variables). Each optimized program is compared with the words the
+ * assembler gives for the program written without the removed instructions.
+ *
+ * Author: Matt Sheehan
+ */
+class PeepholeOptimizerTest {
+
+    @Test
+    void reloadsOfTheValueInAAreRemoved() {
+        assertOptimized("@SP\nM=M+1\n@SP\nA=M\nM=0\n", "@SP\nM=M+1\nA=M\nM=0\n", 1);
+        assertOptimized("@5\nD=A\n@R5\nM=D\n", "@5\nD=A\nM=D\n", 1); // R5 is the same address as 5.
+        assertOptimized("@SP\nAM=M+1\n@SP\nM=0\n", "@SP\nAM=M+1\n@SP\nM=0\n", 0); // A was written.
+    }
+
+    @Test
+    void unusedALoadsAreRemoved() {
+        assertOptimized("@R0\n@R1\nD=M\n@R2\nM=D\n", "@R1\nD=M\n@R2\nM=D\n", 1);
+        assertOptimized("@R0\n@R1\n@R2\nM=0\n", "@R2\nM=0\n", 2);
+        assertOptimized("@R0\nA=D\nM=0\n", "A=D\nM=0\n", 1); // Replaced by a C-instruction writing A.
+        assertOptimized("@R0\nD=D+1\n@R1\nM=D\n", "D=D+1\n@R1\nM=D\n", 1); // D=D+1 doesn't use A.
+    }
+
+    @Test
+    void overwrittenDStoresAreRemoved() {
+        assertOptimized("D=1\nD=0\n@R0\nM=D\n", "D=0\n@R0\nM=D\n", 1);
+        assertOptimized("D=1\nD=D+1\n@R0\nM=D\n", "D=1\nD=D+1\n@R0\nM=D\n", 0); // D was read first.
+        assertOptimized("D=1\nMD=0\n@R0\nM=D\n", "MD=0\n@R0\nM=D\n", 1); // Overwritten along with M.
+        assertOptimized("@R1\nMD=1\nD=0\n@R0\nM=D\n", null, 0); // MD=1 doesn't only store D.
+    }
+
+    @Test
+    void removalsCascade() {
+        // Removing the first D=M leaves @R0 unused, which is only found by the next sweep.
+        assertOptimized("@R0\nD=M\n@R1\nD=M\n@R2\nM=D\n", "@R1\nD=M\n@R2\nM=D\n", 2);
+    }
+
+    @Test
+    void labelsForgetEverything() {
+        assertOptimized("@SP\nM=M+1\n(LOOP)\n@SP\nM=M-1\n@LOOP\n0;JMP\n", null, 0);
+        assertOptimized("@R0\n(LOOP)\n@R1\nM=0\n@LOOP\n0;JMP\n", null, 0);
+        assertOptimized("D=1\n(LOOP)\nD=0\n@R0\nM=D\n@LOOP\n0;JMP\n", null, 0);
+    }
+
+    @Test
+    void jumpsForgetEverything() {
+        assertOptimized("@SP\nD;JGT\n@SP\nM=0\n", null, 0);
+        assertOptimized("D=1\n@L\n0;JMP\nD=0\n(L)\n@R0\nM=D\n", null, 0); // The label's code reads D=1.
+        assertOptimized("@L\nD=1;JMP\nD=0\n(L)\n@R0\nM=D\n", null, 0);
+    }
+
+    @Test
+    void labelsAreGivenTheLinesOfTheKeptInstructions() {
+        short [] words = optimize("@SP\n@SP\n@SP\nM=0\n(END)\n@END\n0;JMP\n(AFTER)\n@AFTER\n", 2);
+        assertEquals(2, words[2]);
+        assertEquals(4, words[4]);
+        assertOptimized("@R0\n@R1\nD=M\n(LOOP)\n@R2\n@LOOP\nD;JGT\n", "@R1\nD=M\n(LOOP)\n@LOOP\nD;JGT\n", 2);
+    }
+
+    @Test
+    void variablesKeepTheirOriginalOrder() {
+        // a, b and c are removed from the start, but are still given 16, 17 and 18 in the order they appear.
+        SymbolTable symbolTable = new SymbolTable();
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        short [] words = optimizer.translate(new Parser(new StringReader("@a\n@b\n@c\nM=0\n@d\nM=1\n@a\nM=D\n")),
+                                             symbolTable).toArray();
+        assertEquals(2, optimizer.getRemovedInstructions());
+        assertArrayEquals(HackAssembler.assemble("@18\nM=0\n@19\nM=1\n@16\nM=D\n"), words);
+        assertEquals(17, symbolTable.getAddress("b"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "@SP\nAM=M-1\nD=M\nA=A-1\nM=D+M\n", "@256\nD=A\n@SP\nM=D\n",
+                             "(LOOP)\n@KBD\nD=M\n@LOOP\nD;JEQ\n@SCREEN\nM=-1\n" })
+    void programsWithNothingToRemoveAreUnchanged(String assemblyCode) {
+        assertOptimized(assemblyCode, null, 0);
+    }
+
+    /**
+     * Optimizes the program and checks that it gives the words of the expected program, without optimization.
+     * @param assemblyCode The program to be optimized.
+     * @param expectedAssemblyCode The program without the removed instructions (null if it is unchanged).
+     * @param removedInstructions The number of instructions that should be removed.
+     */
+    private static void assertOptimized(String assemblyCode, String expectedAssemblyCode, int removedInstructions) {
+        assertArrayEquals(HackAssembler.assemble((expectedAssemblyCode == null) ? assemblyCode : expectedAssemblyCode),
+                          optimize(assemblyCode, removedInstructions), assemblyCode);
+    }
+
+    /**
+     * Optimizes the program and checks the number of instructions removed.
+     * @param assemblyCode The program to be optimized.
+     * @param removedInstructions The number of instructions that should be removed.
+     * @return The words of the optimized program.
+     */
+    private static short [] optimize(String assemblyCode, int removedInstructions) {
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        short [] words = optimizer.translate(new Parser(new StringReader(assemblyCode)), new SymbolTable()).toArray();
+        assertEquals(removedInstructions, optimizer.getRemovedInstructions(), assemblyCode);
+        assertEquals(HackAssembler.assemble(assemblyCode).length - removedInstructions, words.length);
+        return words;
+    }
+}
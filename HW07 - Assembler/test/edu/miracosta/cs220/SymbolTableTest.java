@@ -0,0 +1,26 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * SymbolTableTest.java - Checks that names found to be invalid are remembered without being given an address.
+ *
+ * Author: Matt Sheehan
+ */
+class SymbolTableTest {
+
+    @Test
+    void invalidNamesAreNeverVariables() {
+        SymbolTable symbolTable = new SymbolTable();
+        for (int i = 0; i < 2; i++) { // The second time, the name is found remembered as invalid.
+            assertEquals(SymbolTable.NOT_FOUND, symbolTable.getOrAllocateVariable("1st"));
+            assertEquals(SymbolTable.NOT_FOUND, symbolTable.getAddress("1st"));
+            assertFalse(symbolTable.contains("1st"));
+        }
+        assertEquals(SymbolTable.FIRST_VARIABLE_ADDRESS, symbolTable.getOrAllocateVariable("first"));
+        assertEquals(1, symbolTable.getDefinedSymbols().size());
+    }
+}
@@ -1,63 +1,223 @@
 package edu.miracosta.cs220;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
+ * CodeWriter.java - Writes the ASM code for each VM command.
+ *
+ * Two code generation modes are supported:
+ *
+ * 1. The classic mode keeps the whole stack in RAM: every push stores its value at *SP and increments SP, and every
+ * arithmetic command pops its operands back off the stack.
+ *
+ * 2. The cached mode keeps the value on top of the stack in the D register instead of in RAM, across as many VM
+ * commands as possible. A push first spills the cached value to RAM (one store) and then loads its own value into D;
+ * a pop stores D straight into its segment; an arithmetic command combines D with the value below it and leaves the
+ * result in D. The cached value is spilled to RAM only when the stack must be complete in memory (at the end of the
+ * output, and at any label, jump or call, which must call spillTopOfStack first). For example "push constant 7 /
+ * push local 2 / add" shrinks from 23 instructions to 13.
+ *
+ * Independently of the mode, comparisons (gt, lt, eq) can be written inline (the default), or as calls of shared
+ * routines written once at the start of the output, which makes the code much smaller (4 to 6 instructions and one
+ * label per comparison instead of 10 to 15 instructions and two labels) at the cost of a few more instructions run
+ * per comparison.
+ *
+ * Calls and returns can likewise be written inline (the standard calling convention: 42 instructions per call
+ * and 42 per return), or as jumps to one shared call routine and one shared return routine written at the start of
+ * the output (12 instructions per call and 2 per return). The call site passes the return address in D, the
+ * function's address in R14, and the number of arguments plus 5 in R13; the routine saves the caller's frame and jumps
+ * to the function, so the saving grows with every call site, at the cost of a few more instructions run per call.
+ *
+ * Both modes give "temp i" the address 5 + i, and write the computations in the forms the Hack assembler knows
+ * (D+M, D&M, D|M).
+ *
+ * Instead of (or besides) ASM code, the CodeWriter can give its output to a HackEncoder, which encodes it straight
+ * into Hack machine code, so no .asm file has to be written and assembled.
+ *
+ * The ASM code is built in one char buffer that is reused for the whole output: the fixed parts of each command are
+ * constant fragments (complete lines), and the numbers, symbols and labels between them are appended character by
+ * character (numbers digit by digit), so writing a command makes no Strings. When the buffer is nearly full, it is
+ * flushed at the end of a line: its instructions are counted, and it is given to the encoder and/or written to the
+ * output in one call.
+ *
  * INSTANCE VARIABLES:
- * - codeWriter (PrintWriter): The object responsible for writing all ASM commands to the .asm file.
+ * - codeWriter (Writer): The object responsible for writing all ASM commands to the .asm file (null if only machine
+ *   code is written).
+ * - encoder (HackEncoder): The encoder the ASM commands are given to, null if only ASM code is written.
+ * - buffer (char[]): The ASM code written since the last flush.
+ * - bufferLength (int): The number of characters in the buffer.
  * - jumpsMade (int): For keeping track of the jumps made in order to better facilitate writing the jumps in ASM.
+ * - callsMade (int): For giving every call its own return address label.
+ * - currentFunction (String): The function being translated (labels are local to it), null outside of functions.
+ * - staticPrefix (String): The prefix of the static variables' symbols ("fileName."), null for RAM[16 + i].
+ * - labelPrefix (String): The prefix of the labels written ("fileName$"), empty if no file name was given.
+ * - cacheTopOfStack (boolean): True if the cached mode is used.
+ * - sharedComparisons (boolean): True if comparisons call the shared routines instead of being written inline.
+ * - sharedCalls (boolean): True if calls and returns jump to the shared routines instead of being written inline.
+ * - topOfStackInD (boolean): True if the value on top of the stack is currently held in D (and not in RAM).
+ * - instructionCount (int): The number of Hack instructions flushed so far.
  *
  * METHODS:
  * - Full Constructor: Connects with the .asm to be written to by the program.
- * - writeArithmetic (String): Based on the arithmetic command given, writes the respective VM code in ASM.
- * - writePushPop (String, String, int): Based on the push/pop command given, writes the respective VM code in ASM.
- * - close: Closes the PrintWriter object's stream.
+ * - CodeWriter (String/Writer, boolean, boolean, boolean): Connects with the .asm file (or any other destination,
+ *   e.g. memory for benchmarks), choosing the code generation modes.
+ * - CodeWriter (HackEncoder, Writer, boolean, boolean, boolean): Encodes the output into machine code instead, with an
+ *   optional ASM listing.
+ * - writeArithmetic (Opcode): Based on the arithmetic command given, writes the respective VM code in ASM.
+ * - writePushPop (Opcode, Segment, int): Based on the push/pop command given, writes the respective VM code in ASM.
+ * - writeMove (Segment, int, Segment, int): Writes a push/pop pair as a direct move from one segment to another.
+ * - setFileName (String): Gives the following commands' statics and labels the file's namespace.
+ * - writeSharedRoutines: Writes the shared comparison and call/return routines (at the start of the output).
+ * - writeBootstrap: Writes the code that sets SP to 256 and calls Sys.init.
+ * - writeLabel/writeGoto/writeIf (String): Writes the program flow commands.
+ * - writeFunction (String, int): Writes the entry of a function, which sets its local variables to 0.
+ * - writeCall (String, int): Writes a call of a function.
+ * - writeReturn: Writes a return from the current function.
+ * - writeIncrement/writeDecrement: Adds 1 to/subtracts 1 from the value on top of the stack.
+ * - getInstructionCount: The number of Hack instructions written so far.
+ * - spillTopOfStack: Stores the cached value on top of the stack into RAM (cached mode only).
+ * - close: Spills the cached value, flushes the buffer, and closes the Writer object's stream (if any).
  *
  * Author: Matt Sheehan
  */
 class CodeWriter {
 
-    private PrintWriter codeWriter;
+    private static final String SPILL = "@SP\nAM=M+1\nA=A-1\nM=D\n";  // Pushes D onto the stack.
+    private static final String FILL = "@SP\nAM=M-1\nD=M\n";          // Pops the stack into D.
+    private static final String PUSH_D = "@SP\nA=M\nM=D\n@SP\nM=M+1\n"; // Pushes D onto the stack (classic mode).
+    private static final String POP_TO_ADDRESS_IN_D = "@R13\nM=D\n@SP\nAM=M-1\nD=M\n@R13\nA=M\nM=D\n";
+    private static final String BINARY_OPERATION = "@SP\nAM=M-1\nD=M\nM=0\nA=A-1\n"; // For add, sub, and, or.
+    private static final String COMPARISON = "@SP\nAM=M-1\nD=M\nA=A-1\nD=M-D\n@"; // For gt, lt, eq.
+    // Pushes D (the return address), then the caller's LCL, ARG, THIS and THAT.
+    private static final String PUSH_FRAME = SPILL + "@LCL\nD=M\n" + SPILL + "@ARG\nD=M\n" + SPILL
+                                             + "@THIS\nD=M\n" + SPILL + "@THAT\nD=M\n" + SPILL;
+    private static final String ENTER_FUNCTION = "@SP\nD=M\n@LCL\nM=D\n"; // LCL = SP.
+    // Keeps the frame (LCL) in R13 and the return address in R14 (read before the return value can overwrite it),
+    // moves the return value to ARG[0], sets SP just past it, and restores the caller's frame.
+    private static final String RETURN_TO_CALLER = "@LCL\nD=M\n@R13\nM=D\n@5\nA=D-A\nD=M\n@R14\nM=D\n" + FILL
+                                                   + "@ARG\nA=M\nM=D\n@ARG\nD=M+1\n@SP\nM=D\n"
+                                                   + restorePointer("THAT") + restorePointer("THIS")
+                                                   + restorePointer("ARG") + restorePointer("LCL")
+                                                   + "@R14\nA=M\n0;JMP\n";
+    private static final Opcode [] COMPARISONS = { Opcode.GT, Opcode.LT, Opcode.EQ };
+    private static final int MAXIMUM_UNROLLED_PUSH_INDEX = 2;        // Beyond these, adding the index
+    private static final int MAXIMUM_UNROLLED_POP_INDEX = 7;         // with D=D+A is shorter.
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int FLUSH_THRESHOLD = BUFFER_SIZE - 1024;   // Leaves room for the longest command.
+
+    private Writer codeWriter;
+    private HackEncoder encoder = null;
+    private char [] buffer = new char [BUFFER_SIZE];
+    private int bufferLength = 0;
     private int jumpsMade = 0;
+    private int callsMade = 0;
+    private String currentFunction = null;
+    private String staticPrefix = null;
+    private String labelPrefix = "";
+    private final boolean cacheTopOfStack;
+    private final boolean sharedComparisons;
+    private final boolean sharedCalls;
+    private boolean topOfStackInD = false;
+    private int instructionCount = 0;
 
     /**
      * Full constructor. Connects the program with the output file.
      * @param outputFileName The output file name.
      */
     CodeWriter (String outputFileName) {
+        this(outputFileName, false, false, false);
+    }
+
+    /**
+     * Connects the program with the output file, choosing the code generation modes.
+     * @param outputFileName The output file name.
+     * @param cacheTopOfStack True if the value on top of the stack should be kept in D.
+     * @param sharedComparisons True if comparisons should call shared routines instead of being written inline.
+     * @param sharedCalls True if calls and returns should jump to shared routines instead of being written inline.
+     */
+    CodeWriter (String outputFileName, boolean cacheTopOfStack, boolean sharedComparisons, boolean sharedCalls) {
+        this.cacheTopOfStack = cacheTopOfStack;
+        this.sharedComparisons = sharedComparisons;
+        this.sharedCalls = sharedCalls;
         try {
-            codeWriter = new PrintWriter(new FileOutputStream(outputFileName));
-        } catch(FileNotFoundException e) {
+            codeWriter = Files.newBufferedWriter(Path.of(outputFileName), StandardCharsets.US_ASCII);
+        } catch(IOException e) {
             System.out.println("Cannot write to file; terminating program.");
             System.exit(0);
         }
     }
 
+    /**
+     * Connects the program with an output that is not a file.
+     * @param output The destination of the ASM code.
+     */
+    CodeWriter (Writer output) {
+        this(output, false, false, false);
+    }
+
+    /**
+     * Connects the program with an output that is not a file, choosing the code generation modes.
+     * @param output The destination of the ASM code.
+     * @param cacheTopOfStack True if the value on top of the stack should be kept in D.
+     * @param sharedComparisons True if comparisons should call shared routines instead of being written inline.
+     * @param sharedCalls True if calls and returns should jump to shared routines instead of being written inline.
+     */
+    CodeWriter (Writer output, boolean cacheTopOfStack, boolean sharedComparisons, boolean sharedCalls) {
+        this.cacheTopOfStack = cacheTopOfStack;
+        this.sharedComparisons = sharedComparisons;
+        this.sharedCalls = sharedCalls;
+        codeWriter = output;
+    }
+
+    /**
+     * Connects the program with an encoder, which turns the output into Hack machine code, choosing the code
+     * generation modes.
+     * @param encoder The encoder the ASM code is given to.
+     * @param listing The destination of a copy of the ASM code (for debugging), or null for none.
+     * @param cacheTopOfStack True if the value on top of the stack should be kept in D.
+     * @param sharedComparisons True if comparisons should call shared routines instead of being written inline.
+     * @param sharedCalls True if calls and returns should jump to shared routines instead of being written inline.
+     */
+    CodeWriter (HackEncoder encoder, Writer listing, boolean cacheTopOfStack, boolean sharedComparisons,
+                boolean sharedCalls) {
+        this.cacheTopOfStack = cacheTopOfStack;
+        this.sharedComparisons = sharedComparisons;
+        this.sharedCalls = sharedCalls;
+        this.encoder = encoder;
+        codeWriter = listing;
+    }
+
     /**
      * Based on the arithmetic command given, produces the respective ASM code (based on switch expression).
      * @param command The arithmetic command.
      */
-    void writeArithmetic(String command) {
-        String arithmeticBoilerPlate = "@SP\nAM=M-1\nD=M\nM=0\nA=A-1\n"; // For and, or, not, neg.
-        String comparisonBoilerPlatePartOne = "@SP\nAM=M-1\nD=M\nA=A-1\nD=M-D\n@FALSE" + jumpsMade + "\nD;"; // gt, lt, eq.
-        String comparisonBoilerPlatePartTwo = "\n@SP\nA=M-1\nM=-1\n@CONTINUE" + jumpsMade + "\n0;JMP\n(FALSE" + jumpsMade
-                                            + ")\n@SP\nA=M-1\nM=0\n(CONTINUE" + jumpsMade + ")\n"; // gt, lt, eq.
-
-        String asmCode = switch (command) {
-            case "add": yield arithmeticBoilerPlate + "M=M+D";
-            case "sub": yield arithmeticBoilerPlate + "M=M-D";
-            case "and": yield arithmeticBoilerPlate + "M=M&D";
-            case "or" : yield arithmeticBoilerPlate + "M=M|D";
-            case "not": yield "@SP\nA=M-1\nM=!M";
-            case "neg": yield "@SP\nA=M-1\nM=-M";
-            case "gt" : { jumpsMade++; yield comparisonBoilerPlatePartOne + "JLE" + comparisonBoilerPlatePartTwo; }
-            case "lt" : { jumpsMade++; yield comparisonBoilerPlatePartOne + "JGE" + comparisonBoilerPlatePartTwo; }
-            case "eq" : { jumpsMade++; yield comparisonBoilerPlatePartOne + "JNE" + comparisonBoilerPlatePartTwo; }
-            default: yield null;
-        };
-        codeWriter.println(asmCode);
+    void writeArithmetic(Opcode command) {
+        if (sharedComparisons && (command == Opcode.GT || command == Opcode.LT || command == Opcode.EQ)) {
+            writeComparisonCall(command);
+            return;
+        }
+        if (cacheTopOfStack) {
+            writeCachedArithmetic(command);
+            return;
+        }
+
+        switch (command) {
+            case ADD -> append(BINARY_OPERATION + "M=D+M\n");
+            case SUB -> append(BINARY_OPERATION + "M=M-D\n");
+            case AND -> append(BINARY_OPERATION + "M=D&M\n");
+            case OR  -> append(BINARY_OPERATION + "M=D|M\n");
+            case NOT -> append("@SP\nA=M-1\nM=!M\n");
+            case NEG -> append("@SP\nA=M-1\nM=-M\n");
+            case GT  -> writeComparison("JLE");
+            case LT  -> writeComparison("JGE");
+            case EQ  -> writeComparison("JNE");
+            default  -> { }
+        }
     }
 
     /**
@@ -66,37 +226,671 @@ class CodeWriter {
      * @param segment The memory segment to be pushed to/popped from.
      * @param index The index of the memory segment.
      */
-    void writePushPop(String pushOrPopCommand, String segment, int index ) {
-        String pushOrPopASM;
-        String staticPointerPushOrPopASM;
-        String translatedASM;
+    void writePushPop(Opcode pushOrPopCommand, Segment segment, int index ) {
+        if (cacheTopOfStack) {
+            if (pushOrPopCommand == Opcode.PUSH) {
+                writeCachedPush(segment, index);
+            } else {
+                writeCachedPop(segment, index);
+            }
+            return;
+        }
+
+        boolean push = pushOrPopCommand == Opcode.PUSH;
+        switch (segment) {
+            case CONSTANT -> {
+                appendAddress(index);
+                append("D=A\n" + PUSH_D);
+            }
+            case LOCAL, ARGUMENT, THIS, THAT -> {
+                appendAddress(segment.getBase());
+                append("D=M\n@");
+                appendNumber(index);
+                append(push ? "\nA=D+A\nD=M\n" + PUSH_D : "\nD=D+A\n" + POP_TO_ADDRESS_IN_D);
+            }
+            case TEMP, STATIC, POINTER -> {
+                appendDirectAddress(segment, index);
+                append(push ? "D=M\n" + PUSH_D : "D=A\n" + POP_TO_ADDRESS_IN_D);
+            }
+        }
+    }
 
-        if (pushOrPopCommand.equals("push")) {
-            pushOrPopASM ="\nA=D+A\nD=M\n@SP\nA=M\nM=D\n@SP\nM=M+1\n";
-            staticPointerPushOrPopASM = "\nD=M\n@SP\nA=M\nM=D\n@SP\nM=M+1\n";
+    /**
+     * Writes a value straight from one segment to another, as "push sourceSegment sourceIndex / pop targetSegment
+     * targetIndex" would, but without going through the stack. Constants 0 and 1 are stored without loading D.
+     * @param sourceSegment The memory segment to be read.
+     * @param sourceIndex The index of the memory segment to be read.
+     * @param targetSegment The memory segment to be written.
+     * @param targetIndex The index of the memory segment to be written.
+     */
+    void writeMove(Segment sourceSegment, int sourceIndex, Segment targetSegment, int targetIndex) {
+        spillTopOfStack();
+        if (sourceSegment == Segment.CONSTANT && sourceIndex <= 1 && canStoreConstant(targetSegment, targetIndex)) {
+            appendStore((char) ('0' + sourceIndex), targetSegment, targetIndex);
         } else {
-            pushOrPopASM = "\nD=D+A\n@R13\nM=D\n@SP\nAM=M-1\nD=M\n@R13\nA=M\nM=D\n";
-            staticPointerPushOrPopASM = "\nD=A\n@R13\nM=D\n@SP\nAM=M-1\nD=M\n@R13\nA=M\nM=D\n";
-        }
-
-        translatedASM = switch(segment) {
-            case "constant": yield "@" + index + "\nD=A\n@SP\nA=M\nM=D\n@SP\nM=M+1\n";
-            case "local" :   yield "@LCL\nD=M\n@"  + index + pushOrPopASM;
-            case "argument": yield "@ARG\nD=M\n@"  + index + pushOrPopASM;
-            case "this":     yield "@THIS\nD=M\n@" + index + pushOrPopASM;
-            case "that":     yield "@THAT\nD=M\n@" + index + pushOrPopASM;
-            case "temp":     yield "@R5\nD=M\n@"   + (index + 5) + pushOrPopASM;
-            case "static":   yield "@" + (index + 16) + staticPointerPushOrPopASM;
-            case "pointer":  yield "@" + ((index == 0) ? "THIS" : "THAT") + staticPointerPushOrPopASM;
-            default: yield null;
-        };
-        codeWriter.println(translatedASM);
+            appendLoadIntoD(sourceSegment, sourceIndex);
+            appendStore('D', targetSegment, targetIndex);
+        }
+    }
+
+    /**
+     * Tells the CodeWriter which file the following commands come from, for translating a program of many files.
+     * From now on "static i" is the variable "fileName.i" (allocated by the assembler), so each file has its own
+     * statics, and the labels written are prefixed with "fileName$", so files translated by separate CodeWriters can
+     * be joined into one program.
+     * @param fileName The name of the .vm file, without its directory or extension.
+     */
+    void setFileName(String fileName) {
+        staticPrefix = fileName + ".";
+        labelPrefix = fileName + "$";
+    }
+
+    /**
+     * Adds 1 to the value on top of the stack, as "push constant 1 / add" would.
+     */
+    void writeIncrement() {
+        if (!cacheTopOfStack) {
+            append("@SP\nA=M-1\nM=M+1\n");
+            return;
+        }
+        fillTopOfStack();
+        append("D=D+1\n");
+    }
+
+    /**
+     * Subtracts 1 from the value on top of the stack, as "push constant 1 / sub" would.
+     */
+    void writeDecrement() {
+        if (!cacheTopOfStack) {
+            append("@SP\nA=M-1\nM=M-1\n");
+            return;
+        }
+        fillTopOfStack();
+        append("D=D-1\n");
+    }
+
+    /**
+     * Returns the number of Hack instructions written so far (labels aren't instructions). Flushes the buffer.
+     * @return The number of instructions.
+     * @throws UncheckedIOException If the output could not be written.
+     */
+    int getInstructionCount() {
+        flush();
+        return instructionCount;
+    }
+
+    /**
+     * Stores the value cached in D onto the stack in RAM, so the stack is complete in memory. Must be called before
+     * anything that leaves straight-line code (labels, jumps, calls). Does nothing if no value is cached.
+     */
+    void spillTopOfStack() {
+        if (topOfStackInD) {
+            append(SPILL);
+            topOfStackInD = false;
+        }
     }
 
     /**
-     * Closes the output file.
+     * Closes the output file (after spilling the cached value, so the stack is left complete, and flushing the
+     * buffer).
+     * @throws UncheckedIOException If the output could not be written.
      */
     void close() {
-        codeWriter.close();
+        spillTopOfStack();
+        flush();
+        if (codeWriter != null) {
+            try {
+                codeWriter.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the shared routines that are used (if any): a jump over them, then one routine per comparison, and the
+     * call and return routines. Must be called once, at the start of the output (of the whole program, if files are
+     * translated separately).
+     * Each comparison routine is entered with its return address in D, which it keeps in R14, and returns with 0;JMP to
+     * it. In the classic mode a routine pops both operands and pushes the result; in the cached mode it is entered with
+     * the top operand in R13 (as D holds the return address) and leaves the result in D.
+     */
+    void writeSharedRoutines() {
+        if (!sharedComparisons && !sharedCalls) {
+            return;
+        }
+        append("@VM$START\n0;JMP\n");
+        if (sharedComparisons) {
+            for (Opcode comparison : COMPARISONS) {
+                String routine = routineName(comparison);
+                String jump = switch (comparison) {
+                    case GT -> "JGT";
+                    case LT -> "JLT";
+                    default -> "JEQ";
+                };
+                if (cacheTopOfStack) {
+                    append("(" + routine + ")\n@R14\nM=D\n@SP\nAM=M-1\nD=M\n@R13\nD=D-M\n@" + routine + "$TRUE\nD;"
+                           + jump + "\nD=0\n@R14\nA=M\n0;JMP\n(" + routine + "$TRUE)\nD=-1\n@R14\nA=M\n0;JMP\n");
+                } else {
+                    append("(" + routine + ")\n@R14\nM=D\n@SP\nAM=M-1\nD=M\nA=A-1\nD=M-D\nM=-1\n@" + routine
+                           + "$END\nD;" + jump + "\n@SP\nA=M-1\nM=0\n(" + routine + "$END)\n@R14\nA=M\n0;JMP\n");
+                }
+            }
+        }
+        if (sharedCalls) {
+            append("(VM$CALL)\n" + PUSH_FRAME + "@SP\nD=M\n@R13\nD=D-M\n@ARG\nM=D\n" + ENTER_FUNCTION
+                   + "@R14\nA=M\n0;JMP\n");
+            append("(VM$RET)\n" + RETURN_TO_CALLER);
+        }
+        append("(VM$START)\n");
+    }
+
+    /**
+     * Writes the bootstrap code, which starts the program: SP is set to 256, and Sys.init is called. Must be written
+     * at the start of the output (after the shared routines).
+     */
+    void writeBootstrap() {
+        append("@256\nD=A\n@SP\nM=D\n");
+        writeCall("Sys.init", 0);
+    }
+
+    /**
+     * Writes a label, local to the current function.
+     * @param label The label.
+     */
+    void writeLabel(String label) {
+        spillTopOfStack();
+        append('(');
+        appendFunctionLabel(label);
+        append(")\n");
+    }
+
+    /**
+     * Writes an unconditional jump to a label of the current function.
+     * @param label The label.
+     */
+    void writeGoto(String label) {
+        spillTopOfStack();
+        append('@');
+        appendFunctionLabel(label);
+        append("\n0;JMP\n");
+    }
+
+    /**
+     * Writes a jump to a label of the current function, taken if the value popped off the stack isn't 0 (false).
+     * @param label The label.
+     */
+    void writeIf(String label) {
+        fillTopOfStack();
+        append('@');
+        appendFunctionLabel(label);
+        append("\nD;JNE\n");
+        topOfStackInD = false;
+    }
+
+    /**
+     * Writes the entry of a function, which pushes its local variables (all 0).
+     * @param functionName The name of the function.
+     * @param localVariables The number of local variables.
+     */
+    void writeFunction(String functionName, int localVariables) {
+        spillTopOfStack();
+        currentFunction = functionName;
+        append('(');
+        append(functionName);
+        append(")\n");
+        if (localVariables <= 2) {
+            for (int i = 0; i < localVariables; i++) {
+                append("@SP\nAM=M+1\nA=A-1\nM=0\n");
+            }
+        } else {
+            append("@SP\nA=M\n");
+            for (int i = 0; i < localVariables; i++) {
+                append("M=0\nA=A+1\n");
+            }
+            append("D=A\n@SP\nM=D\n");
+        }
+    }
+
+    /**
+     * Writes a call of a function: the return address and the caller's LCL, ARG, THIS and THAT are pushed, ARG and LCL
+     * are set for the function, and the function is jumped to (inline, or through the shared call routine).
+     * @param functionName The name of the function.
+     * @param arguments The number of arguments pushed for the function.
+     */
+    void writeCall(String functionName, int arguments) {
+        spillTopOfStack();
+        callsMade++;
+        if (sharedCalls) {
+            appendAddress(arguments + 5);
+            append("D=A\n@R13\nM=D\n");
+            appendAddress(functionName);
+            append("D=A\n@R14\nM=D\n@");
+            appendReturnLabel();
+            append("\nD=A\n@VM$CALL\n0;JMP\n(");
+        } else {
+            append('@');
+            appendReturnLabel();
+            append("\nD=A\n" + PUSH_FRAME + "@SP\nD=M\n");
+            appendAddress(arguments + 5);
+            append("D=D-A\n@ARG\nM=D\n" + ENTER_FUNCTION);
+            appendAddress(functionName);
+            append("0;JMP\n(");
+        }
+        appendReturnLabel();
+        append(")\n");
+    }
+
+    /**
+     * Writes a return from the current function: the return value replaces the arguments, and the caller's frame is
+     * restored (inline, or through the shared return routine).
+     */
+    void writeReturn() {
+        spillTopOfStack();
+        append(sharedCalls ? "@VM$RET\n0;JMP\n" : RETURN_TO_CALLER);
+    }
+
+    /**
+     * Writes a call of the shared routine of a comparison: the return address is passed in D (and the top operand in
+     * R13, in the cached mode), so the call itself is only a few instructions.
+     * @param comparison The comparison (gt, lt or eq).
+     */
+    private void writeComparisonCall(Opcode comparison) {
+        jumpsMade++;
+        if (cacheTopOfStack) {
+            fillTopOfStack();
+            append("@R13\nM=D\n");
+        }
+        append('@');
+        appendJumpLabel("VM$RETURN");
+        append("\nD=A\n");
+        appendAddress(routineName(comparison));
+        append("0;JMP\n(");
+        appendJumpLabel("VM$RETURN");
+        append(")\n");
+    }
+
+    /**
+     * Writes a comparison in the classic mode, which replaces the two values on top of the stack with -1 (true) or 0
+     * (false).
+     * @param jump The jump taken when the comparison is false.
+     */
+    private void writeComparison(String jump) {
+        append(COMPARISON);
+        appendJumpLabel("FALSE");
+        append("\nD;");
+        append(jump);
+        append("\n@SP\nA=M-1\nM=-1\n@");
+        appendJumpLabel("CONTINUE");
+        append("\n0;JMP\n(");
+        appendJumpLabel("FALSE");
+        append(")\n@SP\nA=M-1\nM=0\n(");
+        appendJumpLabel("CONTINUE");
+        append(")\n");
+        jumpsMade++;
+    }
+
+    /**
+     * Returns the code that restores one pointer of the caller's frame (R13 points just past it).
+     * @param pointer The pointer (LCL, ARG, THIS or THAT).
+     * @return The ASM code.
+     */
+    private static String restorePointer(String pointer) {
+        return "@R13\nAM=M-1\nD=M\n@" + pointer + "\nM=D\n";
+    }
+
+    /**
+     * Returns the label of the shared routine of a comparison.
+     * @param comparison The comparison (gt, lt or eq).
+     * @return The label.
+     */
+    private static String routineName(Opcode comparison) {
+        return switch (comparison) {
+            case GT -> "VM$GT";
+            case LT -> "VM$LT";
+            default -> "VM$EQ";
+        };
+    }
+
+    /**
+     * Pops the value on top of the stack into D, unless it is already cached there (and caches it).
+     */
+    private void fillTopOfStack() {
+        if (!topOfStackInD) {
+            append(FILL);
+            topOfStackInD = true;
+        }
+    }
+
+    /**
+     * Writes an arithmetic command in the cached mode: the top operand is in D, and the result is left in D.
+     * @param command The arithmetic command.
+     */
+    private void writeCachedArithmetic(Opcode command) {
+        fillTopOfStack();
+        switch (command) {
+            case ADD -> append("@SP\nAM=M-1\nD=D+M\n");
+            case SUB -> append("@SP\nAM=M-1\nD=M-D\n");
+            case AND -> append("@SP\nAM=M-1\nD=D&M\n");
+            case OR  -> append("@SP\nAM=M-1\nD=D|M\n");
+            case NOT -> append("D=!D\n");
+            case NEG -> append("D=-D\n");
+            case GT  -> writeCachedComparison("JGT");
+            case LT  -> writeCachedComparison("JLT");
+            case EQ  -> writeCachedComparison("JEQ");
+            default  -> { }
+        }
+    }
+
+    /**
+     * Writes a comparison in the cached mode, leaving -1 (true) or 0 (false) in D.
+     * @param jump The jump taken when the comparison is true.
+     */
+    private void writeCachedComparison(String jump) {
+        jumpsMade++;
+        append("@SP\nAM=M-1\nD=M-D\n@");
+        appendJumpLabel("TRUE");
+        append("\nD;");
+        append(jump);
+        append("\nD=0\n@");
+        appendJumpLabel("CONTINUE");
+        append("\n0;JMP\n(");
+        appendJumpLabel("TRUE");
+        append(")\nD=-1\n(");
+        appendJumpLabel("CONTINUE");
+        append(")\n");
+    }
+
+    /**
+     * Writes a push in the cached mode: the cached value (if any) is spilled, and the pushed value is loaded into D.
+     * @param segment The memory segment to be pushed from.
+     * @param index The index of the memory segment.
+     */
+    private void writeCachedPush(Segment segment, int index) {
+        spillTopOfStack();
+        appendLoadIntoD(segment, index);
+        topOfStackInD = true;
+    }
+
+    /**
+     * Writes a pop in the cached mode: the value on top of the stack (loaded into D if it isn't cached) is stored
+     * straight into the segment, and nothing is cached afterwards.
+     * @param segment The memory segment to be popped to.
+     * @param index The index of the memory segment.
+     */
+    private void writeCachedPop(Segment segment, int index) {
+        fillTopOfStack();
+        appendStore('D', segment, index);
+        topOfStackInD = false;
+    }
+
+    /**
+     * Appends the load of a segment's value into D.
+     * @param segment The memory segment.
+     * @param index The index of the memory segment.
+     */
+    private void appendLoadIntoD(Segment segment, int index) {
+        switch (segment) {
+            case CONSTANT -> {
+                if (index <= 1) {
+                    append((index == 0) ? "D=0\n" : "D=1\n");
+                } else {
+                    appendAddress(index);
+                    append("D=A\n");
+                }
+            }
+            case LOCAL, ARGUMENT, THIS, THAT -> appendBasedLoad(segment.getBase(), index);
+            case TEMP, STATIC, POINTER -> {
+                appendDirectAddress(segment, index);
+                append("D=M\n");
+            }
+        }
+    }
+
+    /**
+     * Appends the load of a segment that is reached through a base pointer (local, argument, this, that) into D.
+     * @param base The symbol of the base pointer.
+     * @param index The index of the memory segment.
+     */
+    private void appendBasedLoad(String base, int index) {
+        appendAddress(base);
+        if (index == 0) {
+            append("A=M\nD=M\n");
+        } else if (index <= MAXIMUM_UNROLLED_PUSH_INDEX) {
+            append("A=M+1\n");
+            for (int i = 1; i < index; i++) {
+                append("A=A+1\n");
+            }
+            append("D=M\n");
+        } else {
+            append("D=M\n");
+            appendAddress(index);
+            append("A=D+A\nD=M\n");
+        }
+    }
+
+    /**
+     * Appends the store of a value into a segment.
+     * @param value The computation stored: 'D', or one of the constants '0' and '1' (which can only be stored
+     *              into the segments that don't need D to compute the address, see canStoreConstant).
+     * @param segment The memory segment.
+     * @param index The index of the memory segment.
+     */
+    private void appendStore(char value, Segment segment, int index) {
+        switch (segment) {
+            case LOCAL, ARGUMENT, THIS, THAT -> appendBasedStore(segment.getBase(), index, value);
+            case TEMP, STATIC, POINTER -> {
+                appendDirectAddress(segment, index);
+                appendAssignment(value);
+            }
+            case CONSTANT -> throw new IllegalArgumentException("Constants can't be popped to.");
+        }
+    }
+
+    /**
+     * Determines if a constant can be stored into a segment without going through D.
+     * @param segment The memory segment.
+     * @param index The index of the memory segment.
+     * @return True unless the segment is reached through a base pointer with an index too large to unroll.
+     */
+    private static boolean canStoreConstant(Segment segment, int index) {
+        return !segment.isBased() || index <= MAXIMUM_UNROLLED_POP_INDEX;
+    }
+
+    /**
+     * Appends the store of a value into a segment that is reached through a base pointer (local, argument, this, that).
+     * Large indexes keep the value in R13 and compute the address as (address + value) - value, so no second scratch
+     * register is needed.
+     * @param base The symbol of the base pointer.
+     * @param index The index of the memory segment.
+     * @param value The computation stored (only 'D' for large indexes).
+     */
+    private void appendBasedStore(String base, int index, char value) {
+        if (index <= MAXIMUM_UNROLLED_POP_INDEX) {
+            appendAddress(base);
+            append("A=M\n");
+            for (int i = 0; i < index; i++) {
+                append("A=A+1\n");
+            }
+            appendAssignment(value);
+            return;
+        }
+        append("@R13\nM=D\n");
+        appendAddress(base);
+        append("D=M\n");
+        appendAddress(index);
+        append("D=D+A\n@R13\nD=D+M\nA=D-M\nM=D-A\n");
+    }
+
+    /**
+     * Appends the store of a value into the register A points to ("M=value"), as a line.
+     * @param value The computation stored: 'D', '0' or '1'.
+     */
+    private void appendAssignment(char value) {
+        append("M=");
+        append(value);
+        append('\n');
+    }
+
+    /**
+     * Appends the A-instruction of a segment that is reached without a base pointer: "temp i" is 5 + i, "static i" is
+     * the symbol "fileName.i" if a file name was given (otherwise 16 + i), and "pointer i" is THIS or THAT.
+     * @param segment The memory segment (temp, static or pointer).
+     * @param index The index of the memory segment.
+     */
+    private void appendDirectAddress(Segment segment, int index) {
+        append('@');
+        if (segment == Segment.TEMP) {
+            appendNumber(index + 5);
+        } else if (segment == Segment.POINTER) {
+            append((index == 0) ? "THIS" : "THAT");
+        } else if (staticPrefix == null) {
+            appendNumber(index + 16);
+        } else {
+            append(staticPrefix);
+            appendNumber(index);
+        }
+        append('\n');
+    }
+
+    /**
+     * Appends the label a VM label stands for: labels are local to their function ("function$label").
+     * @param label The label in the VM code.
+     */
+    private void appendFunctionLabel(String label) {
+        if (currentFunction == null) {
+            append(labelPrefix);
+        } else {
+            append(currentFunction);
+            append('$');
+        }
+        append(label);
+    }
+
+    /**
+     * Appends the return address label of the current call ("function$ret.n").
+     */
+    private void appendReturnLabel() {
+        if (currentFunction == null) {
+            append(labelPrefix);
+            append("VM");
+        } else {
+            append(currentFunction);
+        }
+        append("$ret.");
+        appendNumber(callsMade);
+    }
+
+    /**
+     * Appends a label of the current comparison ("fileName$nameN").
+     * @param name The kind of label (e.g. "TRUE").
+     */
+    private void appendJumpLabel(String name) {
+        append(labelPrefix);
+        append(name);
+        appendNumber(jumpsMade);
+    }
+
+    /**
+     * Appends an A-instruction with a symbol, as a line.
+     * @param symbol The symbol.
+     */
+    private void appendAddress(String symbol) {
+        append('@');
+        append(symbol);
+        append('\n');
+    }
+
+    /**
+     * Appends an A-instruction with a number, as a line.
+     * @param number The number (0 or more).
+     */
+    private void appendAddress(int number) {
+        append('@');
+        appendNumber(number);
+        append('\n');
+    }
+
+    /**
+     * Appends a number digit by digit, without making a String of it.
+     * @param number The number (0 or more).
+     */
+    private void appendNumber(int number) {
+        int digits = 1;
+        for (int rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        reserve(digits);
+        for (int i = bufferLength + digits - 1; i >= bufferLength; i--) {
+            buffer[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        bufferLength += digits;
+    }
+
+    /**
+     * Appends a fragment of ASM code.
+     * @param fragment The ASM code.
+     */
+    private void append(String fragment) {
+        reserve(fragment.length());
+        fragment.getChars(0, fragment.length(), buffer, bufferLength);
+        bufferLength += fragment.length();
+    }
+
+    /**
+     * Appends one character of ASM code.
+     * @param c The character.
+     */
+    private void append(char c) {
+        reserve(1);
+        buffer[bufferLength++] = c;
+    }
+
+    /**
+     * Makes room in the buffer: flushes it if it is nearly full and ends with a complete line, and grows it if it is
+     * still too small (only for a line longer than the room left).
+     * @param length The number of characters about to be appended.
+     * @throws UncheckedIOException If the output could not be written.
+     */
+    private void reserve(int length) {
+        if (bufferLength >= FLUSH_THRESHOLD && buffer[bufferLength - 1] == '\n') {
+            flush();
+        }
+        if (bufferLength + length > buffer.length) {
+            char [] grown = new char [Math.max(buffer.length * 2, bufferLength + length)];
+            System.arraycopy(buffer, 0, grown, 0, bufferLength);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Counts the instructions in the buffer, gives it to the encoder and/or writes it to the output, and empties it.
+     * The buffer always ends with a complete line when it is flushed.
+     * @throws UncheckedIOException If the output could not be written.
+     */
+    private void flush() {
+        if (bufferLength == 0) {
+            return;
+        }
+        boolean lineStart = true;
+        for (int i = 0; i < bufferLength; i++) {
+            char c = buffer[i];
+            if (lineStart && c != '\n' && c != '(') {
+                ++instructionCount;
+            }
+            lineStart = c == '\n';
+        }
+        if (encoder != null) {
+            encoder.encode(buffer, 0, bufferLength);
+        }
+        if (codeWriter != null) {
+            try {
+                codeWriter.write(buffer, 0, bufferLength);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        bufferLength = 0;
     }
 }
@@ -0,0 +1,242 @@
+package edu.miracosta.cs220;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * DirectoryTranslator.java - Translates a directory of .vm files (one program, e.g. one per Jack class) in parallel,
+ * and joins them into one .asm file.
+ *
+ * Algorithm:
+ *
+ * 1. The .vm files directly in the directory are listed in sorted order, so the output is the same from run to run.
+ *
+ * 2. Each file is translated on a thread pool (one thread per processor unless --threads is given) by its own VMParser
+ * and CodeWriter, into memory. Each CodeWriter is given the file's name, so "static i" of Foo.vm becomes the variable
+ * "Foo.i" (which the assembler gives its own address, so files never share statics) and every label it makes starts
+ * with "Foo$" (so the labels of different files never clash).
+ *
+ * 3. The shared routines (if used) are written once, followed by the bootstrap code (which sets SP and calls
+ * Sys.init) if the directory has a Sys.vm; then the translations are joined in the order of step 1 and written to
+ * directory/directory.asm. If any file fails to translate, nothing is written.
+ *
+ * With --hack or --binary, each file is encoded into machine code by its own HackEncoder instead, the encoders are
+ * joined in the same order (see HackEncoder.append), and the labels and statics of the whole program are resolved
+ * once they are joined; the result is written to directory/directory.hack (or .bin), along with directory.asm if a
+ * listing was asked for.
+ *
+ * 4. The result of every file is printed (with the number of instructions saved, with --optimize), followed by a
+ * summary.
+ *
+ * METHODS:
+ *
+ * - translate (Path, boolean, boolean, boolean, boolean, OutputFormat, boolean, int): Translates the directory into
+ *   one .asm (or .hack/.bin) file.
+ * - findVMFiles (Path): Lists the .vm files of the directory.
+ * - outputFileName (Path, OutputFormat): The name of the file a directory is translated into.
+ *
+ * Author: Matt Sheehan
+ */
+class DirectoryTranslator {
+
+    /**
+     * The translation of one file.
+     * @param asmCode The ASM code (null if only machine code was asked for).
+     * @param encoder The machine code, null if the output is ASM code.
+     * @param instructions The number of Hack instructions in the translation.
+     * @param savedInstructions The number of Hack instructions the optimizer saved.
+     */
+    private record TranslatedFile(String asmCode, HackEncoder encoder, int instructions, int savedInstructions) { }
+
+    static final String SYS_FILE = "Sys.vm";
+
+    private DirectoryTranslator() { }
+
+    /**
+     * Translates every .vm file of a directory in parallel, and joins them into one .asm (or .hack/.bin) file.
+     * @param directory The directory.
+     * @param cacheTopOfStack True if the value on top of the stack should be kept in D.
+     * @param sharedComparisons True if comparisons should call shared routines.
+     * @param sharedCalls True if calls and returns should jump to shared routines.
+     * @param optimize True if the commands should be optimized.
+     * @param format The kind of file to be written.
+     * @param listing True if the .asm file should also be written when the format is machine code.
+     * @param threads The number of threads in the pool.
+     * @return True if every file was translated and the output file was written, false otherwise.
+     */
+    static boolean translate(Path directory, boolean cacheTopOfStack, boolean sharedComparisons, boolean sharedCalls,
+                             boolean optimize, OutputFormat format, boolean listing, int threads) {
+        long start = System.nanoTime();
+        List <Path> vmFiles;
+        try {
+            vmFiles = findVMFiles(directory);
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not search " + directory + ": " + e.getMessage());
+            return false;
+        }
+        if (vmFiles.isEmpty()) {
+            System.out.println(directory + " has no .vm files.");
+            return false;
+        }
+
+        List <TranslatedFile> translatedFiles = new ArrayList <> ();
+        int failures = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, vmFiles.size())));
+        try {
+            List <Future <TranslatedFile>> results = new ArrayList <> ();
+            for (Path vmFile : vmFiles) {
+                results.add(pool.submit(() -> translateFile(vmFile, cacheTopOfStack, sharedComparisons, sharedCalls,
+                                                            optimize, format, listing)));
+            }
+
+            for (int i = 0; i < vmFiles.size(); i++) {
+                try {
+                    TranslatedFile translatedFile = results.get(i).get();
+                    translatedFiles.add(translatedFile);
+                    System.out.println("OK     " + vmFiles.get(i) + " (" + translatedFile.instructions()
+                                       + " instructions" + (optimize ? ", " + translatedFile.savedInstructions()
+                                                                       + " saved)" : ")"));
+                } catch (ExecutionException e) {
+                    ++failures;
+                    System.out.println("FAILED " + vmFiles.get(i) + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " file(s) failed; " + outputFileName(directory, format)
+                               + " was not written.");
+            return false;
+        }
+
+        Path outputFile = outputFileName(directory, format);
+        boolean writeASM = !format.isMachineCode() || listing;
+        HackEncoder encoder = format.isMachineCode() ? new HackEncoder() : null;
+        StringWriter preamble = new StringWriter();
+        CodeWriter preambleWriter = (encoder == null)
+                                    ? new CodeWriter(preamble, cacheTopOfStack, sharedComparisons, sharedCalls)
+                                    : new CodeWriter(encoder, writeASM ? preamble : null, cacheTopOfStack,
+                                                     sharedComparisons, sharedCalls);
+        preambleWriter.writeSharedRoutines();
+        if (vmFiles.stream().anyMatch(file -> file.getFileName().toString().equals(SYS_FILE))) {
+            preambleWriter.writeBootstrap();
+        }
+        preambleWriter.close();
+        int instructions = preambleWriter.getInstructionCount();
+        for (TranslatedFile translatedFile : translatedFiles) {
+            instructions += translatedFile.instructions();
+        }
+
+        Path asmFile = outputFileName(directory, OutputFormat.ASM);
+        if (writeASM) {
+            try (BufferedWriter output = Files.newBufferedWriter(asmFile)) {
+                output.write(preamble.toString());
+                for (TranslatedFile translatedFile : translatedFiles) {
+                    output.write(translatedFile.asmCode());
+                }
+            } catch (IOException e) {
+                System.out.println("Cannot write to " + asmFile + ": " + e.getMessage());
+                return false;
+            }
+        }
+        if (encoder != null) {
+            try {
+                for (TranslatedFile translatedFile : translatedFiles) {
+                    encoder.append(translatedFile.encoder());
+                }
+                encoder.resolveSymbols();
+                VM.writeMachineCode(encoder, outputFile, format);
+            } catch (IllegalArgumentException | IOException e) {
+                System.out.println("Cannot write " + outputFile + ": " + e.getMessage());
+                return false;
+            }
+        }
+
+        System.out.printf("%d file(s) translated into %s (%d instructions) in %.1f ms%n", vmFiles.size(), outputFile,
+                          instructions, (System.nanoTime() - start) / 1e6);
+        return true;
+    }
+
+    /**
+     * Lists the .vm files directly in a directory, in sorted order.
+     * @param directory The directory.
+     * @return The .vm files.
+     * @throws IOException If the directory could not be read.
+     */
+    static List <Path> findVMFiles(Path directory) throws IOException {
+        try (Stream <Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                        .filter(file -> file.getFileName().toString().endsWith(VM.VM_EXTENSION))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the name of the file a directory is translated into.
+     * @param directory The directory.
+     * @param format The kind of file written.
+     * @return directory/directory plus the format's extension (e.g. Pong/Pong.asm).
+     */
+    static Path outputFileName(Path directory, OutputFormat format) {
+        Path name = directory.toAbsolutePath().normalize().getFileName();
+        return directory.resolve(((name == null) ? "program" : name.toString()) + format.getExtension());
+    }
+
+    /**
+     * Translates one file into memory.
+     * @param vmFile The .vm file.
+     * @param cacheTopOfStack True if the value on top of the stack should be kept in D.
+     * @param sharedComparisons True if comparisons should call shared routines.
+     * @param sharedCalls True if calls and returns should jump to shared routines.
+     * @param optimize True if the commands should be optimized.
+     * @param format The kind of file being written.
+     * @param listing True if the ASM code should also be kept when the format is machine code.
+     * @return The translation.
+     * @throws IOException If the file could not be read.
+     * @throws IllegalArgumentException If a line isn't a valid command, or the file defines a label twice.
+     */
+    private static TranslatedFile translateFile(Path vmFile, boolean cacheTopOfStack, boolean sharedComparisons,
+                                                boolean sharedCalls, boolean optimize, OutputFormat format,
+                                                boolean listing) throws IOException {
+        String fileName = vmFile.getFileName().toString();
+        fileName = fileName.substring(0, fileName.length() - VM.VM_EXTENSION.length());
+
+        List <VMCommand> commands = VM.readCommands(new VMParser(Files.newBufferedReader(vmFile)));
+        StringWriter asmCode = (!format.isMachineCode() || listing) ? new StringWriter() : null;
+        HackEncoder encoder = format.isMachineCode() ? new HackEncoder() : null;
+        CodeWriter translatedCodeOutput = (encoder == null)
+                                          ? new CodeWriter(asmCode, cacheTopOfStack, sharedComparisons, sharedCalls)
+                                          : new CodeWriter(encoder, asmCode, cacheTopOfStack, sharedComparisons,
+                                                           sharedCalls);
+        translatedCodeOutput.setFileName(fileName);
+        CodeWriter unoptimizedCodeOutput = null;
+        if (optimize) {
+            unoptimizedCodeOutput = new CodeWriter(Writer.nullWriter(), cacheTopOfStack, sharedComparisons,
+                                                   sharedCalls);
+            unoptimizedCodeOutput.setFileName(fileName);
+        }
+
+        int savedInstructions = VM.translate(commands, translatedCodeOutput, unoptimizedCodeOutput);
+        return new TranslatedFile((asmCode == null) ? null : asmCode.toString(), encoder,
+                                  translatedCodeOutput.getInstructionCount(), savedInstructions);
+    }
+}
@@ -0,0 +1,253 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HackEncoder.java - Encodes the ASM code written by a CodeWriter straight into 16-bit Hack instructions, so a .vm
+ * file can be translated into a .hack file without writing a .asm file and running the assembler on it.
+ *
+ * The encoding is the assembler's own (HW07 is a dependency of this module): C-instructions are encoded by its
+ * CInstructionMapper, predefined symbols, labels and variables are resolved by its SymbolTable, and the files are
+ * written by its HackFileWriter, so the words can't drift from what assembling the .asm file would give.
+ *
+ * Algorithm:
+ *
+ * 1. Each chunk of ASM code the CodeWriter flushes from its buffer is encoded at once, one line at a time, into a
+ *    WordBuffer:
+ *    - "(label)" records the address of the next instruction as the label's address.
+ *    - "@number" and "@SP", "@R13", etc. (the predefined symbols) are encoded directly.
+ *    - "@symbol" for any other symbol is encoded as 0 for now, and the symbol and the address of the instruction are
+ *      kept in a list of references, as the symbol may be a label that comes later.
+ *    - Any other line is a C-instruction, encoded by the CInstructionMapper straight from the chunk's characters.
+ *
+ * 2. Encoders of separate files can be joined with append (their labels and references are moved by the number of
+ *    instructions before them).
+ *
+ * 3. Once the whole program has been encoded, resolveSymbols adds the labels to a SymbolTable and fills in every
+ *    reference from it: a symbol that is a label gets the label's address, and any other symbol is a variable (e.g.
+ *    the static "Foo.3"), which is given the next free address from 16 on, in the order the variables are first used.
+ *
+ * 4. The words are written as a text .hack file (one line of 16 binary digits per instruction), or as a packed binary
+ *    ROM image (2 bytes per instruction, little-endian, the same format as the assembler's --binary).
+ *
+ * INSTANCE VARIABLES:
+ * - PREDEFINED_SYMBOLS (SymbolTable): A table that is never given a symbol, so it only holds the predefined ones.
+ * - words (WordBuffer): The encoded instructions.
+ * - labels (SymbolMap): The address of every label defined.
+ * - referenceSymbols (List<String>): The symbol of every A-instruction encoded before its address was known.
+ * - referenceAddresses (List<Integer>): The address of each of those A-instructions.
+ *
+ * METHODS:
+ * - HackEncoder: Creates an empty encoder.
+ * - encode (char[], int, int): Encodes ASM code, one instruction or label per line.
+ * - append (HackEncoder): Adds the instructions, labels and references of another encoder after this one's.
+ * - resolveSymbols: Fills in the address of every label and variable used.
+ * - size: The number of instructions encoded.
+ * - getWords: The encoded instructions.
+ * - writeText (Path): Writes the instructions as a text .hack file.
+ * - writeBinary (Path): Writes the instructions as a packed binary ROM image.
+ *
+ * Author: Matt Sheehan
+ */
+class HackEncoder {
+
+    private static final SymbolTable PREDEFINED_SYMBOLS = new SymbolTable();
+    private static final int MAXIMUM_ADDRESS = 32767;
+
+    private final WordBuffer words = new WordBuffer();
+    private final SymbolMap labels = new SymbolMap();
+    private final List <String> referenceSymbols = new ArrayList <> ();
+    private final List <Integer> referenceAddresses = new ArrayList <> ();
+
+    /**
+     * Encodes ASM code, as written by a CodeWriter.
+     * @param asmCode The characters holding the ASM code, one instruction or label per line (empty lines are skipped).
+     * @param start The index of the first character of the ASM code.
+     * @param end The index after the last character of the ASM code (the end of a line).
+     * @throws IllegalArgumentException If a label is defined twice, a number is too large, or a C-instruction has an
+     *                                  unknown mnemonic.
+     */
+    void encode(char [] asmCode, int start, int end) {
+        CharBuffer source = CharBuffer.wrap(asmCode); // Read by the CInstructionMapper in place, without a copy.
+        int lineStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || asmCode[i] == '\n') {
+                if (i > lineStart) {
+                    encodeLine(source, lineStart, i);
+                }
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Adds the instructions of another encoder after this one's, moving its labels and references to their new
+     * addresses. The other encoder should not be used afterwards.
+     * @param other The encoder of the code that follows.
+     * @throws IllegalArgumentException If both encoders define the same label.
+     */
+    void append(HackEncoder other) {
+        int offset = words.size();
+        for (int i = 0; i < other.labels.size(); i++) {
+            defineLabel(other.labels.nameAt(i), other.labels.valueAt(i) + offset);
+        }
+        for (int i = 0; i < other.referenceSymbols.size(); i++) {
+            referenceSymbols.add(other.referenceSymbols.get(i));
+            referenceAddresses.add(other.referenceAddresses.get(i) + offset);
+        }
+        for (int i = 0; i < other.words.size(); i++) {
+            words.add(other.words.get(i));
+        }
+    }
+
+    /**
+     * Fills in the address of every symbol used before its address was known: labels get their address, and every
+     * other symbol is a variable, given the next free address from 16 on.
+     * @throws IllegalArgumentException If the program is too large for the addresses of its labels to be encoded, or
+     *                                  a label or variable has a name the assembler would reject.
+     */
+    void resolveSymbols() {
+        if (words.size() > MAXIMUM_ADDRESS + 1) {
+            throw new IllegalArgumentException("the program has " + words.size() + " instructions, more than the "
+                                               + (MAXIMUM_ADDRESS + 1) + " the ROM holds");
+        }
+        SymbolTable symbolTable = new SymbolTable();
+        for (int i = 0; i < labels.size(); i++) {
+            if (!symbolTable.addSymbol(labels.nameAt(i), labels.valueAt(i))) {
+                throw new IllegalArgumentException("\"" + labels.nameAt(i) + "\" can't be a label");
+            }
+        }
+        for (int i = 0; i < referenceSymbols.size(); i++) {
+            int address = symbolTable.getOrAllocateVariable(referenceSymbols.get(i));
+            if (address == SymbolTable.NOT_FOUND) {
+                throw new IllegalArgumentException("\"" + referenceSymbols.get(i) + "\" is not a valid symbol");
+            }
+            words.set(referenceAddresses.get(i), address);
+        }
+        referenceSymbols.clear();
+        referenceAddresses.clear();
+    }
+
+    /**
+     * Accessor for the number of instructions.
+     * @return The number of instructions encoded.
+     */
+    int size() {
+        return words.size();
+    }
+
+    /**
+     * Returns the encoded instructions (complete only after resolveSymbols).
+     * @return A copy of the instructions, one per element.
+     */
+    short [] getWords() {
+        return words.toArray();
+    }
+
+    /**
+     * Writes the instructions as a text .hack file: one line of 16 binary digits per instruction.
+     * @param outputFile The .hack file to be written.
+     * @throws IOException If the file could not be written.
+     */
+    void writeText(Path outputFile) throws IOException {
+        HackFileWriter.writeText(words.getWords(), words.size(), outputFile);
+    }
+
+    /**
+     * Writes the instructions as a packed binary ROM image: 2 bytes per instruction, little-endian.
+     * @param outputFile The ROM image file to be written.
+     * @throws IOException If the file could not be written.
+     */
+    void writeBinary(Path outputFile) throws IOException {
+        HackFileWriter.writeBinary(words.getWords(), words.size(), outputFile);
+    }
+
+    /**
+     * Encodes one line of ASM code.
+     * @param source The characters holding the ASM code.
+     * @param start The index of the first character of the line.
+     * @param end The index after the last character of the line.
+     * @throws IllegalArgumentException If the line can't be encoded.
+     */
+    private void encodeLine(CharBuffer source, int start, int end) {
+        char first = source.charAt(start);
+        if (first == '(') {
+            defineLabel(source.subSequence(start + 1, end - 1).toString(), words.size());
+        } else if (first == '@') {
+            encodeAInstruction(source, start + 1, end);
+        } else {
+            encodeCInstruction(source, start, end);
+        }
+    }
+
+    /**
+     * Encodes an A-instruction, keeping a reference to it if its symbol's address isn't known yet.
+     * @param source The characters holding the ASM code.
+     * @param start The index of the first character after the '@'.
+     * @param end The index after the last character of the instruction.
+     * @throws IllegalArgumentException If the number is larger than 32767.
+     */
+    private void encodeAInstruction(CharBuffer source, int start, int end) {
+        if (Character.isDigit(source.charAt(start))) {
+            int number = 0;
+            for (int i = start; i < end && number <= MAXIMUM_ADDRESS; i++) {
+                number = number * 10 + (source.charAt(i) - '0');
+            }
+            if (number > MAXIMUM_ADDRESS) {
+                throw new IllegalArgumentException("\"" + source.subSequence(start - 1, end) + "\" is too large");
+            }
+            words.add(number);
+            return;
+        }
+
+        CharSequence symbol = source.subSequence(start, end);
+        int address = PREDEFINED_SYMBOLS.getAddress(symbol);
+        if (address == SymbolTable.NOT_FOUND) {
+            referenceSymbols.add(symbol.toString());
+            referenceAddresses.add(words.size());
+            address = 0;
+        }
+        words.add(address);
+    }
+
+    /**
+     * Encodes a C-instruction ("dest=comp;jump", with dest and jump optional).
+     * @param source The characters holding the ASM code.
+     * @param start The index of the first character of the instruction.
+     * @param end The index after the last character of the instruction.
+     * @throws IllegalArgumentException If the instruction has an unknown mnemonic.
+     */
+    private void encodeCInstruction(CharBuffer source, int start, int end) {
+        int equalsPosition = -1;
+        int semicolonPosition = -1;
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) == '=' && equalsPosition < 0) {
+                equalsPosition = i;
+            } else if (source.charAt(i) == ';') {
+                semicolonPosition = i;
+            }
+        }
+
+        try { // ASM code written by a CodeWriter has no line numbers; the instruction's address stands in for one.
+            words.add(CInstructionMapper.encode(source, start, equalsPosition, semicolonPosition, end, words.size()));
+        } catch (AssemblyException e) {
+            throw new IllegalArgumentException("\"" + source.subSequence(start, end) + "\" is not a C-instruction", e);
+        }
+    }
+
+    /**
+     * Defines a label.
+     * @param label The label.
+     * @param address The address of the instruction after the label.
+     * @throws IllegalArgumentException If the label was already defined.
+     */
+    private void defineLabel(String label, int address) {
+        if (labels.putIfAbsent(label, address) != SymbolMap.NOT_FOUND) {
+            throw new IllegalArgumentException("the label \"" + label + "\" is defined twice");
+        }
+    }
+}
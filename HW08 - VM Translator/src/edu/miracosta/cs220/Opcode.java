@@ -0,0 +1,74 @@
+package edu.miracosta.cs220;
+
+/**
+ * Opcode.java - The commands of the VM language (and the ones the optimizer makes), as parsed by the VMParser.
+ *
+ * MOVE, INCREMENT and DECREMENT have no mnemonic: they are never parsed, only produced by the VMPeepholeOptimizer.
+ *
+ * INSTANCE VARIABLES:
+ * - mnemonic (String): The command as it is written in VM code (null for the optimizer's commands).
+ * - arithmetic (boolean): True for the arithmetic/logical commands (add, sub, neg, eq, gt, lt, and, or, not).
+ *
+ * METHODS:
+ * - find (String, int, int): Returns the command written in part of a line, or null if there is none.
+ * - Accessor methods for all instance variables.
+ *
+ * Author: Matt Sheehan
+ */
+enum Opcode {
+    ADD("add", true), SUB("sub", true), NEG("neg", true), EQ("eq", true), GT("gt", true), LT("lt", true),
+    AND("and", true), OR("or", true), NOT("not", true),
+    PUSH("push", false), POP("pop", false),
+    LABEL("label", false), GOTO("goto", false), IF_GOTO("if-goto", false),
+    FUNCTION("function", false), CALL("call", false), RETURN("return", false),
+    MOVE(null, false), INCREMENT(null, false), DECREMENT(null, false);
+
+    private static final Opcode [] VALUES = values();
+
+    private final String mnemonic;
+    private final boolean arithmetic;
+
+    /**
+     * Full constructor.
+     * @param mnemonic The command as it is written in VM code.
+     * @param arithmetic True for the arithmetic/logical commands.
+     */
+    Opcode(String mnemonic, boolean arithmetic) {
+        this.mnemonic = mnemonic;
+        this.arithmetic = arithmetic;
+    }
+
+    /**
+     * Returns the command written in part of a line, without making a String of it.
+     * @param line The line of VM code.
+     * @param start The index of the first character of the command.
+     * @param end The index after the last character of the command.
+     * @return The command, or null if the characters aren't a command.
+     */
+    static Opcode find(String line, int start, int end) {
+        int length = end - start;
+        for (Opcode opcode : VALUES) {
+            if (opcode.mnemonic != null && opcode.mnemonic.length() == length
+                    && line.regionMatches(start, opcode.mnemonic, 0, length)) {
+                return opcode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Accessor for the mnemonic.
+     * @return The command as it is written in VM code (null for the optimizer's commands).
+     */
+    String getMnemonic() {
+        return mnemonic;
+    }
+
+    /**
+     * Determines if the command is an arithmetic/logical command.
+     * @return True for add, sub, neg, eq, gt, lt, and, or and not.
+     */
+    boolean isArithmetic() {
+        return arithmetic;
+    }
+}
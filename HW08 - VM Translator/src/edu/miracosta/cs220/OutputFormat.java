@@ -0,0 +1,47 @@
+package edu.miracosta.cs220;
+
+/**
+ * OutputFormat.java - The kinds of file a VM program can be translated into.
+ *
+ * - ASM: Hack assembly code, to be assembled by the assembler.
+ * - HACK: Hack machine code as text (one line of 16 binary digits per instruction), encoded by the HackEncoder.
+ * - BINARY: Hack machine code as a packed binary ROM image (2 bytes per instruction), encoded by the HackEncoder.
+ *
+ * INSTANCE VARIABLES:
+ * - extension (String): The extension of the files written in the format.
+ *
+ * METHODS:
+ * - isMachineCode: Determines if the format is machine code (written through a HackEncoder).
+ * - Accessor methods for all instance variables.
+ *
+ * Author: Matt Sheehan
+ */
+enum OutputFormat {
+    ASM(".asm"), HACK(".hack"), BINARY(".bin");
+
+    private final String extension;
+
+    /**
+     * Full constructor.
+     * @param extension The extension of the files written in the format.
+     */
+    OutputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Determines if the format is machine code.
+     * @return True for HACK and BINARY.
+     */
+    boolean isMachineCode() {
+        return this != ASM;
+    }
+
+    /**
+     * Accessor for the extension.
+     * @return The extension of the files written in the format (e.g. ".hack").
+     */
+    String getExtension() {
+        return extension;
+    }
+}
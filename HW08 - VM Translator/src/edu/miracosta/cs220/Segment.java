@@ -0,0 +1,90 @@
+package edu.miracosta.cs220;
+
+/**
+ * Segment.java - The memory segments of the VM language.
+ *
+ * INSTANCE VARIABLES:
+ * - mnemonic (String): The segment as it is written in VM code.
+ * - base (String): The symbol of the base pointer the segment is reached through (local, argument, this, that), null
+ *   for the other segments.
+ * - maximumIndex (int): The largest index of the segment (7 for temp, R5-R12, and 1 for pointer, THIS and THAT).
+ *
+ * METHODS:
+ * - find (String, int, int): Returns the segment written in part of a line, or null if there is none.
+ * - isBased: Determines if the segment is reached through a base pointer.
+ * - Accessor methods for all instance variables.
+ *
+ * Author: Matt Sheehan
+ */
+enum Segment {
+    CONSTANT("constant", null, 32767), LOCAL("local", "LCL", 32767), ARGUMENT("argument", "ARG", 32767),
+    THIS("this", "THIS", 32767), THAT("that", "THAT", 32767), TEMP("temp", null, 7), STATIC("static", null, 32767),
+    POINTER("pointer", null, 1);
+
+    private static final Segment [] VALUES = values();
+
+    private final String mnemonic;
+    private final String base;
+    private final int maximumIndex;
+
+    /**
+     * Full constructor.
+     * @param mnemonic The segment as it is written in VM code.
+     * @param base The symbol of the base pointer, or null.
+     * @param maximumIndex The largest index of the segment.
+     */
+    Segment(String mnemonic, String base, int maximumIndex) {
+        this.mnemonic = mnemonic;
+        this.base = base;
+        this.maximumIndex = maximumIndex;
+    }
+
+    /**
+     * Returns the segment written in part of a line, without making a String of it.
+     * @param line The line of VM code.
+     * @param start The index of the first character of the segment.
+     * @param end The index after the last character of the segment.
+     * @return The segment, or null if the characters aren't a segment.
+     */
+    static Segment find(String line, int start, int end) {
+        int length = end - start;
+        for (Segment segment : VALUES) {
+            if (segment.mnemonic.length() == length && line.regionMatches(start, segment.mnemonic, 0, length)) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines if the segment is reached through a base pointer.
+     * @return True for local, argument, this and that.
+     */
+    boolean isBased() {
+        return base != null;
+    }
+
+    /**
+     * Accessor for the mnemonic.
+     * @return The segment as it is written in VM code.
+     */
+    String getMnemonic() {
+        return mnemonic;
+    }
+
+    /**
+     * Accessor for the base pointer.
+     * @return The symbol of the base pointer (LCL, ARG, THIS, THAT), or null if the segment has none.
+     */
+    String getBase() {
+        return base;
+    }
+
+    /**
+     * Accessor for the maximum index.
+     * @return The largest index of the segment.
+     */
+    int getMaximumIndex() {
+        return maximumIndex;
+    }
+}
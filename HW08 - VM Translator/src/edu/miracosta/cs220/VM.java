@@ -1,38 +1,257 @@
 package edu.miracosta.cs220;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Algorithm:
  *
- * 1. The program will accept input from the command line of all files to trasnlate from VM to ASM code.
+ * 1. The program will accept input from the command line of all files to trasnlate from VM to ASM code. A directory
+ * is translated as one program (see DirectoryTranslator): its .vm files are translated in parallel, and joined into
+ * one .asm file named after the directory.
+ *
+ * 2. A VMParser and CodeWriter object will be used for this translation process. The VMParser will read in a line of
+ * VM code, clean it off comments, and break the command into its opcode (ADD, SUB, PUSH, POP, etc.), memory segment
+ * and index, which are kept as a VMCommand.
  *
- * 2. A Parser and CodeWriter object will be used for this translation process. The Parser will read in a line of
- * VM code, clean it off comments, and determine the type of VM command being given (add, sub, push, pop, etc.)
+ * 3. If the optimizer is on, the commands of the file are rewritten into cheaper ones by the VMPeepholeOptimizer (e.g.
+ * pushes of two constants and an add become a push of their sum).
  *
- * 3. Whether the command given is an arithmetic command (add, sub, neg, gt, lt, eq, and, or, not), or a push/pop
- * command, the CodeWriter will write specific ASM code that will carry out the VM's manipulation of registers, in
+ * 4. Based on the opcode, whether it is an arithmetic command (add, sub, neg, gt, lt, eq, and, or, not), a push/pop
+ * command, a program flow command (label, goto, if-goto) or a function command (function, call, return), the
+ * CodeWriter will write specific ASM code that will carry out the VM's manipulation of registers, in
  * the form of ASM. Note: Lines that are solely comments will be skipped over.
  *
- * 4. Once the program has moved through all lines in the VM file, the contents will be placed in a file of the same
- * name with a .asm extension.
+ * 5. Once the program has moved through all lines in the VM file, the contents will be placed in a file of the same
+ * name with a .asm extension (instead of .vm). If the optimizer is on, the number of Hack instructions it saved is
+ * printed (found by also writing the unoptimized commands, to a CodeWriter that discards them).
+ *
+ * 6. With --hack (or --binary), the ASM code isn't written to a file at all: the CodeWriter gives it to a
+ * HackEncoder, which encodes it into machine code as it is written, resolves the labels and variables itself, and
+ * writes a .hack file (or a packed binary .bin ROM image), so the assembler doesn't have to be run. --listing also
+ * writes the ASM code to the .asm file, for debugging.
+ *
+ * Usage: VM [--cache-stack-top] [--shared-comparisons] [--shared-calls] [--optimize] [--threads N]
+ *           [--hack | --binary] [--listing] (file.vm | directory) ...
+ *
+ * With --cache-stack-top, the CodeWriter keeps the value on top of the stack in the D register (see CodeWriter),
+ * which writes fewer instructions for the same program. With --shared-comparisons, gt/lt/eq call routines written
+ * once at the start of the output instead of being written inline: smaller code, slightly slower comparisons.
+ * --shared-calls does the same for function calls and returns.
  *
  * Author: Matt Sheehan
  */
 public class VM {
-    public static void main(String ... files) {
-        for (String file : files) {
-            Parser vmCodeParser = new Parser(file);
-            CodeWriter translatedCodeOutput = new CodeWriter(file.replaceAll("vm", "asm"));
-
-            while (vmCodeParser.hasMoreCommands()) {
-                vmCodeParser.advance();
-                if (vmCodeParser.getCommandType().matches("add|sub|neg|gt|lt|eq|and|or|not")) {
-                    translatedCodeOutput.writeArithmetic(vmCodeParser.getCommandType());
-                } else if (vmCodeParser.getCommandType().matches("push|pop")) {
-                    translatedCodeOutput.writePushPop(vmCodeParser.getCommandType(), vmCodeParser.getMemorySegment(), vmCodeParser.getMemoryIndex());
-                } else if (vmCodeParser.getCommandType().equals("Comment")) {
+
+    static final String CACHE_STACK_TOP_FLAG = "--cache-stack-top";
+    static final String OPTIMIZE_FLAG = "--optimize";
+    static final String SHARED_COMPARISONS_FLAG = "--shared-comparisons";
+    static final String SHARED_CALLS_FLAG = "--shared-calls";
+    static final String THREADS_FLAG = "--threads";
+    static final String HACK_FLAG = "--hack";
+    static final String BINARY_FLAG = "--binary";
+    static final String LISTING_FLAG = "--listing";
+    static final String VM_EXTENSION = ".vm";
+
+    public static void main(String ... args) {
+        boolean cacheTopOfStack = false;
+        boolean optimize = false;
+        boolean sharedComparisons = false;
+        boolean sharedCalls = false;
+        OutputFormat format = OutputFormat.ASM;
+        boolean listing = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List <String> files = new ArrayList <> ();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case CACHE_STACK_TOP_FLAG -> cacheTopOfStack = true;
+                case OPTIMIZE_FLAG -> optimize = true;
+                case SHARED_COMPARISONS_FLAG -> sharedComparisons = true;
+                case SHARED_CALLS_FLAG -> sharedCalls = true;
+                case HACK_FLAG -> format = OutputFormat.HACK;
+                case BINARY_FLAG -> format = OutputFormat.BINARY;
+                case LISTING_FLAG -> listing = true;
+                case THREADS_FLAG -> {
+                    try {
+                        threads = Integer.parseInt(args[++i]);
+                    } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                        threads = 0;
+                    }
+                    if (threads < 1) {
+                        System.out.println(THREADS_FLAG + " needs a positive number of threads.");
+                        return;
+                    }
                 }
+                default -> files.add(args[i]);
+            }
+        }
+
+        for (String file : files) {
+            if (Files.isDirectory(Path.of(file))) {
+                DirectoryTranslator.translate(Path.of(file), cacheTopOfStack, sharedComparisons, sharedCalls, optimize,
+                                              format, listing, threads);
+            } else {
+                translateFile(file, cacheTopOfStack, sharedComparisons, sharedCalls, optimize, format, listing);
             }
-            translatedCodeOutput.close ( );
        }
     }
+
+    /**
+     * Translates one .vm file into a .asm (or .hack/.bin) file of the same name.
+     * @param file The name of the .vm file.
+     * @param cacheTopOfStack True if the value on top of the stack should be kept in D.
+     * @param sharedComparisons True if comparisons should call shared routines.
+     * @param sharedCalls True if calls and returns should jump to shared routines.
+     * @param optimize True if the commands should be optimized (printing the number of instructions saved).
+     * @param format The kind of file to be written.
+     * @param listing True if the .asm file should also be written when the format is machine code.
+     */
+    static void translateFile(String file, boolean cacheTopOfStack, boolean sharedComparisons, boolean sharedCalls,
+                              boolean optimize, OutputFormat format, boolean listing) {
+        List <VMCommand> commands;
+        try {
+            commands = readCommands(new VMParser(file));
+        } catch (IllegalArgumentException e) {
+            System.out.println(file + ": " + e.getMessage());
+            return;
+        }
+
+        HackEncoder encoder = null;
+        CodeWriter translatedCodeOutput;
+        if (format.isMachineCode()) {
+            encoder = new HackEncoder();
+            Writer listingOutput = null;
+            if (listing) {
+                try {
+                    listingOutput = Files.newBufferedWriter(Path.of(outputFileName(file, OutputFormat.ASM)));
+                } catch (IOException e) {
+                    System.out.println("Cannot write to " + outputFileName(file, OutputFormat.ASM) + ": "
+                                       + e.getMessage());
+                    return;
+                }
+            }
+            translatedCodeOutput = new CodeWriter(encoder, listingOutput, cacheTopOfStack, sharedComparisons,
+                                                  sharedCalls);
+        } else {
+            translatedCodeOutput = new CodeWriter(outputFileName(file, format), cacheTopOfStack, sharedComparisons,
+                                                  sharedCalls);
+        }
+        translatedCodeOutput.writeSharedRoutines();
+        CodeWriter unoptimizedCodeOutput = null;
+        if (optimize) {
+            unoptimizedCodeOutput = new CodeWriter(Writer.nullWriter(), cacheTopOfStack, sharedComparisons,
+                                                   sharedCalls);
+            unoptimizedCodeOutput.writeSharedRoutines();
+        }
+
+        int savedInstructions;
+        try {
+            savedInstructions = translate(commands, translatedCodeOutput, unoptimizedCodeOutput);
+            if (encoder != null) {
+                encoder.resolveSymbols();
+                writeMachineCode(encoder, Path.of(outputFileName(file, format)), format);
+            }
+        } catch (IllegalArgumentException | IOException | UncheckedIOException e) {
+            System.out.println(file + ": " + e.getMessage());
+            return;
+        }
+        if (optimize) {
+            System.out.println(file + ": saved " + savedInstructions + " of "
+                               + unoptimizedCodeOutput.getInstructionCount() + " Hack instructions.");
+        }
+    }
+
+    /**
+     * Returns the name of the file a .vm file is translated into.
+     * @param file The name of the .vm file.
+     * @param format The kind of file written.
+     * @return The name with the .vm extension replaced by the format's extension (or the format's extension added, if
+     *         it has no .vm extension).
+     */
+    static String outputFileName(String file, OutputFormat format) {
+        return (file.endsWith(VM_EXTENSION) ? file.substring(0, file.length() - VM_EXTENSION.length()) : file)
+               + format.getExtension();
+    }
+
+    /**
+     * Writes the machine code of a whole program to a file.
+     * @param encoder The encoder holding the program, after resolveSymbols.
+     * @param outputFile The file to be written.
+     * @param format HACK for a text .hack file, BINARY for a packed binary ROM image.
+     * @throws IOException If the file could not be written.
+     */
+    static void writeMachineCode(HackEncoder encoder, Path outputFile, OutputFormat format) throws IOException {
+        if (format == OutputFormat.BINARY) {
+            encoder.writeBinary(outputFile);
+        } else {
+            encoder.writeText(outputFile);
+        }
+    }
+
+    /**
+     * Reads every command of the VM code (skipping lines that are solely comments).
+     * @param vmCodeParser The parser connected to the VM code.
+     * @return The commands, in order.
+     * @throws IllegalArgumentException If a line isn't a valid command.
+     */
+    static List <VMCommand> readCommands(VMParser vmCodeParser) {
+        List <VMCommand> commands = new ArrayList <> ();
+        while (vmCodeParser.hasMoreCommands()) {
+            vmCodeParser.advance();
+            commands.add(new VMCommand(vmCodeParser));
+        }
+        return commands;
+    }
+
+    /**
+     * Writes the ASM code of the commands (optimizing them first, if asked), and closes the CodeWriter(s).
+     * @param commands The commands, in order.
+     * @param translatedCodeOutput The CodeWriter to write to.
+     * @param unoptimizedCodeOutput A CodeWriter set up like translatedCodeOutput that discards its output, which the
+     *                              unoptimized commands are written to so the optimizer can be measured against it;
+     *                              null if the commands shouldn't be optimized.
+     * @return The number of Hack instructions saved by the optimizer (0 if the commands weren't optimized).
+     */
+    static int translate(List <VMCommand> commands, CodeWriter translatedCodeOutput,
+                         CodeWriter unoptimizedCodeOutput) {
+        if (unoptimizedCodeOutput == null) {
+            writeCommands(commands, translatedCodeOutput);
+            return 0;
+        }
+        writeCommands(commands, unoptimizedCodeOutput);
+        writeCommands(VMPeepholeOptimizer.optimize(commands), translatedCodeOutput);
+        return unoptimizedCodeOutput.getInstructionCount() - translatedCodeOutput.getInstructionCount();
+    }
+
+    /**
+     * Writes the ASM code of the commands, and closes the CodeWriter.
+     * @param commands The commands, in order.
+     * @param translatedCodeOutput The CodeWriter to write to.
+     */
+    static void writeCommands(List <VMCommand> commands, CodeWriter translatedCodeOutput) {
+        for (VMCommand command : commands) {
+            switch (command.getOpcode()) {
+                case ADD, SUB, NEG, EQ, GT, LT, AND, OR, NOT ->
+                    translatedCodeOutput.writeArithmetic(command.getOpcode());
+                case PUSH, POP -> translatedCodeOutput.writePushPop(command.getOpcode(), command.getSegment(),
+                                                                    command.getIndex());
+                case MOVE -> translatedCodeOutput.writeMove(command.getSegment(), command.getIndex(),
+                                                            command.getTargetSegment(), command.getTargetIndex());
+                case INCREMENT -> translatedCodeOutput.writeIncrement();
+                case DECREMENT -> translatedCodeOutput.writeDecrement();
+                case LABEL -> translatedCodeOutput.writeLabel(command.getLabel());
+                case GOTO -> translatedCodeOutput.writeGoto(command.getLabel());
+                case IF_GOTO -> translatedCodeOutput.writeIf(command.getLabel());
+                case FUNCTION -> translatedCodeOutput.writeFunction(command.getLabel(), command.getIndex());
+                case CALL -> translatedCodeOutput.writeCall(command.getLabel(), command.getIndex());
+                case RETURN -> translatedCodeOutput.writeReturn();
+            }
+        }
+        translatedCodeOutput.close();
+    }
 }
@@ -0,0 +1,152 @@
+package edu.miracosta.cs220;
+
+/**
+ * VMCommand.java - One parsed VM command, kept so that commands can be rewritten before they are translated.
+ *
+ * Besides the commands of the VM language, the optimizer produces three commands of its own, which only exist between
+ * the optimizer and the CodeWriter:
+ * - MOVE: "push segment index / pop targetSegment targetIndex" without going through the stack.
+ * - INCREMENT/DECREMENT: "push constant 1 / add" and "push constant 1 / sub".
+ *
+ * INSTANCE VARIABLES:
+ * - opcode (Opcode): The command.
+ * - segment (Segment): The memory segment pushed from/popped to (or read by a move), null for other commands.
+ * - label (String): The label of a label/goto/if-goto command or the function of a function/call command.
+ * - index (int): The index of the memory segment (or the number of locals/arguments of a function/call command).
+ * - targetSegment (Segment): The memory segment written by a move, null for other commands.
+ * - targetIndex (int): The index of the memory segment written by a move.
+ *
+ * METHODS:
+ * - Full constructor: Creates any command, including a move.
+ * - VMCommand (Opcode): Creates a command without arguments.
+ * - VMCommand (Opcode, Segment, int): Creates a push/pop command.
+ * - VMCommand (VMParser): Creates the command the parser has just read.
+ * - isPushConstant: Determines if the command pushes a constant.
+ * - Accessor methods for all instance variables.
+ *
+ * Author: Matt Sheehan
+ */
+class VMCommand {
+
+    private final Opcode opcode;
+    private final Segment segment;
+    private final String label;
+    private final int index;
+    private final Segment targetSegment;
+    private final int targetIndex;
+
+    /**
+     * Full constructor.
+     * @param opcode The command.
+     * @param segment The memory segment pushed from/popped to/read.
+     * @param label The label or function name.
+     * @param index The index of the memory segment (or the number of locals/arguments).
+     * @param targetSegment The memory segment written by a move.
+     * @param targetIndex The index of the memory segment written by a move.
+     */
+    VMCommand (Opcode opcode, Segment segment, String label, int index, Segment targetSegment, int targetIndex) {
+        this.opcode = opcode;
+        this.segment = segment;
+        this.label = label;
+        this.index = index;
+        this.targetSegment = targetSegment;
+        this.targetIndex = targetIndex;
+    }
+
+    /**
+     * Creates a command without arguments.
+     * @param opcode The command.
+     */
+    VMCommand (Opcode opcode) {
+        this(opcode, null, null, 0, null, 0);
+    }
+
+    /**
+     * Creates a push/pop command.
+     * @param opcode The command (PUSH or POP).
+     * @param segment The memory segment.
+     * @param index The index of the memory segment.
+     */
+    VMCommand (Opcode opcode, Segment segment, int index) {
+        this(opcode, segment, null, index, null, 0);
+    }
+
+    /**
+     * Creates the command the parser has just read.
+     * @param vmCodeParser The parser, after a call to advance.
+     */
+    VMCommand (VMParser vmCodeParser) {
+        this(vmCodeParser.getOpcode(), vmCodeParser.getSegment(), vmCodeParser.getLabel(), vmCodeParser.getIndex(),
+             null, 0);
+    }
+
+    /**
+     * Determines if the command pushes a constant.
+     * @return True if the command is "push constant".
+     */
+    boolean isPushConstant() {
+        return opcode == Opcode.PUSH && segment == Segment.CONSTANT;
+    }
+
+    /**
+     * Accessor for the opcode.
+     * @return The command.
+     */
+    Opcode getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Accessor for the memory segment.
+     * @return The memory segment pushed from/popped to/read, null if the command has none.
+     */
+    Segment getSegment() {
+        return segment;
+    }
+
+    /**
+     * Accessor for the label.
+     * @return The label or function name, null if the command has none.
+     */
+    String getLabel() {
+        return label;
+    }
+
+    /**
+     * Accessor for the index of the memory segment.
+     * @return The index (or the number of locals/arguments).
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Accessor for the memory segment written by a move.
+     * @return The memory segment, null if the command isn't a move.
+     */
+    Segment getTargetSegment() {
+        return targetSegment;
+    }
+
+    /**
+     * Accessor for the index of the memory segment written by a move.
+     * @return The index.
+     */
+    int getTargetIndex() {
+        return targetIndex;
+    }
+
+    @Override
+    public String toString() {
+        return switch (opcode) {
+            case PUSH, POP -> opcode.getMnemonic() + " " + segment.getMnemonic() + " " + index;
+            case LABEL, GOTO, IF_GOTO -> opcode.getMnemonic() + " " + label;
+            case FUNCTION, CALL -> opcode.getMnemonic() + " " + label + " " + index;
+            case MOVE -> "move " + segment.getMnemonic() + " " + index + " " + targetSegment.getMnemonic() + " "
+                         + targetIndex;
+            case INCREMENT -> "increment";
+            case DECREMENT -> "decrement";
+            default -> opcode.getMnemonic();
+        };
+    }
+}
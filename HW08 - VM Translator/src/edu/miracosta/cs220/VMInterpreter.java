@@ -0,0 +1,559 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VMInterpreter.java - Runs VM programs directly, without translating them to Hack code and running that on the CPU
+ * emulator, so VM programs (and the translator) can be checked quickly.
+ *
+ * Algorithm:
+ *
+ * 1. The commands of each file are added in order (a directory is added file by file, in sorted order, like the
+ * DirectoryTranslator does).
+ *
+ * 2. link decodes the commands into an int[] of (operation, a, b) triples, resolving everything that doesn't change
+ * while the program runs:
+ *    - Labels are removed, and jumps hold the index of the command after their label. Labels are local to their
+ *      function ("function$label") exactly as the CodeWriter writes them.
+ *    - Calls hold the index of their function's command, and the number of arguments.
+ *    - Pushes and pops have one operation per kind of segment: constants hold their value; local, argument, this and
+ *      that hold the address of their base pointer and the index; temp, pointer and static hold their address. Statics
+ *      get the addresses the translated code gets: 16 + i for a single file, otherwise the next free address from 16
+ *      on, in the order the statics are first used (as the assembler gives them).
+ *    - Moves, increments and decrements (from the VMPeepholeOptimizer) are decoded too, so optimized commands can be
+ *      run.
+ *    - A goto to itself (the usual "label END / goto END" at the end of a program) becomes a halt.
+ *
+ * 3. If the program is started with the bootstrap code (a directory with a Sys.vm), SP is set to 256 and Sys.init is
+ * called, as the translated bootstrap code does.
+ *
+ * 4. run executes the commands with one switch per command over the decoded operation, on a RAM of 32K 16-bit words
+ * laid out like the Hack computer's (SP, LCL, ARG, THIS and THAT in RAM[0..4], temp in RAM[5..12], statics from
+ * RAM[16], the stack from RAM[256]). Values are kept as signed 16-bit numbers, arithmetic wraps around like the Hack
+ * ALU's, and gt/lt/eq compare the 16-bit difference of their operands, like the translated code does. The program
+ * halts when it runs past its last command or reaches a halt, or stops after the given number of steps.
+ *
+ * 5. Afterwards the RAM can be compared with the translated code's: the pointers, temp, statics, the stack below SP
+ * and the heap hold the same values. Return addresses are the index of the command after the call instead of a ROM
+ * address, so they (and the stack above SP, and the translated code's scratch registers R13 to R15) differ.
+ *
+ * Usage: VMInterpreter [--optimize] [--steps N] [--set ADDRESS=VALUE] ... [--dump] (file.vm | directory)
+ *
+ * Without the bootstrap code, the pointers start as the course's test scripts set them (SP 256, LCL 300, ARG 400,
+ * THIS 3000, THAT 3010); --set changes any word of RAM before the program runs. --dump prints every word of RAM that
+ * isn't 0 when the program has stopped.
+ *
+ * INSTANCE VARIABLES:
+ * - fileNames (List<String>): The name of each file added (null for a single file).
+ * - files (List<List<VMCommand>>): The commands of each file added.
+ * - code (int[]): The decoded commands, as (operation, a, b) triples.
+ * - ram (int[]): The RAM of the Hack computer.
+ * - programCounter (int): The index of the next command to be run.
+ * - halted (boolean): True once the program has halted.
+ *
+ * METHODS:
+ * - addFile (String, List): Adds the commands of a file to the program.
+ * - link (boolean): Decodes the program, and optionally runs the bootstrap code.
+ * - run (long): Runs the program for at most the given number of commands.
+ * - isHalted: Determines if the program has halted.
+ * - getRam: The RAM of the Hack computer.
+ *
+ * Author: Matt Sheehan
+ */
+class VMInterpreter {
+
+    static final int RAM_SIZE = 32768;
+    static final int SP = 0;
+    static final int LCL = 1;
+    static final int ARG = 2;
+    static final int THIS = 3;
+    static final int THAT = 4;
+
+    private static final int TEMP_BASE = 5;
+    private static final int FIRST_STATIC = 16;
+    private static final int STACK_BASE = 256;
+    private static final int ADDRESS_MASK = RAM_SIZE - 1;
+    private static final int STRIDE = 3;
+    private static final String OPTIMIZE_FLAG = "--optimize";
+    private static final String STEPS_FLAG = "--steps";
+    private static final String SET_FLAG = "--set";
+    private static final String DUMP_FLAG = "--dump";
+    private static final long DEFAULT_STEPS = 100_000_000L;
+
+    // The decoded operations.
+    private static final int PUSH_CONSTANT = 0;
+    private static final int PUSH_BASED = 1;
+    private static final int PUSH_DIRECT = 2;
+    private static final int POP_BASED = 3;
+    private static final int POP_DIRECT = 4;
+    private static final int ADD = 5;
+    private static final int SUB = 6;
+    private static final int NEG = 7;
+    private static final int EQ = 8;
+    private static final int GT = 9;
+    private static final int LT = 10;
+    private static final int AND = 11;
+    private static final int OR = 12;
+    private static final int NOT = 13;
+    private static final int INCREMENT = 14;
+    private static final int DECREMENT = 15;
+    private static final int GOTO = 16;
+    private static final int IF_GOTO = 17;
+    private static final int FUNCTION = 18;
+    private static final int CALL = 19;
+    private static final int RETURN = 20;
+    private static final int HALT = 21;
+
+    private final List <String> fileNames = new ArrayList <> ();
+    private final List <List <VMCommand>> files = new ArrayList <> ();
+    private int [] code = new int [0];
+    private final int [] ram = new int [RAM_SIZE];
+    private int programCounter = 0;
+    private boolean halted = false;
+
+    public static void main(String ... args) {
+        boolean optimize = false;
+        boolean dump = false;
+        long steps = DEFAULT_STEPS;
+        Map <Integer, Integer> settings = new HashMap <> ();
+        String file = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case OPTIMIZE_FLAG -> optimize = true;
+                    case DUMP_FLAG -> dump = true;
+                    case STEPS_FLAG -> steps = Long.parseLong(args[++i]);
+                    case SET_FLAG -> {
+                        String [] setting = args[++i].split("=");
+                        settings.put(Integer.parseInt(setting[0]) & ADDRESS_MASK,
+                                     (int) (short) Integer.parseInt(setting[1]));
+                    }
+                    default -> file = args[i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            file = null;
+        }
+        if (file == null) {
+            System.out.println("Usage: VMInterpreter [--optimize] [--steps N] [--set ADDRESS=VALUE] ... [--dump] "
+                               + "(file.vm | directory)");
+            return;
+        }
+
+        VMInterpreter interpreter = new VMInterpreter();
+        boolean bootstrap;
+        try {
+            Path path = Path.of(file);
+            if (Files.isDirectory(path)) {
+                List <Path> vmFiles = DirectoryTranslator.findVMFiles(path);
+                for (Path vmFile : vmFiles) {
+                    String fileName = vmFile.getFileName().toString();
+                    interpreter.addFile(fileName.substring(0, fileName.length() - VM.VM_EXTENSION.length()),
+                                        readCommands(vmFile, optimize));
+                }
+                bootstrap = vmFiles.stream().anyMatch(vmFile -> vmFile.getFileName().toString()
+                                                                   .equals(DirectoryTranslator.SYS_FILE));
+            } else {
+                interpreter.addFile(null, readCommands(path, optimize));
+                bootstrap = false;
+            }
+            interpreter.link(bootstrap);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.out.println(file + ": " + e.getMessage());
+            return;
+        }
+
+        int [] ram = interpreter.getRam();
+        if (!bootstrap) {
+            ram[SP] = STACK_BASE;
+            ram[LCL] = 300;
+            ram[ARG] = 400;
+            ram[THIS] = 3000;
+            ram[THAT] = 3010;
+        }
+        settings.forEach((address, value) -> ram[address] = value);
+
+        long start = System.nanoTime();
+        long executed = interpreter.run(steps);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: ran %d VM commands in %.1f ms (%.1f million per second), %s%n", file, executed,
+                          seconds * 1e3, executed / seconds / 1e6,
+                          interpreter.isHalted() ? "halted" : "stopped after " + steps + " steps");
+        if (dump) {
+            for (int address = 0; address < RAM_SIZE; address++) {
+                if (ram[address] != 0) {
+                    System.out.println("RAM[" + address + "] = " + ram[address]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the commands of a file to the program (after the files already added).
+     * @param fileName The name of the file, without its directory or extension (its statics are "fileName.i" and its
+     *                 labels outside of functions "fileName$label"), or null if the program is a single file (whose
+     *                 statics are RAM[16 + i]).
+     * @param commands The commands of the file, in order.
+     */
+    void addFile(String fileName, List <VMCommand> commands) {
+        fileNames.add(fileName);
+        files.add(commands);
+    }
+
+    /**
+     * Decodes the program, and sets it to start at its first command (or runs the bootstrap code).
+     * @param bootstrap True if SP should be set to 256 and Sys.init called, as the translated bootstrap code does.
+     * @throws IllegalArgumentException If a label is defined twice, or a jump or call has no target.
+     */
+    void link(boolean bootstrap) {
+        Map <String, Integer> labels = new HashMap <> ();
+        int length = 0;
+        for (int file = 0; file < files.size(); file++) {
+            String currentFunction = null;
+            for (VMCommand command : files.get(file)) {
+                switch (command.getOpcode()) {
+                    case LABEL -> {
+                        String label = scopedLabel(fileNames.get(file), currentFunction, command.getLabel());
+                        if (labels.putIfAbsent(label, length) != null) {
+                            throw new IllegalArgumentException("the label \"" + label + "\" is defined twice");
+                        }
+                    }
+                    case FUNCTION -> {
+                        currentFunction = command.getLabel();
+                        if (labels.putIfAbsent(currentFunction, length++) != null) {
+                            throw new IllegalArgumentException("the function " + currentFunction
+                                                               + " is defined twice");
+                        }
+                    }
+                    case MOVE -> length += 2;
+                    default -> length++;
+                }
+            }
+        }
+
+        code = new int [length * STRIDE];
+        Map <String, Integer> statics = new HashMap <> ();
+        int position = 0;
+        for (int file = 0; file < files.size(); file++) {
+            String fileName = fileNames.get(file);
+            String currentFunction = null;
+            for (VMCommand command : files.get(file)) {
+                switch (command.getOpcode()) {
+                    case PUSH -> position = decodePush(position, command.getSegment(), command.getIndex(), fileName,
+                                                       statics);
+                    case POP -> position = decodePop(position, command.getSegment(), command.getIndex(), fileName,
+                                                     statics);
+                    case MOVE -> {
+                        position = decodePush(position, command.getSegment(), command.getIndex(), fileName, statics);
+                        position = decodePop(position, command.getTargetSegment(), command.getTargetIndex(),
+                                             fileName, statics);
+                    }
+                    case ADD -> position = decode(position, ADD, 0, 0);
+                    case SUB -> position = decode(position, SUB, 0, 0);
+                    case NEG -> position = decode(position, NEG, 0, 0);
+                    case EQ -> position = decode(position, EQ, 0, 0);
+                    case GT -> position = decode(position, GT, 0, 0);
+                    case LT -> position = decode(position, LT, 0, 0);
+                    case AND -> position = decode(position, AND, 0, 0);
+                    case OR -> position = decode(position, OR, 0, 0);
+                    case NOT -> position = decode(position, NOT, 0, 0);
+                    case INCREMENT -> position = decode(position, INCREMENT, 0, 0);
+                    case DECREMENT -> position = decode(position, DECREMENT, 0, 0);
+                    case LABEL -> { }
+                    case GOTO, IF_GOTO -> {
+                        String label = scopedLabel(fileName, currentFunction, command.getLabel());
+                        int target = target(labels, label, "label");
+                        int operation = (command.getOpcode() == Opcode.IF_GOTO) ? IF_GOTO
+                                        : (target == position / STRIDE) ? HALT : GOTO;
+                        position = decode(position, operation, target, 0);
+                    }
+                    case FUNCTION -> {
+                        currentFunction = command.getLabel();
+                        position = decode(position, FUNCTION, command.getIndex(), 0);
+                    }
+                    case CALL -> position = decode(position, CALL, target(labels, command.getLabel(), "function"),
+                                                   command.getIndex());
+                    case RETURN -> position = decode(position, RETURN, 0, 0);
+                }
+            }
+        }
+
+        programCounter = 0;
+        halted = false;
+        if (bootstrap) {
+            ram[SP] = STACK_BASE;
+            call(0, target(labels, "Sys.init", "function"), 0);
+        }
+    }
+
+    /**
+     * Runs the program from where it stopped, until it halts or has run the given number of commands.
+     * @param maximumSteps The largest number of commands to run.
+     * @return The number of commands run.
+     */
+    long run(long maximumSteps) {
+        final int [] code = this.code;
+        final int [] ram = this.ram;
+        final int end = code.length / STRIDE;
+        int pc = programCounter;
+        long steps = 0;
+
+        execution:
+        while (steps < maximumSteps) {
+            if (pc >= end) {
+                halted = true;
+                break;
+            }
+            int i = pc * STRIDE;
+            int a = code[i + 1];
+            pc++;
+            switch (code[i]) {
+                case PUSH_CONSTANT -> ram[ram[SP]++ & ADDRESS_MASK] = a;
+                case PUSH_BASED -> ram[ram[SP]++ & ADDRESS_MASK] = ram[(ram[a] + code[i + 2]) & ADDRESS_MASK];
+                case PUSH_DIRECT -> ram[ram[SP]++ & ADDRESS_MASK] = ram[a];
+                case POP_BASED -> ram[(ram[a] + code[i + 2]) & ADDRESS_MASK] = ram[--ram[SP] & ADDRESS_MASK];
+                case POP_DIRECT -> ram[a] = ram[--ram[SP] & ADDRESS_MASK];
+                case ADD -> binary(ram, (short) (top(ram, 1) + top(ram, 0)));
+                case SUB -> binary(ram, (short) (top(ram, 1) - top(ram, 0)));
+                case AND -> binary(ram, top(ram, 1) & top(ram, 0));
+                case OR -> binary(ram, top(ram, 1) | top(ram, 0));
+                case EQ -> binary(ram, (short) (top(ram, 1) - top(ram, 0)) == 0 ? -1 : 0);
+                case GT -> binary(ram, (short) (top(ram, 1) - top(ram, 0)) > 0 ? -1 : 0);
+                case LT -> binary(ram, (short) (top(ram, 1) - top(ram, 0)) < 0 ? -1 : 0);
+                case NEG -> ram[(ram[SP] - 1) & ADDRESS_MASK] = (short) -top(ram, 0);
+                case NOT -> ram[(ram[SP] - 1) & ADDRESS_MASK] = ~top(ram, 0);
+                case INCREMENT -> ram[(ram[SP] - 1) & ADDRESS_MASK] = (short) (top(ram, 0) + 1);
+                case DECREMENT -> ram[(ram[SP] - 1) & ADDRESS_MASK] = (short) (top(ram, 0) - 1);
+                case GOTO -> pc = a;
+                case IF_GOTO -> {
+                    if (ram[--ram[SP] & ADDRESS_MASK] != 0) {
+                        pc = a;
+                    }
+                }
+                case FUNCTION -> {
+                    for (int local = 0; local < a; local++) {
+                        ram[ram[SP]++ & ADDRESS_MASK] = 0;
+                    }
+                }
+                case CALL -> {
+                    programCounter = pc;
+                    call(pc, a, code[i + 2]);
+                    pc = programCounter;
+                }
+                case RETURN -> {
+                    int frame = ram[LCL];
+                    int returnAddress = ram[(frame - 5) & ADDRESS_MASK];
+                    ram[ram[ARG] & ADDRESS_MASK] = ram[(ram[SP] - 1) & ADDRESS_MASK];
+                    ram[SP] = (short) (ram[ARG] + 1);
+                    ram[THAT] = ram[(frame - 1) & ADDRESS_MASK];
+                    ram[THIS] = ram[(frame - 2) & ADDRESS_MASK];
+                    ram[ARG] = ram[(frame - 3) & ADDRESS_MASK];
+                    ram[LCL] = ram[(frame - 4) & ADDRESS_MASK];
+                    pc = returnAddress;
+                }
+                default -> {
+                    pc--;
+                    halted = true;
+                    break execution;
+                }
+            }
+            steps++;
+        }
+        programCounter = pc;
+        return steps;
+    }
+
+    /**
+     * Determines if the program has halted (ran past its last command, or reached a goto to itself).
+     * @return True if the program has halted.
+     */
+    boolean isHalted() {
+        return halted;
+    }
+
+    /**
+     * Returns the RAM of the Hack computer (not a copy: it can be changed before the program runs).
+     * @return The RAM, one signed 16-bit value per word.
+     */
+    int [] getRam() {
+        return ram;
+    }
+
+    /**
+     * Reads the commands of a .vm file.
+     * @param vmFile The .vm file.
+     * @param optimize True if the commands should be optimized by the VMPeepholeOptimizer.
+     * @return The commands, in order.
+     * @throws IOException If the file could not be read.
+     * @throws IllegalArgumentException If a line isn't a valid command.
+     */
+    private static List <VMCommand> readCommands(Path vmFile, boolean optimize) throws IOException {
+        List <VMCommand> commands = VM.readCommands(new VMParser(Files.newBufferedReader(vmFile)));
+        return optimize ? VMPeepholeOptimizer.optimize(commands) : commands;
+    }
+
+    /**
+     * Calls a function: the return address and the caller's LCL, ARG, THIS and THAT are pushed, and ARG and LCL are
+     * set for the function.
+     * @param returnAddress The index of the command to return to.
+     * @param function The index of the function's command.
+     * @param arguments The number of arguments pushed for the function.
+     */
+    private void call(int returnAddress, int function, int arguments) {
+        push(returnAddress);
+        push(ram[LCL]);
+        push(ram[ARG]);
+        push(ram[THIS]);
+        push(ram[THAT]);
+        ram[ARG] = (short) (ram[SP] - arguments - 5);
+        ram[LCL] = ram[SP];
+        programCounter = function;
+    }
+
+    /**
+     * Pushes a value onto the stack.
+     * @param value The value.
+     */
+    private void push(int value) {
+        ram[ram[SP]++ & ADDRESS_MASK] = value;
+    }
+
+    /**
+     * Returns a value near the top of the stack.
+     * @param ram The RAM.
+     * @param depth 0 for the value on top of the stack, 1 for the one below it.
+     * @return The value.
+     */
+    private static int top(int [] ram, int depth) {
+        return ram[(ram[SP] - 1 - depth) & ADDRESS_MASK];
+    }
+
+    /**
+     * Replaces the two values on top of the stack with the result of a binary command.
+     * @param ram The RAM.
+     * @param result The result.
+     */
+    private static void binary(int [] ram, int result) {
+        int sp = --ram[SP];
+        ram[(sp - 1) & ADDRESS_MASK] = result;
+    }
+
+    /**
+     * Writes one decoded command.
+     * @param position The index in the code of the command's triple.
+     * @param operation The decoded operation.
+     * @param a The first operand.
+     * @param b The second operand.
+     * @return The index of the next triple.
+     */
+    private int decode(int position, int operation, int a, int b) {
+        code[position] = operation;
+        code[position + 1] = a;
+        code[position + 2] = b;
+        return position + STRIDE;
+    }
+
+    /**
+     * Writes a decoded push.
+     * @param position The index in the code of the command's triple.
+     * @param segment The memory segment.
+     * @param index The index of the memory segment.
+     * @param fileName The name of the command's file, or null for a single file.
+     * @param statics The addresses given to the statics so far.
+     * @return The index of the next triple.
+     */
+    private int decodePush(int position, Segment segment, int index, String fileName, Map <String, Integer> statics) {
+        return switch (segment) {
+            case CONSTANT -> decode(position, PUSH_CONSTANT, index, 0);
+            case LOCAL, ARGUMENT, THIS, THAT -> decode(position, PUSH_BASED, basePointer(segment), index);
+            default -> decode(position, PUSH_DIRECT, directAddress(segment, index, fileName, statics), 0);
+        };
+    }
+
+    /**
+     * Writes a decoded pop.
+     * @param position The index in the code of the command's triple.
+     * @param segment The memory segment.
+     * @param index The index of the memory segment.
+     * @param fileName The name of the command's file, or null for a single file.
+     * @param statics The addresses given to the statics so far.
+     * @return The index of the next triple.
+     */
+    private int decodePop(int position, Segment segment, int index, String fileName, Map <String, Integer> statics) {
+        return switch (segment) {
+            case LOCAL, ARGUMENT, THIS, THAT -> decode(position, POP_BASED, basePointer(segment), index);
+            case CONSTANT -> throw new IllegalArgumentException("Constants can't be popped to.");
+            default -> decode(position, POP_DIRECT, directAddress(segment, index, fileName, statics), 0);
+        };
+    }
+
+    /**
+     * Returns the address of the base pointer of a segment.
+     * @param segment The memory segment (local, argument, this or that).
+     * @return The address (LCL, ARG, THIS or THAT).
+     */
+    private static int basePointer(Segment segment) {
+        return switch (segment) {
+            case LOCAL -> LCL;
+            case ARGUMENT -> ARG;
+            case THIS -> THIS;
+            default -> THAT;
+        };
+    }
+
+    /**
+     * Returns the address of a segment that is reached without a base pointer.
+     * @param segment The memory segment (temp, pointer or static).
+     * @param index The index of the memory segment.
+     * @param fileName The name of the command's file, or null for a single file.
+     * @param statics The addresses given to the statics so far (a new static is given the next free address).
+     * @return The address.
+     */
+    private static int directAddress(Segment segment, int index, String fileName, Map <String, Integer> statics) {
+        if (segment == Segment.TEMP) {
+            return (TEMP_BASE + index) & ADDRESS_MASK;
+        } else if (segment == Segment.POINTER) {
+            return (index == 0) ? THIS : THAT;
+        } else if (fileName == null) {
+            return (FIRST_STATIC + index) & ADDRESS_MASK;
+        }
+        return statics.computeIfAbsent(fileName + "." + index, symbol -> FIRST_STATIC + statics.size());
+    }
+
+    /**
+     * Returns the label a VM label stands for, as the CodeWriter writes it.
+     * @param fileName The name of the file, or null for a single file.
+     * @param currentFunction The function the label is in, or null outside of functions.
+     * @param label The label in the VM code.
+     * @return "function$label", or "fileName$label" outside of functions.
+     */
+    private static String scopedLabel(String fileName, String currentFunction, String label) {
+        if (currentFunction != null) {
+            return currentFunction + "$" + label;
+        }
+        return (fileName == null) ? label : fileName + "$" + label;
+    }
+
+    /**
+     * Returns the index of the command a label or function stands for.
+     * @param labels The index of every label and function.
+     * @param label The label or function.
+     * @param kind "label" or "function", for the error message.
+     * @return The index.
+     * @throws IllegalArgumentException If there is no such label or function.
+     */
+    private static int target(Map <String, Integer> labels, String label, String kind) {
+        Integer target = labels.get(label);
+        if (target == null) {
+            throw new IllegalArgumentException("unknown " + kind + " \"" + label + "\"");
+        }
+        return target;
+    }
+}
@@ -0,0 +1,279 @@
+package edu.miracosta.cs220;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * VMParser.java - Reads VM code and breaks each command into its opcode, memory segment/label, and index.
+ *
+ * The lines are scanned character by character (no regular expressions, and no Strings made except for labels and
+ * function names): comments are cut off at "//", the words of the command are found between the spaces, the opcode
+ * and segment are looked up in their enums, and the index is computed digit by digit.
+ *
+ * INSTANCE VARIABLES:
+ * - inputFile (BufferedReader): The reader responsible for connecting the .vm file with the program.
+ * - nextLine (String): The next line that holds a command (found by hasMoreCommands), null if not yet found.
+ * - lineNumber (int): The number of the last line read.
+ * - opcode (Opcode): The command given by the VM code.
+ * - segment (Segment): The memory segment of a push/pop command.
+ * - label (String): The label of a label/goto/if-goto command, or the function of a function/call command.
+ * - index (int): The index of a push/pop command, or the number of locals/arguments of a function/call command.
+ *
+ * METHODS:
+ * - Full constructor: Connects the .vm file with the program, exits the program if connection couldn't be made.
+ * - VMParser (Reader): Connects the program with VM code from any other source.
+ * - hasMoreCommands: Determines if the file has more commands to be parsed.
+ * - advance: Takes in the next command of VM code, and breaks it into its parts.
+ * - Accessor methods for all instance variables (except inputFile and nextLine).
+ *
+ * Author: Matt Sheehan
+ */
+class VMParser {
+
+    private BufferedReader inputFile;
+    private String nextLine;
+    private int lineNumber = 0;
+    private Opcode opcode;
+    private Segment segment;
+    private String label;
+    private int index;
+
+    /**
+     * Full constructor, connects the file with the class.
+     * @param inputFileName The name of the .vm file.
+     */
+    VMParser (String inputFileName) {
+        try {
+            inputFile = new BufferedReader(new FileReader(inputFileName));
+        } catch (FileNotFoundException e) {
+            System.out.println (inputFileName + " file not found; terminating program.");
+            System.exit (0);
+        }
+    }
+
+    /**
+     * Connects the program with VM code that is not in a file.
+     * @param input The source of the VM code.
+     */
+    VMParser (Reader input) {
+        inputFile = new BufferedReader(input);
+    }
+
+    /**
+     * Returns the state of the file having more commands (skipping over lines that are empty or solely comments).
+     * @return True if the file has more commands for parsing, false if not.
+     * @throws UncheckedIOException If the VM code could not be read.
+     */
+    boolean hasMoreCommands() {
+        try {
+            while (nextLine == null && inputFile != null) {
+                String line = inputFile.readLine();
+                if (line == null) {
+                    inputFile.close();
+                    inputFile = null;
+                } else {
+                    ++lineNumber;
+                    int end = commentStart(line);
+                    if (skipSpaces(line, 0, end) < end) {
+                        nextLine = line;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return nextLine != null;
+    }
+
+    /**
+     * Breaks the next command into its opcode, and its memory segment/label and index (if it has them).
+     * @throws IllegalArgumentException If the line isn't a valid command (including one with text after its last
+     * operand, or an index past the end of its segment).
+     */
+    void advance() {
+        if (!hasMoreCommands()) {
+            return;
+        }
+        String line = nextLine;
+        nextLine = null;
+        segment = null;
+        label = null;
+        index = 0;
+
+        int end = commentStart(line);
+        int opcodeStart = skipSpaces(line, 0, end);
+        int opcodeEnd = skipWord(line, opcodeStart, end);
+        opcode = Opcode.find(line, opcodeStart, opcodeEnd);
+        if (opcode == null) {
+            throw invalidCommand(line);
+        }
+
+        int argumentStart = skipSpaces(line, opcodeEnd, end);
+        int argumentEnd = skipWord(line, argumentStart, end);
+        int indexStart = skipSpaces(line, argumentEnd, end);
+        int indexEnd = skipWord(line, indexStart, end);
+        if (skipSpaces(line, indexEnd, end) != end) { // Nothing may follow the last operand.
+            throw invalidCommand(line);
+        }
+
+        switch (opcode) {
+            case PUSH, POP -> {
+                segment = Segment.find(line, argumentStart, argumentEnd);
+                if (segment == null || (opcode == Opcode.POP && segment == Segment.CONSTANT)) {
+                    throw invalidCommand(line);
+                }
+                index = parseIndex(line, indexStart, indexEnd);
+                if (index > segment.getMaximumIndex()) { // E.g. temp 8 would be R13, the translator's own register.
+                    throw invalidCommand(line);
+                }
+            }
+            case LABEL, GOTO, IF_GOTO -> {
+                label = parseLabel(line, argumentStart, argumentEnd);
+                if (indexStart != end) {
+                    throw invalidCommand(line);
+                }
+            }
+            case FUNCTION, CALL -> {
+                label = parseLabel(line, argumentStart, argumentEnd);
+                index = parseIndex(line, indexStart, indexEnd);
+            }
+            default -> {
+                if (argumentStart != end) {
+                    throw invalidCommand(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accessor for the opcode.
+     * @return The command given by the VM code.
+     */
+    Opcode getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Accessor for the memory segment.
+     * @return The memory segment of a push/pop command, null for other commands.
+     */
+    Segment getSegment() {
+        return segment;
+    }
+
+    /**
+     * Accessor for the label.
+     * @return The label of a label/goto/if-goto command or the function of a function/call command, null otherwise.
+     */
+    String getLabel() {
+        return label;
+    }
+
+    /**
+     * Accessor for the index.
+     * @return The index of a push/pop command, the number of locals/arguments of a function/call command, 0 otherwise.
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Accessor for the line number.
+     * @return The number of the line the last command was read from.
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns where the comment of a line starts.
+     * @param line The line of VM code.
+     * @return The index of "//", or the length of the line if it has no comment.
+     */
+    private static int commentStart(String line) {
+        int commentStart = line.indexOf("//");
+        return (commentStart < 0) ? line.length() : commentStart;
+    }
+
+    /**
+     * Skips over spaces (and tabs).
+     * @param line The line of VM code.
+     * @param position The index to start at.
+     * @param end The index to stop at.
+     * @return The index of the first character that isn't a space, or end.
+     */
+    private static int skipSpaces(String line, int position, int end) {
+        while (position < end && line.charAt(position) <= ' ') {
+            ++position;
+        }
+        return position;
+    }
+
+    /**
+     * Skips over a word.
+     * @param line The line of VM code.
+     * @param position The index of the first character of the word.
+     * @param end The index to stop at.
+     * @return The index after the last character of the word.
+     */
+    private static int skipWord(String line, int position, int end) {
+        while (position < end && line.charAt(position) > ' ') {
+            ++position;
+        }
+        return position;
+    }
+
+    /**
+     * Computes the number written in part of a line.
+     * @param line The line of VM code.
+     * @param start The index of the first digit.
+     * @param end The index after the last digit.
+     * @return The number.
+     * @throws IllegalArgumentException If the characters aren't a number from 0 to 32767.
+     */
+    private int parseIndex(String line, int start, int end) {
+        if (start == end || end - start > 5) {
+            throw invalidCommand(line);
+        }
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            char digit = line.charAt(i);
+            if (digit < '0' || digit > '9') {
+                throw invalidCommand(line);
+            }
+            number = number * 10 + (digit - '0');
+        }
+        if (number > 32767) {
+            throw invalidCommand(line);
+        }
+        return number;
+    }
+
+    /**
+     * Returns the label written in part of a line.
+     * @param line The line of VM code.
+     * @param start The index of the first character of the label.
+     * @param end The index after the last character of the label.
+     * @return The label.
+     * @throws IllegalArgumentException If there is no label.
+     */
+    private String parseLabel(String line, int start, int end) {
+        if (start == end) {
+            throw invalidCommand(line);
+        }
+        return line.substring(start, end);
+    }
+
+    /**
+     * Creates the exception for a line that isn't a valid command.
+     * @param line The line of VM code.
+     * @return The exception.
+     */
+    private IllegalArgumentException invalidCommand(String line) {
+        return new IllegalArgumentException("Line " + lineNumber + ": invalid VM command \"" + line.trim() + "\"");
+    }
+}
@@ -0,0 +1,111 @@
+package edu.miracosta.cs220;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * VMPeepholeOptimizer.java - Rewrites short sequences of VM commands into cheaper ones, between parsing and writing.
+ *
+ * Algorithm:
+ *
+ * 1. The commands are copied one by one to the output list. After each copy, the last commands of the output are
+ * compared with the patterns below, and rewritten if they match. Because the rewritten command stays at the end of the
+ * output, it can match again with the commands after it (e.g. "push constant 1 / push constant 2 / add / push
+ * constant 3 / add" folds to "push constant 6").
+ *
+ * 2. The patterns are:
+ *    - "push constant a / push constant b / add|sub|and|or" becomes "push constant c", where c is computed now. Only
+ *      results that a push constant can hold (0 to 32767) are folded.
+ *    - "push constant 1 / add|sub" becomes an increment/decrement of the value on top of the stack.
+ *    - "neg / neg" and "not / not" are removed.
+ *    - "push segment index / pop targetSegment targetIndex" becomes a move that doesn't go through the stack.
+ *
+ * Only push, pop and arithmetic commands take part in the patterns, so no pattern can span a label or a jump.
+ *
+ * METHODS:
+ * - optimize (List): Returns the optimized list of commands.
+ *
+ * Author: Matt Sheehan
+ */
+class VMPeepholeOptimizer {
+
+    private static final int MAXIMUM_CONSTANT = 32767;
+
+    /**
+     * Rewrites the commands into cheaper ones with the same effect.
+     * @param commands The commands, in order.
+     * @return The optimized commands, in order.
+     */
+    static List <VMCommand> optimize(List <VMCommand> commands) {
+        List <VMCommand> optimized = new ArrayList <> (commands.size());
+        for (VMCommand command : commands) {
+            optimized.add(command);
+            while (rewriteTail(optimized)) {
+                // Keep rewriting while the rewritten command matches a pattern with the ones before it.
+            }
+        }
+        return optimized;
+    }
+
+    /**
+     * Rewrites the last commands of the list, if they match a pattern.
+     * @param commands The commands optimized so far.
+     * @return True if the list was changed.
+     */
+    private static boolean rewriteTail(List <VMCommand> commands) {
+        int size = commands.size();
+        if (size < 2) {
+            return false;
+        }
+        VMCommand last = commands.get(size - 1);
+        VMCommand previous = commands.get(size - 2);
+        Opcode lastOpcode = last.getOpcode();
+        boolean lastIsAddOrSub = lastOpcode == Opcode.ADD || lastOpcode == Opcode.SUB;
+
+        if (size >= 3 && (lastIsAddOrSub || lastOpcode == Opcode.AND || lastOpcode == Opcode.OR)
+                && previous.isPushConstant() && commands.get(size - 3).isPushConstant()) {
+            int a = commands.get(size - 3).getIndex();
+            int b = previous.getIndex();
+            int folded = switch (lastOpcode) {
+                case ADD -> a + b;
+                case SUB -> a - b;
+                case AND -> a & b;
+                default -> a | b;
+            };
+            if (folded >= 0 && folded <= MAXIMUM_CONSTANT) {
+                replaceTail(commands, 3, new VMCommand(Opcode.PUSH, Segment.CONSTANT, folded));
+                return true;
+            }
+        }
+
+        if (lastIsAddOrSub && previous.isPushConstant() && previous.getIndex() == 1) {
+            replaceTail(commands, 2, new VMCommand((lastOpcode == Opcode.ADD) ? Opcode.INCREMENT : Opcode.DECREMENT));
+            return true;
+        }
+
+        if ((lastOpcode == Opcode.NEG || lastOpcode == Opcode.NOT) && previous.getOpcode() == lastOpcode) {
+            replaceTail(commands, 2, null);
+            return true;
+        }
+
+        if (lastOpcode == Opcode.POP && previous.getOpcode() == Opcode.PUSH) {
+            replaceTail(commands, 2, new VMCommand(Opcode.MOVE, previous.getSegment(), null, previous.getIndex(),
+                                                   last.getSegment(), last.getIndex()));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the last commands of the list.
+     * @param commands The commands optimized so far.
+     * @param count The number of commands replaced.
+     * @param replacement The command replacing them, or null if they are simply removed.
+     */
+    private static void replaceTail(List <VMCommand> commands, int count, VMCommand replacement) {
+        commands.subList(commands.size() - count, commands.size()).clear();
+        if (replacement != null) {
+            commands.add(replacement);
+        }
+    }
+}
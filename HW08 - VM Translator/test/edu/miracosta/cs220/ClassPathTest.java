@@ -0,0 +1,43 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ClassPathTest.java - Checks that no class of the translator has the same name as a class of the assembler it
+ * depends on (both are in edu.miracosta.cs220), so which one is loaded never depends on the order of the class path.
+ *
+ * Author: Matt Sheehan
+ */
+class ClassPathTest {
+
+    @Test
+    void everyClassOfTheTranslatorIsOnTheClassPathOnce() throws IOException, URISyntaxException {
+        Path classes = Path.of(VM.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List <String> classFiles;
+        try (Stream <Path> files = Files.walk(classes)) {
+            classFiles = files.filter(file -> file.toString().endsWith(".class"))
+                              .map(file -> classes.relativize(file).toString().replace('\\', '/'))
+                              .collect(Collectors.toList());
+        }
+        assertTrue(classFiles.contains("edu/miracosta/cs220/VMParser.class"));
+
+        ClassLoader classLoader = VM.class.getClassLoader();
+        assertTrue(classLoader.getResource("edu/miracosta/cs220/CInstructionMapper.class") != null); // The assembler.
+        for (String classFile : classFiles) {
+            List <URL> copies = Collections.list(classLoader.getResources(classFile));
+            assertEquals(1, copies.size(), classFile + " is on the class path more than once: " + copies);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * HackEncoderTest.java - Checks that the HackEncoder gives the assembler's words: every C-instruction mnemonic is
+ * encoded as the CInstructionMapper encodes it, and symbols are resolved as the SymbolTable resolves them.
+ *
+ * Author: Matt Sheehan
+ */
+class HackEncoderTest {
+
+    @Test
+    void everyMnemonicIsEncodedAsTheAssemblerEncodesIt() {
+        StringBuilder asmCode = new StringBuilder();
+        short [] expected = new short [CInstructionMapper.destinationMnemonics.length
+                                       * CInstructionMapper.computationMnemonics.length
+                                       * CInstructionMapper.jumpMnemonics.length];
+        int size = 0;
+        for (String destination : CInstructionMapper.destinationMnemonics) {
+            for (String computation : CInstructionMapper.computationMnemonics) {
+                for (String jump : CInstructionMapper.jumpMnemonics) { // "null" stands for no destination/jump.
+                    String instruction = (destination.equals("null") ? "" : destination + "=") + computation
+                                         + (jump.equals("null") ? "" : ";" + jump);
+                    asmCode.append(instruction).append('\n');
+                    expected[size++] = CInstructionMapper.encode(instruction, 1);
+                }
+            }
+        }
+        assertArrayEquals(expected, encode(asmCode.toString()).getWords());
+    }
+
+    @Test
+    void symbolsAreResolvedAsTheAssemblerResolvesThem() {
+        HackEncoder encoder = encode("@R13\n(LOOP)\n@x\n@LOOP\n@y\n@x\n@END\n@SCREEN\n(END)\n@32767\n");
+        encoder.append(encode("(NEXT)\n@NEXT\n@y\n@z\n@LOOP\n"));
+        encoder.resolveSymbols();
+
+        SymbolTable symbolTable = new SymbolTable();
+        int x = symbolTable.getOrAllocateVariable("x");
+        int y = symbolTable.getOrAllocateVariable("y");
+        int z = symbolTable.getOrAllocateVariable("z");
+        short [] expected = { 13, (short) x, 1, (short) y, (short) x, 7, 16384, 32767, 8, (short) y, (short) z, 1 };
+        assertArrayEquals(expected, encoder.getWords());
+    }
+
+    @Test
+    void invalidCodeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> encode("D=D+2\n"));
+        assertThrows(IllegalArgumentException.class, () -> encode("@32768\n"));
+        assertThrows(IllegalArgumentException.class, () -> encode("(LOOP)\n(LOOP)\n"));
+        assertEquals(0, encode("\n\n").size());
+    }
+
+    /**
+     * Encodes ASM code with a new encoder.
+     * @param asmCode The ASM code.
+     * @return The encoder (symbols not yet resolved).
+     */
+    private static HackEncoder encode(String asmCode) {
+        HackEncoder encoder = new HackEncoder();
+        encoder.encode(asmCode.toCharArray(), 0, asmCode.length());
+        return encoder;
+    }
+}
@@ -0,0 +1,558 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * TranslatedCodeTest.java - Checks the translator against the VMInterpreter: VM programs are translated into machine
+ * code (by VM and DirectoryTranslator, as from the command line) in every mode, the code is run on a Hack CPU, and the
+ * RAM it leaves is compared with the RAM the interpreter leaves after running the same (unoptimized) program.
+ *
+ * The programs are a single file using every segment and arithmetic command, a loop and a call (run without the
+ * bootstrap code), a directory with a Sys.vm (recursion, statics of several files, the bootstrap code), and random
+ * straight-line files full of the sequences the optimizer rewrites.
+ *
+ * As the interpreter's doc says, return addresses (and the stack above SP, and R13 to R15) differ; everything else is
+ * compared: the pointers, temp, statics, the stack below SP and the rest of the RAM from 2048 on. Without the bootstrap
+ * code, LCL and ARG start at 2100 and 2200 so the local and argument segments are in the compared RAM.
+ *
+ * Author: Matt Sheehan
+ */
+class TranslatedCodeTest {
+
+    private static final int STACK_BASE = 256;
+    private static final int HEAP_BASE = 2048;
+    private static final long MAXIMUM_STEPS = 10_000_000L;
+
+    private static final String SINGLE_FILE = """
+        // Every arithmetic command, with values that wrap around.
+        push constant 7
+        push constant 8
+        add
+        pop local 0
+        push constant 32767
+        push constant 1
+        add
+        pop local 1
+        push constant 0
+        push constant 32767
+        sub
+        push constant 1
+        sub
+        neg
+        pop local 2
+        push local 0
+        push local 1
+        gt
+        pop temp 0
+        push local 1
+        push local 0
+        lt
+        pop temp 1
+        push local 0
+        push constant 15
+        eq
+        pop temp 2
+        push constant 32767
+        push constant 1
+        neg
+        gt
+        pop temp 3
+        push constant 21845
+        push constant 13107
+        and
+        push constant 3855
+        or
+        not
+        pop temp 7
+        // Every segment.
+        push constant 3000
+        pop pointer 0
+        push constant 3010
+        pop pointer 1
+        push constant 11
+        pop this 0
+        push constant 12
+        pop this 5
+        push constant 13
+        pop that 2
+        push this 5
+        push that 2
+        sub
+        pop that 7
+        push constant 100
+        pop argument 3
+        push argument 3
+        push constant 1
+        add
+        pop argument 0
+        push pointer 0
+        push pointer 1
+        add
+        pop static 0
+        push static 0
+        push constant 1
+        sub
+        pop static 3
+        push temp 7
+        pop local 4
+        push local 4
+        pop static 5
+        // A loop adding 10 + 9 + ... + 1 into local 3.
+        push constant 10
+        pop temp 4
+        label LOOP
+        push local 3
+        push temp 4
+        add
+        pop local 3
+        push temp 4
+        push constant 1
+        sub
+        pop temp 4
+        push temp 4
+        if-goto LOOP
+        // A call from outside of any function.
+        push constant 6
+        push constant 7
+        call Math.multiply 2
+        pop static 1
+        label END
+        goto END
+        function Math.multiply 1
+        label LOOP
+        push argument 1
+        if-goto ADD
+        push local 0
+        return
+        label ADD
+        push local 0
+        push argument 0
+        add
+        pop local 0
+        push argument 1
+        push constant 1
+        sub
+        pop argument 1
+        goto LOOP
+        """;
+
+    private static final String SYS = """
+        function Sys.init 0
+        push constant 12
+        call Main.fibonacci 1
+        pop static 0
+        push constant 3000
+        push constant 6
+        call Main.fill 2
+        pop static 1
+        call Memory.compare 0
+        pop temp 0
+        push constant 5
+        call Memory.count 1
+        pop static 2
+        label END
+        goto END
+        """;
+
+    private static final String MAIN = """
+        function Main.fibonacci 0
+        push argument 0
+        push constant 2
+        lt
+        if-goto BASE
+        push argument 0
+        push constant 1
+        sub
+        call Main.fibonacci 1
+        push argument 0
+        push constant 2
+        sub
+        call Main.fibonacci 1
+        add
+        return
+        label BASE
+        push argument 0
+        return
+        // Fills that[0..n-1] with the squares, returning their sum (also kept in Main.0).
+        function Main.fill 3
+        push argument 0
+        pop pointer 1
+        label LOOP
+        push local 0
+        push argument 1
+        lt
+        not
+        if-goto DONE
+        push local 0
+        push local 0
+        call Memory.multiply 2
+        pop local 1
+        push local 1
+        pop that 0
+        push static 0
+        push local 1
+        add
+        pop static 0
+        push pointer 1
+        push constant 1
+        add
+        pop pointer 1
+        push local 0
+        push constant 1
+        add
+        pop local 0
+        goto LOOP
+        label DONE
+        push static 0
+        return
+        """;
+
+    private static final String MEMORY = """
+        function Memory.multiply 1
+        label LOOP
+        push argument 1
+        push constant 0
+        eq
+        if-goto DONE
+        push local 0
+        push argument 0
+        add
+        pop local 0
+        push argument 1
+        push constant 1
+        sub
+        pop argument 1
+        goto LOOP
+        label DONE
+        push local 0
+        return
+        // Pushes the results of many comparisons, counting the true ones in Memory.0.
+        function Memory.compare 1
+        push constant 5
+        push constant 3
+        gt
+        push constant 5
+        push constant 3
+        lt
+        push constant 3
+        push constant 3
+        eq
+        push constant 0
+        push constant 1
+        neg
+        gt
+        add
+        add
+        add
+        neg
+        pop static 0
+        push static 0
+        push constant 1
+        sub
+        pop local 0
+        push constant 2
+        push local 0
+        push constant 0
+        push local 0
+        lt
+        add
+        return
+        function Memory.count 0
+        push argument 0
+        push constant 0
+        gt
+        if-goto MORE
+        push static 0
+        return
+        label MORE
+        push static 0
+        push constant 1
+        add
+        pop static 0
+        push argument 0
+        push constant 1
+        sub
+        call Memory.count 1
+        return
+        """;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @ParameterizedTest
+    @CsvSource({ "false, false, false, false, HACK", "true, false, false, false, HACK",
+                 "false, true, false, false, HACK", "false, false, true, false, BINARY",
+                 "false, false, false, true, HACK", "true, true, false, false, BINARY",
+                 "false, true, true, false, HACK", "true, false, false, true, HACK", "true, true, true, true, BINARY",
+                 "false, true, true, true, HACK" })
+    void translatedCodeLeavesTheRamTheInterpreterLeaves(boolean cacheTopOfStack, boolean sharedComparisons,
+                                                        boolean sharedCalls, boolean optimize, OutputFormat format)
+                                                        throws IOException {
+        Path vmFile = Files.writeString(temporaryDirectory.resolve("Single.vm"), SINGLE_FILE);
+        VM.translateFile(vmFile.toString(), cacheTopOfStack, sharedComparisons, sharedCalls, optimize, format, false);
+        assertSameRam(interpretFile(vmFile, optimize), runOnCpu(readWords(Path.of(VM.outputFileName(vmFile.toString(),
+                                                                                                     format)), format),
+                                                                 false), "Single.vm");
+
+        for (long seed = 1; seed <= 5; seed++) {
+            Path randomFile = Files.writeString(temporaryDirectory.resolve("Random" + seed + ".vm"),
+                                                generateVMCode(new Random(seed), 400));
+            VM.translateFile(randomFile.toString(), cacheTopOfStack, sharedComparisons, sharedCalls, optimize, format,
+                             false);
+            short [] words = readWords(Path.of(VM.outputFileName(randomFile.toString(), format)), format);
+            assertSameRam(interpretFile(randomFile, optimize), runOnCpu(words, false), randomFile.toString());
+        }
+
+        Path directory = Files.createDirectories(temporaryDirectory.resolve("Program"));
+        Files.writeString(directory.resolve(DirectoryTranslator.SYS_FILE), SYS);
+        Files.writeString(directory.resolve("Main.vm"), MAIN);
+        Files.writeString(directory.resolve("Memory.vm"), MEMORY);
+        assertTrue(DirectoryTranslator.translate(directory, cacheTopOfStack, sharedComparisons, sharedCalls, optimize,
+                                                 format, false, 2));
+        int [] expected = interpretDirectory(directory, optimize);
+        assertEquals(55, expected[16]); // Main.0, the first static used, holds the sum of the squares of 0 to 5,
+        assertEquals(144, expected[18]); // and Sys.0 (after Memory.0) holds fibonacci(12): the program really ran.
+        assertSameRam(expected, runOnCpu(readWords(DirectoryTranslator.outputFileName(directory, format), format),
+                                         true), "Program");
+    }
+
+    /**
+     * Runs a single .vm file on the interpreter, with the pointers starting as described in the class doc. If the
+     * program is optimized, checks that the interpreter gives the same RAM for the optimized commands.
+     * @param vmFile The .vm file.
+     * @param optimize True if the optimized commands should be checked too.
+     * @return The RAM the unoptimized commands leave.
+     * @throws IOException If the file could not be read.
+     */
+    private static int [] interpretFile(Path vmFile, boolean optimize) throws IOException {
+        List <VMCommand> commands = VM.readCommands(new VMParser(vmFile.toString()));
+        int [] ram = interpret(List.of(commands), null, false);
+        if (optimize) {
+            assertSameRam(ram, interpret(List.of(VMPeepholeOptimizer.optimize(commands)), null, false),
+                          "optimized " + vmFile);
+        }
+        return ram;
+    }
+
+    /**
+     * Runs the .vm files of a directory on the interpreter, starting with the bootstrap code. If the program is
+     * optimized, checks that the interpreter gives the same RAM for the optimized commands.
+     * @param directory The directory.
+     * @param optimize True if the optimized commands should be checked too.
+     * @return The RAM the unoptimized commands leave.
+     * @throws IOException If the files could not be read.
+     */
+    private static int [] interpretDirectory(Path directory, boolean optimize) throws IOException {
+        List <Path> vmFiles = DirectoryTranslator.findVMFiles(directory);
+        List <List <VMCommand>> files = new ArrayList <> ();
+        List <String> fileNames = new ArrayList <> ();
+        for (Path vmFile : vmFiles) {
+            String fileName = vmFile.getFileName().toString();
+            fileNames.add(fileName.substring(0, fileName.length() - VM.VM_EXTENSION.length()));
+            files.add(VM.readCommands(new VMParser(vmFile.toString())));
+        }
+        int [] ram = interpret(files, fileNames, true);
+        if (optimize) {
+            assertSameRam(ram, interpret(files.stream().map(VMPeepholeOptimizer::optimize).toList(), fileNames, true),
+                          "optimized " + directory);
+        }
+        return ram;
+    }
+
+    /**
+     * Runs a program on the interpreter until it halts.
+     * @param files The commands of each file.
+     * @param fileNames The name of each file (null for a single file).
+     * @param bootstrap True if the program starts with the bootstrap code.
+     * @return The RAM the program leaves.
+     */
+    private static int [] interpret(List <List <VMCommand>> files, List <String> fileNames, boolean bootstrap) {
+        VMInterpreter interpreter = new VMInterpreter();
+        for (int i = 0; i < files.size(); i++) {
+            interpreter.addFile((fileNames == null) ? null : fileNames.get(i), files.get(i));
+        }
+        interpreter.link(bootstrap);
+        if (!bootstrap) {
+            setPointers(interpreter.getRam());
+        }
+        interpreter.run(MAXIMUM_STEPS);
+        assertTrue(interpreter.isHalted(), "the VM program didn't halt");
+        return interpreter.getRam();
+    }
+
+    /**
+     * Runs machine code on a Hack CPU (A, D, PC and the ALU with its six control bits) until it reaches the usual
+     * "@END / 0;JMP" loop on itself, or runs past its last instruction.
+     * @param words The machine code.
+     * @param bootstrap True if the code sets SP itself (otherwise the pointers start as described in the class doc).
+     * @return The RAM the code leaves, one signed 16-bit value per word.
+     */
+    private static int [] runOnCpu(short [] words, boolean bootstrap) {
+        int [] ram = new int [VMInterpreter.RAM_SIZE];
+        if (!bootstrap) {
+            setPointers(ram);
+        }
+
+        int a = 0;
+        int d = 0;
+        int pc = 0;
+        for (long step = 0; step < MAXIMUM_STEPS; step++) {
+            if (pc >= words.length) {
+                return ram;
+            }
+            int instruction = words[pc] & 0xFFFF;
+            if ((instruction & 0x8000) == 0) {
+                a = instruction;
+                pc++;
+                continue;
+            }
+
+            // The ALU's zx, nx, zy, ny, f and no bits (the a-bit makes y M instead of A).
+            int x = ((instruction & 0x0800) != 0) ? 0 : d;
+            x = ((instruction & 0x0400) != 0) ? ~x : x;
+            int y = ((instruction & 0x0200) != 0) ? 0 : ((instruction & 0x1000) != 0) ? ram[a & 0x7FFF] : a;
+            y = ((instruction & 0x0100) != 0) ? ~y : y;
+            int out = ((instruction & 0x0080) != 0) ? x + y : x & y;
+            out = (short) (((instruction & 0x0040) != 0) ? ~out : out);
+
+            int address = a & 0x7FFF; // M is the RAM word A pointed to before the instruction.
+            if ((instruction & 0x0008) != 0) {
+                ram[address] = out;
+            }
+            if ((instruction & 0x0020) != 0) {
+                a = out;
+            }
+            if ((instruction & 0x0010) != 0) {
+                d = out;
+            }
+
+            boolean jump = ((instruction & 0x0004) != 0 && out < 0) || ((instruction & 0x0002) != 0 && out == 0)
+                           || ((instruction & 0x0001) != 0 && out > 0);
+            if (!jump) {
+                pc++;
+            } else if (pc > 0 && (a & 0x7FFF) == pc - 1 && words[pc - 1] == pc - 1) {
+                return ram; // A jump back to the A-instruction loading its own address: the program has ended.
+            } else {
+                pc = a & 0x7FFF;
+            }
+        }
+        throw new AssertionError("the machine code didn't halt");
+    }
+
+    /**
+     * Sets the pointers of a program run without the bootstrap code.
+     * @param ram The RAM.
+     */
+    private static void setPointers(int [] ram) {
+        ram[VMInterpreter.SP] = STACK_BASE;
+        ram[VMInterpreter.LCL] = 2100;
+        ram[VMInterpreter.ARG] = 2200;
+        ram[VMInterpreter.THIS] = 3000;
+        ram[VMInterpreter.THAT] = 3010;
+    }
+
+    /**
+     * Compares the RAM the interpreter left with the RAM the machine code left, except for what may differ (see the
+     * class doc).
+     * @param expected The interpreter's RAM.
+     * @param actual The machine code's RAM.
+     * @param program The program (for the error messages).
+     */
+    private static void assertSameRam(int [] expected, int [] actual, String program) {
+        assertEquals(expected[VMInterpreter.SP], actual[VMInterpreter.SP], program + ": SP");
+        int stackPointer = expected[VMInterpreter.SP];
+        boolean [] returnAddress = new boolean [VMInterpreter.RAM_SIZE];
+        for (int frame = expected[VMInterpreter.LCL]; frame >= STACK_BASE + 5 && frame <= stackPointer;
+             frame = expected[frame - 4]) { // The saved LCL of each frame leads to the frame of its caller.
+            returnAddress[frame - 5] = true;
+        }
+
+        for (int address = 0; address < VMInterpreter.RAM_SIZE; address++) {
+            boolean compared = (address < 13 || (address >= 16 && address < stackPointer) || address >= HEAP_BASE)
+                               && !returnAddress[address];
+            if (compared && expected[address] != actual[address]) {
+                assertEquals(expected[address], actual[address], program + ": RAM[" + address + "]");
+            }
+        }
+    }
+
+    /**
+     * Reads the machine code written by the translator.
+     * @param file The .hack or .bin file.
+     * @param format The kind of file.
+     * @return The words.
+     * @throws IOException If the file could not be read.
+     */
+    private static short [] readWords(Path file, OutputFormat format) throws IOException {
+        if (format == OutputFormat.BINARY) {
+            byte [] image = Files.readAllBytes(file);
+            short [] words = new short [image.length / 2];
+            ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(words);
+            return words;
+        }
+        List <String> lines = Files.readAllLines(file);
+        short [] words = new short [lines.size()];
+        for (int i = 0; i < words.length; i++) {
+            assertEquals(16, lines.get(i).length());
+            words[i] = (short) Integer.parseInt(lines.get(i), 2);
+        }
+        return words;
+    }
+
+    /**
+     * Generates a random straight-line program (ending in a loop on itself), with every segment and arithmetic
+     * command, and many of the sequences the optimizer rewrites (push/pop pairs, pushes of 1 before add and sub,
+     * constant pushes before arithmetic). The stack never holds more than 20 values.
+     * @param random The random numbers.
+     * @param commands The number of commands to generate.
+     * @return The program.
+     */
+    private static String generateVMCode(Random random, int commands) {
+        String [] readable = { "constant", "local", "argument", "this", "that", "temp", "static", "pointer" };
+        String [] writable = { "local", "argument", "this", "that", "temp", "static" };
+        String [] binary = { "add", "sub", "and", "or", "eq", "gt", "lt" };
+        String [] unary = { "neg", "not" };
+        StringBuilder vmCode = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < commands; i++) {
+            int choice = random.nextInt(10);
+            if (depth < 2 || (choice < 4 && depth < 20)) {
+                String segment = readable[random.nextInt(readable.length)];
+                int index = switch (segment) {
+                    case "constant" -> random.nextBoolean() ? random.nextInt(3) : random.nextInt(32768);
+                    case "temp" -> random.nextInt(8);
+                    case "pointer" -> random.nextInt(2);
+                    default -> random.nextInt(10);
+                };
+                vmCode.append("push ").append(segment).append(' ').append(index).append('\n');
+                depth++;
+            } else if (choice < 6) {
+                String segment = writable[random.nextInt(writable.length)];
+                int index = segment.equals("temp") ? random.nextInt(8) : random.nextInt(10);
+                vmCode.append("pop ").append(segment).append(' ').append(index).append('\n');
+                depth--;
+            } else if (choice < 7) {
+                vmCode.append("push constant 1\n").append(random.nextBoolean() ? "add\n" : "sub\n");
+            } else if (choice < 9) {
+                vmCode.append(binary[random.nextInt(binary.length)]).append('\n');
+                depth--;
+            } else {
+                vmCode.append(unary[random.nextInt(unary.length)]).append('\n');
+            }
+        }
+        return vmCode.append("label END\ngoto END\n").toString();
+    }
+}
@@ -0,0 +1,38 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * VMParserTest.java - Checks that the VMParser rejects commands with extra text or an index outside their segment, and
+ * still reads the valid commands next to them.
+ *
+ * Author: Matt Sheehan
+ */
+class VMParserTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = { "push constant 1 extra", "pop local 0 0", "label LOOP END", "goto LOOP END",
+                             "if-goto LOOP 1", "function Main.main 0 x", "call Main.main 0 1", "add 1",
+                             "pop pointer 2", "push pointer 5", "push temp 8", "pop temp 9", "push constant 32768",
+                             "pop constant 0" })
+    void invalidCommandsAreRejected(String command) {
+        VMParser parser = new VMParser(new StringReader("push constant 0\n" + command + "\n"));
+        parser.advance();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, parser::advance);
+        assertEquals("Line 2: invalid VM command \"" + command + "\"", e.getMessage());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "push constant 32767", "pop pointer 1", "push temp 7  // The last temp.", "goto LOOP\t",
+                             "function Main.main 2 ", "  return" })
+    void validCommandsAreRead(String command) {
+        VMParser parser = new VMParser(new StringReader(command + "\n"));
+        parser.advance();
+        assertEquals(1, parser.getLineNumber());
+    }
+}
@@ -0,0 +1,131 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * BinaryTokenReader.java - Reads back the tokens of a binary token file (see TokenWriter and TokenFormat.BINARY).
+ *
+ * Algorithm:
+ *
+ * 1. The file is mapped into memory (so it is read by the operating system's page cache, not copied).
+ *
+ * 2. Each call to advance reads a token's type byte and the varint length of its text, and remembers where its text
+ * is; the text is only decoded into a String if it is asked for, so the tokens can be skipped over or compared by
+ * type without any work.
+ *
+ * INSTANCE VARIABLES:
+ * - TYPES (TokenType[]): The token types, indexed by type byte.
+ * - bytes (ByteBuffer): The tokens, positioned after the current token.
+ * - tokenType (TokenType): The type of the current token.
+ * - textStart/textLength (int): Where the UTF-8 text of the current token is.
+ *
+ * METHODS:
+ * - open (Path): Maps a binary token file into memory.
+ * - hasMoreTokens: Determines if there are more tokens.
+ * - advance: Reads the next token, which becomes the current token.
+ * - tokenType/text/textLength: Accessors for the current token.
+ *
+ * Author: Matt Sheehan
+ */
+class BinaryTokenReader {
+
+    private static final TokenType [] TYPES = TokenType.values();
+
+    private final ByteBuffer bytes;
+    private TokenType tokenType;
+    private int textStart;
+    private int textLength;
+
+    /**
+     * Full constructor.
+     * @param bytes The tokens (from the buffer's position to its limit).
+     */
+    BinaryTokenReader(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Maps a binary token file into memory.
+     * @param file The file.
+     * @return A reader of the file's tokens.
+     * @throws IOException If the file could not be mapped (e.g. it is missing, or 2 GB or more).
+     */
+    static BinaryTokenReader open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BinaryTokenReader(mapped);
+        }
+    }
+
+    /**
+     * Returns the state of the file having more tokens.
+     * @return True if there is another token to be read, false if not.
+     */
+    boolean hasMoreTokens() {
+        return bytes.hasRemaining();
+    }
+
+    /**
+     * Reads the next token; it becomes the current token. Does nothing if there are no more tokens.
+     * @throws IllegalArgumentException If the file isn't a valid binary token file.
+     */
+    void advance() {
+        if (!hasMoreTokens()) {
+            return;
+        }
+        int type = bytes.get();
+        if (type < 0 || type >= TYPES.length) {
+            throw new IllegalArgumentException("invalid token type " + type + " at byte " + (bytes.position() - 1));
+        }
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (!bytes.hasRemaining() || shift > 28) {
+                throw new IllegalArgumentException("invalid token length at byte " + bytes.position());
+            }
+            b = bytes.get();
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        if (length < 0 || length > bytes.remaining()) {
+            throw new IllegalArgumentException("the token at byte " + bytes.position() + " runs past the end");
+        }
+        tokenType = TYPES[type];
+        textStart = bytes.position();
+        textLength = length;
+        bytes.position(textStart + length);
+    }
+
+    /**
+     * Accessor for the type of the current token.
+     * @return The type of the current token (null before the first call to advance).
+     */
+    TokenType tokenType() {
+        return tokenType;
+    }
+
+    /**
+     * Returns the text of the current token.
+     * @return The token as written in the Jack code (string constants without their quotes).
+     */
+    String text() {
+        byte [] text = new byte[textLength];
+        bytes.get(textStart, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Accessor for the length of the current token's text.
+     * @return The number of bytes of the current token's text, in UTF-8.
+     */
+    int textLength() {
+        return textLength;
+    }
+}
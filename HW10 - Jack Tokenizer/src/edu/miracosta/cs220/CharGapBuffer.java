@@ -0,0 +1,228 @@
+package edu.miracosta.cs220;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * CharGapBuffer.java - The characters of a file of Jack code, kept around a gap at the place they were last edited,
+ * so an edit only moves the characters between it and the last edit (see TokenArray.edit).
+ *
+ * Algorithm:
+ *
+ * 1. The characters before the gap are at the front of the array and the characters after it are at the back, with
+ * the unused elements (the gap) in between. An edit moves the gap to where it is made (moving the characters in
+ * between across the gap), removes characters by widening the gap at its end, and writes the inserted characters
+ * into the gap at its start.
+ *
+ * 2. If the gap is too small for the characters inserted, the array is copied into one half as large again (and at
+ * least large enough), so a run of insertions only copies the whole file once in a while.
+ *
+ * 3. While every character fits in a byte (any ASCII file), the characters are kept in a byte array. The first
+ * character inserted that doesn't fit copies them all into a char array, where they stay.
+ *
+ * INSTANCE VARIABLES:
+ * - MIN_GAP (int): The fewest elements the array grows by.
+ * - bytes (byte[]): The characters, if all of them fit in a byte (null otherwise).
+ * - chars (char[]): The characters, if some of them don't fit in a byte (null otherwise).
+ * - gapStart/gapEnd (int): The index of the gap's first element, and of the first element after the gap.
+ *
+ * METHODS:
+ * - length: The number of characters.
+ * - getChars (int, int, char[], int): Copies characters into an array.
+ * - substring (int, int): Copies characters into a String.
+ * - replace (int, int, String): Replaces characters with others.
+ *
+ * Author: Matt Sheehan
+ */
+class CharGapBuffer {
+
+    private static final int MIN_GAP = 64;
+
+    private byte [] bytes;
+    private char [] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    /**
+     * Full constructor, keeping the characters as bytes if all of them fit in one. There is no gap until the first
+     * characters are inserted.
+     * @param source The characters (kept only if some of them don't fit in a byte, and trimmed to their length).
+     * @param length The number of characters in the array.
+     */
+    CharGapBuffer(char [] source, int length) {
+        bytes = toBytes(source, length);
+        chars = (bytes != null) ? null : (source.length == length) ? source : Arrays.copyOf(source, length);
+        gapStart = length;
+        gapEnd = length;
+    }
+
+    /**
+     * Returns the number of characters.
+     * @return The number of characters (not counting the gap).
+     */
+    int length() {
+        return capacity() - (gapEnd - gapStart);
+    }
+
+    /**
+     * Copies characters into an array.
+     * @param from The index of the first character to copy.
+     * @param to The index after the last character to copy.
+     * @param destination The array the characters are copied into.
+     * @param position The index in the array of the first character copied.
+     */
+    void getChars(int from, int to, char [] destination, int position) {
+        int beforeGap = Math.min(to, gapStart);
+        if (from < beforeGap) {
+            copy(from, beforeGap, destination, position);
+            position += beforeGap - from;
+            from = beforeGap;
+        }
+        if (from < to) {
+            int gap = gapEnd - gapStart;
+            copy(from + gap, to + gap, destination, position);
+        }
+    }
+
+    /**
+     * Copies characters into a String.
+     * @param from The index of the first character to copy.
+     * @param to The index after the last character to copy.
+     * @return The characters.
+     */
+    String substring(int from, int to) {
+        if (to <= gapStart || from >= gapStart) { // All on one side of the gap: made straight from the array.
+            int start = (to <= gapStart) ? from : from + gapEnd - gapStart;
+            return (bytes != null) ? new String(bytes, start, to - from, StandardCharsets.ISO_8859_1)
+                                   : new String(chars, start, to - from);
+        }
+        char [] text = new char[to - from];
+        getChars(from, to, text, 0);
+        return new String(text);
+    }
+
+    /**
+     * Replaces characters with others (moving the gap to them).
+     * @param offset The index of the first character removed (or of where the text is inserted).
+     * @param removedLength The number of characters removed.
+     * @param text The characters inserted in their place.
+     * @return The characters removed.
+     */
+    String replace(int offset, int removedLength, String text) {
+        moveGap(offset);
+        String removed = substring(offset, offset + removedLength);
+        gapEnd += removedLength;
+
+        int insertedLength = text.length();
+        if (bytes != null && toBytes(text.toCharArray(), insertedLength) == null) {
+            chars = new char[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                chars[i] = (char) (bytes[i] & 0xFF);
+            }
+            bytes = null;
+        }
+        if (gapEnd - gapStart < insertedLength) {
+            grow(insertedLength);
+        }
+        if (bytes != null) {
+            for (int i = 0; i < insertedLength; i++) {
+                bytes[gapStart++] = (byte) text.charAt(i);
+            }
+        } else {
+            text.getChars(0, insertedLength, chars, gapStart);
+            gapStart += insertedLength;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns all the characters.
+     * @return The characters, as a new String.
+     */
+    @Override
+    public String toString() {
+        return substring(0, length());
+    }
+
+    /**
+     * Returns the size of the array.
+     * @return The number of elements in the array, the gap included.
+     */
+    private int capacity() {
+        return (bytes != null) ? bytes.length : chars.length;
+    }
+
+    /**
+     * Copies elements of the array into an array of chars.
+     * @param from The index of the first element to copy.
+     * @param to The index after the last element to copy.
+     * @param destination The array the characters are copied into.
+     * @param position The index in the array of the first character copied.
+     */
+    private void copy(int from, int to, char [] destination, int position) {
+        if (chars != null) {
+            System.arraycopy(chars, from, destination, position, to - from);
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            destination[position++] = (char) (bytes[i] & 0xFF);
+        }
+    }
+
+    /**
+     * Moves the gap, moving the characters between where it is and where it goes across it.
+     * @param offset The index of the character the gap goes before.
+     */
+    private void moveGap(int offset) {
+        Object array = (bytes != null) ? bytes : chars;
+        if (offset < gapStart) {
+            int moved = gapStart - offset;
+            System.arraycopy(array, offset, array, gapEnd - moved, moved);
+            gapStart -= moved;
+            gapEnd -= moved;
+        } else if (offset > gapStart) {
+            int moved = offset - gapStart;
+            System.arraycopy(array, gapEnd, array, gapStart, moved);
+            gapStart += moved;
+            gapEnd += moved;
+        }
+    }
+
+    /**
+     * Copies the characters into a larger array, with a larger gap.
+     * @param needed The number of elements the gap must have room for.
+     */
+    private void grow(int needed) {
+        int capacity = capacity();
+        int newCapacity = capacity + Math.max(needed, Math.max(MIN_GAP, capacity >> 1));
+        int afterGap = capacity - gapEnd;
+        if (bytes != null) {
+            byte [] grown = Arrays.copyOf(bytes, newCapacity);
+            System.arraycopy(bytes, gapEnd, grown, newCapacity - afterGap, afterGap);
+            bytes = grown;
+        } else {
+            char [] grown = Arrays.copyOf(chars, newCapacity);
+            System.arraycopy(chars, gapEnd, grown, newCapacity - afterGap, afterGap);
+            chars = grown;
+        }
+        gapEnd = newCapacity - afterGap;
+    }
+
+    /**
+     * Copies characters into bytes, if all of them fit in one.
+     * @param source The characters.
+     * @param length The number of characters in the array.
+     * @return The characters as bytes, or null if one of them is larger than 255.
+     */
+    private static byte [] toBytes(char [] source, int length) {
+        byte [] bytes = new byte [length];
+        for (int i = 0; i < length; i++) {
+            char c = source[i];
+            if (c > 0xFF) {
+                return null;
+            }
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,216 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * DirectoryTokenizer.java - Tokenizes every .jack file in a directory (and the directories in it) in parallel,
+ * writing each file's tokens to a .xml (or binary .tok) file next to it.
+ *
+ * Algorithm:
+ *
+ * 1. The .jack files in the directory tree are listed in sorted order, so failures are reported in the same order
+ * from run to run.
+ *
+ * 2. The list is tokenized on a work-stealing ForkJoinPool (one thread per processor unless --threads is given): the
+ * task for a range of files splits itself in half until it is down to one file, so idle threads steal the halves
+ * that are still waiting. Each file is streamed through its own JackTokenizer straight into its output file by a
+ * TokenWriter, so a running task holds only the tokenizer's buffer and the writer's buffer, and no more tasks
+ * run at once than the pool has threads: the memory in use doesn't depend on the size or number of the files.
+ *
+ * 3. A file that fails to tokenize is reported (and its partly written output file removed), without stopping the
+ * others.
+ *
+ * 4. A summary is printed: the number of files, tokens and megabytes, and how many of each were tokenized per second
+ * (counting only the files that were tokenized, so failures don't inflate the rates).
+ *
+ * METHODS:
+ *
+ * - tokenize (Path, TokenFormat, int): Tokenizes every .jack file in the directory tree.
+ * - findJackFiles (Path): Lists the .jack files in the directory tree.
+ * - outputFileName (Path, TokenFormat): The name of the file a .jack file is tokenized into.
+ * - tokenizeFile (Path, TokenFormat): Tokenizes one file into its .xml (or .tok) file.
+ *
+ * Author: Matt Sheehan
+ */
+class DirectoryTokenizer {
+
+    static final String JACK_EXTENSION = ".jack";
+
+    /**
+     * Tokenizes a range of the files, splitting it between threads.
+     */
+    private static class TokenizeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List <Path> jackFiles;
+        private final TokenFormat format;
+        private final int from;
+        private final int to;
+        private final long [] tokens;
+        private final String [] errors;
+
+        /**
+         * Full constructor.
+         * @param jackFiles The .jack files.
+         * @param format The format of the output files.
+         * @param from The index of the first file of the range.
+         * @param to The index after the last file of the range.
+         * @param tokens The number of tokens in each file (filled in by the task).
+         * @param errors The reason each file failed, null if it didn't (filled in by the task).
+         */
+        TokenizeTask(List <Path> jackFiles, TokenFormat format, int from, int to, long [] tokens, String [] errors) {
+            this.jackFiles = jackFiles;
+            this.format = format;
+            this.from = from;
+            this.to = to;
+            this.tokens = tokens;
+            this.errors = errors;
+        }
+
+        /**
+         * Tokenizes the file if the range holds one, otherwise splits the range in half.
+         */
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    tokens[from] = tokenizeFile(jackFiles.get(from), format);
+                } catch (IllegalArgumentException | IOException | UncheckedIOException e) {
+                    errors[from] = e.getMessage();
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TokenizeTask(jackFiles, format, from, middle, tokens, errors),
+                          new TokenizeTask(jackFiles, format, middle, to, tokens, errors));
+            }
+        }
+    }
+
+    private DirectoryTokenizer() { }
+
+    /**
+     * Tokenizes every .jack file in a directory tree in parallel, writing each into a .xml file next to it.
+     * @param directory The directory.
+     * @param format The format of the output files.
+     * @param threads The number of threads in the pool.
+     * @return True if every file was tokenized, false otherwise.
+     */
+    static boolean tokenize(Path directory, TokenFormat format, int threads) {
+        long start = System.nanoTime();
+        List <Path> jackFiles;
+        long [] fileSizes;
+        try {
+            jackFiles = findJackFiles(directory);
+            fileSizes = new long[jackFiles.size()];
+            for (int i = 0; i < jackFiles.size(); i++) {
+                fileSizes[i] = Files.size(jackFiles.get(i));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not search " + directory + ": " + e.getMessage());
+            return false;
+        }
+        if (jackFiles.isEmpty()) {
+            System.out.println(directory + " has no .jack files.");
+            return false;
+        }
+
+        long [] tokens = new long[jackFiles.size()];
+        String [] errors = new String[jackFiles.size()];
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(threads, jackFiles.size())));
+        try {
+            pool.invoke(new TokenizeTask(jackFiles, format, 0, jackFiles.size(), tokens, errors));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int failures = 0;
+        long totalTokens = 0;
+        long bytes = 0;
+        for (int i = 0; i < jackFiles.size(); i++) {
+            if (errors[i] != null) {
+                ++failures;
+                System.out.println("FAILED " + jackFiles.get(i) + ": " + errors[i]);
+            } else {
+                totalTokens += tokens[i];
+                bytes += fileSizes[i];
+            }
+        }
+
+        int tokenizedFiles = jackFiles.size() - failures;
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double megabytes = bytes / (1024.0 * 1024.0);
+        System.out.printf("%d file(s) tokenized in %s (%d tokens, %.1f MB) in %.1f ms: %.0f files/s, %.1f MB/s, "
+                          + "%.0f tokens/s%n", tokenizedFiles, directory, totalTokens, megabytes, seconds * 1000,
+                          tokenizedFiles / seconds, megabytes / seconds, totalTokens / seconds);
+        if (failures > 0) {
+            System.out.println(failures + " file(s) failed.");
+        }
+        return failures == 0;
+    }
+
+    /**
+     * Lists the .jack files in a directory and every directory in it, in sorted order.
+     * @param directory The directory.
+     * @return The .jack files.
+     * @throws IOException If the directory could not be read.
+     */
+    static List <Path> findJackFiles(Path directory) throws IOException {
+        try (Stream <Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile)
+                        .filter(file -> file.getFileName().toString().endsWith(JACK_EXTENSION))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the name of the file a .jack file is tokenized into (only the extension changes, not the directories or
+     * the rest of the name).
+     * @param jackFile The .jack file.
+     * @param format The format of the output file.
+     * @return The file next to it (e.g. jackproj/Main.jack becomes jackproj/Main.xml).
+     */
+    static Path outputFileName(Path jackFile, TokenFormat format) {
+        String name = jackFile.getFileName().toString();
+        if (name.endsWith(JACK_EXTENSION)) {
+            name = name.substring(0, name.length() - JACK_EXTENSION.length());
+        }
+        return jackFile.resolveSibling(name + format.getExtension());
+    }
+
+    /**
+     * Tokenizes one .jack file into its output file (removing the output file if the tokenizing fails).
+     * @param jackFile The .jack file.
+     * @param format The format of the output file.
+     * @return The number of tokens in the file.
+     * @throws IOException If the file could not be read, or the output file could not be written.
+     * @throws IllegalArgumentException If the Jack code has a character, comment or constant that isn't valid.
+     */
+    static long tokenizeFile(Path jackFile, TokenFormat format) throws IOException {
+        Path outputFile = outputFileName(jackFile, format);
+        TokenWriter tokenWriter = TokenWriter.open(outputFile, format);
+        try (Reader input = Files.newBufferedReader(jackFile)) {
+            long tokens = tokenWriter.writeTokens(new JackTokenizer(input));
+            tokenWriter.close();
+            return tokens;
+        } catch (IllegalArgumentException | IOException | UncheckedIOException e) {
+            try {
+                tokenWriter.close();
+            } catch (UncheckedIOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            Files.deleteIfExists(outputFile);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package edu.miracosta.cs220;
+
+import java.util.Arrays;
+
+/**
+ * IdentifierPool.java - Interns the identifiers of Jack code, so each distinct name is stored once and known by a
+ * small number (its id) from then on.
+ *
+ * Algorithm:
+ *
+ * 1. A name is hashed from its characters where they are (the same hash as String.hashCode, so no String is made to
+ * look a name up), and looked up in an open addressing hash table (linear probing) of ids.
+ *
+ * 2. If the name is already in the pool, its id is returned; otherwise it becomes a String once, and is given the
+ * next id (ids count up from 0, in the order names are first seen).
+ *
+ * 3. The table is doubled whenever it becomes half full, so probes stay short.
+ *
+ * A pool may be shared by the TokenArrays of many files (so "x" has the same id in all of them), but it is not safe
+ * to use from more than one thread at a time.
+ *
+ * INSTANCE VARIABLES:
+ * - table (int[]): The hash table, holding id + 1 in each used slot (0 in an empty one).
+ * - names (String[]): The name of each id.
+ * - hashes (int[]): The hash of each id's name.
+ * - size (int): The number of names in the pool.
+ *
+ * METHODS:
+ * - intern (char[], int, int): Finds the id of a name in an array of characters, adding the name if it is new.
+ * - intern (String): Finds the id of a name, adding the name if it is new.
+ * - getName (int): The name of an id.
+ * - size: The number of names in the pool.
+ *
+ * Author: Matt Sheehan
+ */
+class IdentifierPool {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int [] table = new int[INITIAL_CAPACITY];
+    private String [] names = new String[INITIAL_CAPACITY / 2];
+    private int [] hashes = new int[INITIAL_CAPACITY / 2];
+    private int size = 0;
+
+    /**
+     * Finds the id of a name, adding the name to the pool if it isn't in it yet.
+     * @param source The characters holding the name.
+     * @param start The index of the name's first character.
+     * @param length The number of characters in the name.
+     * @return The id of the name.
+     */
+    int intern(char [] source, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + source[i];
+        }
+
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(names[id], source, start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, 2 * names.length);
+            hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+        }
+        names[size] = new String(source, start, length);
+        hashes[size] = hash;
+        table[slot] = size + 1;
+        if (++size * 2 > table.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    /**
+     * Finds the id of a name, adding the name to the pool if it isn't in it yet.
+     * @param name The name.
+     * @return The id of the name.
+     */
+    int intern(String name) {
+        return intern(name.toCharArray(), 0, name.length());
+    }
+
+    /**
+     * Returns the name of an id.
+     * @param id The id (0 to size - 1).
+     * @return The name.
+     * @throws IndexOutOfBoundsException If no name has the id.
+     */
+    String getName(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("no identifier has the id " + id);
+        }
+        return names[id];
+    }
+
+    /**
+     * Accessor for the size.
+     * @return The number of names in the pool.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Doubles the hash table, and puts every id back into it.
+     */
+    private void rehash() {
+        table = new int[2 * table.length];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Mixes the high bits of a hash into its low bits (which pick the slot).
+     * @param hash The hash of a name.
+     * @return The mixed hash.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Determines if a name is the same as the characters in an array.
+     * @param name The name.
+     * @param source The characters.
+     * @param start The index of the first character.
+     * @param length The number of characters.
+     * @return True if they are the same, false if not.
+     */
+    private static boolean matches(String name, char [] source, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package edu.miracosta.cs220;
+
+import java.util.Arrays;
+
+/**
+ * IntGapBuffer.java - A list of records of ints, one of which is a position in a text (the packed tokens of a
+ * TokenArray, or the start of every line), kept around a gap at the place the list was last edited, so an edit only
+ * moves the records between it and the last edit, and the positions after an edit move without being touched.
+ *
+ * Algorithm:
+ *
+ * 1. The records before the gap are at the front of the array and the records after it are at the back, with the
+ * unused ints (the gap) in between, as in CharGapBuffer.
+ *
+ * 2. The position of a record before the gap is kept as it is, but the position of a record after the gap is kept as
+ * its distance back from the end of the text. So when the text grows or shrinks by an edit at the gap, every
+ * position after the edit moves with the end of the text, by changing only the end (see setEnd). A record that the
+ * gap moves across has its position converted from one form to the other.
+ *
+ * INSTANCE VARIABLES:
+ * - MIN_GAP (int): The fewest records the array grows by.
+ * - ints (int[]): The records, recordSize ints each.
+ * - recordSize (int): The number of ints in a record.
+ * - positionField (int): Which int of a record is the position.
+ * - gapStart/gapEnd (int): The index of the gap's first int, and of the first int after the gap.
+ * - end (int): The length of the text the positions are in.
+ *
+ * METHODS:
+ * - size: The number of records.
+ * - get (int, int): One int of a record.
+ * - replace (int, int, int[]): Replaces records with others.
+ * - setEnd (int): Moves every position after the gap along with the end of the text.
+ *
+ * Author: Matt Sheehan
+ */
+class IntGapBuffer {
+
+    private static final int MIN_GAP = 64;
+
+    private int [] ints;
+    private final int recordSize;
+    private final int positionField;
+    private int gapStart;
+    private int gapEnd;
+    private int end;
+
+    /**
+     * Full constructor. There is no gap until the first records are inserted.
+     * @param records The records, filling the array (which is kept).
+     * @param recordSize The number of ints in a record.
+     * @param positionField Which int of a record is the position.
+     * @param end The length of the text the positions are in.
+     */
+    IntGapBuffer(int [] records, int recordSize, int positionField, int end) {
+        this.ints = records;
+        this.recordSize = recordSize;
+        this.positionField = positionField;
+        this.gapStart = records.length;
+        this.gapEnd = records.length;
+        this.end = end;
+    }
+
+    /**
+     * Returns the number of records.
+     * @return The number of records (not counting the gap).
+     */
+    int size() {
+        return (ints.length - (gapEnd - gapStart)) / recordSize;
+    }
+
+    /**
+     * Returns one int of a record.
+     * @param index The index of the record (0 to size - 1).
+     * @param field Which int of the record.
+     * @return The int (the position in the text, for the position field).
+     */
+    int get(int index, int field) {
+        int i = recordSize * index;
+        if (i < gapStart) {
+            return ints[i + field];
+        }
+        int value = ints[i + gapEnd - gapStart + field];
+        return (field == positionField) ? value + end : value;
+    }
+
+    /**
+     * Replaces records with others (moving the gap to them).
+     * @param index The index of the first record removed (or of where the records are inserted).
+     * @param removedRecords The number of records removed.
+     * @param records The records inserted in their place, one after another.
+     * @return The records removed, one after another.
+     */
+    int [] replace(int index, int removedRecords, int [] records) {
+        moveGap(recordSize * index);
+        int removedInts = recordSize * removedRecords;
+        int [] removed = Arrays.copyOfRange(ints, gapEnd, gapEnd + removedInts);
+        for (int i = positionField; i < removedInts; i += recordSize) {
+            removed[i] += end;
+        }
+        gapEnd += removedInts;
+
+        if (gapEnd - gapStart < records.length) {
+            grow(records.length);
+        }
+        System.arraycopy(records, 0, ints, gapStart, records.length);
+        gapStart += records.length;
+        return removed;
+    }
+
+    /**
+     * Changes the length of the text the positions are in, which moves every position after the gap by as much.
+     * @param end The new length of the text.
+     */
+    void setEnd(int end) {
+        this.end = end;
+    }
+
+    /**
+     * Moves the gap, moving the records between where it is and where it goes across it.
+     * @param to The index of the first int of the record the gap goes before.
+     */
+    private void moveGap(int to) {
+        if (to < gapStart) {
+            int moved = gapStart - to;
+            System.arraycopy(ints, to, ints, gapEnd - moved, moved);
+            for (int i = gapEnd - moved + positionField; i < gapEnd; i += recordSize) {
+                ints[i] -= end;
+            }
+            gapStart -= moved;
+            gapEnd -= moved;
+        } else if (to > gapStart) {
+            int moved = to - gapStart;
+            System.arraycopy(ints, gapEnd, ints, gapStart, moved);
+            for (int i = gapStart + positionField; i < to; i += recordSize) {
+                ints[i] += end;
+            }
+            gapStart += moved;
+            gapEnd += moved;
+        }
+    }
+
+    /**
+     * Copies the records into a larger array, with a larger gap.
+     * @param needed The number of ints the gap must have room for (a whole number of records).
+     */
+    private void grow(int needed) {
+        int records = ints.length / recordSize;
+        int newLength = ints.length + Math.max(needed, recordSize * Math.max(MIN_GAP, records >> 1));
+        int afterGap = ints.length - gapEnd;
+        int [] grown = Arrays.copyOf(ints, newLength);
+        System.arraycopy(ints, gapEnd, grown, newLength - afterGap, afterGap);
+        ints = grown;
+        gapEnd = newLength - afterGap;
+    }
+}
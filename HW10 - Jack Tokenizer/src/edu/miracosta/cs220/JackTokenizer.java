@@ -1,146 +1,556 @@
 package edu.miracosta.cs220;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 
 /**
  * JackTokenizer.java - Breaks the Jack code into tokens and translates it into a XML format.
  *
- * 1. The program will scan through the lines of Jack code, and clean the lines of Jack code of any comments and
- * escape characters (\n, \t, etc).
+ * 1. The Jack code is read through a buffer of fixed size, and scanned once from start to end by a state machine,
+ * one token per call to advance (so tokens flow to the caller as soon as they are read, and the memory used doesn't
+ * grow with the size of the code). The class of each character (letter, digit, symbol, slash, quote, white space,
+ * new line or other) is looked up in a table, and the class of the first character of a token decides which state
+ * the machine is in:
+ *    - white space and new lines are skipped (new lines are counted, so errors can name their line).
+ *    - a slash followed by a slash starts a line comment, which is skipped up to the end of the line; a slash followed
+ *      by a star starts a block comment (including /** documentation comments), which is skipped up to the next star
+ *      followed by a slash, over as many lines as it takes. Any other slash is a symbol.
+ *    - a letter (or underscore) starts a word, which runs for as long as letters, digits and underscores follow. The
+ *      word is a keyword if the keyword perfect hash table holds it (see Keyword), and an identifier if not, so a word
+ *      is only ever a keyword as a whole ("classify" is one identifier, not "class" and "ify").
+ *    - a digit starts an integer constant, which runs for as long as digits follow (its value must be 0 to 32767).
+ *    - a quote starts a string constant, which runs up to the next quote (which must come before the end of the
+ *      line); the quotes are not part of the token.
+ *    - a symbol is a token of its own.
+ *    - any other character is an error.
  *
- * 2. Once the lines of Jack code have been cleaned of comments and escape characters, then cleaned lines will be
- * broken down into tokens based on if elements of the Jack code match certain patterns (String constants will begin
- * and end with ", keywords are predefined, integers are just integers, symbols are predefined, and remaining tokens
- * will be classified as identifiers).
+ * 2. The token is classified the moment it is scanned, so nothing is ever matched twice. The caller reads it with
+ * tokenType and keyWord/symbol/identifier/intVal/stringVal (the names of the nand2tetris API), or takes whole Token
+ * objects from the spliterator.
  *
- * 3. Once tokens have been classified, they will be printed to the .xml file with their token type. Example: ";"
- * will be printed to the .xml file as <symbol> ; </symbol>.
+ * 3. The buffer is only ever scanned up to the end of its last complete line. Since no token goes past the end of a
+ * line, every token that starts before that point ends before it; when the scanner reaches it, the characters not
+ * yet scanned are moved to the front of the buffer and the rest is refilled from the Reader. Block comments are the
+ * only thing that spans lines, and they are skipped across refills without being kept. The buffer only grows if one
+ * line is longer than it.
  *
+ * 4. Once tokens have been classified, they will be printed to the .xml file with their token type. Example: ";"
+ * will be printed to the .xml file as <symbol> ; </symbol> (by a TokenWriter, which escapes <, >, & and " as the
+ * entities &lt; &gt; &amp; &quot;). The .xml file is written next to the .jack file, with the same name (only the
+ * extension changes). With --binary, the tokens are written to a .tok file in a compact binary format instead (see
+ * TokenWriter), to be read back by a BinaryTokenReader.
+ *
+ * 5. A directory is searched for .jack files (in the directories in it too), which are tokenized in parallel (see
+ * DirectoryTokenizer), followed by a summary of the throughput.
+ *
+ * Usage: JackTokenizer [--threads N] [--binary] (file.jack | directory) ...
+ *
+ * INSTANCE VARIABLES:
+ *
+ * - CHARACTER_CLASSES (byte[]): The class of every ASCII character.
+ * - input (Reader): The source of the Jack code (null once it has all been read).
+ * - buffer (char[]): The Jack code read but not yet scanned, of which the first limit characters are used.
+ * - position (int): The index of the next character to be scanned.
+ * - safeEnd (int): The index after the last new line in the buffer (the end of the buffer once all is read).
+ * - lineNumber (int): The line the next character is on.
+ * - readOffset (int): The number of characters refills have moved out of the front of the buffer.
+ * - tokenType (TokenType)/keyword (Keyword)/intValue (int): The current token's type, keyword and value.
+ * - tokenStart/tokenLength (int): Where the current token's text is in the buffer.
+ * - tokenLine (int): The line the current token is on.
+ *
+ * METHODS:
+ *
+ * - hasMoreTokens: Determines if the Jack code has more tokens (skipping white space and comments).
+ * - advance: Scans and classifies the next token, which becomes the current token.
+ * - tokenType/keyWord/symbol/identifier/intVal/stringVal/getLineNumber: Accessors for the current token.
+ * - getBuffer/getTokenStart/getTokenLength: Where the current token is in the buffer (see TokenArray, TokenWriter).
+ * - getTokenOffset: Where the current token is in the Jack code read (see TokenArray.edit).
+ * - spliterator: The tokens that have not been scanned yet, as Token objects.
+ * - collectTokens: Lists the text of every token.
+ * - refill: Moves the characters not yet scanned to the front of the buffer, and reads more Jack code after them.
+ *
+ * Author: Matt Sheehan
  */
 class JackTokenizer {
 
+    static final String THREADS_FLAG = "--threads";
+    static final String BINARY_FLAG = "--binary";
+
     public static void main(String ... jackFilesToTranslate) {
-       for (String fileName : jackFilesToTranslate) {
-            JackTokenizer jackTokenizer = new JackTokenizer(fileName);
-            PrintWriter printWriter;
+        int threads = Runtime.getRuntime().availableProcessors();
+        TokenFormat format = TokenFormat.XML;
+        List <String> files = new ArrayList <> ();
+        for (int i = 0; i < jackFilesToTranslate.length; i++) {
+            if (jackFilesToTranslate[i].equals(THREADS_FLAG)) {
+                try {
+                    threads = Integer.parseInt(jackFilesToTranslate[++i]);
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.out.println(THREADS_FLAG + " needs a positive number of threads.");
+                    return;
+                }
+            } else if (jackFilesToTranslate[i].equals(BINARY_FLAG)) {
+                format = TokenFormat.BINARY;
+            } else {
+                files.add(jackFilesToTranslate[i]);
+            }
+        }
+
+        for (String fileName : files) {
+            Path file = Path.of(fileName);
+            if (Files.isDirectory(file)) {
+                DirectoryTokenizer.tokenize(file, format, threads);
+                continue;
+            }
             try {
-                printWriter = new PrintWriter(new FileOutputStream(fileName.replaceAll("jack", "xml")));
-                printWriter.println("<tokens>");
-                jackTokenizer.getTokens(printWriter);
-                printWriter.println("</tokens>");
-                printWriter.close();
-            } catch (FileNotFoundException e) {
-                System.out.println("Cannot write to " + fileName.replaceAll( "jack", "xml"));
+                DirectoryTokenizer.tokenizeFile(file, format);
+            } catch (NoSuchFileException e) {
+                System.out.println(fileName + " file not found.");
+            } catch (IllegalArgumentException | IOException | UncheckedIOException e) {
+                System.out.println(fileName + ": " + e.getMessage());
             }
-       }
+        }
     }
 
-    private static final String KEYWORD = "keyword";
-    private static final String SYMBOL  = "symbol";
-    private static final String INTEGER_CONSTANT = "integerConstant";
-    private static final String STRING_CONSTANT  = "stringConstant";
-    private static final String IDENTIFIER = "identifier";
+    private static final byte OTHER = 0;
+    private static final byte WHITE_SPACE = 1;
+    private static final byte NEW_LINE = 2;
+    private static final byte LETTER = 3;
+    private static final byte DIGIT = 4;
+    private static final byte SYMBOL = 5;
+    private static final byte SLASH = 6;
+    private static final byte QUOTE = 7;
 
-    private static final Pattern stringPattern = Pattern.compile("\".*\"");
-    private static final Pattern identifierPattern = Pattern.compile("[\\w_]+");
-    private static final Pattern integerPattern = Pattern.compile("[0-9]+");
-    private static final Pattern symbolPattern = Pattern.compile("[{}()\\[\\].,;+\\-*/&|<>=~]");
-    private static final Pattern keywordPattern = Pattern.compile
-    ("class|constructor|function|method|field|static|var|int|char|boolean|void|true|false|null|this|let|do|if|else|while|return");
-    private static final Pattern bigPattern = Pattern.compile(keywordPattern.pattern() + symbolPattern.pattern() +
-    "|" + integerPattern.pattern() + "|" + stringPattern.pattern() + "|" + identifierPattern.pattern());
+    private static final byte [] CHARACTER_CLASSES = new byte[128];
 
-    private Scanner inputFile;
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHARACTER_CLASSES[c] = LETTER;
+            CHARACTER_CLASSES[Character.toUpperCase(c)] = LETTER;
+        }
+        CHARACTER_CLASSES['_'] = LETTER;
+        for (char c = '0'; c <= '9'; c++) {
+            CHARACTER_CLASSES[c] = DIGIT;
+        }
+        for (char c : "{}()[].,;+-*&|<>=~".toCharArray()) {
+            CHARACTER_CLASSES[c] = SYMBOL;
+        }
+        for (char c : " \t\r\f".toCharArray()) {
+            CHARACTER_CLASSES[c] = WHITE_SPACE;
+        }
+        CHARACTER_CLASSES['\n'] = NEW_LINE;
+        CHARACTER_CLASSES['/'] = SLASH;
+        CHARACTER_CLASSES['"'] = QUOTE;
+    }
+
+    private static final int MAX_INTEGER = 32767;
+    private static final int BUFFER_SIZE = 8192;
+
+    private Reader input;
+    private char [] buffer = new char[BUFFER_SIZE];
+    private int limit = 0;
+    private int position = 0;
+    private int safeEnd = 0;
+    private int lineNumber = 1;
+    private int readOffset = 0;
+
+    private TokenType tokenType;
+    private Keyword keyword;
+    private int intValue;
+    private int tokenStart;
+    private int tokenLength;
+    private int tokenLine;
 
     /**
      * Full constructor, connects the file with the program.
-     * @param fileName The file name that contains Jack code.
+     * @param fileName The file name that contains Jack code (read as UTF-8, as DirectoryTokenizer reads it).
+     * @throws NoSuchFileException If the file doesn't exist.
+     * @throws IOException If the file could not be opened.
      */
-    JackTokenizer(String fileName) {
-        try {
-            inputFile = new Scanner(new FileInputStream(fileName));
-        } catch (FileNotFoundException e) {
-            System.out.println(fileName + " file not found.\n");
-        }
+    JackTokenizer(String fileName) throws IOException {
+        this(Files.newBufferedReader(Path.of(fileName), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Connects the program with Jack code that is not in a file.
+     * @param input The source of the Jack code (closed once it has all been read).
+     */
+    JackTokenizer(Reader input) {
+        this(input, 1);
+    }
+
+    /**
+     * Connects the program with Jack code that is not in a file, starting partway through the code (see
+     * TokenArray.edit). The Reader must not start inside a token or comment.
+     * @param input The source of the Jack code (closed once it has all been read).
+     * @param lineNumber The line the first character read is on.
+     */
+    JackTokenizer(Reader input, int lineNumber) {
+        this.input = input;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Connects the program with Jack code that is already in memory. The code is scanned where it is (the buffer is
+     * never refilled), so the start of every token is its index in the array.
+     * @param source The Jack code, which must not change while it is scanned.
+     * @param length The number of characters of Jack code in the array.
+     */
+    JackTokenizer(char [] source, int length) {
+        this(source, 0, length, 1);
     }
 
     /**
-     * Scans through lines of Jack code, cleans them of comments, breaks the lines into tokens, then translates tokens
-     * into XML.
-     * @param printWriter The PrintWriter that will be writing the tokens to the .xml file.
+     * Connects the program with Jack code that is already in memory, starting partway through it (see
+     * TokenArray.edit). The start must not be inside a token or comment.
+     * @param source The Jack code, which must not change while it is scanned.
+     * @param start The index of the first character to be scanned.
+     * @param length The number of characters of Jack code in the array.
+     * @param lineNumber The line the first character to be scanned is on.
      */
-    void getTokens(PrintWriter printWriter) {
-        for (String token : collectTokens(cleanLines())) {
-            printTokens(token, printWriter);
+    JackTokenizer(char [] source, int start, int length, int lineNumber) {
+        buffer = source;
+        position = start;
+        limit = length;
+        safeEnd = length;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Returns the state of the Jack code having more tokens (skipping over white space and comments).
+     * @return True if there is another token to be scanned, false if not.
+     * @throws IllegalArgumentException If a block comment is never closed.
+     * @throws UncheckedIOException If the Jack code could not be read.
+     */
+    boolean hasMoreTokens() {
+        char [] buffer = this.buffer;
+        int i = position;
+        while (true) {
+            if (i >= safeEnd) {
+                position = i;
+                if (!refill()) {
+                    return false;
+                }
+                buffer = this.buffer;
+                i = position;
+            }
+            char c = buffer[i];
+            switch ((c < CHARACTER_CLASSES.length) ? CHARACTER_CLASSES[c] : OTHER) {
+                case WHITE_SPACE -> ++i;
+                case NEW_LINE -> {
+                    ++lineNumber;
+                    ++i;
+                }
+                case SLASH -> {
+                    char next = (i + 1 < safeEnd) ? buffer[i + 1] : '\0';
+                    if (next == '/') {
+                        i += 2;
+                        while (i < safeEnd && buffer[i] != '\n') {
+                            ++i;
+                        }
+                    } else if (next == '*') {
+                        i = skipBlockComment(i + 2);
+                        buffer = this.buffer;
+                    } else {
+                        position = i;
+                        return true;
+                    }
+                }
+                default -> {
+                    position = i;
+                    return true;
+                }
+            }
         }
     }
 
     /**
-     * Scans through lines of Jack code, and cleans them of comments/escape characters (\n, \t, etc).
-     * @return An ArrayList of lines of Jack code (without comments and escape characters).
+     * Scans the next token and classifies it; it becomes the current token. Does nothing if there are no more tokens.
+     * @throws IllegalArgumentException If the Jack code has a character, comment or constant that isn't valid.
+     * @throws UncheckedIOException If the Jack code could not be read.
      */
-    private List <String> cleanLines() {
-        List <String> cleanedLines = new ArrayList <> ();
-        while (inputFile.hasNextLine()) {
-            String cleanInput = inputFile.nextLine().trim();
-            cleanInput = cleanInput.replaceAll("//.*", "");
-            cleanInput = (cleanInput.startsWith("/*")) ? cleanInput.substring(0, cleanInput.indexOf("/*")) : cleanInput;
-            cleanInput = (cleanInput.startsWith("*")) ? cleanInput.substring(0, cleanInput.indexOf("*")) : cleanInput;
-            if (!cleanInput.isEmpty()) {
-                cleanedLines.add(cleanInput);
+    void advance() {
+        if (!hasMoreTokens()) {
+            return;
+        }
+        char [] buffer = this.buffer;
+        int end = safeEnd;
+        int i = position;
+        char c = buffer[i];
+        tokenLine = lineNumber;
+        switch ((c < CHARACTER_CLASSES.length) ? CHARACTER_CLASSES[c] : OTHER) {
+            case LETTER -> {
+                int start = i++;
+                while (i < end && (c = buffer[i]) < CHARACTER_CLASSES.length
+                       && (CHARACTER_CLASSES[c] == LETTER || CHARACTER_CLASSES[c] == DIGIT)) {
+                    ++i;
+                }
+                keyword = Keyword.lookUp(buffer, start, i - start);
+                tokenType = (keyword == null) ? TokenType.IDENTIFIER : TokenType.KEYWORD;
+                setToken(start, i, i);
+            }
+            case DIGIT -> {
+                int start = i;
+                int value = 0;
+                while (i < end && (c = buffer[i]) >= '0' && c <= '9') {
+                    value = 10 * value + (c - '0');
+                    if (value > MAX_INTEGER) {
+                        throw new IllegalArgumentException("Line " + lineNumber + ": the integer constant is "
+                                                           + "more than " + MAX_INTEGER);
+                    }
+                    ++i;
+                }
+                intValue = value;
+                tokenType = TokenType.INTEGER_CONSTANT;
+                setToken(start, i, i);
+            }
+            case QUOTE -> {
+                int start = ++i;
+                while (i < end && (c = buffer[i]) != '"' && c != '\n') {
+                    ++i;
+                }
+                if (i == end || buffer[i] != '"') {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": the string constant has no "
+                                                       + "closing quote");
+                }
+                tokenType = TokenType.STRING_CONSTANT;
+                setToken(start, i, i + 1);
             }
+            case SYMBOL, SLASH -> { // Comments were skipped by hasMoreTokens, so this slash is a symbol.
+                tokenType = TokenType.SYMBOL;
+                setToken(i, i + 1, i + 1);
+            }
+            default -> throw new IllegalArgumentException("Line " + lineNumber + ": '" + c
+                                                          + "' is not a valid character");
         }
-        inputFile.close();
-        return cleanedLines;
     }
 
     /**
-     * Sorts through lines of Jack code and determines which portions can be tokens.
-     * @param jackCodeToBeParsed An ArrayList of cleaned Jack code.
-     * @return An ArrayList of tokens derived from the Jack code.
+     * Accessor for the type of the current token.
+     * @return The type of the current token (null before the first call to advance).
+     */
+    TokenType tokenType() {
+        return tokenType;
+    }
+
+    /**
+     * Accessor for the keyword of the current token.
+     * @return The keyword, if the current token is a keyword (null otherwise).
+     */
+    Keyword keyWord() {
+        return (tokenType == TokenType.KEYWORD) ? keyword : null;
+    }
+
+    /**
+     * Accessor for the symbol of the current token.
+     * @return The symbol, if the current token is a symbol (the null character otherwise).
+     */
+    char symbol() {
+        return (tokenType == TokenType.SYMBOL) ? buffer[tokenStart] : '\0';
+    }
+
+    /**
+     * Accessor for the name of the current token.
+     * @return The identifier, if the current token is an identifier (null otherwise).
+     */
+    String identifier() {
+        return (tokenType == TokenType.IDENTIFIER) ? new String(buffer, tokenStart, tokenLength) : null;
+    }
+
+    /**
+     * Accessor for the value of the current token.
+     * @return The value (0 to 32767), if the current token is an integer constant (0 otherwise).
+     */
+    int intVal() {
+        return (tokenType == TokenType.INTEGER_CONSTANT) ? intValue : 0;
+    }
+
+    /**
+     * Accessor for the characters of the current token.
+     * @return The characters between the quotes, if the current token is a string constant (null otherwise).
+     */
+    String stringVal() {
+        return (tokenType == TokenType.STRING_CONSTANT) ? new String(buffer, tokenStart, tokenLength) : null;
+    }
+
+    /**
+     * Accessor for the start of the current token.
+     * @return The index of the current token's first character in the buffer (in the source array, if the Jack code
+     *         was given as one).
+     */
+    int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * Returns where the current token is in the Jack code read.
+     * @return The number of characters read before the current token's first character (its start in the buffer,
+     *         plus the characters refills have moved out of the buffer).
+     */
+    int getTokenOffset() {
+        return readOffset + tokenStart;
+    }
+
+    /**
+     * Accessor for the buffer.
+     * @return The characters holding the current token's text (valid until the next call to hasMoreTokens/advance).
+     */
+    char [] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Accessor for the length of the current token.
+     * @return The number of characters in the current token (not including the quotes of a string constant).
+     */
+    int getTokenLength() {
+        return tokenLength;
+    }
+
+    /**
+     * Accessor for the line of the current token.
+     * @return The line the current token is on.
+     */
+    int getLineNumber() {
+        return tokenLine;
+    }
+
+    /**
+     * Returns the tokens that have not been scanned yet, one Token at a time as they are scanned (the Spliterator and
+     * hasMoreTokens/advance move through the same code, so they shouldn't both be used).
+     * @return An ordered Spliterator of the remaining tokens (it can't be split, so streams of it run sequentially).
      */
-    private List <String> collectTokens(List <String> jackCodeToBeParsed) {
+    Spliterator <Token> spliterator() {
+        return new Spliterators.AbstractSpliterator <> (Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer <? super Token> action) {
+                if (!hasMoreTokens()) {
+                    return false;
+                }
+                advance();
+                action.accept(new Token(tokenType, tokenText(), tokenLine));
+                return true;
+            }
+
+            @Override
+            public Spliterator <Token> trySplit() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Scans through the Jack code, and lists the text of every token.
+     * @return The text of every token, in order (string constants without their quotes).
+     * @throws IllegalArgumentException If the Jack code has a character, comment or constant that isn't valid.
+     * @throws UncheckedIOException If the Jack code could not be read.
+     */
+    List <String> collectTokens() {
         List <String> tokens = new ArrayList <> ();
-        for (String line : jackCodeToBeParsed) {
-            Matcher m = bigPattern.matcher(line);
-            while (m.find())
-                tokens.add(m.group());
+        while (hasMoreTokens()) {
+            advance();
+            tokens.add(tokenText());
         }
         return tokens;
     }
 
     /**
-     * Prints the given token to a .xml file (based on matched pattern).
-     * @param token The token given.
-     * @param printWriter The PrintWriter that will print the token (in <xml></xml> format) to the .xml file.
-     */
-    private void printTokens(String token, PrintWriter printWriter) {
-        if (token.matches(keywordPattern.pattern())) {
-            printWriter.println("<" + KEYWORD + "> " + token + " </" + KEYWORD + ">");
-        } else if (token.matches(stringPattern.pattern())) {
-            token = token.substring(1);
-            printWriter.println("<" + STRING_CONSTANT + "> " + token + " </" + STRING_CONSTANT + ">");
-        } else if (token.matches(integerPattern.pattern())) {
-            printWriter.println("<" + INTEGER_CONSTANT + "> " + token + " </" + INTEGER_CONSTANT + ">");
-        } else if (token.matches(symbolPattern.pattern())) {
-            token = switch (token) { // Special characters in XML.
-                case "<" -> "&#60";
-                case ">" -> "&#62";
-                case "&" -> "&#38";
-                case "'" -> "&#39";
-                case "\"" -> "&#34";
-                default -> token;
-            };
-            printWriter.println("<" + SYMBOL + "> " + token + " </" + SYMBOL + ">");
-        } else if (token.matches(identifierPattern.pattern()))
-            printWriter.println ("<" + IDENTIFIER + "> " + token + " </" + IDENTIFIER + ">");
+     * Returns the text of the current token.
+     * @return The token as written in the Jack code (string constants without their quotes).
+     */
+    private String tokenText() {
+        return (tokenType == TokenType.KEYWORD) ? keyword.getText() : new String(buffer, tokenStart, tokenLength);
+    }
+
+    /**
+     * Records where the current token is, and moves past it.
+     * @param start The index of the token's first character.
+     * @param end The index after the token's last character.
+     * @param next The index of the first character after the token (after the closing quote of a string).
+     */
+    private void setToken(int start, int end, int next) {
+        tokenStart = start;
+        tokenLength = end - start;
+        position = next;
+    }
+
+    /**
+     * Skips a block comment, refilling the buffer as often as it takes.
+     * @param i The index after the comment's opening slash and star.
+     * @return The index after the comment's closing star and slash.
+     * @throws IllegalArgumentException If the comment is never closed.
+     * @throws UncheckedIOException If the Jack code could not be read.
+     */
+    private int skipBlockComment(int i) {
+        int startLine = lineNumber;
+        while (true) {
+            if (i >= safeEnd) {
+                position = i;
+                if (!refill()) {
+                    throw new IllegalArgumentException("Line " + startLine + ": the comment is never closed");
+                }
+                i = position;
+            }
+            char c = buffer[i++];
+            if (c == '\n') {
+                ++lineNumber;
+            } else if (c == '*' && i < safeEnd && buffer[i] == '/') {
+                return i + 1;
+            }
+        }
+    }
+
+    /**
+     * Moves the characters not yet scanned (from position on) to the front of the buffer, and reads Jack code after
+     * them until the buffer holds the end of a line (or all of the code has been read).
+     * @return True if there are characters to be scanned, false if all of the code has been scanned.
+     * @throws UncheckedIOException If the Jack code could not be read.
+     */
+    private boolean refill() {
+        int remaining = limit - position;
+        System.arraycopy(buffer, position, buffer, 0, remaining);
+        readOffset += position;
+        limit = remaining;
+        position = 0;
+        safeEnd = 0;
+        try {
+            while (input != null && safeEnd == 0) {
+                if (limit == buffer.length) { // One line longer than the buffer.
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+                int read = input.read(buffer, limit, buffer.length - limit);
+                if (read == -1) {
+                    input.close();
+                    input = null;
+                } else {
+                    for (int i = limit + read - 1; i >= limit; i--) {
+                        if (buffer[i] == '\n') {
+                            safeEnd = i + 1;
+                            break;
+                        }
+                    }
+                    limit += read;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (input == null) {
+            safeEnd = limit;
+        }
+        return position < limit;
     }
 }
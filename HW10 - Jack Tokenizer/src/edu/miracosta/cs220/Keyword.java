@@ -0,0 +1,99 @@
+package edu.miracosta.cs220;
+
+/**
+ * Keyword.java - The 21 reserved words of the Jack language, and a perfect hash table to look them up.
+ *
+ * Algorithm:
+ *
+ * 1. Every keyword is hashed from its first character, its last character and its length:
+ *    (8 * first + 27 * last + length) mod 32. No two keywords share a hash (checked when the table is built), so
+ *    the table needs no chaining: a word is looked up with one hash and at most one comparison.
+ *
+ * 2. A word is a keyword only if it has the same length and the same characters as the keyword in its slot, so a
+ *    word that merely starts with a keyword (e.g. "classify", "double") is never mistaken for one.
+ *
+ * INSTANCE VARIABLES:
+ * - text (String): How the keyword is written in Jack code.
+ * - TABLE (Keyword[]): The perfect hash table, indexed by hash.
+ *
+ * METHODS:
+ * - lookUp (char[], int, int): Finds the keyword a word of Jack code is, if any.
+ * - hash (char, char, int): The slot of a word in the table.
+ * - Accessor methods for all instance variables.
+ *
+ * Author: Matt Sheehan
+ */
+enum Keyword {
+    CLASS("class"), CONSTRUCTOR("constructor"), FUNCTION("function"), METHOD("method"), FIELD("field"),
+    STATIC("static"), VAR("var"), INT("int"), CHAR("char"), BOOLEAN("boolean"), VOID("void"), TRUE("true"),
+    FALSE("false"), NULL("null"), THIS("this"), LET("let"), DO("do"), IF("if"), ELSE("else"), WHILE("while"),
+    RETURN("return");
+
+    private static final int TABLE_SIZE = 32;
+    private static final int MIN_LENGTH = 2;
+    private static final int MAX_LENGTH = 11;
+    private static final Keyword [] TABLE = new Keyword[TABLE_SIZE];
+
+    static {
+        for (Keyword keyword : values()) {
+            String text = keyword.text;
+            int slot = hash(text.charAt(0), text.charAt(text.length() - 1), text.length());
+            if (TABLE[slot] != null) {
+                throw new IllegalStateException(keyword + " and " + TABLE[slot] + " have the same hash");
+            }
+            TABLE[slot] = keyword;
+        }
+    }
+
+    private final String text;
+
+    /**
+     * Full constructor.
+     * @param text How the keyword is written in Jack code.
+     */
+    Keyword(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Finds the keyword a word of Jack code is.
+     * @param source The characters holding the word.
+     * @param start The index of the word's first character.
+     * @param length The number of characters in the word.
+     * @return The keyword, or null if the word is not a keyword.
+     */
+    static Keyword lookUp(char [] source, int start, int length) {
+        if (length < MIN_LENGTH || length > MAX_LENGTH) {
+            return null;
+        }
+        Keyword keyword = TABLE[hash(source[start], source[start + length - 1], length)];
+        if (keyword == null || keyword.text.length() != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source[start + i] != keyword.text.charAt(i)) {
+                return null;
+            }
+        }
+        return keyword;
+    }
+
+    /**
+     * Computes the slot of a word in the table.
+     * @param first The word's first character.
+     * @param last The word's last character.
+     * @param length The number of characters in the word.
+     * @return The slot (0 to 31).
+     */
+    private static int hash(char first, char last, int length) {
+        return (8 * first + 27 * last + length) & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * Accessor for the text.
+     * @return How the keyword is written in Jack code (e.g. "constructor").
+     */
+    String getText() {
+        return text;
+    }
+}
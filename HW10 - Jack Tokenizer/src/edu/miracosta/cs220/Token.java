@@ -0,0 +1,15 @@
+package edu.miracosta.cs220;
+
+/**
+ * Token.java - One token of Jack code, as handed out by the JackTokenizer's Spliterator.
+ *
+ * Unlike the JackTokenizer's current token (whose text lives in a buffer that is reused as the code is read), a
+ * Token holds its own copy of its text, so it stays valid after the tokenizer has moved on.
+ *
+ * @param type The kind of token.
+ * @param text The token as written in the Jack code (string constants without their quotes).
+ * @param lineNumber The line the token is on.
+ *
+ * Author: Matt Sheehan
+ */
+record Token(TokenType type, String text, int lineNumber) { }
@@ -0,0 +1,603 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TokenArray.java - All the tokens of one file of Jack code, stored as ints in one array instead of as objects, for
+ * the stages of a compiler that need to look ahead or back over the tokens.
+ *
+ * Algorithm:
+ *
+ * 1. The whole file is read into one char array (the source), which the tokens share.
+ *
+ * 2. The source is scanned where it is by a JackTokenizer, and each token is packed into three ints:
+ *    - its type and value: the type's ordinal in the low 3 bits, and above them the keyword's ordinal (keywords), the
+ *      symbol's character (symbols), the constant's value (integer constants), the id of the name in the
+ *      IdentifierPool (identifiers), or 0 (string constants).
+ *    - the index of its first character in the source.
+ *    - its length (string constants without their quotes).
+ *
+ * 3. Identifiers are interned as they are scanned, so two uses of the same name have the same id (and, with a shared
+ * pool, the same id in every file) and the name becomes a String only once.
+ *
+ * 4. Once scanned, a source whose characters all fit in a byte (any ASCII file) is kept as a byte array instead, and
+ * the index of the first character of every line is kept in a table, which a token's line is found in by binary
+ * search (tokens never span lines).
+ *
+ * The source, the line table and the tokens are trimmed to their exact size, so a TokenArray of ASCII code holds 1 byte
+ * per character, 4 bytes per line and 12 bytes per token, and nothing else (the names of identifiers are in the pool).
+ * They are kept in gap buffers (see CharGapBuffer and IntGapBuffer), which only grow once the code is edited.
+ *
+ * Reading a token back allocates nothing (except getText, which makes a String of a constant), so a parser can move
+ * back and forth over the tokens as often as it likes.
+ *
+ * 5. An edit to the code (e.g. a keystroke in an editor) makes a new TokenArray without scanning the whole file again:
+ *    - the scan restarts at the last token that begins before the edit (the tokens before it can't have changed, and
+ *      no comment or string constant can be open there, since they are never inside a token). The edited code is read
+ *      from there through a Reader, from the source before the edit, the inserted text and the source after it.
+ *    - it stops as soon as it scans a token that begins where an old token after the edit began (moved by the number
+ *      of characters inserted or removed): from there on the code is the same as before, so the tokens are too.
+ *    - the characters, the tokens scanned and the line starts are then replaced in their gap buffers, which moves the
+ *      gaps to the edit. The tokens and lines after the gap keep their starts as distances from the end of the code,
+ *      so they move with it without being touched.
+ *    So a keystroke scans and copies only the tokens around it (and moves each gap from the last edit to this one),
+ *    unless it opens or closes a block comment or string constant, in which case the scan goes on for as far as the
+ *    change in the tokens does. Code that isn't valid Jack (likely, while it is being typed) doesn't throw: the tokens
+ *    up to the mistake are kept, with the reason (see getError).
+ *
+ * 6. Every TokenArray made by editing the same file shares its gap buffers, which hold one of them (the root) at a
+ * time. Every other one keeps the change (the characters, tokens and line starts to be replaced) that makes it from
+ * its neighbour closer to the root. Reading one that isn't the root first applies the changes on the way from the
+ * root to it, each replaced by its opposite (rerooting), so it becomes the root. An edit of the last TokenArray, or
+ * going back to the one before an edit (e.g. to undo it), applies only as much as was changed. The TokenArrays of one
+ * file must therefore not be used from more than one thread at a time.
+ *
+ * INSTANCE VARIABLES:
+ * - source (CharGapBuffer): The Jack code of the file (shared with the TokenArrays edited from it).
+ * - tokens (IntGapBuffer): The packed tokens, three ints per token (shared).
+ * - lineStarts (IntGapBuffer): The index in the source of the first character of every line (shared).
+ * - length (int): The number of characters of Jack code in the source.
+ * - size (int): The number of tokens.
+ * - identifierPool (IdentifierPool): The pool the identifiers were interned in.
+ * - error (String): Why the code after the last token could not be tokenized (null if it all was; see edit).
+ * - base (TokenArray): The TokenArray this one is a change of (null if the gap buffers hold this one).
+ * - change (Change): The change that makes this TokenArray from the base.
+ *
+ * METHODS:
+ * - tokenize (Reader, IdentifierPool): Reads and tokenizes Jack code.
+ * - tokenize (char[], int, IdentifierPool): Tokenizes Jack code that is already in memory.
+ * - edit (int, int, String): The tokens of the code after an edit, scanning only the code around the edit.
+ * - size: The number of tokens.
+ * - getType/getKeyword/getSymbol/getIntValue/getIdentifier/getStart/getLength/getLine/getText (int): The parts of a
+ *   token.
+ * - getSource/getSourceLength/getIdentifierPool/getError: Accessors.
+ *
+ * Author: Matt Sheehan
+ */
+class TokenArray {
+
+    private static final int INTS_PER_TOKEN = 3;
+    private static final int TYPE_BITS = 3;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+    private static final int READ_SIZE = 8192;
+    private static final TokenType [] TYPES = TokenType.values();
+    private static final Keyword [] KEYWORDS = Keyword.values();
+
+    private final CharGapBuffer source;
+    private final IntGapBuffer tokens;
+    private final IntGapBuffer lineStarts;
+    private final int length;
+    private final int size;
+    private final IdentifierPool identifierPool;
+    private final String error;
+    private TokenArray base = null;
+    private Change change = null;
+
+    /**
+     * A change to the gap buffers: characters, tokens and line starts, each replaced by others.
+     * @param offset The index in the source of the first character replaced.
+     * @param removedLength The number of characters replaced.
+     * @param text The characters put in their place.
+     * @param tokenIndex The index of the first token replaced.
+     * @param removedTokens The number of tokens replaced.
+     * @param tokens The packed tokens put in their place.
+     * @param lineIndex The index of the first line start replaced.
+     * @param removedLines The number of line starts replaced.
+     * @param lineStarts The line starts put in their place.
+     */
+    private record Change(int offset, int removedLength, String text, int tokenIndex, int removedTokens, int [] tokens,
+                          int lineIndex, int removedLines, int [] lineStarts) { }
+
+    /**
+     * Full constructor, for the TokenArray the gap buffers hold.
+     * @param source The Jack code of the file.
+     * @param tokens The packed tokens.
+     * @param lineStarts The index in the source of the first character of every line.
+     * @param identifierPool The pool the identifiers were interned in.
+     * @param error Why the code after the last token could not be tokenized (null if it all was).
+     */
+    private TokenArray(CharGapBuffer source, IntGapBuffer tokens, IntGapBuffer lineStarts,
+                       IdentifierPool identifierPool, String error) {
+        this.source = source;
+        this.tokens = tokens;
+        this.lineStarts = lineStarts;
+        this.length = source.length();
+        this.size = tokens.size();
+        this.identifierPool = identifierPool;
+        this.error = error;
+    }
+
+    /**
+     * Reads all of the Jack code from a Reader (closing it), and breaks it into tokens.
+     * @param input The source of the Jack code.
+     * @param identifierPool The pool the identifiers are interned in.
+     * @return The tokens.
+     * @throws IllegalArgumentException If the Jack code has a character, comment or constant that isn't valid.
+     * @throws UncheckedIOException If the Jack code could not be read.
+     */
+    static TokenArray tokenize(Reader input, IdentifierPool identifierPool) {
+        char [] source = new char[READ_SIZE];
+        int length = 0;
+        try (input) {
+            int read;
+            while ((read = input.read(source, length, source.length - length)) != -1) {
+                length += read;
+                if (length == source.length) {
+                    source = Arrays.copyOf(source, 2 * source.length);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return tokenize(source, length, identifierPool);
+    }
+
+    /**
+     * Breaks Jack code that is already in memory into tokens.
+     * @param source The Jack code (kept by the TokenArray, unless it is copied into bytes or trimmed, so it must not
+     *               be used afterwards: edits change it).
+     * @param length The number of characters of Jack code in the array.
+     * @param identifierPool The pool the identifiers are interned in.
+     * @return The tokens.
+     * @throws IllegalArgumentException If the Jack code has a character, comment or constant that isn't valid.
+     */
+    static TokenArray tokenize(char [] source, int length, IdentifierPool identifierPool) {
+        JackTokenizer jackTokenizer = new JackTokenizer(source, length);
+        int [] tokens = new int[INTS_PER_TOKEN * (length / 5 + 1)]; // Room for a token per 5 chars.
+        int next = 0;
+        while (jackTokenizer.hasMoreTokens()) {
+            jackTokenizer.advance();
+            tokens = ensureCapacity(tokens, next + INTS_PER_TOKEN);
+            next = pack(jackTokenizer, 0, identifierPool, tokens, next);
+        }
+        return new TokenArray(new CharGapBuffer(source, length),
+                              new IntGapBuffer(Arrays.copyOf(tokens, next), INTS_PER_TOKEN, 1, length),
+                              new IntGapBuffer(findLineStarts(source, length), 1, 0, length), identifierPool, null);
+    }
+
+    /**
+     * Breaks the Jack code into tokens again after an edit, scanning only from the last token that begins before the
+     * edit until the tokens are the same as before it (see the class comment). This TokenArray doesn't change, so it
+     * can still be used (e.g. to undo the edit).
+     * @param offset The index in the source of the first character removed (or of where the text is inserted).
+     * @param removedLength The number of characters removed.
+     * @param insertedText The text inserted in their place.
+     * @return The tokens of the code after the edit, with the reason if some of it could not be tokenized.
+     * @throws IndexOutOfBoundsException If the characters removed aren't all in the source.
+     */
+    TokenArray edit(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0 || offset > length - removedLength) {
+            throw new IndexOutOfBoundsException("edit of " + removedLength + " characters at " + offset + " of "
+                                                + length);
+        }
+        reroot();
+        int insertedLength = insertedText.length();
+        int removedEnd = offset + removedLength;
+        int shift = insertedLength - removedLength;
+
+        // The tokens before the last one that begins before the edit are kept; the scan restarts at that one.
+        int restartToken = lastTokenBefore(offset);
+        int kept = Math.max(restartToken, 0);
+        int restart = (restartToken < 0) ? 0 : getBegin(restartToken);
+        JackTokenizer jackTokenizer = new JackTokenizer(new EditedSource(restart, offset, removedEnd, insertedText),
+                                                        (restartToken < 0) ? 1 : getLine(restartToken));
+        int [] newTokens = new int[INTS_PER_TOKEN * (insertedLength / 5 + 4)];
+        int next = 0;
+        int old = kept;
+        int replacedEnd = size;
+        String newError = null;
+        try {
+            while (jackTokenizer.hasMoreTokens()) {
+                jackTokenizer.advance();
+                int begin = restart + jackTokenizer.getTokenOffset();
+                if (jackTokenizer.tokenType() == TokenType.STRING_CONSTANT) {
+                    --begin;
+                }
+                while (old < size && getBegin(old) + shift < begin) {
+                    ++old;
+                }
+                if (error == null && old < size && getBegin(old) >= removedEnd && getBegin(old) + shift == begin) {
+                    replacedEnd = old; // In step again: the rest of the tokens only move.
+                    break;
+                }
+                newTokens = ensureCapacity(newTokens, next + INTS_PER_TOKEN);
+                next = pack(jackTokenizer, restart, identifierPool, newTokens, next);
+            }
+        } catch (IllegalArgumentException e) {
+            newError = e.getMessage();
+        }
+
+        // The line starts in the removed characters are replaced by those in the inserted text.
+        int keptLines = lastLineStartAtOrBefore(offset) + 1;
+        int firstMovedLine = lastLineStartAtOrBefore(removedEnd) + 1;
+        int [] newLineStarts = new int[insertedLength];
+        int lines = 0;
+        for (int i = 0; i < insertedLength; i++) {
+            if (insertedText.charAt(i) == '\n') {
+                newLineStarts[lines++] = offset + i + 1;
+            }
+        }
+
+        Change undo = apply(new Change(offset, removedLength, insertedText, kept, replacedEnd - kept,
+                                       Arrays.copyOf(newTokens, next), keptLines, firstMovedLine - keptLines,
+                                       Arrays.copyOf(newLineStarts, lines)));
+        TokenArray edited = new TokenArray(source, tokens, lineStarts, identifierPool, newError);
+        base = edited;
+        change = undo;
+        return edited;
+    }
+
+    /**
+     * Accessor for the size.
+     * @return The number of tokens.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the type of a token.
+     * @param index The index of the token (0 to size - 1).
+     * @return The token's type.
+     */
+    TokenType getType(int index) {
+        return TYPES[tokens.get(checkIndex(index), 0) & TYPE_MASK];
+    }
+
+    /**
+     * Returns the keyword of a token.
+     * @param index The index of the token.
+     * @return The keyword, if the token is a keyword (null otherwise).
+     */
+    Keyword getKeyword(int index) {
+        return (getType(index) == TokenType.KEYWORD) ? KEYWORDS[value(index)] : null;
+    }
+
+    /**
+     * Returns the symbol of a token.
+     * @param index The index of the token.
+     * @return The symbol, if the token is a symbol (the null character otherwise).
+     */
+    char getSymbol(int index) {
+        return (getType(index) == TokenType.SYMBOL) ? (char) value(index) : '\0';
+    }
+
+    /**
+     * Returns the value of a token.
+     * @param index The index of the token.
+     * @return The value (0 to 32767), if the token is an integer constant (0 otherwise).
+     */
+    int getIntValue(int index) {
+        return (getType(index) == TokenType.INTEGER_CONSTANT) ? value(index) : 0;
+    }
+
+    /**
+     * Returns the id of a token's name (see IdentifierPool.getName).
+     * @param index The index of the token.
+     * @return The id, if the token is an identifier (-1 otherwise).
+     */
+    int getIdentifier(int index) {
+        return (getType(index) == TokenType.IDENTIFIER) ? value(index) : -1;
+    }
+
+    /**
+     * Returns the start of a token.
+     * @param index The index of the token.
+     * @return The index of the token's first character in the source.
+     */
+    int getStart(int index) {
+        return tokens.get(checkIndex(index), 1);
+    }
+
+    /**
+     * Returns the length of a token.
+     * @param index The index of the token.
+     * @return The number of characters in the token (not including the quotes of a string constant).
+     */
+    int getLength(int index) {
+        return tokens.get(checkIndex(index), 2);
+    }
+
+    /**
+     * Returns the line of a token.
+     * @param index The index of the token.
+     * @return The number of the line the token is on (starting at 1).
+     */
+    int getLine(int index) {
+        return lastLineStartAtOrBefore(getStart(index)) + 1;
+    }
+
+    /**
+     * Returns the text of a token (a new String only for constants; the others are shared).
+     * @param index The index of the token.
+     * @return The token as written in the Jack code (string constants without their quotes).
+     */
+    String getText(int index) {
+        return switch (getType(index)) {
+            case KEYWORD -> getKeyword(index).getText();
+            case SYMBOL -> String.valueOf(getSymbol(index));
+            case IDENTIFIER -> identifierPool.getName(getIdentifier(index));
+            case INTEGER_CONSTANT, STRING_CONSTANT -> source.substring(getStart(index),
+                                                                       getStart(index) + getLength(index));
+        };
+    }
+
+    /**
+     * Returns the source.
+     * @return The Jack code the tokens are in (a new String).
+     */
+    String getSource() {
+        reroot();
+        return source.toString();
+    }
+
+    /**
+     * Accessor for the length of the source.
+     * @return The number of characters of Jack code in the source.
+     */
+    int getSourceLength() {
+        return length;
+    }
+
+    /**
+     * Accessor for the identifier pool.
+     * @return The pool the identifiers were interned in.
+     */
+    IdentifierPool getIdentifierPool() {
+        return identifierPool;
+    }
+
+    /**
+     * Accessor for the error.
+     * @return Why the code after the last token could not be tokenized (null if it all was, which it always is unless
+     * the TokenArray was made by edit).
+     */
+    String getError() {
+        return error;
+    }
+
+    /**
+     * Packs the current token of a JackTokenizer into the tokens (see the class comment).
+     * @param jackTokenizer The tokenizer.
+     * @param offset The index in the source of the first character the tokenizer scanned.
+     * @param identifierPool The pool the identifiers are interned in.
+     * @param tokens The packed tokens, with room for one more.
+     * @param next The index of the first int after the last token.
+     * @return The index of the first int after the new token.
+     */
+    private static int pack(JackTokenizer jackTokenizer, int offset, IdentifierPool identifierPool, int [] tokens,
+                            int next) {
+        char [] buffer = jackTokenizer.getBuffer();
+        int start = jackTokenizer.getTokenStart();
+        int tokenLength = jackTokenizer.getTokenLength();
+        TokenType type = jackTokenizer.tokenType();
+        int value = switch (type) {
+            case KEYWORD -> jackTokenizer.keyWord().ordinal();
+            case SYMBOL -> buffer[start];
+            case INTEGER_CONSTANT -> jackTokenizer.intVal();
+            case IDENTIFIER -> identifierPool.intern(buffer, start, tokenLength);
+            case STRING_CONSTANT -> 0;
+        };
+        tokens[next] = (value << TYPE_BITS) | type.ordinal();
+        tokens[next + 1] = offset + jackTokenizer.getTokenOffset();
+        tokens[next + 2] = tokenLength;
+        return next + INTS_PER_TOKEN;
+    }
+
+    /**
+     * Makes sure an array of ints (packed tokens or line starts) has room for more, doubling it if it doesn't.
+     * @param array The ints.
+     * @param needed The number of ints needed.
+     * @return The array, or a copy with room for the ints needed.
+     */
+    private static int [] ensureCapacity(int [] array, int needed) {
+        return (needed <= array.length) ? array : Arrays.copyOf(array, Math.max(needed, 2 * array.length));
+    }
+
+    /**
+     * Finds where every line of Jack code starts.
+     * @param source The Jack code.
+     * @param length The number of characters of Jack code in the array.
+     * @return The index of the first character of every line (0 for the first line, and one after every new line).
+     */
+    private static int [] findLineStarts(char [] source, int length) {
+        int [] lineStarts = new int [length / 32 + 1]; // Room for a line per 32 chars.
+        int lines = 1;
+        for (int i = 0; i < length; i++) {
+            if (source[i] == '\n') {
+                lineStarts = ensureCapacity(lineStarts, lines + 1);
+                lineStarts[lines++] = i + 1;
+            }
+        }
+        return Arrays.copyOf(lineStarts, lines);
+    }
+
+    /**
+     * Replaces characters, tokens and line starts in the gap buffers.
+     * @param change The change.
+     * @return The opposite change, which puts back what was replaced.
+     */
+    private Change apply(Change change) {
+        String removedText = source.replace(change.offset(), change.removedLength(), change.text());
+        int [] removedTokens = tokens.replace(change.tokenIndex(), change.removedTokens(), change.tokens());
+        int [] removedLines = lineStarts.replace(change.lineIndex(), change.removedLines(), change.lineStarts());
+        tokens.setEnd(source.length()); // The tokens and lines after the change move with the end of the source.
+        lineStarts.setEnd(source.length());
+        return new Change(change.offset(), change.text().length(), removedText, change.tokenIndex(),
+                          change.tokens().length / INTS_PER_TOKEN, removedTokens, change.lineIndex(),
+                          change.lineStarts().length, removedLines);
+    }
+
+    /**
+     * Makes this TokenArray the one the gap buffers hold, by applying the changes on the way to it from the one they
+     * hold (each TokenArray on the way then keeps the opposite change, from its new neighbour closer to this one).
+     */
+    private void reroot() {
+        if (base == null) {
+            return;
+        }
+        List <TokenArray> path = new ArrayList <> ();
+        for (TokenArray version = this; version.base != null; version = version.base) {
+            path.add(version);
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+            TokenArray version = path.get(i);
+            TokenArray root = version.base;
+            root.change = apply(version.change);
+            root.base = version;
+            version.base = null;
+            version.change = null;
+        }
+    }
+
+    /**
+     * Finds the line a character is on, by binary search of the line starts.
+     * @param position The index in the source of the character.
+     * @return The index of the line (0 for the first line).
+     */
+    private int lastLineStartAtOrBefore(int position) {
+        int low = 0;
+        int high = lineStarts.size() - 1;
+        while (low < high) { // The line start at low is at or before the position throughout, as the first is 0.
+            int middle = (low + high + 1) >>> 1;
+            if (lineStarts.get(middle, 0) <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds where a token begins (its opening quote, for a string constant).
+     * @param index The index of the token.
+     * @return The index in the source of the token's first character.
+     */
+    private int getBegin(int index) {
+        int start = tokens.get(index, 1);
+        return ((tokens.get(index, 0) & TYPE_MASK) == TokenType.STRING_CONSTANT.ordinal()) ? start - 1 : start;
+    }
+
+    /**
+     * Finds the last token that begins before a character, by binary search.
+     * @param offset The index in the source of the character.
+     * @return The index of the token (-1 if no token begins before the character).
+     */
+    private int lastTokenBefore(int offset) {
+        int low = 0;
+        int high = size - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getBegin(middle) < offset) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the value packed with a token's type.
+     * @param index The index of the token.
+     * @return The value (see the class comment).
+     */
+    private int value(int index) {
+        return tokens.get(index, 0) >>> TYPE_BITS;
+    }
+
+    /**
+     * Checks that a token exists, and makes this TokenArray the one the gap buffers hold.
+     * @param index The index of the token.
+     * @return The index.
+     * @throws IndexOutOfBoundsException If there is no such token.
+     */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("token " + index + " of " + size);
+        }
+        reroot();
+        return index;
+    }
+
+    /**
+     * The Jack code after an edit, read from a token before the edit on without changing the source: the source up to
+     * the edit, the inserted text, and the source after the removed characters.
+     */
+    private class EditedSource extends Reader {
+
+        private final int offset;
+        private final int removedEnd;
+        private final String insertedText;
+        private final int editedLength;
+        private int position;
+
+        /**
+         * Full constructor.
+         * @param start The index in the edited code of the first character to be read.
+         * @param offset The index in the source of the first character removed (or of where the text is inserted).
+         * @param removedEnd The index in the source after the last character removed.
+         * @param insertedText The text inserted in their place.
+         */
+        EditedSource(int start, int offset, int removedEnd, String insertedText) {
+            this.offset = offset;
+            this.removedEnd = removedEnd;
+            this.insertedText = insertedText;
+            this.editedLength = length + insertedText.length() - (removedEnd - offset);
+            this.position = start;
+        }
+
+        @Override
+        public int read(char [] buffer, int bufferOffset, int count) {
+            if (position == editedLength) {
+                return -1;
+            }
+            int insertedEnd = offset + insertedText.length();
+            int read;
+            if (position < offset) {
+                read = Math.min(count, offset - position);
+                source.getChars(position, position + read, buffer, bufferOffset);
+            } else if (position < insertedEnd) {
+                read = Math.min(count, insertedEnd - position);
+                insertedText.getChars(position - offset, position - offset + read, buffer, bufferOffset);
+            } else {
+                read = Math.min(count, editedLength - position);
+                int from = position - insertedEnd + removedEnd;
+                source.getChars(from, from + read, buffer, bufferOffset);
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -0,0 +1,38 @@
+package edu.miracosta.cs220;
+
+/**
+ * TokenFormat.java - The kinds of file the tokens of Jack code can be written into (see TokenWriter).
+ *
+ * - XML: One element per token, e.g. <symbol> ; </symbol>, inside a <tokens> element.
+ * - BINARY: One record per token (a type byte, the length of its text as a varint, and the text in UTF-8), to be read
+ *   back without parsing by a BinaryTokenReader.
+ *
+ * INSTANCE VARIABLES:
+ * - extension (String): The extension of the files written in the format.
+ *
+ * METHODS:
+ * - Accessor methods for all instance variables.
+ *
+ * Author: Matt Sheehan
+ */
+enum TokenFormat {
+    XML(".xml"), BINARY(".tok");
+
+    private final String extension;
+
+    /**
+     * Full constructor.
+     * @param extension The extension of the files written in the format.
+     */
+    TokenFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Accessor for the extension.
+     * @return The extension of the files written in the format (e.g. ".xml").
+     */
+    String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,41 @@
+package edu.miracosta.cs220;
+
+/**
+ * TokenType.java - The five kinds of token in the Jack language.
+ *
+ * - KEYWORD: One of the 21 reserved words (see Keyword).
+ * - SYMBOL: One of the 19 symbols { } ( ) [ ] . , ; + - * / & | < > = ~
+ * - INTEGER_CONSTANT: A decimal number from 0 to 32767.
+ * - STRING_CONSTANT: A sequence of characters between double quotes (not including the quotes or a new line).
+ * - IDENTIFIER: A sequence of letters, digits and underscores that doesn't start with a digit.
+ *
+ * INSTANCE VARIABLES:
+ * - tag (String): The name of the token's element in the .xml file.
+ *
+ * METHODS:
+ * - Accessor methods for all instance variables.
+ *
+ * Author: Matt Sheehan
+ */
+enum TokenType {
+    KEYWORD("keyword"), SYMBOL("symbol"), INTEGER_CONSTANT("integerConstant"), STRING_CONSTANT("stringConstant"),
+    IDENTIFIER("identifier");
+
+    private final String tag;
+
+    /**
+     * Full constructor.
+     * @param tag The name of the token's element in the .xml file.
+     */
+    TokenType(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Accessor for the tag.
+     * @return The name of the token's element in the .xml file (e.g. "integerConstant").
+     */
+    String getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,344 @@
+package edu.miracosta.cs220;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TokenWriter.java - Writes tokens to a file (or any channel) as XML, or as a compact binary stream.
+ *
+ * Algorithm:
+ *
+ * 1. Every token is encoded straight into one large byte buffer, which is reused for the whole file and handed to the
+ * channel (e.g. a FileChannel) whenever it is nearly full, and once more when the writer is closed. No Strings are
+ * made.
+ *
+ * 2. XML: the bytes of the open tag ("<keyword> ") and close tag (" </keyword>" and the line separator) of each token
+ * type, and the bytes of each keyword, are computed once. The characters of the other tokens are looked up in an
+ * escape table: <, >, & and " become the entities &lt; &gt; &amp; &quot; (the other ASCII characters are copied as
+ * they are, and any other character is encoded in UTF-8).
+ *
+ * 3. BINARY: each token is written as its type (one byte: the TokenType's ordinal), the number of bytes of its text
+ * (as an unsigned varint: 7 bits per byte, low bits first, the high bit set on all but the last byte), and its text
+ * in UTF-8 (string constants without their quotes). There is no header and no separator, so the file can be mapped
+ * into memory and read back by a BinaryTokenReader without any parsing.
+ *
+ * INSTANCE VARIABLES:
+ * - ENTITIES (byte[][]): The escaped bytes of each ASCII character that needs escaping in XML (null for the others).
+ * - OPEN_TAGS/CLOSE_TAGS (byte[][]): The bytes of the open and close tag of each token type.
+ * - KEYWORDS (byte[][]): The bytes of each keyword.
+ * - channel (WritableByteChannel): Where the bytes are written.
+ * - format (TokenFormat): The format of the tokens.
+ * - buffer (byte[]): The bytes not yet written to the channel, of which the first count are used.
+ * - tokens (long): The number of tokens written.
+ *
+ * METHODS:
+ * - open (Path, TokenFormat): Opens a TokenWriter on a new file.
+ * - writeTokens (JackTokenizer): Writes every remaining token of a tokenizer (as a whole XML document, for XML).
+ * - writeToken (TokenType, Keyword, char[], int, int): Writes one token.
+ * - flush: Writes the buffer to the channel.
+ * - close: Flushes the buffer and closes the channel.
+ * - Accessor methods for tokens and format.
+ *
+ * Author: Matt Sheehan
+ */
+class TokenWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_CHAR_BYTES = 6; // "&quot;" is the longest encoding of one character.
+    private static final int MAX_VARINT_BYTES = 5;
+    private static final byte [] START_DOCUMENT = ("<tokens>" + System.lineSeparator())
+                                                  .getBytes(StandardCharsets.US_ASCII);
+    private static final byte [] END_DOCUMENT = ("</tokens>" + System.lineSeparator())
+                                                .getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte [][] ENTITIES = new byte[128][];
+    private static final byte [][] OPEN_TAGS = new byte[TokenType.values().length][];
+    private static final byte [][] CLOSE_TAGS = new byte[TokenType.values().length][];
+    private static final byte [][] KEYWORDS = new byte[Keyword.values().length][];
+
+    static {
+        ENTITIES['<'] = "&lt;".getBytes(StandardCharsets.US_ASCII);
+        ENTITIES['>'] = "&gt;".getBytes(StandardCharsets.US_ASCII);
+        ENTITIES['&'] = "&amp;".getBytes(StandardCharsets.US_ASCII);
+        ENTITIES['"'] = "&quot;".getBytes(StandardCharsets.US_ASCII);
+        for (TokenType type : TokenType.values()) {
+            OPEN_TAGS[type.ordinal()] = ("<" + type.getTag() + "> ").getBytes(StandardCharsets.US_ASCII);
+            CLOSE_TAGS[type.ordinal()] = (" </" + type.getTag() + ">" + System.lineSeparator())
+                                         .getBytes(StandardCharsets.US_ASCII);
+        }
+        for (Keyword keyword : Keyword.values()) {
+            KEYWORDS[keyword.ordinal()] = keyword.getText().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final TokenFormat format;
+    private final byte [] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int count = 0;
+    private long tokens = 0;
+
+    /**
+     * Full constructor.
+     * @param channel Where the tokens are written (closed by close).
+     * @param format The format of the tokens.
+     */
+    TokenWriter(WritableByteChannel channel, TokenFormat format) {
+        this.channel = channel;
+        this.format = format;
+    }
+
+    /**
+     * Opens a TokenWriter on a file (replacing the file if it exists).
+     * @param file The file.
+     * @param format The format of the tokens.
+     * @return The TokenWriter.
+     * @throws IOException If the file could not be opened.
+     */
+    static TokenWriter open(Path file, TokenFormat format) throws IOException {
+        return new TokenWriter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING), format);
+    }
+
+    /**
+     * Writes every remaining token of a tokenizer as it is scanned. For XML, the tokens are written inside a
+     * <tokens> element.
+     * @param jackTokenizer The tokenizer.
+     * @return The number of tokens written.
+     * @throws IllegalArgumentException If the Jack code has a character, comment or constant that isn't valid.
+     * @throws UncheckedIOException If the Jack code could not be read, or the tokens could not be written.
+     */
+    long writeTokens(JackTokenizer jackTokenizer) {
+        long written = 0;
+        if (format == TokenFormat.XML) {
+            writeBytes(START_DOCUMENT);
+        }
+        while (jackTokenizer.hasMoreTokens()) {
+            jackTokenizer.advance();
+            writeToken(jackTokenizer.tokenType(), jackTokenizer.keyWord(), jackTokenizer.getBuffer(),
+                       jackTokenizer.getTokenStart(), jackTokenizer.getTokenLength());
+            ++written;
+        }
+        if (format == TokenFormat.XML) {
+            writeBytes(END_DOCUMENT);
+        }
+        return written;
+    }
+
+    /**
+     * Writes one token.
+     * @param type The type of the token.
+     * @param keyword The keyword, if the token is a keyword (its text is then not used).
+     * @param text The characters holding the token's text.
+     * @param start The index of the token's first character.
+     * @param length The number of characters in the token (string constants without their quotes).
+     * @throws UncheckedIOException If the tokens could not be written.
+     */
+    void writeToken(TokenType type, Keyword keyword, char [] text, int start, int length) {
+        ++tokens;
+        if (format == TokenFormat.XML) {
+            writeBytes(OPEN_TAGS[type.ordinal()]);
+            if (type == TokenType.KEYWORD) {
+                writeBytes(KEYWORDS[keyword.ordinal()]);
+            } else {
+                writeEscaped(text, start, length);
+            }
+            writeBytes(CLOSE_TAGS[type.ordinal()]);
+        } else {
+            reserve(1 + MAX_VARINT_BYTES);
+            buffer[count++] = (byte) type.ordinal();
+            if (type == TokenType.KEYWORD) {
+                byte [] bytes = KEYWORDS[keyword.ordinal()];
+                buffer[count++] = (byte) bytes.length;
+                writeBytes(bytes);
+            } else {
+                int utf8Length = utf8Length(text, start, length);
+                while (utf8Length >= 0x80) {
+                    buffer[count++] = (byte) (utf8Length | 0x80);
+                    utf8Length >>>= 7;
+                }
+                buffer[count++] = (byte) utf8Length;
+                writeUTF8(text, start, length);
+            }
+        }
+    }
+
+    /**
+     * Accessor for the number of tokens.
+     * @return The number of tokens written.
+     */
+    long getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Accessor for the format.
+     * @return The format of the tokens.
+     */
+    TokenFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Writes the bytes in the buffer to the channel, and empties the buffer.
+     * @throws UncheckedIOException If the bytes could not be written.
+     */
+    void flush() {
+        byteBuffer.clear().limit(count);
+        try {
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+
+    /**
+     * Writes the bytes in the buffer to the channel, and closes the channel.
+     * @throws UncheckedIOException If the bytes could not be written, or the channel could not be closed.
+     */
+    void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Makes room in the buffer, flushing it if it doesn't have the room.
+     * @param length The number of bytes to make room for (at most the size of the buffer).
+     */
+    private void reserve(int length) {
+        if (count + length > buffer.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds bytes to the buffer.
+     * @param bytes The bytes.
+     */
+    private void writeBytes(byte [] bytes) {
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    /**
+     * Adds characters to the buffer, escaped for XML and encoded in UTF-8.
+     * @param text The characters.
+     * @param start The index of the first character.
+     * @param length The number of characters.
+     */
+    private void writeEscaped(char [] text, int start, int length) {
+        byte [] buffer = this.buffer;
+        int end = start + length;
+        int limit = buffer.length - MAX_CHAR_BYTES;
+        for (int i = start; i < end; i++) {
+            if (count > limit) {
+                flush();
+            }
+            char c = text[i];
+            if (c >= 0x80) {
+                i = encodeUTF8(text, i, end);
+            } else if (ENTITIES[c] == null) {
+                buffer[count++] = (byte) c;
+            } else {
+                byte [] entity = ENTITIES[c];
+                System.arraycopy(entity, 0, buffer, count, entity.length);
+                count += entity.length;
+            }
+        }
+    }
+
+    /**
+     * Adds characters to the buffer, encoded in UTF-8.
+     * @param text The characters.
+     * @param start The index of the first character.
+     * @param length The number of characters.
+     */
+    private void writeUTF8(char [] text, int start, int length) {
+        byte [] buffer = this.buffer;
+        int end = start + length;
+        int limit = buffer.length - MAX_CHAR_BYTES;
+        for (int i = start; i < end; i++) {
+            if (count > limit) {
+                flush();
+            }
+            char c = text[i];
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else {
+                i = encodeUTF8(text, i, end);
+            }
+        }
+    }
+
+    /**
+     * Adds one character that isn't ASCII to the buffer, encoded in UTF-8 (a character outside the Basic Multilingual
+     * Plane is a surrogate pair, encoded together; a surrogate that isn't part of a pair becomes '?').
+     * @param text The characters.
+     * @param i The index of the character.
+     * @param end The index after the last character that may be read.
+     * @return The index of the last character encoded (i, or i + 1 for a surrogate pair).
+     */
+    private int encodeUTF8(char [] text, int i, int end) {
+        char c = text[i];
+        if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (!Character.isSurrogate(c)) {
+            buffer[count++] = (byte) (0xE0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text[i + 1])) {
+            int codePoint = Character.toCodePoint(c, text[++i]);
+            buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            buffer[count++] = '?';
+        }
+        return i;
+    }
+
+    /**
+     * Counts the bytes of characters encoded in UTF-8 (as encodeUTF8 encodes them).
+     * @param text The characters.
+     * @param start The index of the first character.
+     * @param length The number of characters.
+     * @return The number of bytes.
+     */
+    private static int utf8Length(char [] text, int start, int length) {
+        int bytes = length;
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            char c = text[i];
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text[i + 1])) {
+                    bytes += 2; // 4 bytes for the 2 characters of the pair.
+                    ++i;
+                }
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,116 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * DirectoryTokenizerTest.java - Checks that only the extension of a .jack file changes in the name of its output file
+ * (not a "jack" in its directories or the rest of its name), that directories are searched in sorted order, and that
+ * a file that fails has its partly written output file removed while the other files are still tokenized.
+ *
+ * Author: Matt Sheehan
+ */
+class DirectoryTokenizerTest {
+
+    private static final String MAIN = "class Main {\n    function void main() {\n        do Output.printInt(1);\n"
+                                       + "        return;\n    }\n}\n";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private Path project;
+    private Path main;
+    private Path broken;
+    private Path square;
+
+    @BeforeEach
+    void writeProject() throws IOException {
+        project = Files.createDirectories(temporaryDirectory.resolve("jackproj"));
+        Files.createDirectories(project.resolve("sub"));
+        Files.createDirectories(project.resolve("lib.jack")); // A directory, not a .jack file.
+        main = Files.writeString(project.resolve("Main.jack"), MAIN);
+        // Far more tokens than the TokenWriter's buffer holds before the error, so some of them reach the file.
+        broken = Files.writeString(project.resolve("sub/Broken.jack"), "do f();\n".repeat(20000) + "let x = #;\n");
+        square = Files.writeString(project.resolve("sub/Square.jack"), "class Square { field int size; }\n");
+        Files.writeString(project.resolve("Notes.jack.txt"), "Not Jack code.\n");
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "jackproj/Main.jack,     jackproj/Main.xml,     jackproj/Main.tok",
+                 "jackproj/jack.jack,     jackproj/jack.xml,     jackproj/jack.tok",
+                 "a.jack/Main.jack.jack,  a.jack/Main.jack.xml,  a.jack/Main.jack.tok",
+                 "jackproj/Main,          jackproj/Main.xml,     jackproj/Main.tok" })
+    void onlyTheExtensionOfTheFileChanges(String jackFile, String xmlFile, String tokenFile) {
+        assertEquals(Path.of(xmlFile), DirectoryTokenizer.outputFileName(Path.of(jackFile), TokenFormat.XML));
+        assertEquals(Path.of(tokenFile), DirectoryTokenizer.outputFileName(Path.of(jackFile), TokenFormat.BINARY));
+    }
+
+    @Test
+    void directoriesAreSearchedInSortedOrder() throws IOException {
+        assertEquals(List.of(main, broken, square), DirectoryTokenizer.findJackFiles(project));
+    }
+
+    @Test
+    void failedFilesLeaveNoOutputAndTheOthersAreTokenized() throws IOException {
+        assertFalse(DirectoryTokenizer.tokenize(project, TokenFormat.XML, 2));
+        assertFalse(Files.exists(project.resolve("sub/Broken.xml")));
+        assertEquals(expectedXml(MAIN), Files.readString(project.resolve("Main.xml"), StandardCharsets.UTF_8));
+        assertTrue(Files.readString(project.resolve("sub/Square.xml")).contains("<identifier> size </identifier>"));
+
+        Files.writeString(broken, "do f();\n".repeat(20000)); // Fixed, the directory is tokenized.
+        assertTrue(DirectoryTokenizer.tokenize(project, TokenFormat.BINARY, 2));
+        BinaryTokenReader tokenReader = BinaryTokenReader.open(project.resolve("sub/Broken.tok"));
+        int tokens = 0;
+        while (tokenReader.hasMoreTokens()) {
+            tokenReader.advance();
+            ++tokens;
+        }
+        assertEquals(5 * 20000, tokens);
+    }
+
+    @Test
+    void aFailedFileReplacesNoOutput() throws IOException {
+        Path brokenXml = Files.writeString(project.resolve("sub/Broken.xml"), "An old translation.\n");
+        assertEquals("Line 20001: '#' is not a valid character",
+                     assertThrows(IllegalArgumentException.class,
+                                  () -> DirectoryTokenizer.tokenizeFile(broken, TokenFormat.XML)).getMessage());
+        assertFalse(Files.exists(brokenXml));
+        assertThrows(IOException.class,
+                     () -> DirectoryTokenizer.tokenizeFile(project.resolve("Missing.jack"), TokenFormat.XML));
+        assertFalse(Files.exists(project.resolve("Missing.xml")));
+    }
+
+    @Test
+    void directoriesWithoutJackFilesFail() throws IOException {
+        assertFalse(DirectoryTokenizer.tokenize(Files.createDirectories(temporaryDirectory.resolve("empty")),
+                                                TokenFormat.XML, 1));
+        assertFalse(DirectoryTokenizer.tokenize(temporaryDirectory.resolve("missing"), TokenFormat.XML, 1));
+    }
+
+    /**
+     * Translates the Jack code into the XML expected in its .xml file.
+     * @param jackCode The Jack code.
+     * @return The XML document, with a line per token.
+     */
+    private static String expectedXml(String jackCode) {
+        StringBuilder xml = new StringBuilder("<tokens>").append(System.lineSeparator());
+        new JackTokenizer(jackCode.toCharArray(), jackCode.length()).spliterator().forEachRemaining(token -> {
+            xml.append('<').append(token.type().getTag()).append("> ").append(token.text()).append(" </")
+               .append(token.type().getTag()).append('>').append(System.lineSeparator());
+        });
+        return xml.append("</tokens>").append(System.lineSeparator()).toString();
+    }
+}
@@ -0,0 +1,196 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * JackTokenizerTest.java - Checks the tokens of small pieces of Jack code against the tokens expected (words that
+ * start with a keyword, comments over several lines, the largest integer constant, and the errors with their lines),
+ * and that the tokens don't depend on how the Jack code is read: a Reader that hands over a few characters at a time
+ * (splitting tokens, comments and line ends between reads) and a line longer than the buffer (which makes the buffer
+ * grow) give the same XML as reading the code at once. Files named by the constructor are read as UTF-8.
+ *
+ * Author: Matt Sheehan
+ */
+class JackTokenizerTest {
+
+    // A line of about 40K characters, several times the 8K the tokenizer's buffer starts with.
+    private static final String LONG_LINE = "let " + "n".repeat(20000) + " = \"" + "s".repeat(20000) + "\";\n";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void wordsAreOnlyKeywordsAsAWhole() {
+        assertTokens("class classify double do doubled _if if_ if0 return; thisThat",
+                     "keyword class 1", "identifier classify 1", "identifier double 1", "keyword do 1",
+                     "identifier doubled 1", "identifier _if 1", "identifier if_ 1", "identifier if0 1",
+                     "keyword return 1", "symbol ; 1", "identifier thisThat 1");
+    }
+
+    @Test
+    void commentsAreSkippedOverAsManyLinesAsTheyTake() {
+        assertTokens("let x = a / b; // a line comment / * \"\n"
+                     + "/* a block\n comment // with \" */ do /** a documentation\n * comment\n */ f(x/*\n*/);\n"
+                     + "/**/ y/***/z // the end",
+                     "keyword let 1", "identifier x 1", "symbol = 1", "identifier a 1", "symbol / 1",
+                     "identifier b 1", "symbol ; 1", "keyword do 3", "identifier f 5", "symbol ( 5",
+                     "identifier x 5", "symbol ) 6", "symbol ; 6", "identifier y 7", "identifier z 7");
+    }
+
+    @Test
+    void constantsAreReadWithoutTheirQuotesOrLeadingZeros() {
+        assertTokens("32767 0 007 \"\" \"a // b /* c\" \"é €\" x-1",
+                     "integerConstant 32767 1", "integerConstant 0 1", "integerConstant 007 1",
+                     "stringConstant  1", "stringConstant a // b /* c 1", "stringConstant é € 1",
+                     "identifier x 1", "symbol - 1", "integerConstant 1 1");
+        JackTokenizer jackTokenizer = new JackTokenizer(new StringReader("007 32767"));
+        jackTokenizer.advance();
+        assertEquals(7, jackTokenizer.intVal());
+        jackTokenizer.advance();
+        assertEquals(32767, jackTokenizer.intVal());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "let x = 32768;                   | Line 1: the integer constant is more than 32767",
+        "let x = 1;\\n\\nlet y = 99999; | Line 3: the integer constant is more than 32767",
+        "let s = \"abc;\\nlet t = 1;     | Line 1: the string constant has no closing quote",
+        "do f();\\nlet s = \"abc        | Line 2: the string constant has no closing quote",
+        "do f();\\n/* never\\nclosed    | Line 2: the comment is never closed",
+        "/** doc */\\n\\n/** never    | Line 3: the comment is never closed",
+        "let x = 1;\\nlet y = x # 2;    | Line 2: '#' is not a valid character",
+        "let é = 1;                       | Line 1: 'é' is not a valid character" })
+    void errorsNameTheirLine(String jackCode, String error) {
+        String code = jackCode.strip().replace("\\n", "\n");
+        assertEquals(error, assertThrows(IllegalArgumentException.class, () -> tokens(code)).getMessage());
+        assertEquals(error, assertThrows(IllegalArgumentException.class, () -> {
+            new JackTokenizer(code.toCharArray(), code.length()).collectTokens();
+        }).getMessage());
+    }
+
+    @Test
+    void filesAreReadAsUTF8() throws IOException {
+        Path jackFile = Files.write(temporaryDirectory.resolve("Main.jack"),
+                                    "let s = \"é € 😀\";\n".getBytes(StandardCharsets.UTF_8));
+        JackTokenizer jackTokenizer = new JackTokenizer(jackFile.toString());
+        assertEquals(List.of("let", "s", "=", "é € 😀", ";"), jackTokenizer.collectTokens());
+        assertThrows(NoSuchFileException.class,
+                     () -> new JackTokenizer(temporaryDirectory.resolve("Missing.jack").toString()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = { 1, 2, 3, 4, 5, 6, 7, 8 })
+    void chunkedReadsGiveTheSameTokens(long seed) {
+        StringBuilder jackCode = new StringBuilder();
+        for (int i = 0; i < 200; i++) { // Long enough to refill the buffer many times.
+            jackCode.append(TokenArrayTest.JACK_CODE).append(" /* ").append("*".repeat(i)).append(" */\n");
+            if (i == 100) {
+                jackCode.append(LONG_LINE);
+            }
+        }
+        String expected = tokenize(new StringReader(jackCode.toString()));
+        assertEquals(expected, tokenize(new ChunkedReader(jackCode.toString(), new Random(seed))));
+    }
+
+    @Test
+    void linesLongerThanTheBufferAreReadWhole() {
+        assertTokens("do f();\n" + LONG_LINE + "return;",
+                     "keyword do 1", "identifier f 1", "symbol ( 1", "symbol ) 1", "symbol ; 1",
+                     "keyword let 2", "identifier " + "n".repeat(20000) + " 2", "symbol = 2",
+                     "stringConstant " + "s".repeat(20000) + " 2", "symbol ; 2", "keyword return 3",
+                     "symbol ; 3");
+    }
+
+    /**
+     * Checks the tokens of the Jack code, read from a Reader and from an array.
+     * @param jackCode The Jack code.
+     * @param expected Each token expected, as its tag, text and line separated by spaces.
+     */
+    private static void assertTokens(String jackCode, String ... expected) {
+        assertEquals(List.of(expected), tokens(jackCode));
+        List <String> fromArray = StreamSupport.stream(new JackTokenizer(jackCode.toCharArray(), jackCode.length())
+                                                       .spliterator(), false)
+                                               .map(token -> token.type().getTag() + " " + token.text() + " "
+                                                             + token.lineNumber())
+                                               .collect(Collectors.toList());
+        assertEquals(List.of(expected), fromArray);
+    }
+
+    /**
+     * Lists the tokens of the Jack code.
+     * @param jackCode The Jack code.
+     * @return Each token, as its tag, text and line separated by spaces.
+     */
+    private static List <String> tokens(String jackCode) {
+        return StreamSupport.stream(new JackTokenizer(new StringReader(jackCode)).spliterator(), false)
+                            .map(token -> token.type().getTag() + " " + token.text() + " " + token.lineNumber())
+                            .collect(Collectors.toList());
+    }
+
+    /**
+     * Translates the Jack code into XML through a TokenWriter.
+     * @param input The source of the Jack code.
+     * @return The XML.
+     */
+    private static String tokenize(Reader input) {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        TokenWriter tokenWriter = new TokenWriter(Channels.newChannel(xml), TokenFormat.XML);
+        tokenWriter.writeTokens(new JackTokenizer(input));
+        tokenWriter.close();
+        return xml.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A Reader that returns a random number (1 to 64) of characters per read.
+     */
+    private static class ChunkedReader extends Reader {
+
+        private final String text;
+        private final Random random;
+        private int position = 0;
+
+        /**
+         * Full constructor.
+         * @param text The characters to be read.
+         * @param random The random numbers.
+         */
+        ChunkedReader(String text, Random random) {
+            this.text = text;
+            this.random = random;
+        }
+
+        @Override
+        public int read(char [] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            int count = Math.min(Math.min(length, 1 + random.nextInt(64)), text.length() - position);
+            text.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -0,0 +1,214 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * TokenArrayTest.java - Checks that editing a TokenArray gives exactly the tokens (and error) of tokenizing the edited
+ * code from scratch, for random edits that open and close comments and string constants, break the code and fix it,
+ * and that every TokenArray edited from the same file can still be read after the others are edited.
+ *
+ * Author: Matt Sheehan
+ */
+class TokenArrayTest {
+
+    static final String JACK_CODE = """
+        /** A class for the tests. */
+        class Square {
+            field int x, y; // The position.
+            static String label;
+
+            /* Moves the square
+               by one pixel. */
+            method void move(int dx) {
+                var Array pixels;
+                let x = x + dx * 2 - (y / 3);
+                if ((x < 511) & ~(y > 0)) {
+                    do Output.printString("x is < 511 // not a comment");
+                } else {
+                    let pixels[007] = -32767;
+                }
+                while (true | false) { let label = null; }
+                return this;
+            }
+        }
+        """;
+
+    private static final String [] INSERTIONS = { "\"", "/*", "*/", "//", "\n", " ", "x", "1", "class", "\"a b\"", "/",
+                                                  "*", "let y = 3;\n", "/** doc */", "{", "9999", "99999", "?", "\r\n",
+                                                  "é", "€" };
+
+    @ParameterizedTest
+    @ValueSource(longs = { 1, 2, 3, 4, 5 })
+    void editsFromTheSameCodeMatchTokenizing(long seed) {
+        Random random = new Random(seed);
+        IdentifierPool identifierPool = new IdentifierPool();
+        TokenArray original = TokenArray.tokenize(JACK_CODE.toCharArray(), JACK_CODE.length(), identifierPool);
+        for (int i = 0; i < 2000; i++) {
+            checkRandomEdit(original, JACK_CODE, random, identifierPool);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = { 1, 2, 3, 4, 5 })
+    void editsOneAfterAnotherMatchTokenizing(long seed) {
+        Random random = new Random(seed);
+        IdentifierPool identifierPool = new IdentifierPool();
+        TokenArray tokenArray = TokenArray.tokenize(new char [0], 0, identifierPool).edit(0, 0, JACK_CODE);
+        String jackCode = JACK_CODE;
+        for (int i = 0; i < 300; i++) {
+            tokenArray = checkRandomEdit(tokenArray, jackCode, random, identifierPool);
+            jackCode = tokenArray.getSource();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = { 1, 2, 3 })
+    void everyVersionCanStillBeRead(long seed) {
+        // Edits of random earlier versions make a tree of versions sharing the same buffers, which are then read in
+        // random order (each read applies the changes on the way to it).
+        Random random = new Random(seed);
+        IdentifierPool identifierPool = new IdentifierPool();
+        List <TokenArray> versions = new ArrayList <> ();
+        List <String> sources = new ArrayList <> ();
+        versions.add(TokenArray.tokenize(JACK_CODE.toCharArray(), JACK_CODE.length(), identifierPool));
+        sources.add(JACK_CODE);
+        for (int i = 0; i < 300; i++) {
+            int from = (random.nextBoolean()) ? versions.size() - 1 : random.nextInt(versions.size());
+            TokenArray edited = checkRandomEdit(versions.get(from), sources.get(from), random, identifierPool);
+            versions.add(edited);
+            sources.add(edited.getSource());
+        }
+        for (int i = 0; i < 300; i++) {
+            int version = random.nextInt(versions.size());
+            assertEquals(sources.get(version), versions.get(version).getSource());
+            assertMatchesTokenizing(versions.get(version), identifierPool);
+        }
+    }
+
+    @Test
+    void openingAndClosingABlockCommentRetokenizesTheRest() {
+        IdentifierPool identifierPool = new IdentifierPool();
+        TokenArray original = TokenArray.tokenize(JACK_CODE.toCharArray(), JACK_CODE.length(), identifierPool);
+        int offset = JACK_CODE.indexOf("var Array");
+
+        TokenArray opened = original.edit(offset, 0, "/*");
+        assertEquals("Line 9: the comment is never closed", opened.getError());
+        assertEquals(original.getStart(tokenBefore(original, offset)), opened.getStart(opened.size() - 1));
+
+        String closedCode = JACK_CODE.substring(0, offset) + "/*" + JACK_CODE.substring(offset);
+        TokenArray closed = opened.edit(closedCode.indexOf("return"), 0, "*/");
+        assertNull(closed.getError());
+        assertMatchesTokenizing(closed, identifierPool);
+        assertEquals("return", closed.getText(tokenBefore(closed, offset) + 1));
+    }
+
+    /**
+     * Finds the last token that begins before a character.
+     * @param tokenArray The tokens.
+     * @param offset The index of the character in the source.
+     * @return The index of the token.
+     */
+    private static int tokenBefore(TokenArray tokenArray, int offset) {
+        int index = 0;
+        while (index + 1 < tokenArray.size() && tokenArray.getStart(index + 1) < offset) {
+            ++index;
+        }
+        return index;
+    }
+
+    /**
+     * Makes a random edit, and checks it against tokenizing the edited code from scratch.
+     * @param tokenArray The tokens before the edit.
+     * @param jackCode The code before the edit.
+     * @param random The random numbers.
+     * @param identifierPool The pool the identifiers are interned in.
+     * @return The tokens after the edit.
+     */
+    private static TokenArray checkRandomEdit(TokenArray tokenArray, String jackCode, Random random,
+                                              IdentifierPool identifierPool) {
+        int offset = random.nextInt(jackCode.length() + 1);
+        int removedLength = (random.nextInt(4) == 0) ? random.nextInt(Math.min(30, jackCode.length() - offset) + 1)
+                                                     : 0;
+        String insertedText = (random.nextInt(3) == 0) ? "" : INSERTIONS[random.nextInt(INSERTIONS.length)];
+        TokenArray edited = tokenArray.edit(offset, removedLength, insertedText);
+
+        String editedCode = jackCode.substring(0, offset) + insertedText + jackCode.substring(offset + removedLength);
+        assertEquals(editedCode, edited.getSource());
+        assertMatchesTokenizing(edited, identifierPool);
+        return edited;
+    }
+
+    /**
+     * Checks that a TokenArray has the tokens and error of a JackTokenizer scanning its code from the start (and, if
+     * there is no error, the same packed tokens as TokenArray.tokenize).
+     * @param tokenArray The tokens to be checked.
+     * @param identifierPool The pool the identifiers were interned in.
+     */
+    private static void assertMatchesTokenizing(TokenArray tokenArray, IdentifierPool identifierPool) {
+        char [] jackCode = tokenArray.getSource().toCharArray();
+        JackTokenizer jackTokenizer = new JackTokenizer(jackCode, jackCode.length);
+        StringBuilder expected = new StringBuilder();
+        String error = null;
+        try {
+            while (jackTokenizer.hasMoreTokens()) {
+                jackTokenizer.advance();
+                describe(expected, jackTokenizer.tokenType(), jackCode, jackTokenizer.getTokenStart(),
+                         jackTokenizer.getTokenLength(), jackTokenizer.getLineNumber());
+            }
+        } catch (IllegalArgumentException e) {
+            error = e.getMessage();
+        }
+
+        StringBuilder actual = new StringBuilder();
+        for (int i = 0; i < tokenArray.size(); i++) {
+            describe(actual, tokenArray.getType(i), jackCode, tokenArray.getStart(i), tokenArray.getLength(i),
+                     tokenArray.getLine(i));
+        }
+        assertEquals(error, tokenArray.getError());
+        assertEquals(expected.toString(), actual.toString());
+        if (error == null) {
+            assertEquals(describeValues(TokenArray.tokenize(jackCode, jackCode.length, identifierPool)),
+                         describeValues(tokenArray));
+        }
+    }
+
+    /**
+     * Describes a token.
+     * @param description The description the token is added to.
+     * @param type The token's type.
+     * @param jackCode The code the token is in.
+     * @param start The index of the token's first character.
+     * @param length The number of characters in the token.
+     * @param line The line the token is on.
+     */
+    private static void describe(StringBuilder description, TokenType type, char [] jackCode, int start, int length,
+                                 int line) {
+        description.append(type).append(' ').append(jackCode, start, length).append(" at ").append(start)
+                   .append(" line ").append(line).append('\n');
+    }
+
+    /**
+     * Describes the text and value of every token.
+     * @param tokenArray The tokens.
+     * @return One line per token.
+     */
+    private static String describeValues(TokenArray tokenArray) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < tokenArray.size(); i++) {
+            description.append(tokenArray.getText(i))
+                       .append(" keyword ").append(tokenArray.getKeyword(i))
+                       .append(" symbol ").append((int) tokenArray.getSymbol(i))
+                       .append(" value ").append(tokenArray.getIntValue(i))
+                       .append(" id ").append(tokenArray.getIdentifier(i)).append('\n');
+        }
+        return description.toString();
+    }
+}
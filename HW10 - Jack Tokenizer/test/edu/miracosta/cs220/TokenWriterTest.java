@@ -0,0 +1,158 @@
+package edu.miracosta.cs220;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * TokenWriterTest.java - Checks the XML of the TokenWriter (the special characters are written as entities, and other
+ * characters in UTF-8), and that the binary tokens are read back by a BinaryTokenReader as they were written: text
+ * that isn't ASCII, surrogate pairs, lengths that take more than one varint byte, and more tokens than the writer's
+ * buffer holds. A surrogate that isn't part of a pair is written as '?' in both formats.
+ *
+ * Author: Matt Sheehan
+ */
+class TokenWriterTest {
+
+    private static final String NEW_LINE = System.lineSeparator();
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void xmlSpecialCharactersAreWrittenAsEntities() {
+        assertEquals("<tokens>" + NEW_LINE
+                     + "<keyword> if </keyword>" + NEW_LINE
+                     + "<symbol> ( </symbol>" + NEW_LINE
+                     + "<identifier> x </identifier>" + NEW_LINE
+                     + "<symbol> &lt; </symbol>" + NEW_LINE
+                     + "<integerConstant> 1 </integerConstant>" + NEW_LINE
+                     + "<symbol> &amp; </symbol>" + NEW_LINE
+                     + "<identifier> y </identifier>" + NEW_LINE
+                     + "<symbol> &gt; </symbol>" + NEW_LINE
+                     + "<stringConstant> a&lt;b&gt;&amp;c é € 😀 </stringConstant>" + NEW_LINE
+                     + "<symbol> ) </symbol>" + NEW_LINE
+                     + "</tokens>" + NEW_LINE,
+                     writeTokens("if (x < 1 & y > \"a<b>&c é € 😀\")"));
+        // Quotes are never in Jack tokens, but are escaped all the same.
+        assertEquals("<stringConstant> &quot;q&quot; </stringConstant>" + NEW_LINE,
+                     writeToken(TokenFormat.XML, "\"q\""));
+    }
+
+    @Test
+    void binaryTokensAreReadBackAsTheyWereWritten() throws IOException {
+        StringBuilder jackCode = new StringBuilder("class Main { let s = \"é € 😀\"; ");
+        jackCode.append("let t = \"").append("x".repeat(200)).append("\"; "); // A 2-byte varint.
+        jackCode.append("let u = \"").append("é".repeat(10000)).append("\";\n"); // 20000 bytes: a 3-byte varint.
+        for (int i = 0; i < 20000; i++) { // Many times the writer's buffer.
+            jackCode.append("do f(").append(i % 32768).append(", \"€\");\n");
+        }
+        jackCode.append('}');
+        String code = jackCode.toString();
+        List <Token> expected = StreamSupport.stream(new JackTokenizer(new StringReader(code)).spliterator(), false)
+                                             .collect(Collectors.toList());
+
+        Path tokenFile = temporaryDirectory.resolve("Main.tok");
+        TokenWriter tokenWriter = TokenWriter.open(tokenFile, TokenFormat.BINARY);
+        assertEquals(expected.size(), tokenWriter.writeTokens(new JackTokenizer(new StringReader(code))));
+        tokenWriter.close();
+
+        BinaryTokenReader tokenReader = BinaryTokenReader.open(tokenFile);
+        for (Token token : expected) {
+            tokenReader.advance();
+            assertEquals(token.type(), tokenReader.tokenType());
+            assertEquals(token.text(), tokenReader.text());
+            assertEquals(token.text().getBytes(StandardCharsets.UTF_8).length, tokenReader.textLength());
+        }
+        assertFalse(tokenReader.hasMoreTokens());
+    }
+
+    @Test
+    void lengthsAreVarintsWithTheLowBitsFirst() {
+        byte [] bytes = writeToken(TokenFormat.BINARY, "x".repeat(200)).getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(203, bytes.length);
+        assertArrayEquals(new byte [] { (byte) TokenType.STRING_CONSTANT.ordinal(), (byte) 0xC8, 0x01 },
+                          new byte [] { bytes[0], bytes[1], bytes[2] });
+        bytes = writeToken(TokenFormat.BINARY, "x".repeat(127)).getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(127, bytes[1]);
+        assertEquals(129, bytes.length);
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "a\uD800b, a?b", "\uDC00\uD800, ??", "x\uD83D, x?", "\uDE00\uD83D, ??" })
+    void loneSurrogatesAreWrittenAsQuestionMarks(String text, String written) {
+        assertEquals("<stringConstant> " + written + " </stringConstant>" + NEW_LINE,
+                     writeToken(TokenFormat.XML, text));
+        BinaryTokenReader tokenReader = new BinaryTokenReader(ByteBuffer.wrap(
+            writeToken(TokenFormat.BINARY, text).getBytes(StandardCharsets.ISO_8859_1)));
+        tokenReader.advance();
+        assertEquals(written, tokenReader.text());
+        assertEquals(written.length(), tokenReader.textLength());
+        assertFalse(tokenReader.hasMoreTokens());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "09 00          | invalid token type 9 at byte 0",
+        "FF             | invalid token type -1 at byte 0",
+        "04 80          | invalid token length at byte 2",
+        "04 FF FF FF FF FF 01 | invalid token length at byte 6",
+        "04 01 61 04 03 61 62 | the token at byte 5 runs past the end" })
+    void invalidBinaryTokensAreRejected(String hexBytes, String error) {
+        String [] hex = hexBytes.strip().split(" ");
+        byte [] bytes = new byte[hex.length];
+        for (int i = 0; i < hex.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex[i], 16);
+        }
+        BinaryTokenReader tokenReader = new BinaryTokenReader(ByteBuffer.wrap(bytes));
+        assertEquals(error, assertThrows(IllegalArgumentException.class, () -> {
+            while (tokenReader.hasMoreTokens()) {
+                tokenReader.advance();
+            }
+        }).getMessage());
+    }
+
+    /**
+     * Translates the Jack code into XML through a TokenWriter.
+     * @param jackCode The Jack code.
+     * @return The XML document.
+     */
+    private static String writeTokens(String jackCode) {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        TokenWriter tokenWriter = new TokenWriter(Channels.newChannel(xml), TokenFormat.XML);
+        tokenWriter.writeTokens(new JackTokenizer(new StringReader(jackCode)));
+        tokenWriter.close();
+        return xml.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes one string constant through a TokenWriter.
+     * @param format The format it is written in.
+     * @param text The text of the string constant.
+     * @return The bytes written (XML as UTF-8 text, binary tokens one character per byte).
+     */
+    private static String writeToken(TokenFormat format, String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TokenWriter tokenWriter = new TokenWriter(Channels.newChannel(bytes), format);
+        tokenWriter.writeToken(TokenType.STRING_CONSTANT, null, text.toCharArray(), 0, text.length());
+        tokenWriter.close();
+        assertEquals(1, tokenWriter.getTokens());
+        return bytes.toString((format == TokenFormat.XML) ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+    }
+}